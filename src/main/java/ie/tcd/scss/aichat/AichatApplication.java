@@ -2,8 +2,10 @@ package ie.tcd.scss.aichat;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class AichatApplication {
 
 	public static void main(String[] args) {
@@ -1,8 +1,11 @@
 package ie.tcd.scss.aichat.config;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -13,6 +16,8 @@ import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import ie.tcd.scss.aichat.filter.JwtAuthenticationFilter;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Arrays;
 
 /**
@@ -26,6 +31,10 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
     
+    // Bearer token Prometheus sends to /actuator/prometheus; blank = metrics are served to no one
+    @Value("${metrics.prometheus.scrape-token:}")
+    private String scrapeToken;
+    
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
@@ -35,8 +44,12 @@ public class SecurityConfig {
                 .sessionCreationPolicy(SessionCreationPolicy.STATELESS))  // No sessions - use JWT tokens
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers("/api/auth/**").permitAll()        // Allow public access to login/register
+                .requestMatchers("/api/slides/learning-material").authenticated()  // Calls the model: needs a user to charge the tokens to
                 .requestMatchers("/api/slides/**").permitAll()      // Allow document upload (will secure in Job 3)
                 .requestMatchers("/swagger-ui/**", "/swagger-ui.html", "/v3/api-docs/**", "/api-docs/**").permitAll()  // Allow Swagger UI access
+                .requestMatchers("/actuator/health").permitAll()    // Health checks (no JWT)
+                .requestMatchers("/actuator/prometheus").access((authentication, context) ->
+                    new AuthorizationDecision(hasScrapeToken(context.getRequest())))  // Prometheus scrapes with its own token, not a user JWT
                 .anyRequest().authenticated()                        // All other endpoints require valid JWT
             )
             .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);  // Add JWT validation before auth
@@ -44,6 +57,16 @@ public class SecurityConfig {
         return http.build();
     }
     
+    // Constant-time comparison, so the token cannot be guessed from response times
+    private boolean hasScrapeToken(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (scrapeToken.isBlank() || header == null || !header.startsWith("Bearer ")) {
+            return false;
+        }
+        return MessageDigest.isEqual(scrapeToken.getBytes(StandardCharsets.UTF_8),
+                header.substring(7).getBytes(StandardCharsets.UTF_8));
+    }
+    
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
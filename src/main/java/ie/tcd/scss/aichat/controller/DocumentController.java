@@ -9,8 +9,10 @@ import java.util.stream.Collectors;
 
 
 import ie.tcd.scss.aichat.dto.SlideDocument;
+import ie.tcd.scss.aichat.dto.SlideSection;
 import ie.tcd.scss.aichat.model.Sources;
 import ie.tcd.scss.aichat.service.DocumentParsingService;
+import ie.tcd.scss.aichat.service.LearningMaterialService;
 import ie.tcd.scss.aichat.service.SourcesService;
 
 @RestController
@@ -19,10 +21,13 @@ public class DocumentController {
 
     private final DocumentParsingService documentParsingService;
     private final SourcesService sourcesService;
+    private final LearningMaterialService learningMaterialService;
 
-    public DocumentController(DocumentParsingService documentParsingService, SourcesService sourcesService) {
+    public DocumentController(DocumentParsingService documentParsingService, SourcesService sourcesService,
+                              LearningMaterialService learningMaterialService) {
         this.documentParsingService = documentParsingService;
         this.sourcesService = sourcesService;
+        this.learningMaterialService = learningMaterialService;
     }
 
     @PostMapping("/upload")
@@ -49,12 +54,8 @@ public class DocumentController {
                 : "ppt";
             src.setType(type);
 
-           src.setContent(
-                parsed.getSections()
-                    .stream()
-                    .map(section -> section.getContent())
-                    .reduce("", (a, b) -> a + "\n\n" + b)
-                    );
+            src.setContent(joinSections(parsed));
+            src.setPageOffsets(pageOffsets(parsed));
 
             Sources saved = sourcesService.save(src);
 
@@ -64,4 +65,65 @@ public class DocumentController {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    /**
+     * Parse a document and fill in the learning material (topic, key points, review
+     * questions) of every page. Pages are sent to the model in batches, not one by one,
+     * and pages seen before come from the cache.
+     *
+     * POST /api/slides/learning-material
+     *
+     * @param file PDF or PowerPoint file
+     * @return The parsed document with learning material per section; X-Model-Calls is the number of batches sent
+     */
+    @PostMapping("/learning-material")
+    public ResponseEntity<SlideDocument> extractLearningMaterial(@RequestParam("file") MultipartFile file) {
+        try {
+            if (file.isEmpty()) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            if (!documentParsingService.isPdfFile(file) && !documentParsingService.isPowerPointFile(file)) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            SlideDocument parsed = documentParsingService.processDocument(file);
+            int calls = learningMaterialService.populate(parsed);
+
+            return ResponseEntity.ok()
+                    .header("X-Model-Calls", String.valueOf(calls))
+                    .body(parsed);
+
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * Stored content of an uploaded document: the text of every section, each preceded by a blank line.
+     */
+    public static String joinSections(SlideDocument document) {
+        return document.getSections()
+                .stream()
+                .map(section -> section.getContent())
+                .reduce("", (a, b) -> a + "\n\n" + b);
+    }
+
+    /**
+     * Where every page starts in {@link #joinSections}, comma separated, so generation can be
+     * limited to a page range of the stored content.
+     */
+    public static String pageOffsets(SlideDocument document) {
+        StringBuilder offsets = new StringBuilder();
+        int offset = 0;
+        for (SlideSection section : document.getSections()) {
+            offset += 2; // the blank line before the page
+            if (!offsets.isEmpty()) {
+                offsets.append(',');
+            }
+            offsets.append(offset);
+            offset += String.valueOf(section.getContent()).length();
+        }
+        return offsets.toString();
+    }
 }
@@ -1,9 +1,15 @@
 package ie.tcd.scss.aichat.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -12,20 +18,31 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import ie.tcd.scss.aichat.dto.Flashcard;
 import ie.tcd.scss.aichat.dto.FlashcardRequest;
+import ie.tcd.scss.aichat.dto.GenerationResult;
 import ie.tcd.scss.aichat.model.User;
 import ie.tcd.scss.aichat.service.AuthService;
 import ie.tcd.scss.aichat.dto.FlashcardResponse;
 import ie.tcd.scss.aichat.dto.FlashcardSetResponse;
 import ie.tcd.scss.aichat.model.FlashcardSet;
+import ie.tcd.scss.aichat.model.GenerationJob;
 import ie.tcd.scss.aichat.model.User;
 import ie.tcd.scss.aichat.repository.FlashcardSetRepository;
 import ie.tcd.scss.aichat.repository.UserRepository;
+import ie.tcd.scss.aichat.service.ChunkProgressListener;
 import ie.tcd.scss.aichat.service.FlashcardService;
+import ie.tcd.scss.aichat.service.GenerationJobService;
+import ie.tcd.scss.aichat.service.IdempotencyStore;
+import ie.tcd.scss.aichat.service.SourcesService;
+import ie.tcd.scss.aichat.service.StreamExecutor;
+import ie.tcd.scss.aichat.service.SummarizationService;
 import ie.tcd.scss.aichat.exception.ResourceNotFoundException;
 import ie.tcd.scss.aichat.exception.ForbiddenException;
 import lombok.RequiredArgsConstructor;
@@ -45,6 +62,19 @@ public class FlashcardController {
     private final FlashcardService flashcardService;
     private final UserRepository userRepository;
     private final FlashcardSetRepository flashcardSetRepository;
+    private final StreamExecutor streamExecutor;
+    private final GenerationJobService generationJobService;
+    private final SummarizationService summarizationService;
+    private final IdempotencyStore idempotencyStore;
+    private final SourcesService sourcesService;
+    
+    private static final long STREAM_TIMEOUT_MS = 10 * 60 * 1000L;
+    // Over 2 million characters ~ 500k tokens
+    private static final int MAX_STUDY_MATERIAL_CHARS = 2_000_000;
+    
+    // Most flashcards one request may ask for
+    @Value("${generation.max-items:100}")
+    private int maxItems;
     
     /**
      * Generate flashcards from study material
@@ -53,43 +83,221 @@ public class FlashcardController {
      * Request body:
      * {
      *   "studyMaterial": "Your study content here...",
+     *   "count": 5,
+     *   "fromSummary": false
+     * }
+     * or, for the text of an uploaded source (optionally pages fromPage to toPage only):
+     * {
+     *   "sourceId": 12,
+     *   "fromPage": 3,
+     *   "toPage": 7,
      *   "count": 5
      * }
      * 
+     * POST /api/flashcards/generate?async=true returns 202 with a job; poll GET /api/jobs/{id}
+     * With "fromSummary": true the material is summarised (map-reduce) first and the
+     * cards are generated from the much shorter summary.
+     * A retry carrying the same Idempotency-Key header gets the first attempt's response
+     * (waiting for it if it is still running) instead of generating a second set.
+     * 
      * @param request FlashcardRequest containing study material and count
+     * @param async Run as a background job instead of waiting for the result
+     * @param idempotencyKey Optional client-chosen key identifying this request across retries
      * @param authHeader JWT token from Authorization header
-     * @return List of generated flashcards
+     * @return List of generated flashcards, or the queued job when async
      */
     @PostMapping("/generate")
-    public ResponseEntity<List<Flashcard>> generateFlashcards(
+    public ResponseEntity<?> generateFlashcards(
             @RequestBody FlashcardRequest request,
+            @RequestParam(defaultValue = "false") boolean async,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             Authentication authentication) {
-        // Validate input
-        if (request.getStudyMaterial() == null || request.getStudyMaterial().trim().isEmpty()) {
-            throw new IllegalArgumentException("Study material cannot be empty");
-        }
-        
-        // Check if study material is too large (over 2 million characters ~ 500k tokens)
-        if (request.getStudyMaterial().length() > 2_000_000) {
-            throw new IllegalArgumentException("Study material is too large. Maximum 2 million characters allowed.");
-        }
+        validateGenerateRequest(request);
         
         // Extract user from authenticated security context
         UserDetails userDetails = (UserDetails) authentication.getPrincipal();
         User user = userRepository.findByUsername(userDetails.getUsername())
                 .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
         
+        String material = materialFor(request, user.getId());
+        // The DTO's toString lists fields in declaration order, whatever order the JSON had
+        return idempotencyStore.execute("flashcards/generate:" + user.getId(), idempotencyKey,
+                request + " async=" + async, () -> generateFlashcards(request, material, async, user));
+    }
+    
+    private ResponseEntity<?> generateFlashcards(FlashcardRequest request, String material, boolean async, User user) {
         String title = "AI Generated Flashcards";
         
+        if (async) {
+            GenerationJob job = generationJobService.submitFlashcards(
+                    material, request.getCount(), user.getId(), title,
+                    Boolean.TRUE.equals(request.getFromSummary()));
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(generationJobService.toResponse(job));
+        }
+        
         // Generate flashcards using AI
-        List<Flashcard> flashcards = flashcardService.generateFlashcards(
-            request.getStudyMaterial(),
+        GenerationResult<Flashcard> result = flashcardService.generateFlashcardSet(
+            studyMaterialFor(material, request, user.getId()),
             request.getCount(),
             user.getId(),
-            title
+            title,
+            ChunkProgressListener.NONE
         );
         
-        return ResponseEntity.ok(flashcards);
+        return withGenerationHeaders(result);
+    }
+    
+    /**
+     * Finish an incomplete flashcard set
+     * 
+     * POST /api/flashcards/{id}/resume
+     * Regenerates only the chunks that failed when the set was created (the others come
+     * from the generation cache) and replaces the set's cards. A set that already has the
+     * requested number of cards is returned unchanged.
+     * 
+     * @param id Flashcard set ID
+     * @param authentication Authenticated user from JWT
+     * @return All cards of the set, in order; X-Failed-Chunks > 0 if some chunks failed again
+     */
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<List<Flashcard>> resumeFlashcardSet(@PathVariable Long id, Authentication authentication) {
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+        
+        FlashcardSet flashcardSet = flashcardSetRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("FlashcardSet", "id", id));
+        
+        // Ownership check
+        if (!flashcardSet.getUser().getId().equals(user.getId())) {
+            throw new ForbiddenException("You do not have permission to modify this flashcard set");
+        }
+        
+        return withGenerationHeaders(flashcardService.resumeFlashcardSet(flashcardSet));
+    }
+    
+    // Token metadata travels in headers so the response body stays a plain flashcard list
+    private ResponseEntity<List<Flashcard>> withGenerationHeaders(GenerationResult<Flashcard> result) {
+        return ResponseEntity.ok()
+                .header("X-Input-Tokens", String.valueOf(result.inputTokens()))
+                .header("X-Chunk-Count", String.valueOf(result.chunkCount()))
+                .header("X-Failed-Chunks", String.valueOf(result.failedChunks()))
+                .body(result.items());
+    }
+    
+    /**
+     * Generate flashcards and stream them as Server-Sent Events
+     * 
+     * POST /api/flashcards/generate/stream
+     * Same request body as /generate. Emits one "flashcard" event per card as soon as
+     * it is parsed from the model output, then a "complete" event with the saved set ID:
+     * {"setId": 42, "count": 5}
+     * With generation.stream.max-concurrent streams already running, 503 is returned instead.
+     * 
+     * @param request FlashcardRequest containing study material and count
+     * @param authentication Authenticated user from JWT
+     * @return SSE stream of flashcards
+     */
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateFlashcardsStream(
+            @RequestBody FlashcardRequest request,
+            Authentication authentication) {
+        validateGenerateRequest(request);
+        
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+        
+        String material = materialFor(request, user.getId());
+        
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        streamExecutor.execute(() -> {
+            try {
+                AtomicInteger sent = new AtomicInteger();
+                Long setId = flashcardService.streamFlashcards(
+                        studyMaterialFor(material, request, user.getId()),
+                        request.getCount(),
+                        user.getId(),
+                        "AI Generated Flashcards",
+                        flashcard -> {
+                            try {
+                                emitter.send(SseEmitter.event().name("flashcard").data(flashcard));
+                                sent.incrementAndGet();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                );
+                emitter.send(SseEmitter.event().name("complete")
+                        .data(Map.of("setId", setId, "count", sent.get())));
+                emitter.complete();
+            } catch (Exception e) {
+                try {
+                    emitter.send(SseEmitter.event().name("error").data(Map.of("message", String.valueOf(e.getMessage()))));
+                } catch (Exception ignored) {
+                    // Client already gone
+                }
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+    
+    // Text the cards are generated from: the material itself, or its summary when requested
+    private String studyMaterialFor(String material, FlashcardRequest request, Long userId) {
+        return Boolean.TRUE.equals(request.getFromSummary())
+                ? summarizationService.summarize(material, userId)
+                : material;
+    }
+    
+    // The material sent, or for requests by sourceId the stored text (or page range) of the user's source
+    private String materialFor(FlashcardRequest request, Long userId) {
+        if (request.getSourceId() == null) {
+            return request.getStudyMaterial();
+        }
+        SourcesService.SourceText source = sourcesService.findText(request.getSourceId())
+                .orElseThrow(() -> new ResourceNotFoundException("Sources", "id", request.getSourceId()));
+        if (!userId.equals(source.userId())) {
+            throw new ForbiddenException("You do not have permission to access this source");
+        }
+        String text = source.pages(request.getFromPage(), request.getToPage());
+        if (text.isBlank()) {
+            throw new IllegalArgumentException("The selected pages of source " + request.getSourceId() + " contain no text");
+        }
+        if (text.length() > MAX_STUDY_MATERIAL_CHARS) {
+            throw new IllegalArgumentException("The selected pages of source " + request.getSourceId()
+                    + " are too large. Maximum 2 million characters allowed; choose a smaller page range.");
+        }
+        return text;
+    }
+    
+    private void validateGenerateRequest(FlashcardRequest request) {
+        if (request.getCount() != null && (request.getCount() < 1 || request.getCount() > maxItems)) {
+            throw new IllegalArgumentException("Flashcard count must be between 1 and " + maxItems);
+        }
+        
+        if (request.getSourceId() != null) {
+            if (request.getStudyMaterial() != null) {
+                throw new IllegalArgumentException("Send either studyMaterial or sourceId, not both");
+            }
+            return;
+        }
+        
+        // Validate input
+        if (request.getStudyMaterial() == null || request.getStudyMaterial().trim().isEmpty()) {
+            throw new IllegalArgumentException("Study material cannot be empty");
+        }
+        
+        // Check if study material is too large
+        if (request.getStudyMaterial().length() > MAX_STUDY_MATERIAL_CHARS) {
+            throw new IllegalArgumentException("Study material is too large. Maximum 2 million characters allowed.");
+        }
+        
+        if (request.getFromPage() != null || request.getToPage() != null) {
+            throw new IllegalArgumentException("A page range needs a sourceId");
+        }
     }
     
     /**
@@ -0,0 +1,56 @@
+package ie.tcd.scss.aichat.controller;
+
+import ie.tcd.scss.aichat.service.GenerationCache;
+import ie.tcd.scss.aichat.service.GenerationCoalescer;
+import ie.tcd.scss.aichat.service.PromptCacheStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Exposes hit/miss counters of the generation cache and the provider-side prompt cache,
+ * and how many generation requests were coalesced
+ */
+@RestController
+@RequestMapping("/api/cache")
+@RequiredArgsConstructor
+public class GenerationCacheController {
+
+    private final GenerationCache generationCache;
+    private final PromptCacheStats promptCacheStats;
+    private final GenerationCoalescer generationCoalescer;
+
+    /**
+     * GET /api/cache/stats
+     *
+     * @return Memory/database hits, misses and hit ratio since startup
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(generationCache.stats());
+    }
+
+    /**
+     * GET /api/cache/prompt-stats
+     *
+     * @return Input tokens the provider served from its prompt cache vs processed uncached, since startup
+     */
+    @GetMapping("/prompt-stats")
+    public ResponseEntity<Map<String, Object>> promptStats() {
+        return ResponseEntity.ok(promptCacheStats.stats());
+    }
+
+    /**
+     * GET /api/cache/coalescing-stats
+     *
+     * @return Generation requests that ran their own model calls vs joined an identical one in flight, since startup
+     */
+    @GetMapping("/coalescing-stats")
+    public ResponseEntity<Map<String, Object>> coalescingStats() {
+        return ResponseEntity.ok(generationCoalescer.stats());
+    }
+}
@@ -0,0 +1,57 @@
+package ie.tcd.scss.aichat.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import ie.tcd.scss.aichat.dto.GenerationJobResponse;
+import ie.tcd.scss.aichat.exception.ForbiddenException;
+import ie.tcd.scss.aichat.exception.ResourceNotFoundException;
+import ie.tcd.scss.aichat.model.GenerationJob;
+import ie.tcd.scss.aichat.model.User;
+import ie.tcd.scss.aichat.repository.UserRepository;
+import ie.tcd.scss.aichat.service.GenerationJobService;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * REST Controller for background generation jobs
+ * Jobs are created by POST /api/quiz/generate?async=true and /api/flashcards/generate?async=true
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+public class GenerationJobController {
+
+    private final GenerationJobService generationJobService;
+    private final UserRepository userRepository;
+
+    /**
+     * Get the status of a generation job
+     * 
+     * GET /api/jobs/{id}
+     * 
+     * @param id Job ID returned by the 202 response
+     * @param authentication Authenticated user from JWT
+     * @return Status, chunk progress and result set ID once completed
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<GenerationJobResponse> getJob(@PathVariable Long id, Authentication authentication) {
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+
+        GenerationJob job = generationJobService.findJob(id)
+                .orElseThrow(() -> new ResourceNotFoundException("GenerationJob", "id", id));
+
+        // Ownership check
+        if (!job.getUserId().equals(user.getId())) {
+            throw new ForbiddenException("You do not have permission to access this job");
+        }
+
+        return ResponseEntity.ok(generationJobService.toResponse(job));
+    }
+}
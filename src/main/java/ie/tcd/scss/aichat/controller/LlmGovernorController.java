@@ -0,0 +1,44 @@
+package ie.tcd.scss.aichat.controller;
+
+import ie.tcd.scss.aichat.service.LlmGovernor;
+import ie.tcd.scss.aichat.service.ResilientChatModel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Exposes queue depth and wait times of the shared LLM governor, and the hedging and
+ * circuit breaker counters of the provider model behind it
+ */
+@RestController
+@RequestMapping("/api/llm")
+@RequiredArgsConstructor
+public class LlmGovernorController {
+
+    private final LlmGovernor llmGovernor;
+    private final ResilientChatModel resilientChatModel;
+
+    /**
+     * GET /api/llm/stats
+     *
+     * @return In-flight calls, queued calls/users, granted/timed-out counts and wait times per priority class
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(llmGovernor.stats());
+    }
+
+    /**
+     * GET /api/llm/resilience
+     *
+     * @return Calls, hedged calls and hedge wins, failures, calls rejected by the open circuit, current p95 per service and circuit state
+     */
+    @GetMapping("/resilience")
+    public ResponseEntity<Map<String, Object>> resilience() {
+        return ResponseEntity.ok(resilientChatModel.stats());
+    }
+}
@@ -1,11 +1,17 @@
 package ie.tcd.scss.aichat.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -15,17 +21,29 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import ie.tcd.scss.aichat.dto.GenerationResult;
 import ie.tcd.scss.aichat.dto.QuizQuestion;
 import ie.tcd.scss.aichat.dto.QuizQuestionResponse;
 import ie.tcd.scss.aichat.dto.QuizSetResponse;
+import ie.tcd.scss.aichat.model.GenerationJob;
 import ie.tcd.scss.aichat.model.QuizSet;
 import ie.tcd.scss.aichat.model.User;
 import ie.tcd.scss.aichat.repository.QuizSetRepository;
 import ie.tcd.scss.aichat.repository.UserRepository;
+import ie.tcd.scss.aichat.service.ChunkProgressListener;
+import ie.tcd.scss.aichat.service.GenerationJobService;
+import ie.tcd.scss.aichat.service.IdempotencyStore;
+import ie.tcd.scss.aichat.service.QuizExplanationService;
 import ie.tcd.scss.aichat.service.QuizService;
+import ie.tcd.scss.aichat.service.SourcesService;
+import ie.tcd.scss.aichat.service.StreamExecutor;
+import ie.tcd.scss.aichat.service.SummarizationService;
 import ie.tcd.scss.aichat.exception.ResourceNotFoundException;
 import ie.tcd.scss.aichat.exception.ForbiddenException;
 import lombok.RequiredArgsConstructor;
@@ -39,27 +57,280 @@ public class QuizController {
     private final QuizService quizService;
     private final UserRepository userRepository;
     private final QuizSetRepository quizSetRepository;
+    private final StreamExecutor streamExecutor;
+    private final GenerationJobService generationJobService;
+    private final SummarizationService summarizationService;
+    private final IdempotencyStore idempotencyStore;
+    private final QuizExplanationService quizExplanationService;
+    private final SourcesService sourcesService;
     
+    private static final long STREAM_TIMEOUT_MS = 10 * 60 * 1000L;
+    // Over 2 million characters ~ 500k tokens
+    private static final int MAX_STUDY_MATERIAL_CHARS = 2_000_000;
+    
+    // Most questions one request may ask for
+    @Value("${generation.max-items:100}")
+    private int maxItems;
+    
+    /**
+     * Generate a quiz from study material
+     * 
+     * POST /api/quiz/generate
+     * POST /api/quiz/generate?async=true - returns 202 with a job; poll GET /api/jobs/{id}
+     * With "fromSummary": true the material is summarised (map-reduce) first and the
+     * questions are generated from the much shorter summary.
+     * With "sourceId" instead of "studyMaterial" the text of an uploaded source is used,
+     * optionally only pages "fromPage" to "toPage" of it.
+     * A retry carrying the same Idempotency-Key header gets the first attempt's response
+     * (waiting for it if it is still running) instead of generating a second quiz.
+     * 
+     * @param request Study material or source (and page range), count, difficulty and optional fromSummary
+     * @param async Run as a background job instead of waiting for the result
+     * @param idempotencyKey Optional client-chosen key identifying this request across retries
+     * @param authentication Authenticated user from JWT
+     * @return Generated questions, or the queued job when async
+     */
     @PostMapping("/generate")
     public ResponseEntity<?> generateQuiz(
             @RequestBody Map<String, Object> request,
+            @RequestParam(defaultValue = "false") boolean async,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             Authentication authentication) {
         
-        // Validation
-        String studyMaterial = (String) request.get("studyMaterial");
-        if (studyMaterial == null || studyMaterial.trim().isEmpty()) {
-            throw new IllegalArgumentException("Study material is required and cannot be empty");
+        GenerateParams params = validateGenerateRequest(request);
+        
+        // Extract user from authenticated security context
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+        
+        Long userId = user.getId();
+        GenerateParams material = withSourceText(params, userId);
+        // Fingerprint the parsed request: the same fields sent in another order are the same request
+        return idempotencyStore.execute("quiz/generate:" + userId, idempotencyKey, params + " async=" + async,
+                () -> generateQuiz(material, async, userId));
+    }
+    
+    private ResponseEntity<?> generateQuiz(GenerateParams params, boolean async, Long userId) {
+        String title = "AI Generated Quiz";
+        
+        if (async) {
+            GenerationJob job = generationJobService.submitQuiz(
+                    params.studyMaterial(), params.questionCount(), params.difficulty(), userId, title,
+                    params.fromSummary());
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/jobs/" + job.getId()))
+                    .body(generationJobService.toResponse(job));
         }
+
+        GenerationResult<QuizQuestion> result = quizService.generateQuizSet(
+                studyMaterialFor(params, userId),
+                params.questionCount(),
+                params.difficulty(),
+                userId,
+                title,
+                ChunkProgressListener.NONE
+        );
+
+        return withGenerationHeaders(result);
+    }
+    
+    /**
+     * Finish an incomplete quiz set
+     * 
+     * POST /api/quiz/{id}/resume
+     * Regenerates only the chunks that failed when the quiz was created (the others come
+     * from the generation cache) and replaces the set's questions. A set that already has
+     * the requested number of questions is returned unchanged.
+     * 
+     * @param id Quiz set ID
+     * @param authentication Authenticated user from JWT
+     * @return All questions of the set, in order; X-Failed-Chunks > 0 if some chunks failed again
+     */
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<List<QuizQuestion>> resumeQuizSet(@PathVariable Long id, Authentication authentication) {
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
         
-        // Check if study material is too large (over 2 million characters ~ 500k tokens)
-        if (studyMaterial.length() > 2_000_000) {
-            throw new IllegalArgumentException("Study material is too large. Maximum 2 million characters allowed.");
+        QuizSet quizSet = quizSetRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("QuizSet", "id", id));
+        
+        // Ownership check
+        if (!quizSet.getUser().getId().equals(user.getId())) {
+            throw new ForbiddenException("You do not have permission to modify this quiz set");
+        }
+        
+        return withGenerationHeaders(quizService.resumeQuizSet(quizSet));
+    }
+    
+    /**
+     * Explanation of one quiz question, written on first request
+     * 
+     * GET /api/quiz/{id}/questions/{questionId}/explanation
+     * Quizzes generated with quiz.explanations.lazy=true have no explanations. The first
+     * request for one generates and stores it; later requests return the stored one.
+     * 
+     * @param id Quiz set ID
+     * @param questionId Question ID (the "id" of a question in GET /api/quiz/{id})
+     * @param authentication Authenticated user from JWT
+     * @return {"questionId": 7, "explanation": "..."}
+     */
+    @GetMapping("/{id}/questions/{questionId}/explanation")
+    public ResponseEntity<Map<String, Object>> getExplanation(@PathVariable Long id, @PathVariable Long questionId,
+                                                              Authentication authentication) {
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+        
+        QuizSet quizSet = quizSetRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("QuizSet", "id", id));
+        
+        // Ownership check
+        if (!quizSet.getUser().getId().equals(user.getId())) {
+            throw new ForbiddenException("You do not have permission to access this quiz set");
+        }
+        
+        ie.tcd.scss.aichat.model.QuizQuestion question = quizSet.getQuestions().stream()
+                .filter(q -> q.getId().equals(questionId))
+                .findFirst()
+                .orElseThrow(() -> new ResourceNotFoundException("QuizQuestion", "id", questionId));
+        
+        String explanation = quizExplanationService.explain(quizSet, question);
+        return ResponseEntity.ok(Map.of("questionId", questionId, "explanation", explanation));
+    }
+    
+    /**
+     * Explain every question of a quiz set up front
+     * 
+     * POST /api/quiz/{id}/explanations
+     * Generates the missing explanations of the set in batched calls, e.g. right after a
+     * lazily explained quiz was generated, so they are ready when the student opens them.
+     * 
+     * @param id Quiz set ID
+     * @param authentication Authenticated user from JWT
+     * @return The quiz set with its explanations (null for any the model failed to write)
+     */
+    @PostMapping("/{id}/explanations")
+    public ResponseEntity<QuizSetResponse> prefetchExplanations(@PathVariable Long id, Authentication authentication) {
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+        
+        QuizSet quizSet = quizSetRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("QuizSet", "id", id));
+        
+        // Ownership check
+        if (!quizSet.getUser().getId().equals(user.getId())) {
+            throw new ForbiddenException("You do not have permission to access this quiz set");
+        }
+        
+        quizExplanationService.explainAll(quizSet);
+        return ResponseEntity.ok(convertToDto(quizSet));
+    }
+    
+    // Token metadata travels in headers so the response body stays a plain question list
+    private ResponseEntity<List<QuizQuestion>> withGenerationHeaders(GenerationResult<QuizQuestion> result) {
+        List<QuizQuestion> questions = result.items() != null ? result.items() : List.of();
+        return ResponseEntity.ok()
+                .header("X-Input-Tokens", String.valueOf(result.inputTokens()))
+                .header("X-Chunk-Count", String.valueOf(result.chunkCount()))
+                .header("X-Failed-Chunks", String.valueOf(result.failedChunks()))
+                .body(questions);
+    }
+    
+    /**
+     * Generate a quiz and stream the questions as Server-Sent Events
+     * 
+     * POST /api/quiz/generate/stream
+     * Same request body as /generate. Emits one "question" event per question as soon as
+     * it is parsed from the model output, then a "complete" event with the saved set ID:
+     * {"setId": 42, "count": 5}
+     * With generation.stream.max-concurrent streams already running, 503 is returned instead.
+     * 
+     * @param request Study material, count and difficulty
+     * @param authentication Authenticated user from JWT
+     * @return SSE stream of quiz questions
+     */
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateQuizStream(
+            @RequestBody Map<String, Object> request,
+            Authentication authentication) {
+        
+        GenerateParams params = validateGenerateRequest(request);
+        
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+        
+        GenerateParams material = withSourceText(params, user.getId());
+        
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        streamExecutor.execute(() -> {
+            try {
+                AtomicInteger sent = new AtomicInteger();
+                Long setId = quizService.streamQuiz(
+                        studyMaterialFor(material, user.getId()),
+                        material.questionCount(),
+                        material.difficulty(),
+                        user.getId(),
+                        "AI Generated Quiz",
+                        question -> {
+                            try {
+                                emitter.send(SseEmitter.event().name("question").data(question));
+                                sent.incrementAndGet();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                );
+                emitter.send(SseEmitter.event().name("complete")
+                        .data(Map.of("setId", setId, "count", sent.get())));
+                emitter.complete();
+            } catch (Exception e) {
+                try {
+                    emitter.send(SseEmitter.event().name("error").data(Map.of("message", String.valueOf(e.getMessage()))));
+                } catch (Exception ignored) {
+                    // Client already gone
+                }
+                emitter.completeWithError(e);
+            }
+        });
+        return emitter;
+    }
+    
+    private GenerateParams validateGenerateRequest(Map<String, Object> request) {
+        // Validation
+        String studyMaterial = (String) request.get("studyMaterial");
+        Long sourceId = wholeNumber(request, "sourceId");
+        Integer fromPage = intParam(request, "fromPage");
+        Integer toPage = intParam(request, "toPage");
+        if (sourceId != null) {
+            if (studyMaterial != null) {
+                throw new IllegalArgumentException("Send either studyMaterial or sourceId, not both");
+            }
+        } else {
+            if (studyMaterial == null || studyMaterial.trim().isEmpty()) {
+                throw new IllegalArgumentException("Study material is required and cannot be empty");
+            }
+            
+            // Check if study material is too large
+            if (studyMaterial.length() > MAX_STUDY_MATERIAL_CHARS) {
+                throw new IllegalArgumentException("Study material is too large. Maximum 2 million characters allowed.");
+            }
+            
+            if (fromPage != null || toPage != null) {
+                throw new IllegalArgumentException("A page range needs a sourceId");
+            }
         }
         
         // Support both "count" and "questionCount" for backward compatibility
         Integer questionCount = request.containsKey("count") ? 
-            (Integer) request.get("count") : 
-            (Integer) request.get("questionCount");
+            intParam(request, "count") : 
+            intParam(request, "questionCount");
+        if (questionCount != null && (questionCount < 1 || questionCount > maxItems)) {
+            throw new IllegalArgumentException("Question count must be between 1 and " + maxItems);
+        }
         String difficulty = (String) request.get("difficulty");
         
         // Validate difficulty if provided
@@ -67,29 +338,64 @@ public class QuizController {
             throw new IllegalArgumentException("Invalid difficulty. Must be 'easy', 'medium', or 'hard'");
         }
         
-        // Extract user from authenticated security context
-        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
-        User user = userRepository.findByUsername(userDetails.getUsername())
-                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+        boolean fromSummary = Boolean.TRUE.equals(request.get("fromSummary"));
         
-        Long userId = user.getId();
-        String title = "AI Generated Quiz";
-
-        List<QuizQuestion> questions = quizService.generateQuiz(
-                studyMaterial,
-                questionCount,
-                difficulty,
-                userId,
-                title
-        );
-
-        if (questions == null) {
-            questions = List.of();
+        return new GenerateParams(studyMaterial, sourceId, fromPage, toPage, questionCount, difficulty, fromSummary);
+    }
+    
+    // JSON numbers arrive as Integer, Long or Double; anything but a whole number (e.g. "2" or 2.5) is a 400
+    private static Long wholeNumber(Map<String, Object> request, String name) {
+        Object value = request.get(name);
+        if (value == null) {
+            return null;
         }
-
-        return ResponseEntity.ok(questions);
+        if (value instanceof Number number && number.doubleValue() == Math.rint(number.doubleValue())
+                && !Double.isInfinite(number.doubleValue())) {
+            return number.longValue();
+        }
+        throw new IllegalArgumentException("'" + name + "' must be a whole number");
+    }
+    
+    private static Integer intParam(Map<String, Object> request, String name) {
+        Long value = wholeNumber(request, name);
+        if (value != null && (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("'" + name + "' is out of range");
+        }
+        return value != null ? value.intValue() : null;
+    }
+    
+    // Requests by sourceId: the stored text (or page range) of the user's source becomes the study material
+    private GenerateParams withSourceText(GenerateParams params, Long userId) {
+        if (params.sourceId() == null) {
+            return params;
+        }
+        SourcesService.SourceText source = sourcesService.findText(params.sourceId())
+                .orElseThrow(() -> new ResourceNotFoundException("Sources", "id", params.sourceId()));
+        if (!userId.equals(source.userId())) {
+            throw new ForbiddenException("You do not have permission to access this source");
+        }
+        String text = source.pages(params.fromPage(), params.toPage());
+        if (text.isBlank()) {
+            throw new IllegalArgumentException("The selected pages of source " + params.sourceId() + " contain no text");
+        }
+        if (text.length() > MAX_STUDY_MATERIAL_CHARS) {
+            throw new IllegalArgumentException("The selected pages of source " + params.sourceId()
+                    + " are too large. Maximum 2 million characters allowed; choose a smaller page range.");
+        }
+        return new GenerateParams(text, params.sourceId(), params.fromPage(), params.toPage(),
+                params.questionCount(), params.difficulty(), params.fromSummary());
+    }
+    
+    // Text the questions are generated from: the material itself, or its summary when requested
+    private String studyMaterialFor(GenerateParams params, Long userId) {
+        return params.fromSummary()
+                ? summarizationService.summarize(params.studyMaterial(), userId)
+                : params.studyMaterial();
     }
     
+    private record GenerateParams(String studyMaterial, Long sourceId, Integer fromPage, Integer toPage,
+                                  Integer questionCount, String difficulty, boolean fromSummary) {}
+    
     @GetMapping("/test")
     public ResponseEntity<Map<String, String>> testEndpoint() {
         return ResponseEntity.ok(Map.of("message", "Quiz API is working!"));
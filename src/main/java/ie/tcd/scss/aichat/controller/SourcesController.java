@@ -1,9 +1,17 @@
 package ie.tcd.scss.aichat.controller;
 
+import ie.tcd.scss.aichat.dto.SummaryResult;
+import ie.tcd.scss.aichat.exception.ForbiddenException;
+import ie.tcd.scss.aichat.exception.ResourceNotFoundException;
 import ie.tcd.scss.aichat.model.Sources;
+import ie.tcd.scss.aichat.model.User;
+import ie.tcd.scss.aichat.repository.UserRepository;
 import ie.tcd.scss.aichat.service.SourcesService;
+import ie.tcd.scss.aichat.service.SummarizationService;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -14,9 +22,14 @@ import java.util.List;
 public class SourcesController {
 
     private final SourcesService service;
+    private final SummarizationService summarizationService;
+    private final UserRepository userRepository;
 
-    public SourcesController(SourcesService service) {
+    public SourcesController(SourcesService service, SummarizationService summarizationService,
+                             UserRepository userRepository) {
         this.service = service;
+        this.summarizationService = summarizationService;
+        this.userRepository = userRepository;
     }
 
     @PostMapping
@@ -35,4 +48,58 @@ public class SourcesController {
         service.delete(id);
         return ResponseEntity.ok().build();
     }
+
+    /**
+     * Summarise a source (map-reduce over its chunks) and store the result
+     *
+     * POST /api/sources/{id}/summary
+     * POST /api/sources/{id}/summary?refresh=true - discard the stored summary and summarise again
+     *
+     * @param id Source ID
+     * @param refresh Summarise again even if a summary is stored
+     * @param authentication Authenticated user from JWT
+     * @return Document summary, chunk count and source/summary size in tokens
+     */
+    @PostMapping("/{id}/summary")
+    public ResponseEntity<SummaryResult> summarizeSource(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "false") boolean refresh,
+            Authentication authentication) {
+        User user = currentUser(authentication);
+        Sources source = ownedSource(id, user);
+        return ResponseEntity.ok(summarizationService.summarizeSource(source, user.getId(), refresh));
+    }
+
+    /**
+     * Get the stored summary of a source
+     *
+     * GET /api/sources/{id}/summary
+     *
+     * @param id Source ID
+     * @param authentication Authenticated user from JWT
+     * @return Stored document summary, 404 if the source was never summarised
+     */
+    @GetMapping("/{id}/summary")
+    public ResponseEntity<SummaryResult> getSourceSummary(@PathVariable Long id, Authentication authentication) {
+        Sources source = ownedSource(id, currentUser(authentication));
+        return ResponseEntity.ok(summarizationService.findSourceSummary(source)
+                .orElseThrow(() -> new ResourceNotFoundException("Summary", "sourceId", id)));
+    }
+
+    private User currentUser(Authentication authentication) {
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        return userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+    }
+
+    private Sources ownedSource(Long id, User user) {
+        Sources source = service.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Sources", "id", id));
+
+        // Ownership check
+        if (!user.getId().equals(source.getUserId())) {
+            throw new ForbiddenException("You do not have permission to access this source");
+        }
+        return source;
+    }
 }
@@ -0,0 +1,53 @@
+package ie.tcd.scss.aichat.controller;
+
+import ie.tcd.scss.aichat.exception.ResourceNotFoundException;
+import ie.tcd.scss.aichat.model.User;
+import ie.tcd.scss.aichat.repository.UserRepository;
+import ie.tcd.scss.aichat.service.LlmGovernor;
+import ie.tcd.scss.aichat.service.TokenUsageLedger;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Exposes the authenticated user's token usage and daily budget
+ */
+@RestController
+@RequestMapping("/api/usage")
+@RequiredArgsConstructor
+public class UsageController {
+
+    private static final int MAX_HISTORY_DAYS = 90;
+
+    private final TokenUsageLedger tokenUsageLedger;
+    private final UserRepository userRepository;
+
+    /**
+     * GET /api/usage?days=7
+     *
+     * @param days Number of days of history to include, today included (1-90)
+     * @param authentication Authenticated user from JWT
+     * @return Today's input/output tokens and calls, daily budget, remaining tokens, reset time and per-day history
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> usage(
+            @RequestParam(defaultValue = "7") int days,
+            Authentication authentication) {
+        if (days < 1 || days > MAX_HISTORY_DAYS) {
+            throw new IllegalArgumentException("days must be between 1 and " + MAX_HISTORY_DAYS);
+        }
+
+        UserDetails userDetails = (UserDetails) authentication.getPrincipal();
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", userDetails.getUsername()));
+
+        return ResponseEntity.ok(tokenUsageLedger.usage(LlmGovernor.userKey(user.getId()), days));
+    }
+}
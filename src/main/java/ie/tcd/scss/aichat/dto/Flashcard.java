@@ -1,16 +1,20 @@
 package ie.tcd.scss.aichat.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
  * Represents a single flashcard with a question and answer
+ * Fields are marked required so the structured-output schema sent to the model requires them
  */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Flashcard {
+    @JsonProperty(required = true)
     private String question;  // The question side of the flashcard
+    @JsonProperty(required = true)
     private String answer;    // The answer side of the flashcard
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Shape of the model's flashcard output; its JSON schema is sent as the response format
+ */
+public record FlashcardBatch(@JsonProperty(required = true) List<Flashcard> flashcards) {
+}
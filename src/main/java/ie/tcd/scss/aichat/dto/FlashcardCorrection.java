@@ -0,0 +1,13 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Corrected version of one drafted flashcard, keyed by its number in the verification prompt.
+ * Fields are marked required so the structured-output schema sent to the model requires them
+ */
+public record FlashcardCorrection(
+        @JsonProperty(required = true) Integer number,
+        @JsonProperty(required = true) String question,
+        @JsonProperty(required = true) String answer) {
+}
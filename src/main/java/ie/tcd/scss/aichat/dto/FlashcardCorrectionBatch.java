@@ -0,0 +1,12 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Shape of the model's answer when verifying drafted flashcards (only the ones it corrected);
+ * its JSON schema is sent as the response format
+ */
+public record FlashcardCorrectionBatch(@JsonProperty(required = true) List<FlashcardCorrection> corrections) {
+}
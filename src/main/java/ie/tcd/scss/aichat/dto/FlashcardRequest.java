@@ -4,10 +4,14 @@ import lombok.Data;
 
 /**
  * Request DTO for flashcard generation
- * Accepts study material text and number of flashcards to generate
+ * Accepts study material text (or an uploaded source and page range) and number of flashcards to generate
  */
 @Data
 public class FlashcardRequest {
     private String studyMaterial;  // The text content to generate flashcards from
+    private Long sourceId;          // Or: an uploaded source whose stored text is used instead
+    private Integer fromPage;       // Optional first page of the source (1-based)
+    private Integer toPage;         // Optional last page of the source
     private Integer count;          // Number of flashcards to generate (default: 5)
+    private Boolean fromSummary;    // Generate from a map-reduce summary of the material instead of the full text
 }
\ No newline at end of file
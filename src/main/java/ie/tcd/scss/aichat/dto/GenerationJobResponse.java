@@ -0,0 +1,25 @@
+package ie.tcd.scss.aichat.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Status of a background generation job
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenerationJobResponse {
+    private Long id;
+    private String type;              // QUIZ or FLASHCARDS
+    private String status;            // PENDING, RUNNING, COMPLETED, FAILED
+    private Integer totalChunks;      // Null until the material has been chunked
+    private Integer completedChunks;
+    private Long resultSetId;         // QuizSet / FlashcardSet ID once COMPLETED
+    private String errorMessage;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,15 @@
+package ie.tcd.scss.aichat.dto;
+
+import java.util.List;
+
+/**
+ * Generated items together with the ID of the set they were saved as,
+ * the size of the input, measured with the model's tokenizer,
+ * and the number of chunks that failed on every retry
+ */
+public record GenerationResult<T>(Long setId, List<T> items, int chunkCount, int inputTokens, int failedChunks) {
+
+    public GenerationResult(Long setId, List<T> items, int chunkCount, int inputTokens) {
+        this(setId, items, chunkCount, inputTokens, 0);
+    }
+}
@@ -0,0 +1,16 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Learning material the model extracted for one page of a batch, keyed by its page number.
+ * Fields are marked required so the structured-output schema sent to the model requires them
+ */
+public record PageLearningMaterial(
+        @JsonProperty(required = true) Integer page,
+        @JsonProperty(required = true) String topic,
+        @JsonProperty(required = true) List<String> keyPoints,
+        @JsonProperty(required = true) List<String> questions) {
+}
@@ -0,0 +1,12 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Explanation the model wrote for one question of a batch, keyed by its number in the prompt.
+ * Fields are marked required so the structured-output schema sent to the model requires them
+ */
+public record QuestionExplanation(
+        @JsonProperty(required = true) Integer question,
+        @JsonProperty(required = true) String explanation) {
+}
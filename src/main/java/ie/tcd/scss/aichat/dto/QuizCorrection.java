@@ -0,0 +1,17 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Corrected version of one drafted quiz question, keyed by its number in the verification prompt.
+ * Fields are marked required so the structured-output schema sent to the model requires them
+ */
+public record QuizCorrection(
+        @JsonProperty(required = true) Integer number,
+        @JsonProperty(required = true) String question,
+        @JsonProperty(required = true) List<String> options,
+        @JsonProperty(required = true) Integer correctAnswer,
+        @JsonProperty(required = true) String explanation) {
+}
@@ -1,5 +1,6 @@
 package ie.tcd.scss.aichat.dto;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -8,13 +9,18 @@ import java.util.List;
 
 /**
  * Represents a multiple-choice quiz question
+ * Fields are marked required so the structured-output schema sent to the model requires them
  */
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class QuizQuestion {
+    @JsonProperty(required = true)
     private String question;           // The question text
+    @JsonProperty(required = true)
     private List<String> options;      // List of answer options (typically 4)
+    @JsonProperty(required = true)
     private int correctAnswer;         // Index of correct answer (0-3)
+    @JsonProperty(required = true)
     private String explanation;        // Explanation of why the answer is correct
 }
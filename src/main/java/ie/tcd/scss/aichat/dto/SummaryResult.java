@@ -0,0 +1,9 @@
+package ie.tcd.scss.aichat.dto;
+
+/**
+ * Document summary of an uploaded source, with the number of chunks it was reduced from
+ * and the size of the source and of the summary, measured with the model's tokenizer
+ */
+public record SummaryResult(Long materialId, Long sourceId, String summary, int chunkCount,
+                            int sourceTokens, int summaryTokens) {
+}
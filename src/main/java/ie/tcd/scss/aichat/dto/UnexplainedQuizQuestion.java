@@ -0,0 +1,16 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Quiz question without its explanation, as the model writes it when explanations are
+ * generated on demand. Fields are marked required so the structured-output schema sent to
+ * the model requires them
+ */
+public record UnexplainedQuizQuestion(
+        @JsonProperty(required = true) String question,
+        @JsonProperty(required = true) List<String> options,
+        @JsonProperty(required = true) int correctAnswer) {
+}
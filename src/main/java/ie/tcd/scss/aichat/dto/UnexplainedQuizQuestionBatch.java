@@ -0,0 +1,12 @@
+package ie.tcd.scss.aichat.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Shape of the model's quiz output when explanations are generated on demand; its JSON
+ * schema is sent as the response format
+ */
+public record UnexplainedQuizQuestionBatch(@JsonProperty(required = true) List<UnexplainedQuizQuestion> questions) {
+}
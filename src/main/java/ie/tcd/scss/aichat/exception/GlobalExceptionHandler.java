@@ -9,6 +9,9 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.WebRequest;
 
+import java.time.Duration;
+import java.time.Instant;
+
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
@@ -72,6 +75,56 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.UNAUTHORIZED);
     }
 
+    /**
+     * Handle LlmOverloadedException (503)
+     */
+    @ExceptionHandler(LlmOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleLlmOverloadedException(
+            LlmOverloadedException ex, WebRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                "Service Unavailable",
+                ex.getMessage(),
+                request.getDescription(false).replace("uri=", "")
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "10")
+                .body(errorResponse);
+    }
+
+    /**
+     * Handle TokenBudgetExceededException (429)
+     */
+    @ExceptionHandler(TokenBudgetExceededException.class)
+    public ResponseEntity<ErrorResponse> handleTokenBudgetExceededException(
+            TokenBudgetExceededException ex, WebRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Too Many Requests",
+                ex.getMessage(),
+                request.getDescription(false).replace("uri=", "")
+        );
+        long retryAfter = Math.max(1, Duration.between(Instant.now(), ex.getResetsAt()).toSeconds());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header("Retry-After", String.valueOf(retryAfter))
+                .body(errorResponse);
+    }
+
+    /**
+     * Handle IdempotencyKeyConflictException (422)
+     */
+    @ExceptionHandler(IdempotencyKeyConflictException.class)
+    public ResponseEntity<ErrorResponse> handleIdempotencyKeyConflictException(
+            IdempotencyKeyConflictException ex, WebRequest request) {
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                "Unprocessable Entity",
+                ex.getMessage(),
+                request.getDescription(false).replace("uri=", "")
+        );
+        return new ResponseEntity<>(errorResponse, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
     /**
      * Handle IllegalArgumentException (400)
      */
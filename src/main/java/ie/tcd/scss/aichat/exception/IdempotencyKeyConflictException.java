@@ -0,0 +1,10 @@
+package ie.tcd.scss.aichat.exception;
+
+/**
+ * Thrown when an Idempotency-Key is reused with a different request body.
+ */
+public class IdempotencyKeyConflictException extends RuntimeException {
+    public IdempotencyKeyConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package ie.tcd.scss.aichat.exception;
+
+/**
+ * Thrown when a model call could not get a slot from the LLM governor in time.
+ */
+public class LlmOverloadedException extends RuntimeException {
+    public LlmOverloadedException(String message) {
+        super(message);
+    }
+}
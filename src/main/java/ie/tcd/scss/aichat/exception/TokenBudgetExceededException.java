@@ -0,0 +1,20 @@
+package ie.tcd.scss.aichat.exception;
+
+import java.time.Instant;
+
+/**
+ * Thrown before a model call when the user has used up their daily token budget.
+ */
+public class TokenBudgetExceededException extends RuntimeException {
+
+    private final Instant resetsAt;
+
+    public TokenBudgetExceededException(String message, Instant resetsAt) {
+        super(message);
+        this.resetsAt = resetsAt;
+    }
+
+    public Instant getResetsAt() {
+        return resetsAt;
+    }
+}
@@ -0,0 +1,62 @@
+package ie.tcd.scss.aichat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * A generated quiz question kept for reuse, indexed by the hash of the material it was
+ * generated from and its difficulty. Quizzes on material seen before are sampled from here.
+ */
+@Entity
+@Table(name = "question_bank",
+        indexes = @Index(name = "idx_question_bank_material", columnList = "material_hash, difficulty"),
+        uniqueConstraints = @UniqueConstraint(columnNames = {"material_hash", "difficulty", "question_hash"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BankQuestion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "material_hash", nullable = false, length = 64)
+    private String materialHash;    // SHA-256 of the whitespace-normalised study material
+
+    @Column(nullable = false, length = 16)
+    private String difficulty;      // easy, medium or hard
+
+    @Column(name = "question_hash", nullable = false, length = 64)
+    private String questionHash;    // SHA-256 of the normalised question text, so repeats are stored once
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String question;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String optionA;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String optionB;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String optionC;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String optionD;
+
+    @Column(nullable = false)
+    private String correctAnswer;
+
+    @Column(columnDefinition = "TEXT")
+    private String explanation;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
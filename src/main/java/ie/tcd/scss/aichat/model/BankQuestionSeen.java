@@ -0,0 +1,41 @@
+package ie.tcd.scss.aichat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Marks a bank question as already served to a user, so their later quizzes skip it.
+ */
+@Entity
+@Table(name = "question_bank_seen",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "bank_question_id"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BankQuestionSeen {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "bank_question_id", nullable = false)
+    private Long bankQuestionId;
+
+    @Column(nullable = false)
+    private LocalDateTime seenAt;
+
+    public BankQuestionSeen(Long userId, Long bankQuestionId) {
+        this.userId = userId;
+        this.bankQuestionId = bankQuestionId;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        seenAt = LocalDateTime.now();
+    }
+}
@@ -28,6 +28,9 @@ public class FlashcardSet {
     @Column(columnDefinition = "TEXT")
     private String studyMaterial;
 
+    // Cards asked for; a set holding fewer can be finished with POST /api/flashcards/{id}/resume
+    private Integer requestedCount;
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -0,0 +1,39 @@
+package ie.tcd.scss.aichat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Persistent tier of the generation cache.
+ * Holds the parsed items generated for one chunk, serialized as JSON.
+ */
+@Entity
+@Table(name = "generation_cache")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenerationCacheEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String cacheKey;     // SHA-256 of chunk text + generation parameters
+
+    @Column(nullable = false, columnDefinition = "LONGTEXT")
+    private String payload;      // JSON array of Flashcard / QuizQuestion DTOs
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,78 @@
+package ie.tcd.scss.aichat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * A quiz or flashcard generation run executed in the background.
+ * Holds the original request so unfinished jobs can be picked up again after a restart.
+ */
+@Entity
+@Table(name = "generation_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GenerationJob {
+
+    public static final String TYPE_QUIZ = "QUIZ";
+    public static final String TYPE_FLASHCARDS = "FLASHCARDS";
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private String type;            // QUIZ or FLASHCARDS
+
+    @Column(nullable = false)
+    private String status;          // PENDING, RUNNING, COMPLETED, FAILED
+
+    @Column(nullable = false, columnDefinition = "LONGTEXT")
+    private String studyMaterial;
+
+    private Integer itemCount;
+
+    private String difficulty;      // Quiz only
+
+    private String title;
+
+    private Boolean fromSummary;    // Summarise the material first and generate from the summary
+
+    private Integer totalChunks;
+
+    @Column(nullable = false)
+    private Integer completedChunks = 0;
+
+    private Long resultSetId;       // QuizSet or FlashcardSet ID once completed
+
+    @Column(columnDefinition = "TEXT")
+    private String errorMessage;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
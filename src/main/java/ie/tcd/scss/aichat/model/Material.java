@@ -25,6 +25,9 @@ public class Material {
     @Column(nullable = false)
     private Long fileSize;
 
+    @Column(unique = true)
+    private Long sourceId;      // Sources row holding the extracted text of the upload
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
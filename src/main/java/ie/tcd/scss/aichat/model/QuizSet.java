@@ -31,6 +31,9 @@ public class QuizSet {
     @Column(nullable = false)
     private String difficulty;
 
+    // Questions asked for; a set holding fewer can be finished with POST /api/quiz/{id}/resume
+    private Integer requestedCount;
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -1,5 +1,6 @@
 package ie.tcd.scss.aichat.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -27,5 +28,9 @@ public class Sources {
     @Column(columnDefinition = "LONGTEXT")
     private String content;     // extracted text or user-entered text
 
+    @JsonIgnore
+    @Column(columnDefinition = "TEXT")
+    private String pageOffsets; // offset in content where each page starts, comma separated (uploaded documents only)
+
     private LocalDateTime createdAt = LocalDateTime.now();
 }
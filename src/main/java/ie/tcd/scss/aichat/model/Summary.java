@@ -18,6 +18,13 @@ public class Summary {
     @Column(nullable = false, columnDefinition = "TEXT")
     private String content;
 
+    @Column(name = "summary_level", nullable = false, length = 16)
+    private String level;            // "chunk" (one per chunk of the material) or "document" (the reduced summary)
+
+    private Integer position;        // Chunk index, in document order; null for the document summary
+
+    private Integer inputTokens;     // Size of the summarised text (document summary only)
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
@@ -0,0 +1,37 @@
+package ie.tcd.scss.aichat.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDate;
+
+/**
+ * Tokens used by one user on one (UTC) day, as flushed from the in-memory usage ledger.
+ */
+@Entity
+@Table(name = "token_usage",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_key", "usage_date"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenUsage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_key", nullable = false, length = 64)
+    private String userKey;      // user:<id>, as the LLM governor attributes calls
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    @Column(nullable = false)
+    private long inputTokens;
+
+    @Column(nullable = false)
+    private long outputTokens;
+
+    @Column(nullable = false)
+    private long calls;
+}
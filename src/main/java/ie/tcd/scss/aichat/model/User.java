@@ -31,6 +31,9 @@ public class User implements UserDetails {  // ADD: implements UserDetails
     @Column(nullable = false)
     private String passwordHash; // Should be hashed (BCrypt)
 
+    @Column
+    private Long dailyTokenBudget; // Overrides usage.budget.daily-tokens when set; 0 = unlimited
+
     @Column(nullable = false)
     private LocalDateTime createdAt;
 
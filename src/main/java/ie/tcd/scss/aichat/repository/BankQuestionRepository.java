@@ -0,0 +1,44 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.BankQuestion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BankQuestionRepository extends JpaRepository<BankQuestion, Long> {
+
+    /**
+     * Ids of bank questions for this material and difficulty the user has not been served yet.
+     * Only the ids: a sample is drawn from them and just the chosen rows are loaded.
+     */
+    @Query("""
+            SELECT q.id FROM BankQuestion q
+            WHERE q.materialHash = :materialHash AND q.difficulty = :difficulty
+              AND NOT EXISTS (SELECT s.id FROM BankQuestionSeen s WHERE s.userId = :userId AND s.bankQuestionId = q.id)""")
+    List<Long> findUnseenIds(@Param("materialHash") String materialHash,
+                             @Param("difficulty") String difficulty,
+                             @Param("userId") Long userId);
+
+    /**
+     * Number of bank questions for this material and difficulty the user has not been served yet.
+     */
+    @Query("""
+            SELECT COUNT(q) FROM BankQuestion q
+            WHERE q.materialHash = :materialHash AND q.difficulty = :difficulty
+              AND NOT EXISTS (SELECT s.id FROM BankQuestionSeen s WHERE s.userId = :userId AND s.bankQuestionId = q.id)""")
+    long countUnseen(@Param("materialHash") String materialHash,
+                     @Param("difficulty") String difficulty,
+                     @Param("userId") Long userId);
+
+    long countByMaterialHashAndDifficulty(String materialHash, String difficulty);
+
+    Optional<BankQuestion> findByMaterialHashAndDifficultyAndQuestionHash(String materialHash, String difficulty,
+                                                                          String questionHash);
+
+    List<BankQuestion> findTop50ByMaterialHashAndDifficultyOrderByIdDesc(String materialHash, String difficulty);
+}
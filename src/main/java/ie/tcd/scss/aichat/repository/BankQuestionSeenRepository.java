@@ -0,0 +1,9 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.BankQuestionSeen;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BankQuestionSeenRepository extends JpaRepository<BankQuestionSeen, Long> {
+}
@@ -1,10 +1,24 @@
 package ie.tcd.scss.aichat.repository;
 import ie.tcd.scss.aichat.model.Flashcard;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
 
 @Repository
 public interface FlashcardRepository extends JpaRepository<Flashcard, Long> {
     // Flashcard entity has flashcardSet (set_id), not courseId
-    // Custom queries can be added here if needed
+
+    List<Flashcard> findByFlashcardSetId(Long flashcardSetId);
+
+    /**
+     * Overwrite a card in place; a no-op if it was deleted meanwhile (e.g. replaced by a resume)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Flashcard f SET f.question = :question, f.answer = :answer WHERE f.id = :id")
+    int updateContent(@Param("id") Long id, @Param("question") String question, @Param("answer") String answer);
 }
@@ -0,0 +1,147 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.Flashcard;
+import ie.tcd.scss.aichat.model.FlashcardSet;
+import ie.tcd.scss.aichat.model.QuizQuestion;
+import ie.tcd.scss.aichat.model.QuizSet;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Saves generated quiz and flashcard sets with their child rows written as JDBC batches.
+ *
+ * Questions and flashcards use IDENTITY ids, so cascading them through Hibernate costs one
+ * INSERT round trip per row and cannot be batched. Here the parent set is saved through JPA
+ * (one row, to get its id) and the children go out in batches of {@link #BATCH_SIZE}, in the
+ * same transaction. With rewriteBatchedStatements=true the MySQL driver sends each batch as a
+ * single multi-row INSERT.
+ *
+ * The returned set does not have its children attached: adding them to the managed entity
+ * would make Hibernate cascade-insert them a second time on the next flush.
+ */
+@Repository
+public class GeneratedSetWriter {
+
+    static final int BATCH_SIZE = 100;
+
+    // Column names as Hibernate generates them: a trailing capital gets no underscore (optionA -> optiona)
+    private static final String INSERT_QUESTION_SQL = """
+            INSERT INTO quiz_questions
+                (quiz_set_id, question, optiona, optionb, optionc, optiond, correct_answer, explanation, position)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    private static final String INSERT_FLASHCARD_SQL = """
+            INSERT INTO flashcards (set_id, question, answer, position)
+            VALUES (?, ?, ?, ?)""";
+
+    private static final String DELETE_QUESTIONS_SQL = "DELETE FROM quiz_questions WHERE quiz_set_id = ?";
+
+    private static final String DELETE_FLASHCARDS_SQL = "DELETE FROM flashcards WHERE set_id = ?";
+
+    private final QuizSetRepository quizSetRepository;
+    private final FlashcardSetRepository flashcardSetRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public GeneratedSetWriter(QuizSetRepository quizSetRepository,
+                              FlashcardSetRepository flashcardSetRepository,
+                              JdbcTemplate jdbcTemplate) {
+        this.quizSetRepository = quizSetRepository;
+        this.flashcardSetRepository = flashcardSetRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Save the set and every question in its questions list.
+     *
+     * @return The saved set (with its id), without the questions attached
+     */
+    @Transactional
+    public QuizSet saveQuizSet(QuizSet quizSet) {
+        return saveQuizSet(quizSet, setId -> { });
+    }
+
+    /**
+     * Save the set and its questions, then hand the new set id to onSaved in the same
+     * transaction, so whatever onSaved records commits (or rolls back) together with the set.
+     */
+    @Transactional
+    public QuizSet saveQuizSet(QuizSet quizSet, Consumer<Long> onSaved) {
+        List<QuizQuestion> questions = new ArrayList<>(quizSet.getQuestions());
+        quizSet.getQuestions().clear();
+
+        QuizSet savedSet = quizSetRepository.save(quizSet);
+        insertQuestions(savedSet.getId(), questions);
+        onSaved.accept(savedSet.getId());
+        return savedSet;
+    }
+
+    /**
+     * Replace every question of an existing set (used when an incomplete set is resumed).
+     */
+    @Transactional
+    public void replaceQuizQuestions(Long setId, List<QuizQuestion> questions) {
+        jdbcTemplate.update(DELETE_QUESTIONS_SQL, setId);
+        insertQuestions(setId, questions);
+    }
+
+    private void insertQuestions(Long setId, List<QuizQuestion> questions) {
+        jdbcTemplate.batchUpdate(INSERT_QUESTION_SQL, questions, BATCH_SIZE, (ps, question) -> {
+            ps.setObject(1, setId);
+            ps.setString(2, question.getQuestion());
+            ps.setString(3, question.getOptionA());
+            ps.setString(4, question.getOptionB());
+            ps.setString(5, question.getOptionC());
+            ps.setString(6, question.getOptionD());
+            ps.setString(7, question.getCorrectAnswer());
+            ps.setString(8, question.getExplanation());
+            ps.setInt(9, question.getPosition());
+        });
+    }
+
+    /**
+     * Save the set and every card in its flashcards list.
+     *
+     * @return The saved set (with its id), without the cards attached
+     */
+    @Transactional
+    public FlashcardSet saveFlashcardSet(FlashcardSet flashcardSet) {
+        return saveFlashcardSet(flashcardSet, setId -> { });
+    }
+
+    /**
+     * Save the set and its cards, then hand the new set id to onSaved in the same transaction.
+     */
+    @Transactional
+    public FlashcardSet saveFlashcardSet(FlashcardSet flashcardSet, Consumer<Long> onSaved) {
+        List<Flashcard> flashcards = new ArrayList<>(flashcardSet.getFlashcards());
+        flashcardSet.getFlashcards().clear();
+
+        FlashcardSet savedSet = flashcardSetRepository.save(flashcardSet);
+        insertFlashcards(savedSet.getId(), flashcards);
+        onSaved.accept(savedSet.getId());
+        return savedSet;
+    }
+
+    /**
+     * Replace every card of an existing set (used when an incomplete set is resumed).
+     */
+    @Transactional
+    public void replaceFlashcards(Long setId, List<Flashcard> flashcards) {
+        jdbcTemplate.update(DELETE_FLASHCARDS_SQL, setId);
+        insertFlashcards(setId, flashcards);
+    }
+
+    private void insertFlashcards(Long setId, List<Flashcard> flashcards) {
+        jdbcTemplate.batchUpdate(INSERT_FLASHCARD_SQL, flashcards, BATCH_SIZE, (ps, flashcard) -> {
+            ps.setObject(1, setId);
+            ps.setString(2, flashcard.getQuestion());
+            ps.setString(3, flashcard.getAnswer());
+            ps.setInt(4, flashcard.getPosition());
+        });
+    }
+}
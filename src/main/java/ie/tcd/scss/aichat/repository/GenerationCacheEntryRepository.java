@@ -0,0 +1,23 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.GenerationCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface GenerationCacheEntryRepository extends JpaRepository<GenerationCacheEntry, Long> {
+
+    Optional<GenerationCacheEntry> findByCacheKey(String cacheKey);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM GenerationCacheEntry e WHERE e.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
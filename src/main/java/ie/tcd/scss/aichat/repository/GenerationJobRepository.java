@@ -0,0 +1,37 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.GenerationJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface GenerationJobRepository extends JpaRepository<GenerationJob, Long> {
+
+    List<GenerationJob> findByStatusInOrderByCreatedAtAsc(Collection<String> statuses);
+
+    // Single UPDATE so chunk tasks finishing in parallel never lose an increment
+    @Modifying
+    @Transactional
+    @Query("UPDATE GenerationJob j SET j.completedChunks = j.completedChunks + 1, j.updatedAt = :now WHERE j.id = :id")
+    int incrementCompletedChunks(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE GenerationJob j SET j.totalChunks = :total, j.completedChunks = 0, j.updatedAt = :now WHERE j.id = :id")
+    int startChunks(@Param("id") Long id, @Param("total") int total, @Param("now") LocalDateTime now);
+
+    // Runs inside the transaction that saves the set, so a job never has a saved set without knowing it
+    @Modifying
+    @Transactional
+    @Query("UPDATE GenerationJob j SET j.resultSetId = :setId, j.status = :status, j.updatedAt = :now WHERE j.id = :id")
+    int recordResult(@Param("id") Long id, @Param("setId") Long setId, @Param("status") String status,
+                     @Param("now") LocalDateTime now);
+}
@@ -3,9 +3,12 @@ import ie.tcd.scss.aichat.model.Material;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MaterialRepository extends JpaRepository<Material, Long> {
+
+    Optional<Material> findBySourceId(Long sourceId);
     
     // List<Material> findByCourseId(Long courseId);
     
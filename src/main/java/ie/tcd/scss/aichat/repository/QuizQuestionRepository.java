@@ -1,7 +1,11 @@
 package ie.tcd.scss.aichat.repository;
 import ie.tcd.scss.aichat.model.QuizQuestion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Repository
@@ -10,4 +14,18 @@ public interface QuizQuestionRepository extends JpaRepository<QuizQuestion, Long
     List<QuizQuestion> findByQuizSetId(Long quizSetId);
 
     long countByQuizSetId(Long quizSetId);
+
+    /**
+     * Overwrite a question in place; a no-op if it was deleted meanwhile (e.g. replaced by a resume)
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE QuizQuestion q SET q.question = :question, q.optionA = :optionA, q.optionB = :optionB,
+                q.optionC = :optionC, q.optionD = :optionD, q.correctAnswer = :correctAnswer, q.explanation = :explanation
+            WHERE q.id = :id""")
+    int updateContent(@Param("id") Long id, @Param("question") String question,
+                      @Param("optionA") String optionA, @Param("optionB") String optionB,
+                      @Param("optionC") String optionC, @Param("optionD") String optionD,
+                      @Param("correctAnswer") String correctAnswer, @Param("explanation") String explanation);
 }
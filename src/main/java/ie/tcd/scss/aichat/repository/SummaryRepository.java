@@ -0,0 +1,24 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.Summary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface SummaryRepository extends JpaRepository<Summary, Long> {
+
+    Optional<Summary> findFirstByMaterialIdAndLevel(Long materialId, String level);
+
+    long countByMaterialIdAndLevel(Long materialId, String level);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Summary s WHERE s.material.id = :materialId")
+    int deleteByMaterialId(@Param("materialId") Long materialId);
+}
@@ -0,0 +1,37 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.TokenUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TokenUsageRepository extends JpaRepository<TokenUsage, Long> {
+
+    Optional<TokenUsage> findByUserKeyAndUsageDate(String userKey, LocalDate usageDate);
+
+    List<TokenUsage> findByUserKeyAndUsageDateGreaterThanEqualOrderByUsageDateDesc(String userKey, LocalDate from);
+
+    /**
+     * Add a flushed delta to the user's row for the day, creating it on first use.
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO token_usage (user_key, usage_date, input_tokens, output_tokens, calls)
+            VALUES (:userKey, :usageDate, :inputTokens, :outputTokens, :calls)
+            ON DUPLICATE KEY UPDATE
+                input_tokens = input_tokens + VALUES(input_tokens),
+                output_tokens = output_tokens + VALUES(output_tokens),
+                calls = calls + VALUES(calls)""", nativeQuery = true)
+    int addUsage(@Param("userKey") String userKey, @Param("usageDate") LocalDate usageDate,
+                 @Param("inputTokens") long inputTokens, @Param("outputTokens") long outputTokens,
+                 @Param("calls") long calls);
+}
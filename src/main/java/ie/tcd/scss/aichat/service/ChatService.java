@@ -2,6 +2,7 @@ package ie.tcd.scss.aichat.service;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
@@ -10,8 +11,8 @@ public class ChatService {
     
     private final ChatClient chatClient;
     
-    public ChatService(ChatModel chatModel) {
-        this.chatClient = ChatClient.builder(chatModel).build();
+    public ChatService(ChatModel chatModel, LlmGovernor llmGovernor) {
+        this.chatClient = ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.INTERACTIVE, "chat")).build();
     }
     
     public String chat(String userMessage) {
@@ -24,6 +25,8 @@ public class ChatService {
     public Flux<String> chatStream(String userMessage) {
         return chatClient.prompt()
                 .user(userMessage)
+                // Without it the stream carries no usage block, so its tokens would go unrecorded
+                .options(OpenAiChatOptions.builder().streamUsage(true).build())
                 .stream()
                 .content();
     }
@@ -0,0 +1,204 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Dispatches per-chunk generation calls concurrently, at most {@code parallelism} at a time.
+ * Results are merged back in chunk order. Once the completed chunks hold at least the
+ * requested number of items, calls still in flight are cancelled and the rest are never sent.
+ * A parallelism of 1 gives the old one-chunk-after-another behaviour.
+ *
+ * A chunk whose task throws is retried up to {@code max-attempts} times in total, with
+ * exponential backoff and jitter (backoff, 2x backoff, ...), so a transient provider error
+ * costs one chunk call again rather than the whole document. Chunks that still fail are
+ * reported in the {@link Outcome} so the caller can record the set as incomplete.
+ *
+ * A chunk rejected because the user's token budget is used up is not retried: the whole run
+ * is abandoned and the {@link TokenBudgetExceededException} is thrown to the caller.
+ *
+ * If the calling thread is interrupted (or the chunk threads are, on shutdown), the run is
+ * abandoned as well: calls in flight are cancelled and a {@link CancellationException} is
+ * thrown with the interrupt flag restored, rather than returning a partial result.
+ */
+@Component
+public class ChunkFanOut {
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+
+    @Autowired
+    public ChunkFanOut(
+            @Value("${generation.fanout.parallelism:4}") int parallelism,
+            @Value("${generation.chunk.max-attempts:3}") int maxAttempts,
+            @Value("${generation.chunk.retry-backoff:1s}") Duration retryBackoff) {
+        this(Executors.newVirtualThreadPerTaskExecutor(), parallelism, maxAttempts, retryBackoff);
+    }
+
+    public ChunkFanOut(int parallelism) {
+        this(parallelism, 1, Duration.ZERO);
+    }
+
+    public ChunkFanOut(ExecutorService executor, int parallelism, int maxAttempts, Duration retryBackoff) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoff = retryBackoff;
+    }
+
+    /**
+     * Items from the chunks that finished, in chunk order, plus the indexes of chunks that
+     * failed on every attempt. Chunks cancelled because the target was reached are neither.
+     */
+    public record Outcome<T>(List<T> items, List<Integer> failedChunks) {
+    }
+
+    /**
+     * Run the chunk tasks and return their items concatenated in chunk order.
+     *
+     * @param tasks One task per chunk, in chunk order
+     * @param target Number of items wanted; outstanding tasks are cancelled once it is reached
+     * @return Items from every chunk that finished, in chunk order (may exceed target)
+     */
+    public <T> List<T> run(List<Callable<List<T>>> tasks, int target) {
+        return run(tasks, target, ChunkProgressListener.NONE).items();
+    }
+
+    /**
+     * Run the chunk tasks with retries, reporting each chunk once it has succeeded or
+     * used up its attempts.
+     *
+     * @throws CancellationException if interrupted before the run finished
+     */
+    public <T> Outcome<T> run(List<Callable<List<T>>> tasks, int target, ChunkProgressListener progress) {
+        List<List<T>> results = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            results.add(null);
+        }
+
+        CompletionService<List<T>> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<List<T>>, Integer> inFlight = new HashMap<>();
+        List<Integer> failed = new ArrayList<>();
+        int next = 0;
+        int collected = 0;
+
+        try {
+            while (next < tasks.size() && inFlight.size() < parallelism) {
+                inFlight.put(completionService.submit(withRetry(tasks.get(next), next)), next);
+                next++;
+            }
+
+            while (!inFlight.isEmpty()) {
+                Future<List<T>> done = completionService.take();
+                int index = inFlight.remove(done);
+
+                try {
+                    List<T> items = done.get();
+                    if (items != null) {
+                        results.set(index, items);
+                        collected += items.size();
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof TokenBudgetExceededException budgetExceeded) {
+                        throw budgetExceeded;
+                    }
+                    if (e.getCause() instanceof InterruptedException || e.getCause() instanceof CancellationException) {
+                        // Chunk thread interrupted by a shutdown, not a failed chunk
+                        throw new InterruptedException("Chunk " + (index + 1) + " interrupted");
+                    }
+                    System.err.println("Chunk " + (index + 1) + " failed after " + maxAttempts
+                            + " attempt(s): " + e.getCause().getMessage());
+                    failed.add(index);
+                }
+                progress.chunkCompleted(index);
+
+                if (collected >= target) {
+                    break;
+                }
+
+                if (next < tasks.size()) {
+                    inFlight.put(completionService.submit(withRetry(tasks.get(next), next)), next);
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted with " + (tasks.size() - next + inFlight.size())
+                    + " of " + tasks.size() + " chunk(s) unfinished");
+        } finally {
+            // Requested count reached (or we were interrupted) - drop whatever is still running
+            inFlight.keySet().forEach(future -> future.cancel(true));
+        }
+
+        List<T> merged = new ArrayList<>();
+        for (List<T> items : results) {
+            if (items != null) {
+                merged.addAll(items);
+            }
+        }
+        failed.sort(null);
+        return new Outcome<>(merged, failed);
+    }
+
+    // Re-runs a failing task after backoff * 2^(attempt-1), jittered to 50-100% so retries do not line up
+    private <T> Callable<List<T>> withRetry(Callable<List<T>> task, int index) {
+        return () -> {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return task.call();
+                } catch (CancellationException | InterruptedException | TokenBudgetExceededException e) {
+                    throw e;
+                } catch (Exception e) {
+                    if (attempt >= maxAttempts || Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    long delay = retryBackoff.toMillis() << (attempt - 1);
+                    long jittered = delay <= 1 ? delay : ThreadLocalRandom.current().nextLong(delay / 2, delay + 1);
+                    System.err.println("Chunk " + (index + 1) + " failed (attempt " + attempt + "/" + maxAttempts
+                            + "): " + e.getMessage() + " - retrying in " + jittered + "ms");
+                    Thread.sleep(jittered);
+                }
+            }
+        };
+    }
+
+    /**
+     * Split a requested item count across chunks. Every chunk gets the same share
+     * (rounded up) and the last chunks get whatever remains, which may be zero.
+     */
+    public static int[] distribute(int total, int chunkCount) {
+        int[] quotas = new int[chunkCount];
+        int perChunk = (int) Math.ceil((double) total / chunkCount);
+        int remaining = total;
+        for (int i = 0; i < chunkCount; i++) {
+            quotas[i] = Math.max(0, Math.min(perChunk, remaining));
+            remaining -= quotas[i];
+        }
+        return quotas;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,28 @@
+package ie.tcd.scss.aichat.service;
+
+/**
+ * Receives chunk progress from a generation run.
+ * Callbacks for finished chunks may arrive concurrently from the fan-out threads.
+ */
+public interface ChunkProgressListener {
+
+    ChunkProgressListener NONE = new ChunkProgressListener() {
+        @Override
+        public void chunksPlanned(int totalChunks) {
+        }
+
+        @Override
+        public void chunkCompleted(int chunkIndex) {
+        }
+    };
+
+    /** Called once, after the material has been split. */
+    void chunksPlanned(int totalChunks);
+
+    /** Called when a chunk has finished, successfully or not. */
+    void chunkCompleted(int chunkIndex);
+
+    /** Called inside the transaction that saves the generated set, with the new set's id. */
+    default void setSaved(Long setId) {
+    }
+}
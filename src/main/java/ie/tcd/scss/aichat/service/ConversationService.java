@@ -20,8 +20,8 @@ public class ConversationService {
     private final ChatClient chatClient;
     private final ChatMessageRepository chatMessageRepository;
     
-    public ConversationService(ChatModel chatModel, ChatMessageRepository chatMessageRepository) {
-        this.chatClient = ChatClient.builder(chatModel).build();
+    public ConversationService(ChatModel chatModel, ChatMessageRepository chatMessageRepository, LlmGovernor llmGovernor) {
+        this.chatClient = ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.INTERACTIVE, "conversation")).build();
         this.chatMessageRepository = chatMessageRepository;
     }
     
@@ -27,11 +27,11 @@ public class CustomUserDetailsService implements UserDetailsService {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
 
-        // Convert to Spring Security UserDetails
-        return org.springframework.security.core.userdetails.User.builder()
-                .username(user.getUsername())  // Use username (must match JWT subject)
-                .password(user.getPasswordHash())
-                .authorities(new ArrayList<>())  // No roles for now
-                .build();
+        // Convert to Spring Security UserDetails, keeping the id for per-user accounting
+        return new AuthenticatedUser(
+                user.getId(),
+                user.getUsername(),  // Use username (must match JWT subject)
+                user.getPasswordHash(),
+                new ArrayList<>());  // No roles for now
     }
 }
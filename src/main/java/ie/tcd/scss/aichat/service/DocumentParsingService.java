@@ -21,6 +21,12 @@ import ie.tcd.scss.aichat.dto.SlideSection;
 @Service
 public class DocumentParsingService {
 
+    private final GenerationMetrics generationMetrics;
+
+    public DocumentParsingService(GenerationMetrics generationMetrics) {
+        this.generationMetrics = generationMetrics;
+    }
+
     /**
      * Processes an uploaded file (PDF or PowerPoint) and returns a structured document.
      *
@@ -57,9 +63,11 @@ public class DocumentParsingService {
             
             // Extract text page by page
             for (int i = 1; i <= totalPages; i++) {
+                long start = System.nanoTime();
                 stripper.setStartPage(i);
                 stripper.setEndPage(i);
                 String pageText = stripper.getText(document);
+                generationMetrics.documentPageParsed("pdf", System.nanoTime() - start);
                 
                 SlideSection section = SlideSection.builder()
                         .pageNumber(i)
@@ -86,7 +94,9 @@ public class DocumentParsingService {
                     .build();
 
             for (XSLFSlide slide : ppt.getSlides()) {
+                long start = System.nanoTime();
                 String slideText = extractTextFromSlide(slide);
+                generationMetrics.documentPageParsed("ppt", System.nanoTime() - start);
                 SlideSection section = SlideSection.builder()
                         .pageNumber(slide.getSlideNumber())
                         .content(slideText)
@@ -0,0 +1,91 @@
+package ie.tcd.scss.aichat.service;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Study material cut into excerpts of a token budget, for prompts about single questions or
+ * flashcards that should carry the part of the material an item is about rather than all of it.
+ * The closest excerpt is the one sharing the most distinct words (three or more letters or
+ * digits) with the item.
+ */
+final class ExcerptIndex {
+
+    private final List<TextChunk> excerpts;
+    private final List<Set<String>> excerptWords;
+    private final int chars;
+
+    private ExcerptIndex(List<TextChunk> excerpts, int chars) {
+        this.excerpts = excerpts;
+        this.excerptWords = excerpts.stream().map(ExcerptIndex::words).toList();
+        this.chars = chars;
+    }
+
+    static ExcerptIndex of(TokenChunker tokenChunker, String studyMaterial, int excerptTokens) {
+        return studyMaterial == null || studyMaterial.isBlank()
+                ? new ExcerptIndex(List.of(), 0)
+                : new ExcerptIndex(tokenChunker.split(studyMaterial, excerptTokens, 0), studyMaterial.length());
+    }
+
+    /**
+     * Length of the indexed material, which the excerpts keep a reference to.
+     */
+    int chars() {
+        return chars;
+    }
+
+    /**
+     * @return Excerpt sharing the most words with the text (the first one on ties), or null without material
+     */
+    TextChunk closestTo(String text) {
+        if (excerpts.isEmpty()) {
+            return null;
+        }
+        Set<String> asked = words(text);
+        int best = 0;
+        long bestOverlap = -1;
+        for (int i = 0; i < excerpts.size(); i++) {
+            long overlap = asked.stream().filter(excerptWords.get(i)::contains).count();
+            if (overlap > bestOverlap) {
+                best = i;
+                bestOverlap = overlap;
+            }
+        }
+        return excerpts.get(best);
+    }
+
+    /**
+     * Prompt section with the given excerpts, each once and in document order (empty without any).
+     */
+    static String render(Collection<TextChunk> chosen) {
+        Map<Integer, TextChunk> distinct = new LinkedHashMap<>();
+        chosen.stream()
+                .filter(excerpt -> excerpt != null)
+                .sorted(Comparator.comparingInt(TextChunk::offset))
+                .forEach(excerpt -> distinct.putIfAbsent(excerpt.offset(), excerpt));
+        if (distinct.isEmpty()) {
+            return "";
+        }
+        StringBuilder section = new StringBuilder("Study Material Excerpts:\n");
+        for (TextChunk excerpt : distinct.values()) {
+            section.append(excerpt).append("\n\n");
+        }
+        return section.toString();
+    }
+
+    private static Set<String> words(CharSequence text) {
+        Set<String> words = new HashSet<>();
+        for (String word : text.toString().toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() >= 3) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
@@ -1,18 +1,32 @@
 package ie.tcd.scss.aichat.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import ie.tcd.scss.aichat.dto.Flashcard;
+import ie.tcd.scss.aichat.dto.FlashcardBatch;
+import ie.tcd.scss.aichat.dto.GenerationResult;
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
 import ie.tcd.scss.aichat.model.FlashcardSet;
 import ie.tcd.scss.aichat.model.User;
-import ie.tcd.scss.aichat.repository.FlashcardSetRepository;
+import ie.tcd.scss.aichat.repository.GeneratedSetWriter;
 import ie.tcd.scss.aichat.repository.UserRepository;
+import ie.tcd.scss.aichat.util.JsonItemStreamParser;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.ResponseFormat;
 import org.springframework.stereotype.Service;
 
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service for generating flashcards from study material using OpenAI
@@ -21,132 +35,313 @@ import java.util.regex.Pattern;
 public class FlashcardService {
 
     private final ChatClient chatClient;
-    private final FlashcardSetRepository flashcardSetRepository;
+    private final GeneratedSetWriter generatedSetWriter;
     private final UserRepository userRepository;
-
-    // ================================
-    //   CHUNKING CONSTANTS (HEAD)
-    // ================================
-    private static final int MAX_TOKENS_PER_CHUNK = 20000; // Safe default for GPT models
-    private static final int CHARS_PER_TOKEN = 4; // Approx mapping: 1 token ≈ 4 chars
+    private final ChunkFanOut chunkFanOut;
+    private final GenerationCache generationCache;
+    private final GenerationPlanner generationPlanner;
+    private final ObjectMapper objectMapper;
+    private final PromptCacheStats promptCacheStats;
+    private final GenerationMetrics generationMetrics;
+    private final GenerationCoalescer generationCoalescer;
+    private final GenerationVerifier generationVerifier;
+
+    // Chunk size, per-chunk card counts and the model are chosen by GenerationPlanner
+    private static final String PROMPT_VERSION = "flashcards-v3"; // Bump when SYSTEM_PROMPT or buildFlashcardPrompt changes
+    // Static instructions go first and never vary, so the provider can reuse the cached prefix across chunks and users
+    private static final String SYSTEM_PROMPT = """
+            You write study flashcards from study material supplied by the user.
+
+            Instructions:
+            - Create clear, concise questions that test key concepts
+            - Provide accurate, complete answers
+            - Focus on the most important points
+            - Make questions specific
+
+            Return the flashcards as JSON in the "flashcards" array.
+            """;
+    // Model output is constrained to this schema: {"flashcards": [{"question": ..., "answer": ...}]}
+    private static final String OUTPUT_SCHEMA = new BeanOutputConverter<>(FlashcardBatch.class).getJsonSchema();
 
     public FlashcardService(
             ChatModel chatModel,
-            FlashcardSetRepository flashcardSetRepository,
-            UserRepository userRepository
+            GeneratedSetWriter generatedSetWriter,
+            UserRepository userRepository,
+            ChunkFanOut chunkFanOut,
+            GenerationCache generationCache,
+            GenerationPlanner generationPlanner,
+            ObjectMapper objectMapper,
+            PromptCacheStats promptCacheStats,
+            LlmGovernor llmGovernor,
+            GenerationMetrics generationMetrics,
+            GenerationCoalescer generationCoalescer,
+            GenerationVerifier generationVerifier
     ) {
-        this.chatClient = ChatClient.builder(chatModel).build();
-        this.flashcardSetRepository = flashcardSetRepository;
+        // Bulk priority: interactive chat is served first when the provider is busy
+        this.chatClient = ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.BULK, "flashcards")).build();
+        this.generatedSetWriter = generatedSetWriter;
         this.userRepository = userRepository;
+        this.chunkFanOut = chunkFanOut;
+        this.generationCache = generationCache;
+        this.generationPlanner = generationPlanner;
+        this.objectMapper = objectMapper;
+        this.promptCacheStats = promptCacheStats;
+        this.generationMetrics = generationMetrics;
+        this.generationCoalescer = generationCoalescer;
+        this.generationVerifier = generationVerifier;
     }
 
-    // ============================================================
-    //   TEXT CHUNKING (FROM HEAD — COMMENTS PRESERVED)
-    // ============================================================
+    // The following is the attempt to merge the chunking capabilities of feature/addPDFfield with Database.
     /**
-     * Split text into chunks to ensure compatibility with all OpenAI models.
-     * Always chunks input for consistent behavior and quality.
+     * Generate flashcards using AI.
+     * Merged version:
+     *  Uses chunking 
+     *  Saves flashcards to DB 
+     *  Sends chunk prompts concurrently (bounded by generation.fanout.parallelism)
      */
-    private List<String> splitIntoChunks(String text) {
-        List<String> chunks = new ArrayList<>();
-        int maxChars = MAX_TOKENS_PER_CHUNK * CHARS_PER_TOKEN;
+    public List<Flashcard> generateFlashcards(
+            String studyMaterial,
+            Integer count,
+            Long userId,
+            String title
+    ) {
+        return generateFlashcardSet(studyMaterial, count, userId, title, ChunkProgressListener.NONE).items();
+    }
+
+    /**
+     * Same as generateFlashcards, but also returns the saved set ID and reports chunk progress
+     * (used by background generation jobs).
+     */
+    public GenerationResult<Flashcard> generateFlashcardSet(
+            String studyMaterial,
+            Integer count,
+            Long userId,
+            String title,
+            ChunkProgressListener progress
+    ) {
+        int numberOfCards = (count != null && count > 0) ? count : 5;
 
-        if (text.length() <= maxChars) {
-            chunks.add(text);
-            return chunks;
+        // Identical requests in flight at the same time share one set of model calls
+        String flightKey = GenerationCoalescer.key(GenerationPlanner.FLASHCARDS, studyMaterial, numberOfCards);
+        Generated generated = generationCoalescer.execute("flashcards", flightKey, () -> {
+            // Pick the model, split into chunks that fit it and share the cards out
+            GenerationPlanner.Plan plan = plan(studyMaterial, numberOfCards);
+            ChunkFanOut.Outcome<Flashcard> outcome = generateAcrossChunks(plan, numberOfCards, userId, progress);
+            generationMetrics.chunksProcessed("flashcards", plan.chunks().size(), outcome.failedChunks().size());
+            return new Generated(plan, outcome);
+        });
+        GenerationPlanner.Plan plan = generated.plan();
+        ChunkFanOut.Outcome<Flashcard> outcome = generated.outcome();
+
+        // A copy: the outcome may be shared with coalesced requests
+        List<Flashcard> finalCards =
+                List.copyOf(outcome.items().subList(0, Math.min(numberOfCards, outcome.items().size())));
+
+        FlashcardSet savedSet = saveFlashcardsToDatabase(finalCards, studyMaterial, userId, title, numberOfCards, progress);
+        // Drafts: corrected in place by the verification model shortly after
+        generationVerifier.verifyFlashcardSet(savedSet.getId(), studyMaterial, userId);
+
+        return new GenerationResult<>(savedSet.getId(), finalCards, plan.chunks().size(),
+                plan.inputTokens(), outcome.failedChunks().size());
+    }
+
+    /**
+     * Finish a flashcard set that was saved with fewer cards than requested because some
+     * chunks failed on every retry. Chunks that succeeded are served from the generation
+     * cache, so only the failed ones go to the model again; the set's cards are then
+     * replaced, still in chunk order.
+     */
+    public GenerationResult<Flashcard> resumeFlashcardSet(FlashcardSet flashcardSet) {
+        List<Flashcard> existing = flashcardSet.getFlashcards().stream()
+                .sorted(Comparator.comparing(ie.tcd.scss.aichat.model.Flashcard::getPosition))
+                .map(card -> new Flashcard(card.getQuestion(), card.getAnswer()))
+                .toList();
+        Integer requested = flashcardSet.getRequestedCount();
+        // Same material and count give the same plan, so succeeded chunks hit the cache
+        GenerationPlanner.Plan plan = plan(flashcardSet.getStudyMaterial(), requested != null ? requested : existing.size());
+        int chunkCount = plan.chunks().size();
+        int inputTokens = plan.inputTokens();
+
+        if (requested == null || existing.size() >= requested) {
+            System.out.println("Flashcard set " + flashcardSet.getId() + " is already complete - nothing to resume");
+            return new GenerationResult<>(flashcardSet.getId(), existing, chunkCount, inputTokens, 0);
         }
 
-        int start = 0;
-        while (start < text.length()) {
-            int end = Math.min(start + maxChars, text.length());
+        System.out.println("Resuming flashcard set " + flashcardSet.getId() + ": " + existing.size() + "/" + requested + " cards");
+        ChunkFanOut.Outcome<Flashcard> outcome = generateAcrossChunks(plan, requested,
+                flashcardSet.getUser().getId(), ChunkProgressListener.NONE);
+        generationMetrics.chunksProcessed("flashcards", chunkCount, outcome.failedChunks().size());
+        List<Flashcard> cards = outcome.items().subList(0, Math.min(requested, outcome.items().size()));
 
-            // Prefer splitting at natural boundaries
-            if (end < text.length()) {
-                int lastParagraph = text.lastIndexOf("\n\n", end);
-                int lastSentence = text.lastIndexOf(". ", end);
+        if (cards.size() <= existing.size()) {
+            // Nothing gained (the provider is still failing) - keep what the set already has
+            return new GenerationResult<>(flashcardSet.getId(), existing, chunkCount, inputTokens, outcome.failedChunks().size());
+        }
 
-                if (lastParagraph > start + (maxChars / 2)) {
-                    end = lastParagraph + 2;
-                } else if (lastSentence > start + (maxChars / 2)) {
-                    end = lastSentence + 2;
-                }
-            }
+        List<ie.tcd.scss.aichat.model.Flashcard> entities = new ArrayList<>();
+        for (int i = 0; i < cards.size(); i++) {
+            entities.add(toEntity(cards.get(i), i));
+        }
+        generationMetrics.timeSave("flashcards", () -> {
+            generatedSetWriter.replaceFlashcards(flashcardSet.getId(), entities);
+            return null;
+        });
+        generationVerifier.verifyFlashcardSet(flashcardSet.getId(), flashcardSet.getStudyMaterial(), flashcardSet.getUser().getId());
+
+        return new GenerationResult<>(flashcardSet.getId(), cards, chunkCount, inputTokens, outcome.failedChunks().size());
+    }
+
+    // Generate flashcards for all chunks concurrently (failed chunks retried), merged back in chunk order
+    private ChunkFanOut.Outcome<Flashcard> generateAcrossChunks(GenerationPlanner.Plan plan, int numberOfCards,
+                                                                Long userId, ChunkProgressListener progress) {
+        List<TextChunk> chunks = plan.chunks();
+        int[] quotas = plan.quotas();
+        System.out.println("Processing " + chunks.size() + " chunk(s) for " + numberOfCards + " flashcards on " + plan.model());
+
+        List<Callable<List<Flashcard>>> tasks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            // Quotas follow content density, so a sparse chunk in the middle may get none
+            if (quotas[i] <= 0) continue;
+
+            TextChunk chunk = chunks.get(i);
+            int cardsToGenerate = quotas[i];
+            int chunkNumber = i + 1;
 
-            chunks.add(text.substring(start, end));
-            start = end;
+            tasks.add(() -> {
+                try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId)) {
+                    System.out.println("Generating " + cardsToGenerate + " flashcards from chunk " + chunkNumber);
+                    return generateFlashcardsForChunk(chunk, cardsToGenerate, plan);
+                }
+            });
         }
 
-        return chunks;
+        progress.chunksPlanned(tasks.size());
+        return chunkFanOut.run(tasks, numberOfCards, progress);
     }
 
-    // The following is the attempt to merge the chunking capabilities of feature/addPDFfield with Database.
     /**
-     * Generate flashcards using AI.
-     * Merged version:
-     *  Uses chunking 
-     *  Saves flashcards to DB 
+     * Streaming variant of generateFlashcards.
+     * Each card is handed to onFlashcard as soon as it can be parsed from the model output.
+     * Chunks are streamed one after another so cards keep arriving in chunk order,
+     * and the set is saved once the last chunk has finished.
+     *
+     * @return ID of the saved FlashcardSet
      */
-    public List<Flashcard> generateFlashcards(
+    public Long streamFlashcards(
             String studyMaterial,
             Integer count,
             Long userId,
-            String title
+            String title,
+            Consumer<Flashcard> onFlashcard
     ) {
         int numberOfCards = (count != null && count > 0) ? count : 5;
 
-        // Split into manageable chunks
-        List<String> chunks = splitIntoChunks(studyMaterial);
+        GenerationPlanner.Plan plan = plan(studyMaterial, numberOfCards);
+        List<TextChunk> chunks = plan.chunks();
+        int[] quotas = plan.quotas();
         List<Flashcard> allFlashcards = new ArrayList<>();
+        int failedChunks = 0;
+
+        for (int i = 0; i < chunks.size() && allFlashcards.size() < numberOfCards; i++) {
+            // Same prompt and cache key per chunk as generateFlashcards, so each path is served from the other's cache
+            int cardsToGenerate = quotas[i];
+            if (cardsToGenerate <= 0) continue;
+
+            TextChunk chunk = chunks.get(i);
+            String cacheKey = generationCache.key("flashcards", PROMPT_VERSION, chunk, cardsToGenerate, plan.model());
+            Optional<List<Flashcard>> cached = generationCache.get(cacheKey, Flashcard.class);
+            if (cached.isPresent()) {
+                emitFlashcards(cached.get(), allFlashcards, numberOfCards, onFlashcard);
+                continue;
+            }
 
-        int cardsPerChunk = (int) Math.ceil((double) numberOfCards / chunks.size());
-        System.out.println("Processing " + chunks.size() + " chunk(s) for " + numberOfCards + " flashcards");
-
-        // Generate flashcards chunk by chunk
-        for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
-
-            int cardsToGenerate =
-                    (i == chunks.size() - 1)
-                            ? (numberOfCards - allFlashcards.size())
-                            : cardsPerChunk;
-
-            if (cardsToGenerate <= 0) break;
-
-            try {
-                System.out.println("Generating " + cardsToGenerate + " flashcards from chunk " + (i + 1));
-                List<Flashcard> chunkCards = generateFlashcardsForChunk(chunk, cardsToGenerate);
-                allFlashcards.addAll(chunkCards);
+            String prompt = buildFlashcardPrompt(chunk, cardsToGenerate);
+            JsonItemStreamParser<Flashcard> parser = flashcardParser();
+            List<Flashcard> chunkCards = new ArrayList<>();
+
+            try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId);
+                 Stream<ChatResponse> responses = chatClient.prompt().options(jsonOutputOptions(true, plan, cardsToGenerate))
+                    .system(SYSTEM_PROMPT).user(prompt).stream().chatResponse().toStream()) {
+                Iterator<ChatResponse> iterator = responses.iterator();
+                while (iterator.hasNext()) {
+                    ChatResponse response = iterator.next();
+                    promptCacheStats.record(response);
+                    List<Flashcard> parsed = parser.append(textOf(response));
+                    chunkCards.addAll(parsed);
+                    emitFlashcards(parsed, allFlashcards, numberOfCards, onFlashcard);
+                }
+                List<Flashcard> last = parser.finish();
+                chunkCards.addAll(last);
+                emitFlashcards(last, allFlashcards, numberOfCards, onFlashcard);
+                generationMetrics.outputParsed("flashcards", !chunkCards.isEmpty());
+                // Everything the chunk produced, also past the requested total, as generateFlashcards caches it
+                generationCache.put(cacheKey, chunkCards);
+            } catch (UncheckedIOException | TokenBudgetExceededException e) {
+                // Consumer could not deliver (client disconnected) or the user is out of tokens - stop generating
+                throw e;
             } catch (Exception e) {
-                System.err.println("Error generating flashcards for chunk " + (i + 1) + ": " + e.getMessage());
+                System.err.println("Error streaming flashcards for chunk " + (i + 1) + ": " + e.getMessage());
+                failedChunks++;
             }
         }
+        generationMetrics.chunksProcessed("flashcards", chunks.size(), failedChunks);
 
-        List<Flashcard> finalCards =
-                allFlashcards.subList(0, Math.min(numberOfCards, allFlashcards.size()));
+        Long setId = saveFlashcardsToDatabase(allFlashcards, studyMaterial, userId, title, numberOfCards,
+                ChunkProgressListener.NONE).getId();
+        generationVerifier.verifyFlashcardSet(setId, studyMaterial, userId);
+        return setId;
+    }
 
-        saveFlashcardsToDatabase(finalCards, studyMaterial, userId, title);
+    // Drafted by the small model when verification is on, otherwise the planner chooses
+    private GenerationPlanner.Plan plan(String studyMaterial, int numberOfCards) {
+        return generationPlanner.plan(GenerationPlanner.FLASHCARDS, studyMaterial, numberOfCards,
+                generationVerifier.draftModel());
+    }
 
-        return finalCards;
+    // Hands parsed cards to the consumer until the limit is hit
+    private void emitFlashcards(List<Flashcard> parsed, List<Flashcard> sink, int limit,
+                                Consumer<Flashcard> onFlashcard) {
+        for (Flashcard card : parsed) {
+            if (sink.size() >= limit) break;
+            sink.add(card);
+            onFlashcard.accept(card);
+        }
     }
 
     // Single chunk generation
-    private List<Flashcard> generateFlashcardsForChunk(String studyMaterial, int count) {
-        String prompt = buildFlashcardPrompt(studyMaterial, count);
-
-        String aiResponse = chatClient.prompt()
-                .user(prompt)
-                .call()
-                .content();
-
-        return parseFlashcards(aiResponse);
+    private List<Flashcard> generateFlashcardsForChunk(CharSequence studyMaterial, int count, GenerationPlanner.Plan plan) {
+        // Identical chunk + count + model + prompt version is served from the generation cache
+        String cacheKey = generationCache.key("flashcards", PROMPT_VERSION, studyMaterial, count, plan.model());
+
+        return generationCache.getOrCompute(cacheKey, Flashcard.class, () -> {
+            String prompt = buildFlashcardPrompt(studyMaterial, count);
+
+            ChatResponse response = chatClient.prompt()
+                    .options(jsonOutputOptions(false, plan, count))
+                    .system(SYSTEM_PROMPT)
+                    .user(prompt)
+                    .call()
+                    .chatResponse();
+            promptCacheStats.record(response);
+
+            List<Flashcard> cards = parseFlashcards(textOf(response));
+            generationMetrics.outputParsed("flashcards", !cards.isEmpty());
+            if (cards.isEmpty()) {
+                // Fail the chunk so it is retried instead of silently contributing nothing
+                throw new IllegalStateException("Model output contained no usable flashcards");
+            }
+            return cards;
+        });
     }
 
     // Database save logic from database branch
-    private void saveFlashcardsToDatabase(
+    private FlashcardSet saveFlashcardsToDatabase(
             List<Flashcard> flashcardDTOs,
             String studyMaterial,
             Long userId,
-            String title
+            String title,
+            int requestedCount,
+            ChunkProgressListener progress
     ) {
         System.out.println("=== SAVING FLASHCARDS TO DATABASE ===");
         System.out.println("Number of flashcard DTOs to save: " + flashcardDTOs.size());
@@ -160,17 +355,13 @@ public class FlashcardService {
         set.setUser(user);
         set.setTitle(title != null ? title : "AI Generated Flashcards");
         set.setStudyMaterial(studyMaterial);
+        set.setRequestedCount(requestedCount);
 
         // Create flashcard entities and establish bi-directional relationship
         for (int i = 0; i < flashcardDTOs.size(); i++) {
             Flashcard dto = flashcardDTOs.get(i);
 
-            ie.tcd.scss.aichat.model.Flashcard entity =
-                    new ie.tcd.scss.aichat.model.Flashcard();
-
-            entity.setQuestion(dto.getQuestion());
-            entity.setAnswer(dto.getAnswer());
-            entity.setPosition(i);
+            ie.tcd.scss.aichat.model.Flashcard entity = toEntity(dto, i);
             entity.setFlashcardSet(set);  // Set parent reference
             
             set.getFlashcards().add(entity);  // Add to parent's collection
@@ -178,76 +369,74 @@ public class FlashcardService {
             System.out.println("Added flashcard " + i + ": " + dto.getQuestion().substring(0, Math.min(50, dto.getQuestion().length())));
         }
         
-        System.out.println("Total flashcards in set: " + set.getFlashcards().size());
+        int cardCount = set.getFlashcards().size();
+        System.out.println("Total flashcards in set: " + cardCount);
         
-        // Save the set with cascade - will automatically save all flashcards
-        FlashcardSet savedSet = flashcardSetRepository.save(set);
+        // Save the set, then insert all flashcards as JDBC batches
+        FlashcardSet savedSet = generationMetrics.timeSave("flashcards", () -> generatedSetWriter.saveFlashcardSet(set, progress::setSaved));
         
         System.out.println("FlashcardSet saved with ID: " + savedSet.getId());
-        System.out.println("Saved set has " + savedSet.getFlashcards().size() + " flashcards");
+        System.out.println("Saved set has " + cardCount + " flashcards");
         System.out.println("=== END SAVING FLASHCARDS ===");
+        return savedSet;
+    }
+
+    private static ie.tcd.scss.aichat.model.Flashcard toEntity(Flashcard dto, int position) {
+        ie.tcd.scss.aichat.model.Flashcard entity =
+                new ie.tcd.scss.aichat.model.Flashcard();
+
+        entity.setQuestion(dto.getQuestion());
+        entity.setAnswer(dto.getAnswer());
+        entity.setPosition(position);
+        return entity;
     }
 
     //Prompt building + parsing
-    private String buildFlashcardPrompt(String studyMaterial, int count) {
+    // Variable part of the prompt: the material first, then the per-request parameters
+    private String buildFlashcardPrompt(CharSequence studyMaterial, int count) {
         return String.format("""
-                Generate %d flashcards from the following study material.
-
                 Study Material:
                 %s
 
-                Instructions:
-                - Create clear, concise questions that test key concepts
-                - Provide accurate, complete answers
-                - Focus on the most important points
-                - Make questions specific
-
-                Format:
-                Q: ...
-                A: ...
-                """, count, studyMaterial);
+                Generate %d flashcards.
+                """, studyMaterial, count);
     }
 
-    private List<Flashcard> parseFlashcards(String aiResponse) {
-        List<Flashcard> flashcards = new ArrayList<>();
-
-        Pattern pattern = Pattern.compile(
-                "Q:\\s*(.+?)\\s*A:\\s*(.+?)(?=Q:|$)",
-                Pattern.DOTALL
-        );
-
-        Matcher matcher = pattern.matcher(aiResponse);
-
-        while (matcher.find()) {
-            String question = matcher.group(1).trim();
-            String answer = matcher.group(2).trim();
-            flashcards.add(new Flashcard(question, answer));
-        }
+    // Structured output: the model must answer with JSON matching OUTPUT_SCHEMA.
+    // Streams ask for the usage block too, so cached input tokens can be recorded.
+    // Model and completion cap come from the plan, the cap sized to the cards asked for.
+    private OpenAiChatOptions jsonOutputOptions(boolean stream, GenerationPlanner.Plan plan, int count) {
+        return OpenAiChatOptions.builder()
+                .model(plan.model())
+                .maxCompletionTokens(plan.maxCompletionTokens(count))
+                .responseFormat(new ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, OUTPUT_SCHEMA))
+                .streamUsage(stream)
+                .build();
+    }
 
-        if (flashcards.isEmpty()) {
-            flashcards = parseFlashcardsSimple(aiResponse);
+    private static String textOf(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
         }
-
-        return flashcards;
+        return response.getResult().getOutput().getText();
     }
 
-    private List<Flashcard> parseFlashcardsSimple(String aiResponse) {
-        List<Flashcard> results = new ArrayList<>();
-        String[] lines = aiResponse.split("\n");
-
-        String question = null;
-
-        for (String line : lines) {
-            line = line.trim();
+    private JsonItemStreamParser<Flashcard> flashcardParser() {
+        return new JsonItemStreamParser<>(objectMapper, Flashcard.class, "flashcards", FlashcardService::isComplete);
+    }
 
-            if (line.startsWith("Q:")) {
-                question = line.substring(2).trim();
-            } else if (line.startsWith("A:") && question != null) {
-                results.add(new Flashcard(question, line.substring(2).trim()));
-                question = null;
-            }
+    private List<Flashcard> parseFlashcards(String aiResponse) {
+        if (aiResponse == null) {
+            return new ArrayList<>();
         }
+        return JsonItemStreamParser.parseAll(objectMapper, Flashcard.class, "flashcards",
+                FlashcardService::isComplete, aiResponse);
+    }
 
-        return results;
+    private static boolean isComplete(Flashcard card) {
+        return card.getQuestion() != null && !card.getQuestion().isBlank()
+                && card.getAnswer() != null && !card.getAnswer().isBlank();
     }
+
+    private record Generated(GenerationPlanner.Plan plan, ChunkFanOut.Outcome<Flashcard> outcome) {}
 }
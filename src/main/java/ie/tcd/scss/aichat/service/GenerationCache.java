@@ -0,0 +1,245 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import ie.tcd.scss.aichat.model.GenerationCacheEntry;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed cache for per-chunk generation results.
+ *
+ * Keys are a SHA-256 of the chunk text plus everything that changes the output
+ * (item count, difficulty, model, prompt version), so identical material uploaded by
+ * different users maps to the same entry. Lookups go to a bounded in-process
+ * W-TinyLFU tier (Caffeine) first, then to the generation_cache table, which survives
+ * restarts. Every entry carries its own expiry time.
+ */
+@Service
+public class GenerationCache {
+
+    private final GenerationCacheEntryRepository repository;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CachedItems> memory;
+    private final Duration defaultTtl;
+    private final String model;
+    private final boolean enabled;
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder databaseHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public GenerationCache(
+            GenerationCacheEntryRepository repository,
+            ObjectMapper objectMapper,
+            @Value("${generation.cache.enabled:true}") boolean enabled,
+            @Value("${generation.cache.max-entries:10000}") long maxEntries,
+            @Value("${generation.cache.ttl:7d}") Duration defaultTtl,
+            @Value("${spring.ai.openai.chat.options.model:default}") String model) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.defaultTtl = defaultTtl;
+        this.model = model;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfter(new PerEntryExpiry())
+                .build();
+    }
+
+    /**
+     * Build the cache key for one chunk prompt.
+     *
+     * @param kind "quiz" or "flashcards"
+     * @param promptVersion Version of the prompt template; bump it whenever the prompt changes
+     * @param chunkText The chunk of study material sent to the model
+     * @param parameters Remaining generation parameters (count, difficulty, ...)
+     * @return Hex SHA-256 key
+     */
+    public String key(String kind, String promptVersion, CharSequence chunkText, Object... parameters) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, kind);
+            update(digest, promptVersion);
+            update(digest, model);
+            for (Object parameter : parameters) {
+                update(digest, String.valueOf(parameter));
+            }
+            update(digest, chunkText.toString());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Return the cached items for this key, or compute, store and return them.
+     * Empty results are never cached so a failed parse is retried next time.
+     */
+    public <T> List<T> getOrCompute(String key, Class<T> itemType, Supplier<List<T>> loader) {
+        return getOrCompute(key, itemType, defaultTtl, loader);
+    }
+
+    public <T> List<T> getOrCompute(String key, Class<T> itemType, Duration ttl, Supplier<List<T>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Optional<List<T>> cached = get(key, itemType);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        List<T> items = loader.get();
+        put(key, items, ttl);
+        return items;
+    }
+
+    /**
+     * Look up a key in both tiers without computing anything.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Optional<List<T>> get(String key, Class<T> itemType) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        CachedItems inMemory = memory.getIfPresent(key);
+        if (inMemory != null) {
+            memoryHits.increment();
+            return Optional.of((List<T>) inMemory.items());
+        }
+
+        try {
+            Optional<GenerationCacheEntry> stored = repository.findByCacheKey(key);
+            if (stored.isPresent()) {
+                GenerationCacheEntry entry = stored.get();
+                if (entry.getExpiresAt().isAfter(LocalDateTime.now())) {
+                    JavaType listType = objectMapper.getTypeFactory().constructCollectionType(List.class, itemType);
+                    List<T> items = objectMapper.readValue(entry.getPayload(), listType);
+                    memory.put(key, new CachedItems(items, toInstant(entry.getExpiresAt())));
+                    databaseHits.increment();
+                    return Optional.of(items);
+                }
+                repository.delete(entry);
+            }
+        } catch (Exception e) {
+            // The cache must never break generation - treat any storage problem as a miss
+            System.err.println("Generation cache lookup failed: " + e.getMessage());
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public <T> void put(String key, List<T> items) {
+        put(key, items, defaultTtl);
+    }
+
+    public <T> void put(String key, List<T> items, Duration ttl) {
+        if (!enabled || items == null || items.isEmpty()) {
+            return;
+        }
+
+        Instant expiresAt = Instant.now().plus(ttl);
+        memory.put(key, new CachedItems(List.copyOf(items), expiresAt));
+
+        try {
+            GenerationCacheEntry entry = new GenerationCacheEntry();
+            entry.setCacheKey(key);
+            entry.setPayload(objectMapper.writeValueAsString(items));
+            entry.setExpiresAt(LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault()));
+            repository.save(entry);
+        } catch (DataIntegrityViolationException e) {
+            // Another request stored the same key first - nothing to do
+        } catch (Exception e) {
+            System.err.println("Generation cache write failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hit/miss counters for both tiers.
+     */
+    public Map<String, Object> stats() {
+        long fromMemory = memoryHits.sum();
+        long fromDatabase = databaseHits.sum();
+        long missed = misses.sum();
+        long lookups = fromMemory + fromDatabase + missed;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("memoryHits", fromMemory);
+        stats.put("databaseHits", fromDatabase);
+        stats.put("misses", missed);
+        stats.put("hitRatio", lookups == 0 ? 0.0 : (double) (fromMemory + fromDatabase) / lookups);
+        stats.put("memoryEntries", memory.estimatedSize());
+        return stats;
+    }
+
+    /**
+     * Drop expired rows from the persistent tier once an hour.
+     */
+    @Scheduled(fixedDelayString = "${generation.cache.purge-interval:PT1H}")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+        int removed = repository.deleteExpired(LocalDateTime.now());
+        if (removed > 0) {
+            System.out.println("Generation cache: purged " + removed + " expired entries");
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        // Length prefix keeps ("ab", "c") and ("a", "bc") apart
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static Instant toInstant(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant();
+    }
+
+    private record CachedItems(List<?> items, Instant expiresAt) {}
+
+    private static class PerEntryExpiry implements Expiry<String, CachedItems> {
+        @Override
+        public long expireAfterCreate(String key, CachedItems value, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), value.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedItems value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedItems value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Single-flight coalescing of identical generation requests.
+ *
+ * When a lecturer shares notes, many students ask for the same quiz within seconds. The
+ * generation cache only helps once the first request has finished; until then every request
+ * would send its own chunk prompts. Here the first request for a key (the leader) runs the
+ * computation and every identical request arriving while it is in flight waits for and
+ * shares its result. Only the model calls are shared: callers still save their own set.
+ *
+ * A failure is handed to every waiting caller, except a used-up token budget, which belongs
+ * to the leader's user, and a leader stopped by an interrupt (shutdown): waiting callers then
+ * run the computation themselves. A waiting caller that is interrupted stops waiting with a
+ * {@link CancellationException}, like the rest of the generation pipeline.
+ *
+ * Meters:
+ *   generation.coalesce        counter, requests by type and role (leader/joined)
+ *   generation.coalesce.ratio  gauge, share of requests that joined an in-flight computation
+ */
+@Component
+public class GenerationCoalescer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final MeterRegistry registry;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+
+    public GenerationCoalescer(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("generation.coalesce.ratio", this, GenerationCoalescer::ratio)
+                .description("Share of generation requests served by an identical in-flight request")
+                .register(registry);
+    }
+
+    /**
+     * Key for a generation request: the material with whitespace runs collapsed and Unicode
+     * normalised, so copies of the same notes pasted from different places still match.
+     *
+     * @param type "quiz" or "flashcards"
+     * @param parameters Remaining generation parameters (count, difficulty, ...)
+     * @return Hex SHA-256 key
+     */
+    public static String key(String type, String studyMaterial, Object... parameters) {
+        String normalized = WHITESPACE.matcher(Normalizer.normalize(studyMaterial, Normalizer.Form.NFC))
+                .replaceAll(" ").strip();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(type.getBytes(StandardCharsets.UTF_8));
+            for (Object parameter : parameters) {
+                digest.update((byte) 0);
+                digest.update(String.valueOf(parameter).getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            digest.update(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Run the computation, or wait for the identical one already in flight and return its result.
+     * Callers must treat a shared result as read-only.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String type, String key, Supplier<T> computation) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+
+        if (running == null) {
+            count(type, "leader");
+            try {
+                T result = computation.get();
+                mine.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, mine);
+            }
+        }
+
+        count(type, "joined");
+        try {
+            return (T) running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for an identical generation");
+        } catch (CancellationException e) {
+            // The leader was interrupted, not this caller
+            return execute(type, key, computation);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TokenBudgetExceededException) {
+                // The leader's user is out of tokens, not necessarily this one
+                return execute(type, key, computation);
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return Leader and joined request counts since startup, and the share that joined
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("leaders", leaders.sum());
+        stats.put("joined", joined.sum());
+        stats.put("coalescingRatio", ratio());
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+
+    private double ratio() {
+        long shared = joined.sum();
+        long total = leaders.sum() + shared;
+        return total == 0 ? 0.0 : (double) shared / total;
+    }
+
+    private void count(String type, String role) {
+        (role.equals("leader") ? leaders : joined).increment();
+        Counter.builder("generation.coalesce")
+                .description("Generation requests by coalescing role")
+                .tag("type", type)
+                .tag("role", role)
+                .register(registry)
+                .increment();
+    }
+}
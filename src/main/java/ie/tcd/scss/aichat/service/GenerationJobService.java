@@ -0,0 +1,182 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.dto.GenerationJobResponse;
+import ie.tcd.scss.aichat.dto.GenerationResult;
+import ie.tcd.scss.aichat.model.GenerationJob;
+import ie.tcd.scss.aichat.repository.GenerationJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs quiz and flashcard generation as background jobs.
+ *
+ * Submitting only inserts a row into generation_jobs and hands the job to a fixed worker pool,
+ * so the HTTP request returns straight away instead of holding a Tomcat thread for the whole
+ * LLM run. Jobs that were still PENDING or RUNNING when the application stopped are queued
+ * again on startup; chunks that already finished are served from the generation cache.
+ * The result set id is written in the transaction that saves the set, so a job interrupted
+ * after saving is seen as COMPLETED on resume instead of saving a second set.
+ */
+@Service
+public class GenerationJobService {
+
+    private final GenerationJobRepository jobRepository;
+    private final QuizService quizService;
+    private final FlashcardService flashcardService;
+    private final SummarizationService summarizationService;
+    private final ExecutorService workers;
+
+    public GenerationJobService(
+            GenerationJobRepository jobRepository,
+            QuizService quizService,
+            FlashcardService flashcardService,
+            SummarizationService summarizationService,
+            @Value("${generation.jobs.workers:4}") int workerCount) {
+        this.jobRepository = jobRepository;
+        this.quizService = quizService;
+        this.flashcardService = flashcardService;
+        this.summarizationService = summarizationService;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount));
+    }
+
+    public GenerationJob submitQuiz(String studyMaterial, Integer count, String difficulty, Long userId, String title,
+                                    boolean fromSummary) {
+        GenerationJob job = newJob(GenerationJob.TYPE_QUIZ, studyMaterial, count, userId, title, fromSummary);
+        job.setDifficulty(difficulty);
+        return enqueue(jobRepository.save(job));
+    }
+
+    public GenerationJob submitFlashcards(String studyMaterial, Integer count, Long userId, String title,
+                                          boolean fromSummary) {
+        GenerationJob job = newJob(GenerationJob.TYPE_FLASHCARDS, studyMaterial, count, userId, title, fromSummary);
+        return enqueue(jobRepository.save(job));
+    }
+
+    public Optional<GenerationJob> findJob(Long id) {
+        return jobRepository.findById(id);
+    }
+
+    public GenerationJobResponse toResponse(GenerationJob job) {
+        return new GenerationJobResponse(
+                job.getId(),
+                job.getType(),
+                job.getStatus(),
+                job.getTotalChunks(),
+                job.getCompletedChunks(),
+                job.getResultSetId(),
+                job.getErrorMessage(),
+                job.getCreatedAt(),
+                job.getUpdatedAt()
+        );
+    }
+
+    /**
+     * Pick up jobs interrupted by a shutdown or crash.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<GenerationJob> unfinished = jobRepository.findByStatusInOrderByCreatedAtAsc(
+                List.of(GenerationJob.STATUS_PENDING, GenerationJob.STATUS_RUNNING));
+
+        for (GenerationJob job : unfinished) {
+            System.out.println("Resuming generation job " + job.getId() + " (" + job.getType() + ")");
+            job.setStatus(GenerationJob.STATUS_PENDING);
+            enqueue(jobRepository.save(job));
+        }
+    }
+
+    private GenerationJob newJob(String type, String studyMaterial, Integer count, Long userId, String title,
+                                 boolean fromSummary) {
+        GenerationJob job = new GenerationJob();
+        job.setType(type);
+        job.setStatus(GenerationJob.STATUS_PENDING);
+        job.setStudyMaterial(studyMaterial);
+        job.setItemCount(count);
+        job.setUserId(userId);
+        job.setTitle(title);
+        job.setFromSummary(fromSummary);
+        return job;
+    }
+
+    private GenerationJob enqueue(GenerationJob job) {
+        Long jobId = job.getId();
+        workers.execute(() -> run(jobId));
+        return job;
+    }
+
+    private void run(Long jobId) {
+        GenerationJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null || GenerationJob.STATUS_COMPLETED.equals(job.getStatus())) {
+            return;
+        }
+
+        job.setStatus(GenerationJob.STATUS_RUNNING);
+        job.setErrorMessage(null);
+        jobRepository.save(job);
+
+        ChunkProgressListener progress = new ChunkProgressListener() {
+            @Override
+            public void chunksPlanned(int totalChunks) {
+                jobRepository.startChunks(jobId, totalChunks, LocalDateTime.now());
+            }
+
+            @Override
+            public void chunkCompleted(int chunkIndex) {
+                jobRepository.incrementCompletedChunks(jobId, LocalDateTime.now());
+            }
+
+            @Override
+            public void setSaved(Long setId) {
+                jobRepository.recordResult(jobId, setId, GenerationJob.STATUS_COMPLETED, LocalDateTime.now());
+            }
+        };
+
+        try {
+            // Chunk summaries are cached, so a resumed job does not summarise again
+            String material = Boolean.TRUE.equals(job.getFromSummary())
+                    ? summarizationService.summarize(job.getStudyMaterial(), job.getUserId())
+                    : job.getStudyMaterial();
+            GenerationResult<?> result = GenerationJob.TYPE_QUIZ.equals(job.getType())
+                    ? quizService.generateQuizSet(material, job.getItemCount(),
+                            job.getDifficulty(), job.getUserId(), job.getTitle(), progress)
+                    : flashcardService.generateFlashcardSet(material, job.getItemCount(),
+                            job.getUserId(), job.getTitle(), progress);
+
+            GenerationJob finished = jobRepository.findById(jobId).orElse(job);
+            finished.setStatus(GenerationJob.STATUS_COMPLETED);
+            finished.setResultSetId(result.setId());
+            if (finished.getTotalChunks() != null) {
+                // Chunks cancelled once the requested count was reached never report back
+                finished.setCompletedChunks(finished.getTotalChunks());
+            }
+            jobRepository.save(finished);
+        } catch (Exception e) {
+            if (e instanceof CancellationException || Thread.currentThread().isInterrupted()) {
+                // Shutting down: the job stays RUNNING and is resumed on the next startup
+                System.out.println("Generation job " + jobId + " interrupted - resumed on next startup");
+                return;
+            }
+            System.err.println("Generation job " + jobId + " failed: " + e.getMessage());
+            GenerationJob failed = jobRepository.findById(jobId).orElse(job);
+            failed.setStatus(GenerationJob.STATUS_FAILED);
+            failed.setErrorMessage(e.getMessage());
+            jobRepository.save(failed);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupted jobs stay RUNNING in the table and are resumed on the next startup
+        workers.shutdownNow();
+    }
+}
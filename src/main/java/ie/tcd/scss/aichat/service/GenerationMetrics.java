@@ -0,0 +1,132 @@
+package ie.tcd.scss.aichat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters for the study-material pipeline, tagged by set type (quiz, flashcards)
+ * or document type (pdf, ppt):
+ *
+ *   generation.chunks         summary, chunks per generation request
+ *   generation.chunks.failed  counter, chunks that failed every retry
+ *   generation.output.parsed  counter, per model answer, outcome usable/empty
+ *   generation.save           timer, saving a generated set with its items
+ *   generation.bank.lookups   counter, question-bank lookups, outcome served/miss
+ *   generation.bank.added     counter, questions added to the question bank
+ *   generation.explanations   counter, on-demand quiz explanations, source cache/model
+ *   document.parse.page       timer, text extraction per page or slide
+ */
+@Component
+public class GenerationMetrics {
+
+    private final MeterRegistry registry;
+
+    public GenerationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void chunksProcessed(String type, int chunks, int failed) {
+        DistributionSummary.builder("generation.chunks")
+                .description("Chunks per generation request")
+                .tag("type", type)
+                .register(registry)
+                .record(chunks);
+        if (failed > 0) {
+            Counter.builder("generation.chunks.failed")
+                    .description("Chunks that failed every attempt")
+                    .tag("type", type)
+                    .register(registry)
+                    .increment(failed);
+        }
+    }
+
+    /**
+     * @param usable Whether the model answer yielded at least one valid item
+     */
+    public void outputParsed(String type, boolean usable) {
+        Counter.builder("generation.output.parsed")
+                .description("Model answers parsed into items")
+                .tag("type", type)
+                .tag("outcome", usable ? "usable" : "empty")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * @param served Whether the question bank covered the whole request
+     */
+    public void bankLookup(String type, boolean served) {
+        Counter.builder("generation.bank.lookups")
+                .description("Question bank lookups")
+                .tag("type", type)
+                .tag("outcome", served ? "served" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    public void bankAdded(String type, int added) {
+        if (added > 0) {
+            Counter.builder("generation.bank.added")
+                    .description("Questions added to the question bank")
+                    .tag("type", type)
+                    .register(registry)
+                    .increment(added);
+        }
+    }
+
+    /**
+     * @param source Where the explanations came from: cache (generated before) or model
+     */
+    public void explanationsServed(String source, int count) {
+        if (count > 0) {
+            Counter.builder("generation.explanations")
+                    .description("Quiz explanations generated on demand")
+                    .tag("source", source)
+                    .register(registry)
+                    .increment(count);
+        }
+    }
+
+    /**
+     * Items of a draft set after the verification pass: unchanged, corrected, or unverified
+     * (their batch failed and the draft was kept).
+     */
+    public void itemsVerified(String type, int unchanged, int corrected, int unverified) {
+        verifiedItems(type, "unchanged", unchanged);
+        verifiedItems(type, "corrected", corrected);
+        verifiedItems(type, "unverified", unverified);
+    }
+
+    private void verifiedItems(String type, String outcome, int count) {
+        if (count > 0) {
+            Counter.builder("generation.verify.items")
+                    .description("Drafted items checked by the verification model")
+                    .tag("type", type)
+                    .tag("outcome", outcome)
+                    .register(registry)
+                    .increment(count);
+        }
+    }
+
+    public <T> T timeSave(String type, Supplier<T> save) {
+        return Timer.builder("generation.save")
+                .description("Saving a generated set and its items")
+                .tag("type", type)
+                .register(registry)
+                .record(save);
+    }
+
+    public void documentPageParsed(String fileType, long nanos) {
+        Timer.builder("document.parse.page")
+                .description("Text extraction per page or slide")
+                .tag("type", fileType)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
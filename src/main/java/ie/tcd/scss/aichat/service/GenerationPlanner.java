@@ -0,0 +1,288 @@
+package ie.tcd.scss.aichat.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides how one quiz or flashcard request is spread over model calls: which model to use,
+ * how the material is chunked, how many items each chunk asks for, and how many completion
+ * tokens each call may spend.
+ *
+ * <ul>
+ *   <li>Model: material of at most {@code small-input-tokens} goes to {@code small-model}
+ *       (a faster, cheaper model), everything else to the configured chat model.</li>
+ *   <li>Chunks: at most {@code generation.chunk.max-tokens}, and never more than the model's
+ *       context window minus the prompt and the completion budget of one call. Material that
+ *       needs several chunks is cut into chunks of about equal size, so no single call holds
+ *       up the fan-out. When one call cannot return all items within the model's output limit,
+ *       the material is cut into at least as many chunks as calls are needed.</li>
+ *   <li>Items: handed out in proportion to each chunk's distinct words, so a chunk that is
+ *       mostly tables of numbers or repeated boilerplate asks for fewer items than one dense
+ *       with terms. No chunk is asked for more items than one call can return.</li>
+ *   <li>Completion budget: items x tokens per item, with headroom, plus an allowance for the
+ *       hidden reasoning tokens of reasoning models (they count against the cap) that grows
+ *       with the chunk size, clamped to the model's output limit.</li>
+ * </ul>
+ *
+ * Plans are deterministic for the same material, count and configuration, so a resumed set
+ * replays the same chunk prompts and finds the chunks that succeeded in the generation cache.
+ */
+@Component
+public class GenerationPlanner {
+
+    public static final String QUIZ = "quiz";
+    public static final String FLASHCARDS = "flashcards";
+
+    // System prompt, prompt template and per-message framing, in tokens
+    static final int PROMPT_OVERHEAD_TOKENS = 1000;
+    // JSON envelope of the answer, in tokens
+    private static final int OUTPUT_OVERHEAD_TOKENS = 100;
+    private static final int DEFAULT_CONTEXT_WINDOW = 128_000;
+    private static final int DEFAULT_OUTPUT_LIMIT = 16_384;
+    private static final int MIN_CHUNK_TOKENS = 256;
+    // Balanced chunks are cut a little larger than the even share, as paragraphs rarely end exactly there
+    private static final double BALANCE_SLACK = 1.1;
+
+    private final TokenChunker tokenChunker;
+    private final String defaultModel;
+    private final String smallModel;
+    private final int smallInputTokens;
+    private final Map<String, Integer> contextWindows;
+    private final Map<String, Integer> outputLimits;
+    private final List<String> reasoningModels;
+    private final int reasoningTokens;
+    private final double reasoningTokensPerInputToken;
+    private final Map<String, Integer> tokensPerItem;
+
+    @Autowired
+    public GenerationPlanner(
+            TokenChunker tokenChunker,
+            @Value("${spring.ai.openai.chat.options.model:default}") String defaultModel,
+            @Value("${generation.planner.small-model:}") String smallModel,
+            @Value("${generation.planner.small-input-tokens:3000}") int smallInputTokens,
+            @Value("${generation.planner.context-windows:gpt-5=400000,gpt-5-mini=400000,gpt-5-nano=400000,gpt-4.1=1047576,gpt-4.1-mini=1047576,gpt-4.1-nano=1047576,gpt-4o=128000,gpt-4o-mini=128000}") String contextWindows,
+            @Value("${generation.planner.output-limits:gpt-5=128000,gpt-5-mini=128000,gpt-5-nano=128000,gpt-4.1=32768,gpt-4.1-mini=32768,gpt-4.1-nano=32768,gpt-4o=16384,gpt-4o-mini=16384}") String outputLimits,
+            @Value("${generation.planner.reasoning-models:gpt-5,o1,o3,o4}") String reasoningModels,
+            @Value("${generation.planner.reasoning-tokens:4096}") int reasoningTokens,
+            @Value("${generation.planner.reasoning-tokens-per-input-token:0.25}") double reasoningTokensPerInputToken,
+            @Value("${generation.planner.quiz-tokens-per-item:150}") int quizTokensPerItem,
+            @Value("${generation.planner.flashcard-tokens-per-item:70}") int flashcardTokensPerItem) {
+        this.tokenChunker = tokenChunker;
+        this.defaultModel = defaultModel;
+        this.smallModel = smallModel == null || smallModel.isBlank() ? defaultModel : smallModel.strip();
+        this.smallInputTokens = Math.max(0, smallInputTokens);
+        this.contextWindows = parseWindows(contextWindows);
+        this.outputLimits = parseWindows(outputLimits);
+        this.reasoningModels = Arrays.stream(reasoningModels.split(","))
+                .map(String::strip).filter(prefix -> !prefix.isEmpty()).toList();
+        this.reasoningTokens = Math.max(0, reasoningTokens);
+        this.reasoningTokensPerInputToken = Math.max(0, reasoningTokensPerInputToken);
+        this.tokensPerItem = Map.of(QUIZ, Math.max(1, quizTokensPerItem), FLASHCARDS, Math.max(1, flashcardTokensPerItem));
+    }
+
+    /**
+     * Planner with the default context windows and budgets that always uses one model.
+     */
+    public GenerationPlanner(TokenChunker tokenChunker, String model) {
+        this(tokenChunker, model, "", 0, "", "", "gpt-5,o1,o3,o4", 4096, 0.25, 150, 70);
+    }
+
+    /**
+     * Plan a request.
+     *
+     * @param kind {@link #QUIZ} or {@link #FLASHCARDS}
+     * @param studyMaterial Full study material
+     * @param itemCount Number of items requested
+     */
+    public Plan plan(String kind, String studyMaterial, int itemCount) {
+        return plan(kind, studyMaterial, itemCount, null);
+    }
+
+    /**
+     * Plan a request for a given model, e.g. the draft model of draft-then-verify generation.
+     *
+     * @param model Model to use, or null to choose by input size
+     */
+    public Plan plan(String kind, String studyMaterial, int itemCount, String model) {
+        int perItem = tokensPerItem.getOrDefault(kind, tokensPerItem.get(QUIZ));
+        int inputTokens = tokenChunker.countTokens(studyMaterial);
+        if (model == null || model.isBlank()) {
+            model = inputTokens <= smallInputTokens ? smallModel : defaultModel;
+        }
+        int outputLimit = outputLimit(model);
+        // Reasoning grows with the input of a call; no chunk is larger than the chunk limit or the material
+        int largestChunk = Math.min(tokenChunker.getMaxTokensPerChunk(), inputTokens);
+        int reasoning = isReasoningModel(model)
+                ? reasoningTokens + (int) Math.ceil(largestChunk * reasoningTokensPerInputToken)
+                : 0;
+        int perCall = itemsPerCall(outputLimit, perItem, reasoning);
+
+        // Room for the material next to the prompt and the largest completion one call may ask for
+        int callBudget = Math.min(outputLimit, completionTokens(Math.min(itemCount, perCall), perItem, reasoning));
+        int fit = contextWindow(model) - PROMPT_OVERHEAD_TOKENS - callBudget;
+        int maxChunkTokens = Math.min(tokenChunker.getMaxTokensPerChunk(), Math.max(MIN_CHUNK_TOKENS, fit));
+        // More items than one call can return: at least one chunk per call needed
+        int minCalls = (itemCount + perCall - 1) / perCall;
+        if (minCalls > 1) {
+            maxChunkTokens = Math.min(maxChunkTokens, Math.max(MIN_CHUNK_TOKENS, (inputTokens + minCalls - 1) / minCalls));
+        }
+        List<TextChunk> chunks = balancedChunks(studyMaterial, inputTokens, maxChunkTokens);
+
+        long[] weights = new long[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            weights[i] = distinctWords(chunks.get(i));
+        }
+        int[] quotas = cap(allocate(itemCount, weights), perCall);
+        return new Plan(chunks, quotas, model, inputTokens, perItem, reasoning, outputLimit);
+    }
+
+    // Greedy packing leaves a small remainder chunk; re-cut at the even share of the same chunk count
+    private List<TextChunk> balancedChunks(String text, int inputTokens, int maxChunkTokens) {
+        int overlap = tokenChunker.getOverlapTokens();
+        List<TextChunk> greedy = tokenChunker.split(text, maxChunkTokens, overlap);
+        if (greedy.size() <= 1) {
+            return greedy;
+        }
+        int even = (int) Math.min(maxChunkTokens, Math.ceil((double) inputTokens / greedy.size() * BALANCE_SLACK));
+        List<TextChunk> balanced = tokenChunker.split(text, even, overlap);
+        // Paragraph boundaries did not line up - an extra call costs more than uneven chunks
+        return balanced.size() <= greedy.size() ? balanced : greedy;
+    }
+
+    /**
+     * Split total into integer shares proportional to the weights (largest remainder, ties to
+     * the earlier chunk). All-zero weights split evenly.
+     */
+    static int[] allocate(int total, long[] weights) {
+        int[] shares = new int[weights.length];
+        if (weights.length == 0 || total <= 0) {
+            return shares;
+        }
+        long sum = Arrays.stream(weights).sum();
+        if (sum <= 0) {
+            return ChunkFanOut.distribute(total, weights.length);
+        }
+
+        double[] remainders = new double[weights.length];
+        int assigned = 0;
+        for (int i = 0; i < weights.length; i++) {
+            double exact = (double) total * weights[i] / sum;
+            shares[i] = (int) Math.floor(exact);
+            remainders[i] = exact - shares[i];
+            assigned += shares[i];
+        }
+        while (assigned < total) {
+            int best = 0;
+            for (int i = 1; i < remainders.length; i++) {
+                if (remainders[i] > remainders[best]) {
+                    best = i;
+                }
+            }
+            shares[best]++;
+            remainders[best] = -1;
+            assigned++;
+        }
+        return shares;
+    }
+
+    /**
+     * Lower shares above the cap to it and hand the excess to the earliest chunks with room.
+     * Excess no chunk has room for is dropped: the material is too short for that many calls.
+     */
+    static int[] cap(int[] shares, int cap) {
+        int excess = 0;
+        for (int i = 0; i < shares.length; i++) {
+            if (shares[i] > cap) {
+                excess += shares[i] - cap;
+                shares[i] = cap;
+            }
+        }
+        for (int i = 0; i < shares.length && excess > 0; i++) {
+            int added = Math.min(cap - shares[i], excess);
+            shares[i] += added;
+            excess -= added;
+        }
+        return shares;
+    }
+
+    // Distinct words of three or more letters or digits, case-insensitive
+    static int distinctWords(CharSequence text) {
+        Set<String> words = new HashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (!word.isEmpty()) {
+                if (word.length() >= 3) {
+                    words.add(word.toString());
+                }
+                word.setLength(0);
+            }
+        }
+        return words.size();
+    }
+
+    private int contextWindow(String model) {
+        return contextWindows.getOrDefault(model.toLowerCase(Locale.ROOT), DEFAULT_CONTEXT_WINDOW);
+    }
+
+    private int outputLimit(String model) {
+        return outputLimits.getOrDefault(model.toLowerCase(Locale.ROOT), DEFAULT_OUTPUT_LIMIT);
+    }
+
+    private boolean isReasoningModel(String model) {
+        String name = model.toLowerCase(Locale.ROOT);
+        return reasoningModels.stream().anyMatch(name::startsWith);
+    }
+
+    private static int completionTokens(int items, int perItem, int reasoning) {
+        // 25% headroom: a cap hit mid-item loses that item, a loose cap costs nothing unless used
+        return reasoning + OUTPUT_OVERHEAD_TOKENS + (int) Math.ceil(Math.max(1, items) * perItem * 1.25);
+    }
+
+    // Items whose completion budget still fits the output limit next to the reasoning allowance
+    private static int itemsPerCall(int outputLimit, int perItem, int reasoning) {
+        return Math.max(1, (int) Math.floor((outputLimit - reasoning - OUTPUT_OVERHEAD_TOKENS) / (perItem * 1.25)));
+    }
+
+    private static Map<String, Integer> parseWindows(String spec) {
+        Map<String, Integer> windows = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length == 2 && !parts[0].isBlank()) {
+                windows.put(parts[0].strip().toLowerCase(Locale.ROOT), Integer.parseInt(parts[1].strip()));
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Plan of one request.
+     *
+     * @param chunks Material chunks, in order
+     * @param quotas Items to ask of each chunk (may be 0)
+     * @param model Model to send every chunk to
+     * @param inputTokens Tokens of the whole material
+     * @param outputLimit Most completion tokens the model returns in one call
+     */
+    public record Plan(List<TextChunk> chunks, int[] quotas, String model, int inputTokens,
+                       int tokensPerItem, int reasoningTokens, int outputLimit) {
+
+        /**
+         * Completion-token cap for a call asking for this many items, at most the model's output limit.
+         */
+        public int maxCompletionTokens(int items) {
+            return Math.min(outputLimit, completionTokens(items, tokensPerItem, reasoningTokens));
+        }
+    }
+}
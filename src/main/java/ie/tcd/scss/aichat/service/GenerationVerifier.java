@@ -0,0 +1,360 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.FlashcardCorrection;
+import ie.tcd.scss.aichat.dto.FlashcardCorrectionBatch;
+import ie.tcd.scss.aichat.dto.QuizCorrection;
+import ie.tcd.scss.aichat.dto.QuizCorrectionBatch;
+import ie.tcd.scss.aichat.model.Flashcard;
+import ie.tcd.scss.aichat.model.QuizQuestion;
+import ie.tcd.scss.aichat.repository.FlashcardRepository;
+import ie.tcd.scss.aichat.repository.QuizQuestionRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.ResponseFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Second pass of draft-then-verify generation.
+ *
+ * With {@code generation.verify.enabled=true} quiz questions and flashcards are drafted by
+ * {@code generation.verify.draft-model} (fast and cheap), saved and returned at once. The
+ * saved set is then handed to this verifier, which has {@code generation.verify.model} (a
+ * stronger model) check the drafts against the study material in the background and
+ * overwrites the rows it corrects in place, so the student sees the corrected items the next
+ * time the set is loaded.
+ *
+ * Verification is low priority: calls go through the governor's bulk class, and at most
+ * {@code generation.verify.max-concurrent} sets are verified at a time. Items are checked in
+ * batches of {@code generation.verify.batch-size}, each with the excerpts of the material
+ * ({@code generation.verify.context-tokens} tokens each) closest to its items, and the model
+ * returns only the items it corrected. Batch results are cached, so an identical set (e.g. of
+ * a coalesced request) is verified once. A batch that fails leaves its drafts as they are.
+ */
+@Service
+public class GenerationVerifier {
+
+    private static final String PROMPT_VERSION = "verify-v1"; // Bump when the prompts change (invalidates cache)
+    private static final String QUIZ_SYSTEM_PROMPT = """
+            You check multiple-choice quiz questions that were drafted from study material by a smaller model.
+
+            For every numbered question check that:
+            - it can be answered from the study material excerpts
+            - the marked answer is correct and no other option is also correct
+            - the explanation, if there is one, is right
+
+            Return only the questions that need changing, corrected, as JSON in the "corrections" array,
+            each with its number. "correctAnswer" is the index (0-3) of the correct option in "options".
+            Return an empty array when every question is correct.
+            """;
+    private static final String FLASHCARD_SYSTEM_PROMPT = """
+            You check study flashcards that were drafted from study material by a smaller model.
+
+            For every numbered flashcard check that the question is clear and that the answer is correct
+            and complete according to the study material excerpts.
+
+            Return only the flashcards that need changing, corrected, as JSON in the "corrections" array,
+            each with its number. Return an empty array when every flashcard is correct.
+            """;
+    private static final String QUIZ_SCHEMA = new BeanOutputConverter<>(QuizCorrectionBatch.class).getJsonSchema();
+    private static final String FLASHCARD_SCHEMA = new BeanOutputConverter<>(FlashcardCorrectionBatch.class).getJsonSchema();
+
+    private final ChatClient chatClient;
+    private final GenerationCache generationCache;
+    private final TokenChunker tokenChunker;
+    private final QuizQuestionRepository quizQuestionRepository;
+    private final FlashcardRepository flashcardRepository;
+    private final ObjectMapper objectMapper;
+    private final GenerationMetrics generationMetrics;
+    private final boolean enabled;
+    private final String draftModel;
+    private final String verifyModel;
+    private final int batchSize;
+    private final int contextTokens;
+
+    private final ExecutorService verifications = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore slots;
+
+    @Autowired
+    public GenerationVerifier(ChatModel chatModel, LlmGovernor llmGovernor, GenerationCache generationCache,
+                              TokenChunker tokenChunker, QuizQuestionRepository quizQuestionRepository,
+                              FlashcardRepository flashcardRepository, ObjectMapper objectMapper,
+                              GenerationMetrics generationMetrics,
+                              @Value("${generation.verify.enabled:false}") boolean enabled,
+                              @Value("${generation.verify.draft-model:gpt-4.1-nano}") String draftModel,
+                              @Value("${generation.verify.model:${spring.ai.openai.chat.options.model:}}") String verifyModel,
+                              @Value("${generation.verify.batch-size:10}") int batchSize,
+                              @Value("${generation.verify.context-tokens:1500}") int contextTokens,
+                              @Value("${generation.verify.max-concurrent:2}") int maxConcurrent) {
+        this.chatClient = chatModel == null ? null
+                : ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.BULK, "verify")).build();
+        this.generationCache = generationCache;
+        this.tokenChunker = tokenChunker;
+        this.quizQuestionRepository = quizQuestionRepository;
+        this.flashcardRepository = flashcardRepository;
+        this.objectMapper = objectMapper;
+        this.generationMetrics = generationMetrics;
+        this.enabled = enabled;
+        this.draftModel = draftModel;
+        this.verifyModel = verifyModel;
+        this.batchSize = Math.max(1, batchSize);
+        this.contextTokens = Math.max(1, contextTokens);
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /**
+     * Verifier that is switched off, for services built outside the application context
+     * (tests, benchmarks): sets are generated in one pass by the planned model.
+     */
+    public static GenerationVerifier disabled() {
+        return new GenerationVerifier(null, null, null, null, null, null, null, null,
+                false, "", "", 1, 1, 1);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Model the drafts are written with while verification is enabled, null when it is not
+     * (the planner then chooses the model).
+     */
+    public String draftModel() {
+        return enabled ? draftModel : null;
+    }
+
+    /**
+     * Verify a saved quiz set in the background.
+     *
+     * @param onVerified Receives the set's questions once verified (corrected where needed)
+     */
+    public void verifyQuizSet(Long setId, String studyMaterial, Long userId, Consumer<List<QuizQuestion>> onVerified) {
+        if (enabled) {
+            inBackground("quiz", setId, () -> onVerified.accept(verifyQuizQuestions(setId, studyMaterial, userId)));
+        }
+    }
+
+    /**
+     * Verify a saved flashcard set in the background.
+     */
+    public void verifyFlashcardSet(Long setId, String studyMaterial, Long userId) {
+        if (enabled) {
+            inBackground("flashcards", setId, () -> verifyFlashcards(setId, studyMaterial, userId));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        verifications.shutdownNow();
+    }
+
+    private void inBackground(String type, Long setId, Runnable verification) {
+        verifications.execute(() -> {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                verification.run();
+            } catch (Exception e) {
+                System.err.println("Verification of " + type + " set " + setId + " failed: " + e.getMessage());
+            } finally {
+                slots.release();
+            }
+        });
+    }
+
+    /**
+     * Check every question of the set and overwrite the ones the model corrected.
+     *
+     * @return The set's questions in order, corrected where needed
+     */
+    List<QuizQuestion> verifyQuizQuestions(Long setId, String studyMaterial, Long userId) {
+        List<QuizQuestion> questions = quizQuestionRepository.findByQuizSetId(setId).stream()
+                .sorted(Comparator.comparing(QuizQuestion::getPosition))
+                .toList();
+        ExcerptIndex excerpts = ExcerptIndex.of(tokenChunker, studyMaterial, contextTokens);
+        int corrected = 0;
+        int unverified = 0;
+
+        try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId)) {
+            for (int i = 0; i < questions.size(); i += batchSize) {
+                List<QuizQuestion> batch = questions.subList(i, Math.min(questions.size(), i + batchSize));
+                String prompt = quizPrompt(batch, excerpts);
+                try {
+                    QuizCorrectionBatch result = check(prompt, QUIZ_SYSTEM_PROMPT, QUIZ_SCHEMA, QuizCorrectionBatch.class);
+                    corrected += applyQuizCorrections(batch, result.corrections());
+                } catch (Exception e) {
+                    System.err.println("Could not verify questions " + (i + 1) + "-" + (i + batch.size())
+                            + " of quiz set " + setId + ": " + e.getMessage());
+                    unverified += batch.size();
+                }
+            }
+        }
+
+        generationMetrics.itemsVerified("quiz", questions.size() - corrected - unverified, corrected, unverified);
+        System.out.println("Verified quiz set " + setId + ": " + corrected + " of " + questions.size() + " question(s) corrected");
+        return questions;
+    }
+
+    /**
+     * Check every card of the set and overwrite the ones the model corrected.
+     */
+    List<Flashcard> verifyFlashcards(Long setId, String studyMaterial, Long userId) {
+        List<Flashcard> cards = flashcardRepository.findByFlashcardSetId(setId).stream()
+                .sorted(Comparator.comparing(Flashcard::getPosition))
+                .toList();
+        ExcerptIndex excerpts = ExcerptIndex.of(tokenChunker, studyMaterial, contextTokens);
+        int corrected = 0;
+        int unverified = 0;
+
+        try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId)) {
+            for (int i = 0; i < cards.size(); i += batchSize) {
+                List<Flashcard> batch = cards.subList(i, Math.min(cards.size(), i + batchSize));
+                String prompt = flashcardPrompt(batch, excerpts);
+                try {
+                    FlashcardCorrectionBatch result =
+                            check(prompt, FLASHCARD_SYSTEM_PROMPT, FLASHCARD_SCHEMA, FlashcardCorrectionBatch.class);
+                    corrected += applyFlashcardCorrections(batch, result.corrections());
+                } catch (Exception e) {
+                    System.err.println("Could not verify cards " + (i + 1) + "-" + (i + batch.size())
+                            + " of flashcard set " + setId + ": " + e.getMessage());
+                    unverified += batch.size();
+                }
+            }
+        }
+
+        generationMetrics.itemsVerified("flashcards", cards.size() - corrected - unverified, corrected, unverified);
+        System.out.println("Verified flashcard set " + setId + ": " + corrected + " of " + cards.size() + " card(s) corrected");
+        return cards;
+    }
+
+    // One call per batch, cached by prompt; an answer with no corrections is cached too
+    private <T> T check(String prompt, String systemPrompt, String schema, Class<T> resultType) {
+        String cacheKey = generationCache.key("verify", PROMPT_VERSION, prompt, systemPrompt, verifyModel);
+        return generationCache.getOrCompute(cacheKey, resultType, () -> {
+            OpenAiChatOptions.Builder options = OpenAiChatOptions.builder()
+                    .responseFormat(new ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, schema));
+            if (verifyModel != null && !verifyModel.isBlank()) {
+                options.model(verifyModel);
+            }
+            ChatResponse response = chatClient.prompt()
+                    .options(options.build())
+                    .system(systemPrompt)
+                    .user(prompt)
+                    .call()
+                    .chatResponse();
+            String text = response != null && response.getResult() != null ? response.getResult().getOutput().getText() : null;
+            if (text == null || text.isBlank()) {
+                throw new IllegalStateException("Empty verification answer");
+            }
+            try {
+                return List.of(objectMapper.readValue(text, resultType));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Unreadable verification answer: " + e.getOriginalMessage(), e);
+            }
+        }).get(0);
+    }
+
+    private int applyQuizCorrections(List<QuizQuestion> batch, List<QuizCorrection> corrections) {
+        Map<Integer, QuizQuestion> byNumber = new HashMap<>();
+        batch.forEach(question -> byNumber.put(number(question.getPosition()), question));
+        int applied = 0;
+        for (QuizCorrection correction : corrections == null ? List.<QuizCorrection>of() : corrections) {
+            QuizQuestion question = byNumber.remove(correction.number());
+            // Corrections the UI could not show are ignored; the draft stays
+            if (question == null || correction.question() == null || correction.question().isBlank()
+                    || correction.options() == null || correction.options().size() != 4
+                    || correction.correctAnswer() == null || correction.correctAnswer() < 0 || correction.correctAnswer() > 3) {
+                continue;
+            }
+            question.setQuestion(correction.question());
+            question.setOptionA(correction.options().get(0));
+            question.setOptionB(correction.options().get(1));
+            question.setOptionC(correction.options().get(2));
+            question.setOptionD(correction.options().get(3));
+            question.setCorrectAnswer(String.valueOf((char) ('A' + correction.correctAnswer())));
+            question.setExplanation(correction.explanation());
+            quizQuestionRepository.updateContent(question.getId(), question.getQuestion(),
+                    question.getOptionA(), question.getOptionB(), question.getOptionC(), question.getOptionD(),
+                    question.getCorrectAnswer(), question.getExplanation());
+            applied++;
+        }
+        return applied;
+    }
+
+    private int applyFlashcardCorrections(List<Flashcard> batch, List<FlashcardCorrection> corrections) {
+        Map<Integer, Flashcard> byNumber = new HashMap<>();
+        batch.forEach(card -> byNumber.put(number(card.getPosition()), card));
+        int applied = 0;
+        for (FlashcardCorrection correction : corrections == null ? List.<FlashcardCorrection>of() : corrections) {
+            Flashcard card = byNumber.remove(correction.number());
+            if (card == null || correction.question() == null || correction.question().isBlank()
+                    || correction.answer() == null || correction.answer().isBlank()) {
+                continue;
+            }
+            card.setQuestion(correction.question());
+            card.setAnswer(correction.answer());
+            flashcardRepository.updateContent(card.getId(), card.getQuestion(), card.getAnswer());
+            applied++;
+        }
+        return applied;
+    }
+
+    private static String quizPrompt(List<QuizQuestion> batch, ExcerptIndex excerpts) {
+        List<TextChunk> chosen = new ArrayList<>();
+        StringBuilder items = new StringBuilder();
+        for (QuizQuestion question : batch) {
+            chosen.add(excerpts.closestTo(question.getQuestion() + " " + question.getOptionA() + " "
+                    + question.getOptionB() + " " + question.getOptionC() + " " + question.getOptionD()));
+            items.append("=== Item ").append(number(question.getPosition())).append(" ===\n")
+                    .append(question.getQuestion()).append('\n')
+                    .append("A) ").append(question.getOptionA()).append('\n')
+                    .append("B) ").append(question.getOptionB()).append('\n')
+                    .append("C) ").append(question.getOptionC()).append('\n')
+                    .append("D) ").append(question.getOptionD()).append('\n')
+                    .append("Marked answer: ").append(question.getCorrectAnswer()).append('\n');
+            if (question.getExplanation() != null) {
+                items.append("Explanation: ").append(question.getExplanation()).append('\n');
+            }
+            items.append('\n');
+        }
+        return ExcerptIndex.render(chosen) + items;
+    }
+
+    private static String flashcardPrompt(List<Flashcard> batch, ExcerptIndex excerpts) {
+        List<TextChunk> chosen = new ArrayList<>();
+        StringBuilder items = new StringBuilder();
+        for (Flashcard card : batch) {
+            chosen.add(excerpts.closestTo(card.getQuestion() + " " + card.getAnswer()));
+            items.append("=== Item ").append(number(card.getPosition())).append(" ===\n")
+                    .append("Question: ").append(card.getQuestion()).append('\n')
+                    .append("Answer: ").append(card.getAnswer()).append("\n\n");
+        }
+        return ExcerptIndex.render(chosen) + items;
+    }
+
+    // Items are numbered by their position in the set
+    private static int number(Integer position) {
+        return position + 1;
+    }
+}
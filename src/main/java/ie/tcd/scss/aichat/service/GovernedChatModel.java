@@ -0,0 +1,63 @@
+package ie.tcd.scss.aichat.service;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * ChatModel decorator that takes a slot from the {@link LlmGovernor} for the duration of
+ * each call or stream. The user's daily budget is checked before queueing, and the tokens
+ * of the answer are charged to the user afterwards. Created through {@link LlmGovernor#govern}.
+ */
+class GovernedChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final LlmGovernor governor;
+    private final TokenUsageLedger usageLedger;
+    private final LlmGovernor.Priority priority;
+
+    GovernedChatModel(ChatModel delegate, LlmGovernor governor, TokenUsageLedger usageLedger,
+                      LlmGovernor.Priority priority) {
+        this.delegate = delegate;
+        this.governor = governor;
+        this.usageLedger = usageLedger;
+        this.priority = priority;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String user = LlmGovernor.currentUser();
+        usageLedger.checkBudget(user);
+        try (LlmGovernor.Permit permit = governor.acquire(priority, user, costOf(prompt))) {
+            ChatResponse response = delegate.call(prompt);
+            usageLedger.record(user, response);
+            return response;
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        // Resolve the user now - the wait itself happens off the caller's thread on subscribe
+        String user = LlmGovernor.currentUser();
+        usageLedger.checkBudget(user);
+        long cost = costOf(prompt);
+        return Flux.using(
+                        () -> governor.acquire(priority, user, cost),
+                        permit -> delegate.stream(prompt).doOnNext(response -> usageLedger.record(user, response)),
+                        LlmGovernor.Permit::close)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    private static long costOf(Prompt prompt) {
+        String contents = prompt.getContents();
+        return contents == null ? 1 : contents.length() + 1;
+    }
+}
@@ -0,0 +1,106 @@
+package ie.tcd.scss.aichat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ie.tcd.scss.aichat.exception.IdempotencyKeyConflictException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Results of generation requests that carried an {@code Idempotency-Key} header.
+ *
+ * The frontend retries generate calls on gateway timeouts, while the first attempt is
+ * usually still running. A retry with the same key attaches to that attempt, or gets its
+ * stored result once it has finished, instead of generating (and saving) the set again.
+ *
+ * Keys are scoped to the user and the endpoint. A key reused with a different request body
+ * is rejected rather than answered with the result of another request. Failed attempts are
+ * not stored, so the retry of a failed request runs again. The store is bounded
+ * ({@code idempotency.max-entries}) and entries expire {@code idempotency.ttl} after the
+ * request started.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final Cache<String, Entry> entries;
+
+    public IdempotencyStore(@Value("${idempotency.max-entries:10000}") long maxEntries,
+                            @Value("${idempotency.ttl:24h}") Duration ttl) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Run the request once per key: the first call runs it, later calls with the same key
+     * wait for and return the same result. Without a key the request simply runs.
+     *
+     * @param scope Endpoint and user the key belongs to, e.g. "quiz/generate:42"
+     * @param key Client-chosen Idempotency-Key, may be null
+     * @param request Everything that makes up the request (body and parameters), as text
+     * @throws IdempotencyKeyConflictException if the key was used for a different request
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String scope, String key, String request, Supplier<T> computation) {
+        if (key == null || key.isBlank()) {
+            return computation.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String entryKey = scope + ":" + key;
+        Entry mine = new Entry(fingerprint(request), new CompletableFuture<>());
+        Entry existing = entries.asMap().putIfAbsent(entryKey, mine);
+
+        if (existing != null) {
+            if (!Arrays.equals(existing.fingerprint(), mine.fingerprint())) {
+                throw new IdempotencyKeyConflictException(
+                        "Idempotency-Key " + key + " was already used for a different request");
+            }
+            System.out.println("Idempotent retry of " + scope + " (key " + key + ")"
+                    + (existing.result().isDone() ? " - returning stored result" : " - attaching to the running request"));
+            try {
+                return (T) existing.result().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            T result = computation.get();
+            mine.result().complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            // Forget the attempt so the next retry runs again; callers already waiting get the error
+            entries.asMap().remove(entryKey, mine);
+            mine.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static byte[] fingerprint(String request) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(request.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Entry(byte[] fingerprint, CompletableFuture<Object> result) {}
+}
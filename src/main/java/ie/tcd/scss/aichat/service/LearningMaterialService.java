@@ -0,0 +1,197 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.LearningMaterial;
+import ie.tcd.scss.aichat.dto.LearningMaterialBatch;
+import ie.tcd.scss.aichat.dto.PageLearningMaterial;
+import ie.tcd.scss.aichat.dto.SlideDocument;
+import ie.tcd.scss.aichat.dto.SlideSection;
+import ie.tcd.scss.aichat.util.JsonItemStreamParser;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.ResponseFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Fills in the {@link LearningMaterial} (topic, key points, review questions) of every page
+ * of a parsed slide deck or PDF.
+ *
+ * Slides are small, so one call per page would spend most of its time on round trips and
+ * repeated instructions. Instead pages are packed in page order into batches of at most
+ * {@code batch-max-tokens} of page text and {@code batch-max-pages} pages, and each batch is
+ * one model call answering with a JSON array keyed by page number. Batches run concurrently
+ * through the {@link ChunkFanOut}; a 60-slide deck takes a handful of calls.
+ *
+ * Results are cached per page in the generation cache, keyed by the page text, so a deck
+ * uploaded again (or another deck sharing slides) only sends the pages not seen before.
+ */
+@Service
+public class LearningMaterialService {
+
+    private static final String PROMPT_VERSION = "learning-material-v1"; // Bump when SYSTEM_PROMPT or the page format changes
+    private static final String SYSTEM_PROMPT = """
+            You turn lecture slides into study notes.
+            The user sends several pages, each starting with a line "=== Page N ===".
+            For every page return one entry with that page number, and:
+            - "topic": a short title for what the page covers
+            - "keyPoints": the 1-5 facts or ideas a student must remember from the page
+            - "questions": 1-3 short review questions answerable from the page alone
+            Pages with no study content (title pages, agendas, "Questions?") get an empty
+            "keyPoints" and "questions" list. Do not merge or skip pages.
+            """;
+    // Model output is constrained to this schema: {"pages": [{"page", "topic", "keyPoints", "questions"}]}
+    private static final String OUTPUT_SCHEMA = new BeanOutputConverter<>(LearningMaterialBatch.class).getJsonSchema();
+
+    private final ChatClient chatClient;
+    private final ChunkFanOut chunkFanOut;
+    private final GenerationCache generationCache;
+    private final TokenChunker tokenChunker;
+    private final ObjectMapper objectMapper;
+    private final int batchMaxTokens;
+    private final int batchMaxPages;
+
+    public LearningMaterialService(ChatModel chatModel, LlmGovernor llmGovernor, ChunkFanOut chunkFanOut,
+                                   GenerationCache generationCache, TokenChunker tokenChunker, ObjectMapper objectMapper,
+                                   @Value("${learning-material.batch-max-tokens:6000}") int batchMaxTokens,
+                                   @Value("${learning-material.batch-max-pages:20}") int batchMaxPages) {
+        this.chatClient = ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.BULK, "learning-material")).build();
+        this.chunkFanOut = chunkFanOut;
+        this.generationCache = generationCache;
+        this.tokenChunker = tokenChunker;
+        this.objectMapper = objectMapper;
+        this.batchMaxTokens = Math.max(1, batchMaxTokens);
+        this.batchMaxPages = Math.max(1, batchMaxPages);
+    }
+
+    /**
+     * Fill in the learning material of every section that has text, in place.
+     * Pages the model left out of its answer keep an empty learning material.
+     *
+     * @return Number of model calls made (0 when every page came from the cache)
+     */
+    public int populate(SlideDocument document) {
+        List<PendingPage> pending = new ArrayList<>();
+        for (SlideSection section : document.getSections()) {
+            if (section.getContent() == null || section.getContent().isBlank()) {
+                section.setLearningMaterial(new LearningMaterial());
+                continue;
+            }
+            String cacheKey = generationCache.key("learning-material", PROMPT_VERSION, section.getContent());
+            Optional<List<LearningMaterial>> cached = generationCache.get(cacheKey, LearningMaterial.class);
+            if (cached.isPresent() && !cached.get().isEmpty()) {
+                section.setLearningMaterial(cached.get().get(0));
+            } else {
+                pending.add(new PendingPage(section, cacheKey, tokenChunker.countTokens(section.getContent())));
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        List<List<PendingPage>> batches = pack(pending, batchMaxTokens, batchMaxPages);
+        System.out.println("Extracting learning material: " + pending.size() + " page(s) in " + batches.size()
+                + " call(s), " + (document.getSections().size() - pending.size()) + " from cache");
+
+        // Fan-out tasks run off the request thread, so carry the caller's identity into them
+        String user = LlmGovernor.currentUser();
+        List<Callable<List<PageLearningMaterial>>> tasks = new ArrayList<>();
+        for (List<PendingPage> batch : batches) {
+            tasks.add(() -> {
+                try (LlmGovernor.UserScope scope = LlmGovernor.actingAs(user)) {
+                    return extractBatch(batch);
+                }
+            });
+        }
+        ChunkFanOut.Outcome<PageLearningMaterial> outcome =
+                chunkFanOut.run(tasks, Integer.MAX_VALUE, ChunkProgressListener.NONE);
+
+        Map<Integer, PageLearningMaterial> byPage = new HashMap<>();
+        for (PageLearningMaterial page : outcome.items()) {
+            byPage.putIfAbsent(page.page(), page);
+        }
+        int missing = 0;
+        for (PendingPage page : pending) {
+            PageLearningMaterial extracted = byPage.get(page.section().getPageNumber());
+            if (extracted == null) {
+                page.section().setLearningMaterial(new LearningMaterial());
+                missing++;
+                continue;
+            }
+            LearningMaterial material = new LearningMaterial(extracted.topic(),
+                    new ArrayList<>(extracted.keyPoints()), new ArrayList<>(extracted.questions()));
+            page.section().setLearningMaterial(material);
+            generationCache.put(page.cacheKey(), List.of(material));
+        }
+        if (missing > 0) {
+            System.err.println("Learning material missing for " + missing + " page(s); they are retried on the next request");
+        }
+        return batches.size();
+    }
+
+    /**
+     * Pack pages into consecutive batches (next fit, keeping page order so each call sees
+     * neighbouring slides together). A page larger than the token budget goes alone.
+     */
+    static List<List<PendingPage>> pack(List<PendingPage> pages, int maxTokens, int maxPages) {
+        List<List<PendingPage>> batches = new ArrayList<>();
+        List<PendingPage> current = new ArrayList<>();
+        int tokens = 0;
+        for (PendingPage page : pages) {
+            if (!current.isEmpty() && (tokens + page.tokens() > maxTokens || current.size() >= maxPages)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                tokens = 0;
+            }
+            current.add(page);
+            tokens += page.tokens();
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    private List<PageLearningMaterial> extractBatch(List<PendingPage> batch) {
+        StringBuilder prompt = new StringBuilder();
+        for (PendingPage page : batch) {
+            prompt.append("=== Page ").append(page.section().getPageNumber()).append(" ===\n")
+                    .append(page.section().getContent()).append("\n\n");
+        }
+
+        ChatResponse response = chatClient.prompt()
+                .options(OpenAiChatOptions.builder()
+                        .responseFormat(new ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, OUTPUT_SCHEMA))
+                        .build())
+                .system(SYSTEM_PROMPT)
+                .user(prompt.toString())
+                .call()
+                .chatResponse();
+
+        String text = response != null && response.getResult() != null ? response.getResult().getOutput().getText() : null;
+        List<PageLearningMaterial> pages = text == null ? List.of()
+                : JsonItemStreamParser.parseAll(objectMapper, PageLearningMaterial.class, "pages",
+                        LearningMaterialService::isComplete, text);
+        if (pages.isEmpty()) {
+            // Fail the batch so it is retried instead of leaving every page in it empty
+            throw new IllegalStateException("Model output contained no usable pages");
+        }
+        return pages;
+    }
+
+    private static boolean isComplete(PageLearningMaterial page) {
+        return page.page() != null && page.topic() != null && page.keyPoints() != null && page.questions() != null;
+    }
+
+    record PendingPage(SlideSection section, String cacheKey, int tokens) {}
+}
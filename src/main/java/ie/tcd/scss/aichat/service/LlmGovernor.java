@@ -0,0 +1,365 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.LlmOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared admission control for every call to the chat model.
+ *
+ * At most {@code max-in-flight} provider calls run at once across the whole application.
+ * Waiting calls are served by priority class first: interactive chat always goes ahead of
+ * bulk quiz/flashcard generation, and bulk work may never hold more than
+ * {@code bulk-max-in-flight} slots, so some headroom is always left for chat.
+ *
+ * Within a class, users are served by self-clocked fair queuing: each call is tagged with
+ * its user's previous finish tag (or the class's virtual time, if later) plus its prompt
+ * size, and the smallest tag goes next. A user fanning out a 2M-char document therefore
+ * takes turns with everyone else instead of filling the queue, and a user sending small
+ * prompts gets proportionally more turns than one sending 20k-token chunks.
+ *
+ * Services obtain a governed model through {@link #govern(ChatModel, Priority, String)}. The user is
+ * taken from {@link #actingAs(String)} if set on the calling thread, otherwise from the
+ * authenticated principal.
+ */
+@Component
+public class LlmGovernor {
+
+    public enum Priority { INTERACTIVE, BULK }
+
+    static final String ANONYMOUS = "anonymous";
+
+    private static final ThreadLocal<String> CURRENT_USER = new ThreadLocal<>();
+
+    private final int maxInFlight;
+    private final int bulkMaxInFlight;
+    private final Duration interactiveMaxWait;
+    private final Duration bulkMaxWait;
+    private final LlmMetrics metrics;
+    private final TokenUsageLedger usageLedger;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ClassQueue interactive = new ClassQueue();
+    private final ClassQueue bulk = new ClassQueue();
+    private int inFlight;
+    private long sequence;
+
+    @Autowired
+    public LlmGovernor(
+            @Value("${llm.governor.max-in-flight:8}") int maxInFlight,
+            @Value("${llm.governor.bulk-max-in-flight:6}") int bulkMaxInFlight,
+            @Value("${llm.governor.interactive-max-wait:30s}") Duration interactiveMaxWait,
+            @Value("${llm.governor.bulk-max-wait:10m}") Duration bulkMaxWait,
+            LlmMetrics metrics,
+            TokenUsageLedger usageLedger) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.bulkMaxInFlight = Math.max(1, Math.min(bulkMaxInFlight, this.maxInFlight));
+        this.interactiveMaxWait = interactiveMaxWait;
+        this.bulkMaxWait = bulkMaxWait;
+        this.metrics = metrics;
+        this.usageLedger = usageLedger;
+    }
+
+    public LlmGovernor(int maxInFlight, int bulkMaxInFlight, Duration interactiveMaxWait, Duration bulkMaxWait,
+                       LlmMetrics metrics) {
+        this(maxInFlight, bulkMaxInFlight, interactiveMaxWait, bulkMaxWait, metrics, TokenUsageLedger.inMemory());
+    }
+
+    public LlmGovernor(int maxInFlight, int bulkMaxInFlight, Duration interactiveMaxWait, Duration bulkMaxWait) {
+        this(maxInFlight, bulkMaxInFlight, interactiveMaxWait, bulkMaxWait, new LlmMetrics(new SimpleMeterRegistry()));
+    }
+
+    public LlmGovernor(int maxInFlight) {
+        this(maxInFlight, maxInFlight, Duration.ofSeconds(30), Duration.ofMinutes(10));
+    }
+
+    /**
+     * Wrap a chat model so that every call and stream first waits for a slot in the given class.
+     * Calls are reported to {@link LlmMetrics} under the given service name, and their tokens
+     * are charged to the user's daily budget in the {@link TokenUsageLedger}, and the
+     * {@link ResilientChatModel} hedges them against the service's own latencies.
+     */
+    public ChatModel govern(ChatModel chatModel, Priority priority, String service) {
+        ChatModel model = chatModel instanceof ResilientChatModel resilient ? resilient.forService(service) : chatModel;
+        return new GovernedChatModel(metrics.instrument(model, service), this, usageLedger, priority);
+    }
+
+    /**
+     * Attribute LLM calls made on this thread to the given user until the scope is closed.
+     * Used where calls run off the request thread (chunk fan-out, background jobs).
+     */
+    public static UserScope actingAs(String user) {
+        String previous = CURRENT_USER.get();
+        CURRENT_USER.set(user);
+        return new UserScope(previous);
+    }
+
+    /**
+     * Generation runs know the user only by id, so they queue under {@code user:<id>}.
+     */
+    public static UserScope actingAs(Long userId) {
+        return actingAs(userKey(userId));
+    }
+
+    /**
+     * Key calls of the given user are queued and accounted under.
+     */
+    public static String userKey(Long userId) {
+        return "user:" + userId;
+    }
+
+    /**
+     * User the next call on this thread is queued under.
+     */
+    public static String currentUser() {
+        String user = CURRENT_USER.get();
+        if (user != null) {
+            return user;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            // Same key as generation runs, so a user's chat and generation calls share one budget
+            if (authentication.getPrincipal() instanceof AuthenticatedUser principal) {
+                return userKey(principal.getId());
+            }
+            return authentication.getName();
+        }
+        return ANONYMOUS;
+    }
+
+    /**
+     * Block until a slot is granted to this call.
+     *
+     * @param cost Relative size of the call (prompt characters); larger calls use up more of the user's share
+     * @return Permit that must be closed when the call has finished
+     * @throws LlmOverloadedException if no slot was granted within the class's maximum wait
+     * @throws CancellationException if the thread was interrupted while waiting
+     */
+    public Permit acquire(Priority priority, String user, long cost) {
+        ClassQueue queue = queueFor(priority);
+        long enqueuedAt = System.nanoTime();
+        long remaining = (priority == Priority.INTERACTIVE ? interactiveMaxWait : bulkMaxWait).toNanos();
+
+        lock.lock();
+        try {
+            Waiter waiter = queue.enqueue(user, Math.max(1, cost), sequence++, lock.newCondition());
+            dispatch();
+
+            while (!waiter.granted) {
+                if (remaining <= 0) {
+                    queue.cancel(waiter);
+                    queue.timedOut++;
+                    metrics.recordQueueTimeout(priority);
+                    throw new LlmOverloadedException(
+                            "No model capacity for " + priority.name().toLowerCase() + " request within "
+                                    + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - enqueuedAt) + "s");
+                }
+                try {
+                    remaining = waiter.ready.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        releaseLocked(priority);
+                    } else {
+                        queue.cancel(waiter);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting for model capacity");
+                }
+            }
+
+            long waited = System.nanoTime() - enqueuedAt;
+            queue.granted++;
+            queue.totalWaitNanos += waited;
+            queue.maxWaitNanos = Math.max(queue.maxWaitNanos, waited);
+            metrics.recordQueueWait(priority, waited);
+            return new Permit(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue depth, in-flight calls and wait times per priority class since startup.
+     */
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("maxInFlight", maxInFlight);
+            stats.put("bulkMaxInFlight", bulkMaxInFlight);
+            stats.put("inFlight", inFlight);
+            stats.put("interactive", interactive.stats());
+            stats.put("bulk", bulk.stats());
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Hand free slots to waiters: interactive first, bulk only below its own cap
+    private void dispatch() {
+        while (inFlight < maxInFlight) {
+            ClassQueue next;
+            if (!interactive.waiting.isEmpty()) {
+                next = interactive;
+            } else if (!bulk.waiting.isEmpty() && bulk.inFlight < bulkMaxInFlight) {
+                next = bulk;
+            } else {
+                return;
+            }
+
+            Waiter waiter = next.dequeue();
+            waiter.granted = true;
+            inFlight++;
+            next.inFlight++;
+            waiter.ready.signal();
+        }
+    }
+
+    private void release(Priority priority) {
+        lock.lock();
+        try {
+            releaseLocked(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseLocked(Priority priority) {
+        inFlight--;
+        queueFor(priority).inFlight--;
+        dispatch();
+    }
+
+    private ClassQueue queueFor(Priority priority) {
+        return priority == Priority.INTERACTIVE ? interactive : bulk;
+    }
+
+    /**
+     * A granted slot. Closing it more than once has no further effect.
+     */
+    public final class Permit implements AutoCloseable {
+        private final Priority priority;
+        private boolean released;
+
+        private Permit(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            release(priority);
+        }
+    }
+
+    /**
+     * Restores the previous user attribution of the thread when closed.
+     */
+    public static final class UserScope implements AutoCloseable {
+        private final String previous;
+
+        private UserScope(String previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (previous == null) {
+                CURRENT_USER.remove();
+            } else {
+                CURRENT_USER.set(previous);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final String user;
+        final double finishTag;
+        final long sequence;
+        final Condition ready;
+        boolean granted;
+
+        Waiter(String user, double finishTag, long sequence, Condition ready) {
+            this.user = user;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+            this.ready = ready;
+        }
+    }
+
+    // Waiting calls of one priority class, ordered by fair-queuing finish tag; guarded by the governor lock
+    private static final class ClassQueue {
+        final PriorityQueue<Waiter> waiting = new PriorityQueue<>(
+                Comparator.<Waiter>comparingDouble(w -> w.finishTag).thenComparingLong(w -> w.sequence));
+        final Map<String, Double> lastFinishTag = new HashMap<>();
+        double virtualTime;
+        int inFlight;
+        long granted;
+        long timedOut;
+        long totalWaitNanos;
+        long maxWaitNanos;
+
+        Waiter enqueue(String user, long cost, long sequence, Condition ready) {
+            double start = Math.max(virtualTime, lastFinishTag.getOrDefault(user, 0.0));
+            Waiter waiter = new Waiter(user, start + cost, sequence, ready);
+            lastFinishTag.put(user, waiter.finishTag);
+            waiting.add(waiter);
+            return waiter;
+        }
+
+        Waiter dequeue() {
+            Waiter waiter = waiting.poll();
+            virtualTime = waiter.finishTag;
+            // User has nothing else queued - its next call starts from virtual time anyway
+            Double last = lastFinishTag.get(waiter.user);
+            if (last != null && last <= virtualTime) {
+                lastFinishTag.remove(waiter.user);
+            }
+            return waiter;
+        }
+
+        // Timed out or interrupted before being granted
+        void cancel(Waiter waiter) {
+            waiting.remove(waiter);
+            if (waiting.stream().noneMatch(w -> w.user.equals(waiter.user))) {
+                lastFinishTag.remove(waiter.user);
+            }
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("inFlight", inFlight);
+            stats.put("queued", waiting.size());
+            stats.put("queuedUsers", waiting.stream().map(w -> w.user).distinct().count());
+            stats.put("granted", granted);
+            stats.put("timedOut", timedOut);
+            stats.put("avgWaitMs", granted == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / granted);
+            stats.put("maxWaitMs", maxWaitNanos / 1_000_000.0);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ie.tcd.scss.aichat.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for chat model traffic, tagged by the calling service (quiz, flashcards,
+ * chat, conversation, ...) and the model that answered:
+ *
+ *   llm.call             timer, per call or stream, with outcome success/error/cancelled
+ *   llm.tokens           counter, type input/output, from the provider's usage block
+ *   llm.governor.wait    timer, time spent queued for a governor slot, per priority class
+ *   llm.governor.timeout counter, calls that gave up waiting for a slot
+ *
+ * Models are instrumented through {@link LlmGovernor#govern}, so the call timer measures the
+ * provider round trip only and queueing shows up in the wait timer.
+ */
+@Component
+public class LlmMetrics {
+
+    static final String UNKNOWN_MODEL = "unknown";
+
+    private final MeterRegistry registry;
+
+    public LlmMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Wrap a chat model so that every call and stream is timed and its token usage counted.
+     */
+    public ChatModel instrument(ChatModel chatModel, String service) {
+        return new MeteredChatModel(chatModel, this, service);
+    }
+
+    void recordCall(String service, String model, String mode, String outcome, long nanos) {
+        Timer.builder("llm.call")
+                .description("Chat model round trip")
+                .tag("service", service)
+                .tag("model", model)
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count the tokens of a response's usage block. Responses without usage (most stream
+     * chunks) count nothing.
+     */
+    void recordUsage(String service, String model, ChatResponse response) {
+        Usage usage = usageOf(response);
+        if (usage == null) {
+            return;
+        }
+        tokens(service, model, "input").increment(usage.getPromptTokens());
+        if (usage.getCompletionTokens() != null) {
+            tokens(service, model, "output").increment(usage.getCompletionTokens());
+        }
+    }
+
+    void recordQueueWait(LlmGovernor.Priority priority, long nanos) {
+        Timer.builder("llm.governor.wait")
+                .description("Time a model call waited for a governor slot")
+                .tag("priority", priority.name().toLowerCase())
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordQueueTimeout(LlmGovernor.Priority priority) {
+        Counter.builder("llm.governor.timeout")
+                .description("Model calls rejected after waiting too long for a governor slot")
+                .tag("priority", priority.name().toLowerCase())
+                .register(registry)
+                .increment();
+    }
+
+    static Usage usageOf(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return null;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        if (usage == null || usage.getPromptTokens() == null || usage.getPromptTokens() == 0) {
+            return null;
+        }
+        return usage;
+    }
+
+    // Model named by the provider in the response; the requested name is user input on some endpoints
+    static String modelOf(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return UNKNOWN_MODEL;
+        }
+        String model = response.getMetadata().getModel();
+        return model == null || model.isBlank() ? UNKNOWN_MODEL : model;
+    }
+
+    private Counter tokens(String service, String model, String type) {
+        return Counter.builder("llm.tokens")
+                .description("Tokens reported by the provider")
+                .tag("service", service)
+                .tag("model", model)
+                .tag("type", type)
+                .register(registry);
+    }
+}
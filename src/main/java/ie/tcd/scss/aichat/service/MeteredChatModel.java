@@ -0,0 +1,72 @@
+package ie.tcd.scss.aichat.service;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+/**
+ * ChatModel decorator that reports each call and stream to {@link LlmMetrics}. Created
+ * through {@link LlmMetrics#instrument}.
+ */
+class MeteredChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final LlmMetrics metrics;
+    private final String service;
+
+    MeteredChatModel(ChatModel delegate, LlmMetrics metrics, String service) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.service = service;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        long start = System.nanoTime();
+        ChatResponse response;
+        try {
+            response = delegate.call(prompt);
+        } catch (RuntimeException e) {
+            metrics.recordCall(service, LlmMetrics.UNKNOWN_MODEL, "call", "error", System.nanoTime() - start);
+            throw e;
+        }
+        String model = LlmMetrics.modelOf(response);
+        metrics.recordCall(service, model, "call", "success", System.nanoTime() - start);
+        metrics.recordUsage(service, model, response);
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            String[] model = {LlmMetrics.UNKNOWN_MODEL};
+            return delegate.stream(prompt)
+                    .doOnNext(response -> {
+                        String named = LlmMetrics.modelOf(response);
+                        if (!LlmMetrics.UNKNOWN_MODEL.equals(named)) {
+                            model[0] = named;
+                        }
+                        metrics.recordUsage(service, model[0], response);
+                    })
+                    .doFinally(signal -> metrics.recordCall(service, model[0], "stream", outcomeOf(signal),
+                            System.nanoTime() - start));
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    private static String outcomeOf(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            default -> "cancelled";
+        };
+    }
+}
@@ -17,8 +17,8 @@ public class ModelService {
     @Value("${spring.ai.openai.api-key:}")
     private String openAiApiKey;
     
-    public ModelService(ChatModel chatModel) {
-        this.defaultChatModel = chatModel;
+    public ModelService(ChatModel chatModel, LlmGovernor llmGovernor) {
+        this.defaultChatModel = llmGovernor.govern(chatModel, LlmGovernor.Priority.INTERACTIVE, "models");
     }
     
     public String chatWithModel(String modelName, String userMessage, Double temperature) {
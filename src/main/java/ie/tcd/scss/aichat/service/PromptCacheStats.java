@@ -0,0 +1,64 @@
+package ie.tcd.scss.aichat.service;
+
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts cached vs uncached input tokens reported by the provider for generation calls.
+ *
+ * OpenAI caches prompt prefixes automatically (for prompts of 1024+ tokens) and reports the
+ * reused part as cached_tokens in the usage block. Generation prompts put the static,
+ * versioned instructions first so that prefix is shared between chunks and users; these
+ * counters show how much of the input is actually being served from that cache.
+ */
+@Component
+public class PromptCacheStats {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder inputTokens = new LongAdder();
+    private final LongAdder cachedInputTokens = new LongAdder();
+
+    /**
+     * Record the usage block of a response. Responses without usage (e.g. intermediate
+     * stream chunks) are ignored.
+     */
+    public void record(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        if (usage == null || usage.getPromptTokens() == null || usage.getPromptTokens() == 0) {
+            return;
+        }
+
+        calls.increment();
+        inputTokens.add(usage.getPromptTokens());
+        if (usage.getNativeUsage() instanceof OpenAiApi.Usage nativeUsage
+                && nativeUsage.promptTokensDetails() != null
+                && nativeUsage.promptTokensDetails().cachedTokens() != null) {
+            cachedInputTokens.add(nativeUsage.promptTokensDetails().cachedTokens());
+        }
+    }
+
+    /**
+     * Cached/uncached input token totals since startup.
+     */
+    public Map<String, Object> stats() {
+        long total = inputTokens.sum();
+        long cached = cachedInputTokens.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.sum());
+        stats.put("inputTokens", total);
+        stats.put("cachedInputTokens", cached);
+        stats.put("uncachedInputTokens", total - cached);
+        stats.put("cachedRatio", total == 0 ? 0.0 : (double) cached / total);
+        return stats;
+    }
+}
@@ -11,8 +11,8 @@ public class PromptTemplateService {
     
     private final ChatClient chatClient;
     
-    public PromptTemplateService(ChatModel chatModel) {
-        this.chatClient = ChatClient.builder(chatModel).build();
+    public PromptTemplateService(ChatModel chatModel, LlmGovernor llmGovernor) {
+        this.chatClient = ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.INTERACTIVE, "prompt-template")).build();
     }
     
     public String chatWithPersona(String persona, String userMessage) {
@@ -83,7 +83,10 @@ public class PromptTemplateService {
         };
     }
     
-    private String fillTemplate(String template, Map<String, Object> variables) {
+    /**
+     * Replace each {name} placeholder in the template with the value of that variable.
+     */
+    public static String fillTemplate(String template, Map<String, Object> variables) {
         String result = template;
         for (Map.Entry<String, Object> entry : variables.entrySet()) {
             result = result.replace("{" + entry.getKey() + "}", 
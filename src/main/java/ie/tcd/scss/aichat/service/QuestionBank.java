@@ -0,0 +1,237 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.dto.QuizQuestion;
+import ie.tcd.scss.aichat.model.BankQuestion;
+import ie.tcd.scss.aichat.model.BankQuestionSeen;
+import ie.tcd.scss.aichat.repository.BankQuestionRepository;
+import ie.tcd.scss.aichat.repository.BankQuestionSeenRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per-material bank of generated quiz questions.
+ *
+ * Every question generated for a quiz is stored under the hash of its (whitespace-normalised)
+ * study material and its difficulty. A later quiz request on the same material is served by
+ * sampling questions the user has not been served before, with no model calls. Only when
+ * the bank cannot cover a request does the quiz go to the model, and its questions are
+ * banked in turn.
+ *
+ * When serving a request leaves the user fewer than {@code quiz.bank.min-unseen} unseen
+ * questions, the bank is topped up in the background with {@code quiz.bank.top-up-size}
+ * new questions (at most one top-up per material and difficulty at a time), until it holds
+ * {@code quiz.bank.max-size}. Top-up prompts list the questions already banked so the model
+ * writes different ones; repeats that slip through are stored once.
+ */
+@Service
+public class QuestionBank {
+
+    private final BankQuestionRepository questionRepository;
+    private final BankQuestionSeenRepository seenRepository;
+    private final GenerationMetrics generationMetrics;
+    private final boolean enabled;
+    private final int minUnseen;
+    private final int topUpSize;
+    private final int maxSize;
+
+    private final ExecutorService topUps = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<String> toppingUp = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public QuestionBank(BankQuestionRepository questionRepository,
+                        BankQuestionSeenRepository seenRepository,
+                        GenerationMetrics generationMetrics,
+                        @Value("${quiz.bank.enabled:true}") boolean enabled,
+                        @Value("${quiz.bank.min-unseen:10}") int minUnseen,
+                        @Value("${quiz.bank.top-up-size:20}") int topUpSize,
+                        @Value("${quiz.bank.max-size:200}") int maxSize) {
+        this.questionRepository = questionRepository;
+        this.seenRepository = seenRepository;
+        this.generationMetrics = generationMetrics;
+        this.enabled = enabled;
+        this.minUnseen = Math.max(0, minUnseen);
+        this.topUpSize = Math.max(1, topUpSize);
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Bank that stores nothing and never serves, for services built outside the application
+     * context (tests, benchmarks).
+     */
+    public static QuestionBank disabled() {
+        return new QuestionBank(null, null, null, false, 0, 1, 0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getTopUpSize() {
+        return topUpSize;
+    }
+
+    /**
+     * Bank key of study material: same material modulo whitespace, same key.
+     */
+    public static String materialHash(String studyMaterial) {
+        return GenerationCoalescer.key("material", studyMaterial);
+    }
+
+    /**
+     * Sample count questions the user has not been served yet and mark them served.
+     *
+     * Questions are claimed one at a time, each in its own insert: a question a concurrent
+     * request of the same user claimed first fails on its own (unique user/question key) and
+     * is replaced by another unseen one, so two requests never serve the same question.
+     *
+     * @return The questions, or empty if the bank cannot cover the whole request
+     */
+    public Optional<List<QuizQuestion>> take(String materialHash, String difficulty, Long userId, int count) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        List<Long> unseen = new ArrayList<>(questionRepository.findUnseenIds(materialHash, difficulty, userId));
+        if (unseen.size() < count) {
+            generationMetrics.bankLookup("quiz", false);
+            return Optional.empty();
+        }
+
+        Collections.shuffle(unseen, ThreadLocalRandom.current());
+        List<BankQuestionSeen> claimed = new ArrayList<>(count);
+        for (Iterator<Long> ids = unseen.iterator(); claimed.size() < count && ids.hasNext(); ) {
+            try {
+                claimed.add(seenRepository.saveAndFlush(new BankQuestionSeen(userId, ids.next())));
+            } catch (DataIntegrityViolationException e) {
+                // Served to the same user by a concurrent request
+            }
+        }
+        if (claimed.size() < count) {
+            // Concurrent requests took too many: hand the claimed questions back, the model writes this quiz
+            seenRepository.deleteAll(claimed);
+            generationMetrics.bankLookup("quiz", false);
+            return Optional.empty();
+        }
+        generationMetrics.bankLookup("quiz", true);
+
+        Map<Long, BankQuestion> rows = questionRepository
+                .findAllById(claimed.stream().map(BankQuestionSeen::getBankQuestionId).toList()).stream()
+                .collect(Collectors.toMap(BankQuestion::getId, Function.identity()));
+        return Optional.of(claimed.stream()
+                .map(seen -> toDto(rows.get(seen.getBankQuestionId())))
+                .toList());
+    }
+
+    /**
+     * Store questions generated for this material, skipping ones already banked.
+     *
+     * @param servedTo User the questions were just served to (marked as seen), or null
+     * @return Number of questions added
+     */
+    public int add(String materialHash, String difficulty, List<QuizQuestion> questions, Long servedTo) {
+        if (!enabled) {
+            return 0;
+        }
+        int added = 0;
+        for (QuizQuestion question : questions) {
+            String questionHash = questionHash(question);
+            try {
+                Optional<BankQuestion> banked =
+                        questionRepository.findByMaterialHashAndDifficultyAndQuestionHash(materialHash, difficulty, questionHash);
+                BankQuestion stored = banked.orElseGet(() -> questionRepository.save(
+                        toEntity(question, materialHash, difficulty, questionHash)));
+                if (banked.isEmpty()) {
+                    added++;
+                }
+                if (servedTo != null) {
+                    seenRepository.save(new BankQuestionSeen(servedTo, stored.getId()));
+                }
+            } catch (DataIntegrityViolationException e) {
+                // Banked (or marked seen) concurrently by another request
+            }
+        }
+        generationMetrics.bankAdded("quiz", added);
+        return added;
+    }
+
+    /**
+     * Top the bank up in the background if it runs low for this user and is not full.
+     *
+     * @param generator Generates new questions, given the texts of questions already banked
+     */
+    public void topUpIfLow(String materialHash, String difficulty, Long userId,
+                           Function<List<String>, List<QuizQuestion>> generator) {
+        if (!enabled || questionRepository.countByMaterialHashAndDifficulty(materialHash, difficulty) >= maxSize
+                || questionRepository.countUnseen(materialHash, difficulty, userId) >= minUnseen) {
+            return;
+        }
+        String key = materialHash + ":" + difficulty;
+        if (!toppingUp.add(key)) {
+            return;
+        }
+        topUps.execute(() -> {
+            try {
+                List<String> banked = questionRepository
+                        .findTop50ByMaterialHashAndDifficultyOrderByIdDesc(materialHash, difficulty).stream()
+                        .map(BankQuestion::getQuestion)
+                        .toList();
+                int added = add(materialHash, difficulty, generator.apply(banked), null);
+                System.out.println("Question bank " + materialHash.substring(0, 12) + "/" + difficulty
+                        + " topped up with " + added + " question(s)");
+            } catch (Exception e) {
+                System.err.println("Question bank top-up failed: " + e.getMessage());
+            } finally {
+                toppingUp.remove(key);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        topUps.shutdownNow();
+    }
+
+    private static String questionHash(QuizQuestion question) {
+        return GenerationCoalescer.key("question", question.getQuestion().toLowerCase(Locale.ROOT));
+    }
+
+    private static BankQuestion toEntity(QuizQuestion dto, String materialHash, String difficulty, String questionHash) {
+        BankQuestion entity = new BankQuestion();
+        entity.setMaterialHash(materialHash);
+        entity.setDifficulty(difficulty);
+        entity.setQuestionHash(questionHash);
+        entity.setQuestion(dto.getQuestion());
+        entity.setOptionA(dto.getOptions().get(0));
+        entity.setOptionB(dto.getOptions().get(1));
+        entity.setOptionC(dto.getOptions().get(2));
+        entity.setOptionD(dto.getOptions().get(3));
+        entity.setCorrectAnswer(String.valueOf((char) ('A' + dto.getCorrectAnswer())));
+        entity.setExplanation(dto.getExplanation());
+        return entity;
+    }
+
+    private static QuizQuestion toDto(BankQuestion entity) {
+        return new QuizQuestion(
+                entity.getQuestion(),
+                List.of(entity.getOptionA(), entity.getOptionB(), entity.getOptionC(), entity.getOptionD()),
+                entity.getCorrectAnswer().charAt(0) - 'A',
+                entity.getExplanation());
+    }
+}
@@ -0,0 +1,265 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ie.tcd.scss.aichat.dto.QuestionExplanation;
+import ie.tcd.scss.aichat.dto.QuestionExplanationBatch;
+import ie.tcd.scss.aichat.model.QuizQuestion;
+import ie.tcd.scss.aichat.model.QuizSet;
+import ie.tcd.scss.aichat.repository.QuizQuestionRepository;
+import ie.tcd.scss.aichat.util.JsonItemStreamParser;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.ResponseFormat;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Explanations of quiz answers, generated when a student first asks for them.
+ *
+ * With {@code quiz.explanations.lazy=true} quizzes are generated without explanations,
+ * which are most of the output tokens of a quiz and are read for only a few questions.
+ * An explanation is written the first time it is requested, stored on the question and
+ * cached by question content, so the same question served again (from the question bank,
+ * or to another user) is explained once. A whole set can be explained up front in batched
+ * calls of {@code quiz.explanations.batch-size} questions.
+ *
+ * The prompt does not carry the whole study material: for every question it carries the
+ * excerpt of {@code quiz.explanations.context-tokens} tokens that shares the most words
+ * with the question and its correct option. The excerpts of a set are cut once and kept
+ * (up to {@code quiz.explanations.excerpt-cache.max-chars} of material), since a student
+ * asking for explanations one question at a time would otherwise have the whole material
+ * tokenised again on every request.
+ */
+@Service
+public class QuizExplanationService {
+
+    private static final String PROMPT_VERSION = "explanation-v1"; // Bump when SYSTEM_PROMPT or the prompt layout changes (invalidates cache)
+    private static final String SYSTEM_PROMPT = """
+            You explain the answers of multiple-choice quiz questions to a student.
+
+            For every numbered question, say in two to four sentences why the correct option is correct,
+            using the study material excerpts where they cover it, and why the most tempting wrong
+            option is wrong. Do not restate the question.
+
+            Return the explanations as JSON in the "explanations" array, each with the number of its question.
+            """;
+    // Model output is constrained to this schema: {"explanations": [{"question", "explanation"}]}
+    private static final String OUTPUT_SCHEMA = new BeanOutputConverter<>(QuestionExplanationBatch.class).getJsonSchema();
+
+    // One question: a student is waiting on it. Whole set: prefetch, queued behind interactive calls
+    private final ChatClient interactiveClient;
+    private final ChatClient bulkClient;
+    private final ChunkFanOut chunkFanOut;
+    private final GenerationCache generationCache;
+    private final TokenChunker tokenChunker;
+    private final QuizQuestionRepository quizQuestionRepository;
+    private final ObjectMapper objectMapper;
+    private final GenerationMetrics generationMetrics;
+    private final int contextTokens;
+    private final int batchSize;
+    // Excerpts of recently explained sets by set id; the material of a saved set never changes
+    private final Cache<Long, ExcerptIndex> excerptIndexes;
+
+    public QuizExplanationService(ChatModel chatModel, LlmGovernor llmGovernor, ChunkFanOut chunkFanOut,
+                                  GenerationCache generationCache, TokenChunker tokenChunker,
+                                  QuizQuestionRepository quizQuestionRepository, ObjectMapper objectMapper,
+                                  GenerationMetrics generationMetrics,
+                                  @Value("${quiz.explanations.context-tokens:800}") int contextTokens,
+                                  @Value("${quiz.explanations.batch-size:10}") int batchSize,
+                                  @Value("${quiz.explanations.excerpt-cache.max-chars:20000000}") long maxCachedChars) {
+        this.interactiveClient = ChatClient.builder(
+                llmGovernor.govern(chatModel, LlmGovernor.Priority.INTERACTIVE, "explanation")).build();
+        this.bulkClient = ChatClient.builder(
+                llmGovernor.govern(chatModel, LlmGovernor.Priority.BULK, "explanation")).build();
+        this.chunkFanOut = chunkFanOut;
+        this.generationCache = generationCache;
+        this.tokenChunker = tokenChunker;
+        this.quizQuestionRepository = quizQuestionRepository;
+        this.objectMapper = objectMapper;
+        this.generationMetrics = generationMetrics;
+        this.contextTokens = Math.max(1, contextTokens);
+        this.batchSize = Math.max(1, batchSize);
+        this.excerptIndexes = Caffeine.newBuilder()
+                .maximumWeight(maxCachedChars)
+                .weigher((Long id, ExcerptIndex index) -> index.chars())
+                .build();
+    }
+
+    /**
+     * Explanation of one question of the set, written and stored on first request.
+     *
+     * @throws IllegalStateException if the model did not produce an explanation
+     */
+    public String explain(QuizSet quizSet, QuizQuestion question) {
+        if (!hasExplanation(question)) {
+            explainMissing(quizSet, List.of(question), interactiveClient);
+        }
+        if (!hasExplanation(question)) {
+            throw new IllegalStateException("Could not generate an explanation for question " + question.getId());
+        }
+        return question.getExplanation();
+    }
+
+    /**
+     * Explain every question of the set that has no explanation yet (prefetch).
+     * Questions the model failed to explain stay without one and can be requested again.
+     *
+     * @return All questions of the set, in order
+     */
+    public List<QuizQuestion> explainAll(QuizSet quizSet) {
+        List<QuizQuestion> questions = quizSet.getQuestions().stream()
+                .sorted(Comparator.comparing(QuizQuestion::getPosition))
+                .toList();
+        List<QuizQuestion> missing = questions.stream().filter(q -> !hasExplanation(q)).toList();
+        if (!missing.isEmpty()) {
+            explainMissing(quizSet, missing, bulkClient);
+        }
+        return questions;
+    }
+
+    private void explainMissing(QuizSet quizSet, List<QuizQuestion> missing, ChatClient chatClient) {
+        ExcerptIndex excerpts = excerptsOf(quizSet);
+
+        List<PendingQuestion> pending = new ArrayList<>();
+        List<QuizQuestion> explained = new ArrayList<>();
+        for (QuizQuestion question : missing) {
+            TextChunk excerpt = excerpts.closestTo(question.getQuestion() + " " + correctOption(question));
+            String cacheKey = generationCache.key("explanation", PROMPT_VERSION, question.getQuestion(),
+                    question.getOptionA(), question.getOptionB(), question.getOptionC(), question.getOptionD(),
+                    question.getCorrectAnswer(), excerpt != null ? excerpt.toString() : "");
+            Optional<List<String>> cached = generationCache.get(cacheKey, String.class);
+            if (cached.isPresent() && !cached.get().isEmpty()) {
+                question.setExplanation(cached.get().get(0));
+                explained.add(question);
+            } else {
+                pending.add(new PendingQuestion(question, excerpt, cacheKey));
+            }
+        }
+        generationMetrics.explanationsServed("cache", explained.size());
+
+        if (!pending.isEmpty()) {
+            System.out.println("Explaining " + pending.size() + " question(s) of quiz set " + quizSet.getId()
+                    + ", " + explained.size() + " from cache");
+            Long userId = quizSet.getUser().getId();
+            List<Callable<List<QuestionExplanation>>> tasks = new ArrayList<>();
+            for (int i = 0; i < pending.size(); i += batchSize) {
+                List<PendingQuestion> batch = pending.subList(i, Math.min(pending.size(), i + batchSize));
+                tasks.add(() -> {
+                    try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId)) {
+                        return explainBatch(batch, chatClient);
+                    }
+                });
+            }
+            ChunkFanOut.Outcome<QuestionExplanation> outcome =
+                    chunkFanOut.run(tasks, Integer.MAX_VALUE, ChunkProgressListener.NONE);
+
+            Map<Integer, String> byNumber = new HashMap<>();
+            for (QuestionExplanation explanation : outcome.items()) {
+                byNumber.putIfAbsent(explanation.question(), explanation.explanation());
+            }
+            int generated = 0;
+            for (PendingQuestion question : pending) {
+                String explanation = byNumber.get(number(question.question()));
+                if (explanation == null) {
+                    continue;
+                }
+                question.question().setExplanation(explanation);
+                generationCache.put(question.cacheKey(), List.of(explanation));
+                explained.add(question.question());
+                generated++;
+            }
+            generationMetrics.explanationsServed("model", generated);
+            if (generated < pending.size()) {
+                System.err.println("No explanation for " + (pending.size() - generated)
+                        + " question(s) of quiz set " + quizSet.getId() + "; they are retried on the next request");
+            }
+        }
+
+        if (!explained.isEmpty()) {
+            quizQuestionRepository.saveAll(explained);
+        }
+    }
+
+    private ExcerptIndex excerptsOf(QuizSet quizSet) {
+        if (quizSet.getId() == null) {
+            return ExcerptIndex.of(tokenChunker, quizSet.getStudyMaterial(), contextTokens);
+        }
+        return excerptIndexes.get(quizSet.getId(),
+                id -> ExcerptIndex.of(tokenChunker, quizSet.getStudyMaterial(), contextTokens));
+    }
+
+    private List<QuestionExplanation> explainBatch(List<PendingQuestion> batch, ChatClient chatClient) {
+        ChatResponse response = chatClient.prompt()
+                .options(OpenAiChatOptions.builder()
+                        .responseFormat(new ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, OUTPUT_SCHEMA))
+                        .build())
+                .system(SYSTEM_PROMPT)
+                .user(buildPrompt(batch))
+                .call()
+                .chatResponse();
+
+        String text = response != null && response.getResult() != null ? response.getResult().getOutput().getText() : null;
+        List<QuestionExplanation> explanations = text == null ? List.of()
+                : JsonItemStreamParser.parseAll(objectMapper, QuestionExplanation.class, "explanations",
+                        QuizExplanationService::isComplete, text);
+        if (explanations.isEmpty()) {
+            // Fail the batch so it is retried instead of leaving every question unexplained
+            throw new IllegalStateException("Model output contained no usable explanations");
+        }
+        return explanations;
+    }
+
+    // Excerpts first, then the numbered questions with their answers
+    static String buildPrompt(List<PendingQuestion> batch) {
+        StringBuilder prompt = new StringBuilder(ExcerptIndex.render(batch.stream().map(PendingQuestion::excerpt).toList()));
+        for (PendingQuestion pending : batch) {
+            QuizQuestion question = pending.question();
+            prompt.append("=== Question ").append(number(question)).append(" ===\n")
+                    .append(question.getQuestion()).append('\n')
+                    .append("A) ").append(question.getOptionA()).append('\n')
+                    .append("B) ").append(question.getOptionB()).append('\n')
+                    .append("C) ").append(question.getOptionC()).append('\n')
+                    .append("D) ").append(question.getOptionD()).append('\n')
+                    .append("Correct answer: ").append(question.getCorrectAnswer()).append("\n\n");
+        }
+        return prompt.toString();
+    }
+
+    private static String correctOption(QuizQuestion question) {
+        return switch (question.getCorrectAnswer()) {
+            case "A" -> question.getOptionA();
+            case "B" -> question.getOptionB();
+            case "C" -> question.getOptionC();
+            case "D" -> question.getOptionD();
+            default -> "";
+        };
+    }
+
+    // Questions are numbered by their position in the set, so batches can be merged back by number
+    private static int number(QuizQuestion question) {
+        return question.getPosition() + 1;
+    }
+
+    private static boolean hasExplanation(QuizQuestion question) {
+        return question.getExplanation() != null && !question.getExplanation().isBlank();
+    }
+
+    private static boolean isComplete(QuestionExplanation explanation) {
+        return explanation.question() != null && explanation.explanation() != null && !explanation.explanation().isBlank();
+    }
+
+    record PendingQuestion(QuizQuestion question, TextChunk excerpt, String cacheKey) {}
+}
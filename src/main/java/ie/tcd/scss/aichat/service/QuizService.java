@@ -1,72 +1,110 @@
 package ie.tcd.scss.aichat.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.GenerationResult;
 import ie.tcd.scss.aichat.dto.QuizQuestion;
+import ie.tcd.scss.aichat.dto.QuizQuestionBatch;
+import ie.tcd.scss.aichat.dto.UnexplainedQuizQuestionBatch;
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
 import ie.tcd.scss.aichat.model.QuizSet;
 import ie.tcd.scss.aichat.model.User;
-import ie.tcd.scss.aichat.repository.QuizSetRepository;
+import ie.tcd.scss.aichat.repository.GeneratedSetWriter;
 import ie.tcd.scss.aichat.repository.UserRepository;
+import ie.tcd.scss.aichat.util.JsonItemStreamParser;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.ResponseFormat;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class QuizService {
     
     private final ChatClient chatClient;
-    private static final int MAX_TOKENS_PER_CHUNK = 20000; // Safe universal default for all GPT models
-    private static final int CHARS_PER_TOKEN = 4; // Rough estimate: 1 token ≈ 4 chars
-    private final QuizSetRepository quizSetRepository;
+    private static final String PROMPT_VERSION = "quiz-v3"; // Bump when SYSTEM_PROMPT or buildQuizPrompt changes (invalidates cache)
+    private static final String LAZY_PROMPT_VERSION = "quiz-lazy-v1"; // Same, for LAZY_SYSTEM_PROMPT
+    // Static instructions go first and never vary, so the provider can reuse the cached prefix across chunks and users
+    private static final String REQUIREMENTS = """
+            You write multiple-choice quiz questions from study material supplied by the user.
+            
+            Requirements:
+            - Each question should have exactly 4 options
+            - Only ONE option is correct
+            - Base every question on the study material only
+            - Match the requested difficulty:
+              - easy: Questions should test basic recall
+              - medium: Questions should test understanding
+              - hard: Questions should require deep analysis
+            
+            """;
+    private static final String SYSTEM_PROMPT = REQUIREMENTS + """
+            Return the questions as JSON in the "questions" array. For each question,
+            "correctAnswer" is the index (0-3) of the correct option in "options" and
+            "explanation" says why that option is correct.
+            """;
+    // Explanations left out: QuizExplanationService writes them when a student asks for one
+    private static final String LAZY_SYSTEM_PROMPT = REQUIREMENTS + """
+            Return the questions as JSON in the "questions" array. For each question,
+            "correctAnswer" is the index (0-3) of the correct option in "options".
+            Do not write explanations.
+            """;
+    // Model output is constrained to this schema: {"questions": [{"question", "options", "correctAnswer", "explanation"}]}
+    private static final String OUTPUT_SCHEMA = new BeanOutputConverter<>(QuizQuestionBatch.class).getJsonSchema();
+    // Same without "explanation"
+    private static final String LAZY_OUTPUT_SCHEMA = new BeanOutputConverter<>(UnexplainedQuizQuestionBatch.class).getJsonSchema();
+    private final String promptVersion;
+    private final String systemPrompt;
+    private final String outputSchema;
+    private final GeneratedSetWriter generatedSetWriter;
     private final UserRepository userRepository;
+    private final ChunkFanOut chunkFanOut;
+    private final GenerationCache generationCache;
+    private final GenerationPlanner generationPlanner;
+    private final ObjectMapper objectMapper;
+    private final PromptCacheStats promptCacheStats;
+    private final GenerationMetrics generationMetrics;
+    private final GenerationCoalescer generationCoalescer;
+    private final QuestionBank questionBank;
+    private final GenerationVerifier generationVerifier;
     
-    public QuizService(ChatModel chatModel, QuizSetRepository quizSetRepository, 
-                      UserRepository userRepository) {
-        this.chatClient = ChatClient.builder(chatModel).build();
-        this.quizSetRepository = quizSetRepository;
+    public QuizService(ChatModel chatModel, GeneratedSetWriter generatedSetWriter, 
+                      UserRepository userRepository, ChunkFanOut chunkFanOut,
+                      GenerationCache generationCache, GenerationPlanner generationPlanner,
+                      ObjectMapper objectMapper, PromptCacheStats promptCacheStats,
+                      LlmGovernor llmGovernor, GenerationMetrics generationMetrics,
+                      GenerationCoalescer generationCoalescer, QuestionBank questionBank,
+                      GenerationVerifier generationVerifier,
+                      @Value("${quiz.explanations.lazy:false}") boolean lazyExplanations) {
+        // Bulk priority: interactive chat is served first when the provider is busy
+        this.chatClient = ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.BULK, "quiz")).build();
+        this.generatedSetWriter = generatedSetWriter;
         this.userRepository = userRepository;
-    }
-
-    /**
-     * Split text into chunks to ensure compatibility with all OpenAI models
-     * Always chunks input for consistent behavior and quality
-     */
-    private List<String> splitIntoChunks(String text) {
-        List<String> chunks = new ArrayList<>();
-        int maxChars = MAX_TOKENS_PER_CHUNK * CHARS_PER_TOKEN;
-        
-        // If text is small enough, return as single chunk
-        if (text.length() <= maxChars) {
-            chunks.add(text);
-            return chunks;
-        }
-        
-        // Split into chunks at natural boundaries
-        int start = 0;
-        while (start < text.length()) {
-            int end = Math.min(start + maxChars, text.length());
-            
-            // Try to break at paragraph or sentence boundary
-            if (end < text.length()) {
-                int lastParagraph = text.lastIndexOf("\n\n", end);
-                int lastSentence = text.lastIndexOf(". ", end);
-                
-                if (lastParagraph > start + (maxChars / 2)) {
-                    end = lastParagraph + 2;
-                } else if (lastSentence > start + (maxChars / 2)) {
-                    end = lastSentence + 2;
-                }
-            }
-            
-            chunks.add(text.substring(start, end));
-            start = end;
-        }
-        
-        return chunks;
+        this.chunkFanOut = chunkFanOut;
+        this.generationCache = generationCache;
+        this.generationPlanner = generationPlanner;
+        this.objectMapper = objectMapper;
+        this.promptCacheStats = promptCacheStats;
+        this.generationMetrics = generationMetrics;
+        this.generationCoalescer = generationCoalescer;
+        this.questionBank = questionBank;
+        this.generationVerifier = generationVerifier;
+        // Lazy explanations: about half the output tokens per question, so the quiz is ready sooner
+        this.promptVersion = lazyExplanations ? LAZY_PROMPT_VERSION : PROMPT_VERSION;
+        this.systemPrompt = lazyExplanations ? LAZY_SYSTEM_PROMPT : SYSTEM_PROMPT;
+        this.outputSchema = lazyExplanations ? LAZY_OUTPUT_SCHEMA : OUTPUT_SCHEMA;
     }
     
     /**
@@ -74,6 +112,7 @@ public class QuizService {
      *  ✔ Uses chunking for large documents (HEAD)
      *  ✔ Saves quiz + questions to database (database branch)
      *  ✔ Supports difficulty + userId + title
+     *  ✔ Sends chunk prompts concurrently (bounded by generation.fanout.parallelism)
      */
     public List<QuizQuestion> generateQuiz(
             String studyMaterial,
@@ -82,60 +121,268 @@ public class QuizService {
             Long userId,
             String title
     ) {
+        return generateQuizSet(studyMaterial, count, difficulty, userId, title, ChunkProgressListener.NONE).items();
+    }
+
+    /**
+     * Same as generateQuiz, but also returns the saved set ID and reports chunk progress
+     * (used by background generation jobs).
+     */
+    public GenerationResult<QuizQuestion> generateQuizSet(
+            String studyMaterial,
+            Integer count,
+            String difficulty,
+            Long userId,
+            String title,
+            ChunkProgressListener progress
+    ) {
 
         int numberOfQuestions = (count != null && count > 0) ? count : 5;
         String difficultyLevel = (difficulty != null) ? difficulty : "medium";
 
-        // Split text into manageable chunks (HEAD feature)
-        List<String> chunks = splitIntoChunks(studyMaterial);
-        List<QuizQuestion> allQuestions = new ArrayList<>();
+        // Material quizzed before: sample unseen questions from the bank, no model calls
+        String materialHash = questionBank.isEnabled() ? QuestionBank.materialHash(studyMaterial) : null;
+        Optional<List<QuizQuestion>> banked =
+                questionBank.take(materialHash, difficultyLevel(difficultyLevel), userId, numberOfQuestions);
+        if (banked.isPresent()) {
+            System.out.println("Serving " + numberOfQuestions + " questions from the question bank");
+            QuizSet savedSet = saveQuizToDatabase(banked.get(), studyMaterial, difficultyLevel, userId, title,
+                    numberOfQuestions, progress);
+            topUpBankIfLow(studyMaterial, materialHash, difficultyLevel, userId);
+            return new GenerationResult<>(savedSet.getId(), banked.get(), 0, 0, 0);
+        }
+
+        // Identical requests in flight at the same time share one set of model calls
+        String flightKey = GenerationCoalescer.key(GenerationPlanner.QUIZ, studyMaterial,
+                numberOfQuestions, difficultyLevel(difficultyLevel));
+        Generated generated = generationCoalescer.execute("quiz", flightKey, () -> {
+            // Pick the model, split the text into chunks that fit it and share the questions out
+            GenerationPlanner.Plan plan = plan(studyMaterial, numberOfQuestions);
+            ChunkFanOut.Outcome<QuizQuestion> outcome =
+                    generateAcrossChunks(plan, numberOfQuestions, difficultyLevel, userId, progress, List.of());
+            generationMetrics.chunksProcessed("quiz", plan.chunks().size(), outcome.failedChunks().size());
+            return new Generated(plan, outcome);
+        });
+        GenerationPlanner.Plan plan = generated.plan();
+        ChunkFanOut.Outcome<QuizQuestion> outcome = generated.outcome();
 
-        // Equally distribute question generation across chunks
-        int questionsPerChunk = (int) Math.ceil((double) numberOfQuestions / chunks.size());
+        // Trim to the requested number (a copy: the outcome may be shared with coalesced requests)
+        List<QuizQuestion> finalQuestions =
+                List.copyOf(outcome.items().subList(0, Math.min(numberOfQuestions, outcome.items().size())));
+
+        // Save the full quiz to the database, and bank the questions for later quizzes on this material
+        QuizSet savedSet = saveQuizToDatabase(finalQuestions, studyMaterial, difficultyLevel, userId, title,
+                numberOfQuestions, progress);
+        if (generationVerifier.isEnabled()) {
+            // Drafts: banked once the verification model has checked them
+            verifyInBackground(savedSet.getId(), studyMaterial, materialHash, difficultyLevel, userId);
+        } else if (materialHash != null) {
+            questionBank.add(materialHash, difficultyLevel(difficultyLevel), finalQuestions, userId);
+        }
+
+        return new GenerationResult<>(savedSet.getId(), finalQuestions, plan.chunks().size(),
+                plan.inputTokens(), outcome.failedChunks().size());
+    }
+
+    /**
+     * Finish a quiz that was saved with fewer questions than requested because some chunks
+     * failed on every retry. The original chunk prompts are replayed: chunks that succeeded
+     * were stored in the generation cache as they completed, so only the failed chunks go
+     * to the model again. The set's questions are then replaced, still in chunk order.
+     */
+    public GenerationResult<QuizQuestion> resumeQuizSet(QuizSet quizSet) {
+        List<QuizQuestion> existing = quizSet.getQuestions().stream()
+                .sorted(Comparator.comparing(ie.tcd.scss.aichat.model.QuizQuestion::getPosition))
+                .map(QuizService::toDto)
+                .toList();
+        Integer requested = quizSet.getRequestedCount();
+        // Same material and count give the same plan, so succeeded chunks hit the cache
+        GenerationPlanner.Plan plan = plan(quizSet.getStudyMaterial(), requested != null ? requested : existing.size());
+        int chunkCount = plan.chunks().size();
+        int inputTokens = plan.inputTokens();
+
+        if (requested == null || existing.size() >= requested) {
+            System.out.println("Quiz set " + quizSet.getId() + " is already complete - nothing to resume");
+            return new GenerationResult<>(quizSet.getId(), existing, chunkCount, inputTokens, 0);
+        }
+
+        System.out.println("Resuming quiz set " + quizSet.getId() + ": " + existing.size() + "/" + requested + " questions");
+        ChunkFanOut.Outcome<QuizQuestion> outcome = generateAcrossChunks(plan, requested, quizSet.getDifficulty(),
+                quizSet.getUser().getId(), ChunkProgressListener.NONE, List.of());
+        generationMetrics.chunksProcessed("quiz", chunkCount, outcome.failedChunks().size());
+        List<QuizQuestion> questions = outcome.items().subList(0, Math.min(requested, outcome.items().size()));
+
+        if (questions.size() <= existing.size()) {
+            // Nothing gained (the provider is still failing) - keep what the set already has
+            return new GenerationResult<>(quizSet.getId(), existing, chunkCount, inputTokens, outcome.failedChunks().size());
+        }
+
+        List<ie.tcd.scss.aichat.model.QuizQuestion> entities = new ArrayList<>();
+        for (int i = 0; i < questions.size(); i++) {
+            entities.add(toEntity(questions.get(i), i));
+        }
+        generationMetrics.timeSave("quiz", () -> {
+            generatedSetWriter.replaceQuizQuestions(quizSet.getId(), entities);
+            return null;
+        });
+        if (generationVerifier.isEnabled()) {
+            verifyInBackground(quizSet.getId(), quizSet.getStudyMaterial(), null, quizSet.getDifficulty(), quizSet.getUser().getId());
+        }
+
+        return new GenerationResult<>(quizSet.getId(), questions, chunkCount, inputTokens, outcome.failedChunks().size());
+    }
 
-        System.out.println("Processing " + chunks.size() + " chunk(s) for " + numberOfQuestions + " questions.");
+    // One prompt per chunk, dispatched concurrently (failed chunks retried) and merged back in chunk order
+    private ChunkFanOut.Outcome<QuizQuestion> generateAcrossChunks(GenerationPlanner.Plan plan, int numberOfQuestions,
+                                                                    String difficultyLevel, Long userId,
+                                                                    ChunkProgressListener progress,
+                                                                    List<String> avoid) {
+        List<TextChunk> chunks = plan.chunks();
+        int[] quotas = plan.quotas();
 
+        System.out.println("Processing " + chunks.size() + " chunk(s) for " + numberOfQuestions + " questions on " + plan.model() + ".");
+
+        List<Callable<List<QuizQuestion>>> tasks = new ArrayList<>();
         for (int i = 0; i < chunks.size(); i++) {
-            String chunk = chunks.get(i);
+            // Quotas follow content density, so a sparse chunk in the middle may get none
+            if (quotas[i] <= 0) continue;
 
-            // Last chunk receives remaining questions
-            int toGenerate = (i == chunks.size() - 1)
-                    ? (numberOfQuestions - allQuestions.size())
-                    : questionsPerChunk;
+            TextChunk chunk = chunks.get(i);
+            int toGenerate = quotas[i];
+            int chunkNumber = i + 1;
 
-            if (toGenerate <= 0) break;
+            tasks.add(() -> {
+                try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId)) {
+                    System.out.println("Generating " + toGenerate + " questions from chunk " + chunkNumber);
+                    return generateQuestionsForChunk(chunk, toGenerate, difficultyLevel, plan, avoid);
+                }
+            });
+        }
 
-            try {
-                System.out.println("Generating " + toGenerate + " questions from chunk " + (i + 1));
-                String prompt = buildQuizPrompt(chunk, toGenerate, difficultyLevel);
+        progress.chunksPlanned(tasks.size());
+        return chunkFanOut.run(tasks, numberOfQuestions, progress);
+    }
 
-                String aiResponse = chatClient.prompt()
-                        .user(prompt)
-                        .call()
-                        .content();
+    // Single chunk generation, served from the generation cache when the same chunk was seen before
+    private List<QuizQuestion> generateQuestionsForChunk(CharSequence chunk, int count, String difficulty,
+                                                         GenerationPlanner.Plan plan, List<String> avoid) {
+        String cacheKey = avoid.isEmpty()
+                ? generationCache.key("quiz", promptVersion, chunk, count, difficulty.toLowerCase(), plan.model())
+                : generationCache.key("quiz", promptVersion, chunk, count, difficulty.toLowerCase(), plan.model(), avoid);
 
-                List<QuizQuestion> chunkQuestions = parseQuizQuestions(aiResponse);
-                allQuestions.addAll(chunkQuestions);
+        return generationCache.getOrCompute(cacheKey, QuizQuestion.class, () -> {
+            String prompt = buildQuizPrompt(chunk, count, difficulty, avoid);
 
-                if (allQuestions.size() >= numberOfQuestions) break;
+            ChatResponse response = chatClient.prompt()
+                    .options(jsonOutputOptions(false, plan, count))
+                    .system(systemPrompt)
+                    .user(prompt)
+                    .call()
+                    .chatResponse();
+            promptCacheStats.record(response);
 
-            } catch (Exception e) {
-                System.err.println("Error generating quiz for chunk " + (i + 1) + ": " + e.getMessage());
+            List<QuizQuestion> questions = parseQuizQuestions(textOf(response));
+            generationMetrics.outputParsed("quiz", !questions.isEmpty());
+            if (questions.isEmpty()) {
+                // Fail the chunk so it is retried instead of silently contributing nothing
+                throw new IllegalStateException("Model output contained no usable questions");
             }
-        }
+            return questions;
+        });
+    }
 
-        // Trim to the requested number
-        List<QuizQuestion> finalQuestions =
-                allQuestions.subList(0, Math.min(numberOfQuestions, allQuestions.size()));
 
-        // Save the full quiz to the database
-        saveQuizToDatabase(finalQuestions, studyMaterial, difficultyLevel, userId, title);
+    /**
+     * Streaming variant of generateQuiz.
+     * Each question is handed to onQuestion as soon as it can be parsed from the model output.
+     * Chunks are streamed one after another so questions keep arriving in chunk order,
+     * and the quiz is saved once the last chunk has finished.
+     *
+     * @return ID of the saved QuizSet
+     */
+    public Long streamQuiz(
+            String studyMaterial,
+            Integer count,
+            String difficulty,
+            Long userId,
+            String title,
+            Consumer<QuizQuestion> onQuestion
+    ) {
+        int numberOfQuestions = (count != null && count > 0) ? count : 5;
+        String difficultyLevel = (difficulty != null) ? difficulty : "medium";
+
+        GenerationPlanner.Plan plan = plan(studyMaterial, numberOfQuestions);
+        List<TextChunk> chunks = plan.chunks();
+        int[] quotas = plan.quotas();
+        List<QuizQuestion> allQuestions = new ArrayList<>();
+        int failedChunks = 0;
+
+        for (int i = 0; i < chunks.size() && allQuestions.size() < numberOfQuestions; i++) {
+            // Same prompt and cache key per chunk as generateQuiz, so each path is served from the other's cache
+            int toGenerate = quotas[i];
+            if (toGenerate <= 0) continue;
+
+            TextChunk chunk = chunks.get(i);
+            String cacheKey = generationCache.key("quiz", promptVersion, chunk, toGenerate, difficultyLevel.toLowerCase(),
+                    plan.model());
+            Optional<List<QuizQuestion>> cached = generationCache.get(cacheKey, QuizQuestion.class);
+            if (cached.isPresent()) {
+                emitQuestions(cached.get(), allQuestions, numberOfQuestions, onQuestion);
+                continue;
+            }
+
+            String prompt = buildQuizPrompt(chunk, toGenerate, difficultyLevel, List.of());
+            JsonItemStreamParser<QuizQuestion> parser = questionParser();
+            List<QuizQuestion> chunkQuestions = new ArrayList<>();
+
+            try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId);
+                 Stream<ChatResponse> responses = chatClient.prompt().options(jsonOutputOptions(true, plan, toGenerate))
+                    .system(systemPrompt).user(prompt).stream().chatResponse().toStream()) {
+                Iterator<ChatResponse> iterator = responses.iterator();
+                while (iterator.hasNext()) {
+                    ChatResponse response = iterator.next();
+                    promptCacheStats.record(response);
+                    List<QuizQuestion> parsed = parser.append(textOf(response));
+                    chunkQuestions.addAll(parsed);
+                    emitQuestions(parsed, allQuestions, numberOfQuestions, onQuestion);
+                }
+                List<QuizQuestion> last = parser.finish();
+                chunkQuestions.addAll(last);
+                emitQuestions(last, allQuestions, numberOfQuestions, onQuestion);
+                generationMetrics.outputParsed("quiz", !chunkQuestions.isEmpty());
+                // Everything the chunk produced, also past the requested total, as generateQuiz caches it
+                generationCache.put(cacheKey, chunkQuestions);
+            } catch (UncheckedIOException | TokenBudgetExceededException e) {
+                // Consumer could not deliver (client disconnected) or the user is out of tokens - stop generating
+                throw e;
+            } catch (Exception e) {
+                System.err.println("Error streaming quiz for chunk " + (i + 1) + ": " + e.getMessage());
+                failedChunks++;
+            }
+        }
+        generationMetrics.chunksProcessed("quiz", chunks.size(), failedChunks);
 
-        return finalQuestions;
+        Long setId = saveQuizToDatabase(allQuestions, studyMaterial, difficultyLevel, userId, title,
+                numberOfQuestions, ChunkProgressListener.NONE).getId();
+        if (generationVerifier.isEnabled()) {
+            verifyInBackground(setId, studyMaterial, null, difficultyLevel, userId);
+        }
+        return setId;
     }
 
+    // Hands parsed questions to the consumer until the limit is hit
+    private void emitQuestions(List<QuizQuestion> parsed, List<QuizQuestion> sink, int limit,
+                               Consumer<QuizQuestion> onQuestion) {
+        for (QuizQuestion question : parsed) {
+            if (sink.size() >= limit) break;
+            sink.add(question);
+            onQuestion.accept(question);
+        }
+    }
     
-    private void saveQuizToDatabase(List<QuizQuestion> questionDTOs, String studyMaterial, String difficulty, Long userId, String title) {
+    private QuizSet saveQuizToDatabase(List<QuizQuestion> questionDTOs, String studyMaterial, String difficulty,
+                                       Long userId, String title, int requestedCount,
+                                       ChunkProgressListener progress) {
         System.out.println("=== SAVING QUIZ TO DATABASE ===");
         System.out.println("Number of questions to save: " + questionDTOs.size());
         
@@ -148,25 +395,12 @@ public class QuizService {
         quizSet.setTitle(title != null ? title : "AI Generated Quiz");
         quizSet.setStudyMaterial(studyMaterial);
         quizSet.setDifficulty(difficulty);
+        quizSet.setRequestedCount(requestedCount);
         
         // Create question entities and establish bi-directional relationship
         for (int i = 0; i < questionDTOs.size(); i++) {
             QuizQuestion dto = questionDTOs.get(i);
-            ie.tcd.scss.aichat.model.QuizQuestion entity = new ie.tcd.scss.aichat.model.QuizQuestion();
-            entity.setQuestion(dto.getQuestion());
-            
-            List<String> options = dto.getOptions();
-            if (options.size() >= 4) {
-                entity.setOptionA(options.get(0));
-                entity.setOptionB(options.get(1));
-                entity.setOptionC(options.get(2));
-                entity.setOptionD(options.get(3));
-            }
-            
-            char correctLetter = (char) ('A' + dto.getCorrectAnswer());
-            entity.setCorrectAnswer(String.valueOf(correctLetter));
-            entity.setExplanation(dto.getExplanation());
-            entity.setPosition(i);
+            ie.tcd.scss.aichat.model.QuizQuestion entity = toEntity(dto, i);
             entity.setQuizSet(quizSet);  // Set parent reference
             
             quizSet.getQuestions().add(entity);  // Add to parent's collection
@@ -176,71 +410,129 @@ public class QuizService {
         
         System.out.println("Total questions in quiz: " + quizSet.getQuestions().size());
         
-        // Save the set with cascade - will automatically save all questions
-        QuizSet savedSet = quizSetRepository.save(quizSet);
+        // Save the set, then insert all questions as JDBC batches
+        QuizSet savedSet = generationMetrics.timeSave("quiz", () -> generatedSetWriter.saveQuizSet(quizSet, progress::setSaved));
         
         System.out.println("QuizSet saved with ID: " + savedSet.getId());
         System.out.println("=== END SAVING QUIZ ===");
+        return savedSet;
     }
     
-    private String buildQuizPrompt(String studyMaterial, int count, String difficulty) {
-        String difficultyInstructions = getDifficultyInstructions(difficulty);
+    private static ie.tcd.scss.aichat.model.QuizQuestion toEntity(QuizQuestion dto, int position) {
+        ie.tcd.scss.aichat.model.QuizQuestion entity = new ie.tcd.scss.aichat.model.QuizQuestion();
+        entity.setQuestion(dto.getQuestion());
         
-        return String.format("""
-                Generate %d multiple-choice quiz questions from the following study material.
-                
+        List<String> options = dto.getOptions();
+        if (options.size() >= 4) {
+            entity.setOptionA(options.get(0));
+            entity.setOptionB(options.get(1));
+            entity.setOptionC(options.get(2));
+            entity.setOptionD(options.get(3));
+        }
+        
+        char correctLetter = (char) ('A' + dto.getCorrectAnswer());
+        entity.setCorrectAnswer(String.valueOf(correctLetter));
+        entity.setExplanation(dto.getExplanation());
+        entity.setPosition(position);
+        return entity;
+    }
+    
+    private static QuizQuestion toDto(ie.tcd.scss.aichat.model.QuizQuestion entity) {
+        return new QuizQuestion(
+                entity.getQuestion(),
+                List.of(entity.getOptionA(), entity.getOptionB(), entity.getOptionC(), entity.getOptionD()),
+                entity.getCorrectAnswer().charAt(0) - 'A',
+                entity.getExplanation());
+    }
+    
+    // Variable part of the prompt: the material first, then the per-request parameters
+    private String buildQuizPrompt(CharSequence studyMaterial, int count, String difficulty, List<String> avoid) {
+        String prompt = String.format("""
                 Study Material:
                 %s
                 
-                Requirements:
-                - Each question should have exactly 4 options (A, B, C, D)
-                - Only ONE option is correct
-                - %s
-                
-                Format each question EXACTLY like this:
-                Q: [Your question here]
-                A: [Option A]
-                B: [Option B]
-                C: [Option C]
-                D: [Option D]
-                CORRECT: [A/B/C/D]
-                EXPLAIN: [Explanation]
-                
-                Generate %d questions now:
-                """, count, studyMaterial, difficultyInstructions, count);
+                Generate %d questions at %s difficulty.
+                """, studyMaterial, count, difficultyLevel(difficulty));
+        if (avoid.isEmpty()) {
+            return prompt;
+        }
+        // Question bank top-ups: ask for questions the bank does not have yet
+        return prompt + "Do not repeat or reword any of these existing questions:\n- " + String.join("\n- ", avoid) + "\n";
+    }
+
+    // Drafted by the small model when verification is on, otherwise the planner chooses
+    private GenerationPlanner.Plan plan(String studyMaterial, int numberOfQuestions) {
+        return generationPlanner.plan(GenerationPlanner.QUIZ, studyMaterial, numberOfQuestions,
+                generationVerifier.draftModel());
+    }
+
+    // Corrects the saved drafts in place; with a material hash, the checked questions are banked afterwards
+    private void verifyInBackground(Long setId, String studyMaterial, String materialHash, String difficulty, Long userId) {
+        generationVerifier.verifyQuizSet(setId, studyMaterial, userId, verified -> {
+            if (materialHash != null) {
+                questionBank.add(materialHash, difficultyLevel(difficulty), verified.stream().map(QuizService::toDto).toList(), userId);
+            }
+        });
+    }
+
+    // Runs in the background: new questions for the bank, without saving a set
+    private void topUpBankIfLow(String studyMaterial, String materialHash, String difficulty, Long userId) {
+        questionBank.topUpIfLow(materialHash, difficultyLevel(difficulty), userId, avoid -> {
+            int size = questionBank.getTopUpSize();
+            GenerationPlanner.Plan plan = generationPlanner.plan(GenerationPlanner.QUIZ, studyMaterial, size);
+            ChunkFanOut.Outcome<QuizQuestion> outcome =
+                    generateAcrossChunks(plan, size, difficulty, userId, ChunkProgressListener.NONE, avoid);
+            generationMetrics.chunksProcessed("quiz", plan.chunks().size(), outcome.failedChunks().size());
+            return outcome.items();
+        });
     }
     
-    private String getDifficultyInstructions(String difficulty) {
+    // Anything other than easy/hard is treated as medium, as before
+    private static String difficultyLevel(String difficulty) {
         return switch (difficulty.toLowerCase()) {
-            case "easy" -> "Questions should test basic recall";
-            case "hard" -> "Questions should require deep analysis";
-            default -> "Questions should test understanding";
+            case "easy" -> "easy";
+            case "hard" -> "hard";
+            default -> "medium";
         };
     }
     
+    // Structured output: the model must answer with JSON matching the output schema.
+    // Streams ask for the usage block too, so cached input tokens can be recorded.
+    // Model and completion cap come from the plan, the cap sized to the questions asked for.
+    private OpenAiChatOptions jsonOutputOptions(boolean stream, GenerationPlanner.Plan plan, int count) {
+        return OpenAiChatOptions.builder()
+                .model(plan.model())
+                .maxCompletionTokens(plan.maxCompletionTokens(count))
+                .responseFormat(new ResponseFormat(ResponseFormat.Type.JSON_SCHEMA, outputSchema))
+                .streamUsage(stream)
+                .build();
+    }
+
+    private static String textOf(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return null;
+        }
+        return response.getResult().getOutput().getText();
+    }
+
+    private JsonItemStreamParser<QuizQuestion> questionParser() {
+        return new JsonItemStreamParser<>(objectMapper, QuizQuestion.class, "questions", QuizService::isComplete);
+    }
+
     private List<QuizQuestion> parseQuizQuestions(String aiResponse) {
-        List<QuizQuestion> questions = new ArrayList<>();
-        Pattern pattern = Pattern.compile(
-            "Q:\\s*(.+?)\\s*A:\\s*(.+?)\\s*B:\\s*(.+?)\\s*C:\\s*(.+?)\\s*D:\\s*(.+?)\\s*CORRECT:\\s*([A-D])\\s*EXPLAIN:\\s*(.+?)(?=Q:|$)",
-            Pattern.DOTALL
-        );
-        
-        Matcher matcher = pattern.matcher(aiResponse);
-        
-        while (matcher.find()) {
-            String question = matcher.group(1).trim();
-            List<String> options = Arrays.asList(
-                matcher.group(2).trim(),
-                matcher.group(3).trim(),
-                matcher.group(4).trim(),
-                matcher.group(5).trim()
-            );
-            int correctIndex = matcher.group(6).trim().charAt(0) - 'A';
-            String explanation = matcher.group(7).trim();
-            
-            questions.add(new QuizQuestion(question, options, correctIndex, explanation));
+        if (aiResponse == null) {
+            return new ArrayList<>();
         }
-        
-        return questions;
+        return JsonItemStreamParser.parseAll(objectMapper, QuizQuestion.class, "questions",
+                QuizService::isComplete, aiResponse);
     }
+
+    // Questions the UI cannot show (wrong option count, answer out of range) are dropped
+    private static boolean isComplete(QuizQuestion question) {
+        return question.getQuestion() != null && !question.getQuestion().isBlank()
+                && question.getOptions() != null && question.getOptions().size() == 4
+                && question.getCorrectAnswer() >= 0 && question.getCorrectAnswer() < 4;
+    }
+
+    private record Generated(GenerationPlanner.Plan plan, ChunkFanOut.Outcome<QuizQuestion> outcome) {}
 }
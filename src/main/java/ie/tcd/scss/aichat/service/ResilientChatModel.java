@@ -0,0 +1,360 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.LlmOverloadedException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The application's shared ChatModel: wraps the provider model with request hedging and a
+ * circuit breaker. Services (through the {@link LlmGovernor}) all receive this bean.
+ *
+ * Hedging: once enough latencies have been seen, a call still running after the rolling
+ * p95 (never less than {@code min-delay}) gets a second, identical request. Whichever
+ * finishes first wins and the other is cancelled. At most {@code max-ratio} of calls are
+ * hedged, so a provider that is slow across the board is not sent double the traffic.
+ * Latencies are kept per service ({@link #forService(String)}): a 20k-token quiz chunk
+ * and a chat reply have nothing in common, and one shared p95 would hedge every chunk
+ * while never hedging chat.
+ *
+ * Circuit breaker: the outcomes of the last {@code window} calls are kept. When the failure
+ * rate reaches {@code failure-rate}, calls fail straight away with a 503 for
+ * {@code open-duration}; after that one trial call is let through, and its result decides
+ * whether the circuit closes again. Client errors (4xx, {@link NonTransientAiException})
+ * mean the provider is up and are not counted as failures.
+ *
+ * Streams are not hedged (their tokens are already being delivered), but they go through
+ * the circuit breaker.
+ */
+@Component
+@Primary
+public class ResilientChatModel implements ChatModel {
+
+    private static final int LATENCY_WINDOW = 200;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    // Window of calls made on this bean directly rather than through forService
+    static final String UNNAMED_SERVICE = "other";
+
+    private final ChatModel delegate;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final long minHedgeDelayNanos;
+    private final double maxHedgeRatio;
+    private final CircuitBreaker circuitBreaker;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    @Autowired
+    public ResilientChatModel(
+            ObjectProvider<StubChatModel> stubModel,
+            ObjectProvider<OpenAiChatModel> providerModel,
+            @Value("${llm.resilience.hedge.min-delay:2s}") Duration minHedgeDelay,
+            @Value("${llm.resilience.hedge.max-ratio:0.1}") double maxHedgeRatio,
+            @Value("${llm.resilience.circuit.window:20}") int circuitWindow,
+            @Value("${llm.resilience.circuit.failure-rate:0.5}") double failureRateThreshold,
+            @Value("${llm.resilience.circuit.open-duration:30s}") Duration openDuration) {
+        // The stub-llm profile swaps the provider for a local stand-in (load tests)
+        this(Optional.<ChatModel>ofNullable(stubModel.getIfAvailable()).orElseGet(providerModel::getObject),
+                minHedgeDelay, maxHedgeRatio, circuitWindow, failureRateThreshold, openDuration);
+    }
+
+    public ResilientChatModel(ChatModel delegate, Duration minHedgeDelay, double maxHedgeRatio,
+                              int circuitWindow, double failureRateThreshold, Duration openDuration) {
+        this.delegate = delegate;
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.circuitBreaker = new CircuitBreaker(Math.max(1, circuitWindow), failureRateThreshold, openDuration.toNanos());
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return call(prompt, latencyWindow(UNNAMED_SERVICE));
+    }
+
+    /**
+     * View of this model whose calls are hedged against the given service's own latencies.
+     * The circuit breaker and hedge budget stay shared: they track the provider, not the caller.
+     */
+    public ChatModel forService(String service) {
+        LatencyWindow window = latencyWindow(service);
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return ResilientChatModel.this.call(prompt, window);
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return ResilientChatModel.this.stream(prompt);
+            }
+
+            @Override
+            public ChatOptions getDefaultOptions() {
+                return ResilientChatModel.this.getDefaultOptions();
+            }
+        };
+    }
+
+    private ChatResponse call(Prompt prompt, LatencyWindow latency) {
+        if (!circuitBreaker.tryAcquire()) {
+            rejected.increment();
+            throw new LlmOverloadedException("Model provider is failing - circuit open, try again shortly");
+        }
+        calls.increment();
+
+        CompletionService<ChatResponse> race = new ExecutorCompletionService<>(executor);
+        List<Future<ChatResponse>> attempts = new ArrayList<>(2);
+        long[] startedAt = new long[2];
+        startedAt[0] = System.nanoTime();
+        attempts.add(race.submit(() -> delegate.call(prompt)));
+
+        try {
+            long hedgeDelay = hedgeDelayNanos(latency);
+            Future<ChatResponse> done = hedgeDelay < 0 ? race.take() : race.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+            if (done == null) {
+                // Primary is in the latency tail - race a second request against it
+                hedged.increment();
+                startedAt[1] = System.nanoTime();
+                attempts.add(race.submit(() -> delegate.call(prompt)));
+                done = race.take();
+            }
+
+            int pending = attempts.size();
+            while (true) {
+                int attempt = attempts.indexOf(done);
+                try {
+                    ChatResponse response = done.get();
+                    latency.record(System.nanoTime() - startedAt[attempt]);
+                    if (attempt == 1) {
+                        hedgeWins.increment();
+                    }
+                    circuitBreaker.onSuccess();
+                    return response;
+                } catch (ExecutionException e) {
+                    if (--pending > 0) {
+                        // The other attempt may still succeed
+                        done = race.take();
+                        continue;
+                    }
+                    throw fail(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            circuitBreaker.onAbandoned();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the model");
+        } finally {
+            attempts.forEach(attempt -> attempt.cancel(true));
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                rejected.increment();
+                return Flux.error(new LlmOverloadedException("Model provider is failing - circuit open, try again shortly"));
+            }
+            calls.increment();
+            return delegate.stream(prompt)
+                    .doOnComplete(circuitBreaker::onSuccess)
+                    .doOnCancel(circuitBreaker::onAbandoned)
+                    .onErrorMap(this::fail);
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    /**
+     * Hedge and circuit breaker counters since startup, plus the current hedge threshold per service.
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.sum());
+        stats.put("hedged", hedged.sum());
+        stats.put("hedgeWins", hedgeWins.sum());
+        stats.put("failures", failures.sum());
+        stats.put("rejected", rejected.sum());
+        Map<String, Double> p95Ms = new LinkedHashMap<>();
+        latencies.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> {
+            long p95 = entry.getValue().p95Nanos();
+            p95Ms.put(entry.getKey(), p95 < 0 ? null : p95 / 1_000_000.0);
+        });
+        stats.put("p95Ms", p95Ms);
+        stats.put("circuit", circuitBreaker.state().name());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private RuntimeException fail(Throwable error) {
+        if (error instanceof NonTransientAiException) {
+            // Provider answered - the request itself was bad
+            circuitBreaker.onSuccess();
+        } else {
+            failures.increment();
+            circuitBreaker.onFailure();
+        }
+        return error instanceof RuntimeException runtime ? runtime : new IllegalStateException(error);
+    }
+
+    // -1 while hedging is off: not enough samples yet, or the hedge budget is used up
+    private long hedgeDelayNanos(LatencyWindow latency) {
+        if (hedged.sum() >= maxHedgeRatio * calls.sum()) {
+            return -1;
+        }
+        long p95 = latency.p95Nanos();
+        return p95 < 0 ? -1 : Math.max(p95, minHedgeDelayNanos);
+    }
+
+    private LatencyWindow latencyWindow(String service) {
+        return latencies.computeIfAbsent(service, key -> new LatencyWindow());
+    }
+
+    // Rolling window of the last LATENCY_WINDOW successful call latencies of one service
+    private static final class LatencyWindow {
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void record(long nanos) {
+            latencies[next] = nanos;
+            next = (next + 1) % LATENCY_WINDOW;
+            count = Math.min(count + 1, LATENCY_WINDOW);
+        }
+
+        synchronized long p95Nanos() {
+            if (count < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.ceil(count * 0.95) - 1];
+        }
+    }
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Count-based breaker over the last `window` outcomes
+    private static final class CircuitBreaker {
+        private final boolean[] outcomes;
+        private final double failureRateThreshold;
+        private final long openNanos;
+
+        private State state = State.CLOSED;
+        private int count;
+        private int next;
+        private int failed;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        CircuitBreaker(int window, double failureRateThreshold, long openNanos) {
+            this.outcomes = new boolean[window];
+            this.failureRateThreshold = failureRateThreshold;
+            this.openNanos = openNanos;
+        }
+
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+
+        synchronized void onSuccess() {
+            if (state == State.HALF_OPEN) {
+                state = State.CLOSED;
+                count = 0;
+                next = 0;
+                failed = 0;
+            } else if (state == State.CLOSED) {
+                record(false);
+            }
+        }
+
+        synchronized void onFailure() {
+            if (state == State.HALF_OPEN) {
+                open();
+            } else if (state == State.CLOSED) {
+                record(true);
+                if (count == outcomes.length && failed >= failureRateThreshold * count) {
+                    open();
+                }
+            }
+        }
+
+        // Caller gave up - says nothing about the provider, but frees the half-open trial
+        synchronized void onAbandoned() {
+            trialInFlight = false;
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        private void record(boolean failure) {
+            if (count == outcomes.length && outcomes[next]) {
+                failed--;
+            }
+            outcomes[next] = failure;
+            if (failure) {
+                failed++;
+            }
+            next = (next + 1) % outcomes.length;
+            count = Math.min(count + 1, outcomes.length);
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            trialInFlight = false;
+        }
+    }
+}
@@ -1,22 +1,40 @@
 package ie.tcd.scss.aichat.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import ie.tcd.scss.aichat.model.Sources;
 import ie.tcd.scss.aichat.repository.SourcesRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class SourcesService {
 
     private final SourcesRepository repository;
+    // Text of recently used sources, so generating from a source again does not reload its content
+    private final Cache<Long, SourceText> texts;
 
-    public SourcesService(SourcesRepository repository) {
+    public SourcesService(SourcesRepository repository,
+                          @Value("${sources.text-cache.max-chars:50000000}") long maxCachedChars) {
         this.repository = repository;
+        this.texts = Caffeine.newBuilder()
+                .maximumWeight(maxCachedChars)
+                .weigher((Long id, SourceText text) -> text.content().length())
+                .build();
     }
 
     public Sources save(Sources src) {
-        return repository.save(src);
+        Sources saved = repository.save(src);
+        texts.invalidate(saved.getId());
+        return saved;
+    }
+
+    public Optional<Sources> findById(Long id) {
+        return repository.findById(id);
     }
 
     public List<Sources> getUserSources(Long userId) {
@@ -25,5 +43,54 @@ public class SourcesService {
 
     public void delete(Long id) {
         repository.deleteById(id);
+        texts.invalidate(id);
+    }
+
+    /**
+     * Stored text of a source, from the cache when it was used recently.
+     */
+    public Optional<SourceText> findText(Long id) {
+        return Optional.ofNullable(texts.get(id, key -> repository.findById(key).map(SourceText::of).orElse(null)));
+    }
+
+    /**
+     * Text of a source with the start of every page, for generating from a page range.
+     *
+     * @param pageStarts Offset in content where each page starts, empty for sources without pages
+     */
+    public record SourceText(Long id, Long userId, String content, int[] pageStarts) {
+
+        static SourceText of(Sources source) {
+            String offsets = source.getPageOffsets();
+            int[] pageStarts = offsets == null || offsets.isBlank() ? new int[0]
+                    : Arrays.stream(offsets.split(",")).mapToInt(Integer::parseInt).toArray();
+            return new SourceText(source.getId(), source.getUserId(),
+                    source.getContent() != null ? source.getContent() : "", pageStarts);
+        }
+
+        /**
+         * Text of pages from..to (1-based, inclusive); the whole text when neither is given.
+         *
+         * @param fromPage First page, or null for the first page
+         * @param toPage Last page, or null for the last page
+         * @throws IllegalArgumentException if the range does not fit the source
+         */
+        public String pages(Integer fromPage, Integer toPage) {
+            if (fromPage == null && toPage == null) {
+                return content;
+            }
+            if (pageStarts.length == 0) {
+                throw new IllegalArgumentException("Source " + id + " has no pages; upload the document again to use a page range");
+            }
+            int from = fromPage != null ? fromPage : 1;
+            int to = toPage != null ? toPage : pageStarts.length;
+            if (from < 1 || to > pageStarts.length || from > to) {
+                throw new IllegalArgumentException("Invalid page range " + from + "-" + to
+                        + ": source " + id + " has " + pageStarts.length + " pages");
+            }
+            // Pages are separated by a blank line, which is left out
+            int end = to < pageStarts.length ? pageStarts[to] - 2 : content.length();
+            return content.substring(pageStarts[from - 1], end);
+        }
     }
 }
@@ -0,0 +1,64 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.LlmOverloadedException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the work behind SSE generation streams, one virtual thread per stream and at most
+ * {@code generation.stream.max-concurrent} at a time.
+ *
+ * A stream holds its thread for the whole model run, so sharing the application task
+ * executor let a burst of streams starve @Async work and queue new streams behind it.
+ * A stream beyond the limit is refused straight away with {@link LlmOverloadedException}
+ * (503), before the emitter is returned, so the client can retry instead of waiting.
+ */
+@Component
+public class StreamExecutor {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore slots;
+    private final int maxConcurrent;
+
+    public StreamExecutor(@Value("${generation.stream.max-concurrent:32}") int maxConcurrent) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.slots = new Semaphore(this.maxConcurrent);
+    }
+
+    /**
+     * @throws LlmOverloadedException if max-concurrent streams are already running
+     */
+    public void execute(Runnable stream) {
+        if (!slots.tryAcquire()) {
+            throw new LlmOverloadedException("Too many generation streams in progress (" + maxConcurrent
+                    + "); try again shortly");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    stream.run();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            throw new LlmOverloadedException("Streams are not accepted while shutting down");
+        }
+    }
+
+    public int running() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,241 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.Flashcard;
+import ie.tcd.scss.aichat.dto.FlashcardBatch;
+import ie.tcd.scss.aichat.dto.LearningMaterialBatch;
+import ie.tcd.scss.aichat.dto.PageLearningMaterial;
+import ie.tcd.scss.aichat.dto.QuestionExplanation;
+import ie.tcd.scss.aichat.dto.QuestionExplanationBatch;
+import ie.tcd.scss.aichat.dto.QuizQuestion;
+import ie.tcd.scss.aichat.dto.QuizQuestionBatch;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the provider model, active with the {@code stub-llm} profile, for load
+ * tests that must not spend OpenAI credits.
+ *
+ * Answers are deterministic for a given prompt: quiz, flashcard, learning-material,
+ * explanation and verification prompts get well-formed JSON with exactly the requested number
+ * of items (verification finds nothing to correct),
+ * anything else gets a short chat reply.
+ * Timing is simulated: time to first token is drawn from a log-normal distribution fitted
+ * to {@code latency.median} and {@code latency.p99}, and the output is then produced at
+ * {@code tokens-per-second} (streams emit it token by token at that rate). A fraction
+ * {@code error-rate} of calls fail with a transient provider error.
+ */
+@Component
+@Profile("stub-llm")
+public class StubChatModel implements ChatModel {
+
+    private static final Pattern QUIZ_REQUEST = Pattern.compile("Generate (\\d+) questions");
+    private static final Pattern FLASHCARD_REQUEST = Pattern.compile("Generate (\\d+) flashcards");
+    private static final Pattern PAGE_MARKER = Pattern.compile("=== Page (\\d+) ===");
+    private static final Pattern QUESTION_MARKER = Pattern.compile("=== Question (\\d+) ===");
+    private static final Pattern ITEM_MARKER = Pattern.compile("=== Item (\\d+) ===");
+    // Rough size of a BPE token, for usage figures and stream pacing
+    private static final int CHARS_PER_TOKEN = 4;
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double Z_P99 = 2.326;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final double latencyMu;
+    private final double latencySigma;
+    private final double tokensPerSecond;
+    private final double errorRate;
+    private final Random random;
+
+    @Autowired
+    public StubChatModel(
+            @Value("${llm.stub.latency.median:800ms}") Duration medianLatency,
+            @Value("${llm.stub.latency.p99:4s}") Duration p99Latency,
+            @Value("${llm.stub.tokens-per-second:80}") double tokensPerSecond,
+            @Value("${llm.stub.error-rate:0.0}") double errorRate,
+            @Value("${llm.stub.seed:42}") long seed) {
+        double median = Math.max(1, medianLatency.toNanos());
+        this.latencyMu = Math.log(median);
+        this.latencySigma = Math.max(0, Math.log(Math.max(median, p99Latency.toNanos()) / median) / Z_P99);
+        this.tokensPerSecond = tokensPerSecond;
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        String text = answer(prompt.getContents());
+        List<String> tokens = tokenize(text);
+        failIfUnlucky();
+        sleep(sampleLatency().plus(outputTime(tokens.size())));
+        return response(text, usage(prompt, tokens.size()));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            String text = answer(prompt.getContents());
+            List<String> tokens = tokenize(text);
+            if (random.nextDouble() < errorRate) {
+                return Flux.error(new TransientAiException("Stub provider error (injected)"));
+            }
+            Flux<String> paced = tokensPerSecond > 0
+                    ? Flux.fromIterable(tokens).delayElements(Duration.ofNanos((long) (1e9 / tokensPerSecond)))
+                    : Flux.fromIterable(tokens);
+            // Usage arrives with the last token, as it does with stream-usage enabled
+            int[] emitted = {0};
+            return Mono.delay(sampleLatency())
+                    .thenMany(paced)
+                    .map(token -> ++emitted[0] == tokens.size()
+                            ? response(token, usage(prompt, tokens.size()))
+                            : response(token, null));
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return ChatOptions.builder().model("stub").build();
+    }
+
+    // Same prompt, same answer: the payload is seeded from the prompt text only
+    String answer(String prompt) {
+        Random seeded = new Random(prompt.hashCode());
+        try {
+            Matcher quiz = QUIZ_REQUEST.matcher(prompt);
+            if (quiz.find()) {
+                boolean explained = !prompt.contains("Do not write explanations");
+                return objectMapper.writeValueAsString(new QuizQuestionBatch(
+                        quizQuestions(Integer.parseInt(quiz.group(1)), explained, seeded)));
+            }
+            Matcher flashcards = FLASHCARD_REQUEST.matcher(prompt);
+            if (flashcards.find()) {
+                return objectMapper.writeValueAsString(new FlashcardBatch(flashcards(Integer.parseInt(flashcards.group(1)), seeded)));
+            }
+            Matcher pages = PAGE_MARKER.matcher(prompt);
+            if (pages.find()) {
+                return objectMapper.writeValueAsString(new LearningMaterialBatch(learningMaterial(pages)));
+            }
+            Matcher questions = QUESTION_MARKER.matcher(prompt);
+            if (questions.find()) {
+                return objectMapper.writeValueAsString(new QuestionExplanationBatch(explanations(questions)));
+            }
+            if (ITEM_MARKER.matcher(prompt).find()) {
+                // Verification pass: the stub finds nothing to correct
+                return "{\"corrections\": []}";
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write stub payload", e);
+        }
+        return "This is a stub reply (" + Integer.toHexString(seeded.nextInt())
+                + ") standing in for the model. It has no knowledge of the question, but it is about as long"
+                + " as a short tutoring answer, so latency and token rates stay realistic under load.";
+    }
+
+    private static List<QuizQuestion> quizQuestions(int count, boolean explained, Random seeded) {
+        List<QuizQuestion> questions = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            int correct = seeded.nextInt(4);
+            List<String> options = new ArrayList<>(4);
+            for (int o = 0; o < 4; o++) {
+                options.add((o == correct ? "Correct" : "Incorrect") + " option " + (o + 1) + " for question " + i);
+            }
+            questions.add(new QuizQuestion("Stub question " + i + " about the material?", options, correct,
+                    explained ? "Option " + (correct + 1) + " is the one the stub marked correct." : null));
+        }
+        return questions;
+    }
+
+    private static List<Flashcard> flashcards(int count, Random seeded) {
+        List<Flashcard> cards = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            cards.add(new Flashcard("Stub flashcard " + i + ": what is term " + Integer.toHexString(seeded.nextInt()) + "?",
+                    "The stub definition of term " + i + "."));
+        }
+        return cards;
+    }
+
+    private static List<PageLearningMaterial> learningMaterial(Matcher pages) {
+        List<PageLearningMaterial> material = new ArrayList<>();
+        do {
+            int page = Integer.parseInt(pages.group(1));
+            material.add(new PageLearningMaterial(page, "Stub topic of page " + page,
+                    List.of("Stub key point of page " + page), List.of("What does page " + page + " cover?")));
+        } while (pages.find());
+        return material;
+    }
+
+    private static List<QuestionExplanation> explanations(Matcher questions) {
+        List<QuestionExplanation> explanations = new ArrayList<>();
+        do {
+            int question = Integer.parseInt(questions.group(1));
+            explanations.add(new QuestionExplanation(question,
+                    "The stub explanation of question " + question + ": the correct option follows from the material."));
+        } while (questions.find());
+        return explanations;
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>(text.length() / CHARS_PER_TOKEN + 1);
+        for (int i = 0; i < text.length(); i += CHARS_PER_TOKEN) {
+            tokens.add(text.substring(i, Math.min(text.length(), i + CHARS_PER_TOKEN)));
+        }
+        return tokens;
+    }
+
+    private void failIfUnlucky() {
+        if (random.nextDouble() < errorRate) {
+            throw new TransientAiException("Stub provider error (injected)");
+        }
+    }
+
+    private Duration sampleLatency() {
+        return Duration.ofNanos((long) Math.exp(latencyMu + latencySigma * random.nextGaussian()));
+    }
+
+    private Duration outputTime(int tokens) {
+        return tokensPerSecond > 0 ? Duration.ofNanos((long) (tokens * 1e9 / tokensPerSecond)) : Duration.ZERO;
+    }
+
+    private static DefaultUsage usage(Prompt prompt, int completionTokens) {
+        return new DefaultUsage(prompt.getContents().length() / CHARS_PER_TOKEN, completionTokens);
+    }
+
+    private static ChatResponse response(String text, DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model("stub");
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata.build());
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            // Hedged attempt lost the race, or the caller gave up
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while simulating model latency");
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.dto.SummaryResult;
+import ie.tcd.scss.aichat.model.Material;
+import ie.tcd.scss.aichat.model.Sources;
+import ie.tcd.scss.aichat.model.Summary;
+import ie.tcd.scss.aichat.repository.MaterialRepository;
+import ie.tcd.scss.aichat.repository.SummaryRepository;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Hierarchical (map-reduce) summarisation of long study material.
+ *
+ * Map: the text is split into token chunks and every chunk is summarised on its own,
+ * concurrently through the {@link ChunkFanOut}. Reduce: the chunk summaries are joined and
+ * summarised into one document summary. When the joined summaries are themselves too long
+ * for one prompt they are chunked and mapped again. At most {@code max-remap-rounds} such
+ * rounds are run, and a round that does not shorten the summaries ends the run at once,
+ * so a model that writes long summaries fails the request instead of looping on it.
+ *
+ * Every summary goes through the generation cache, keyed by the text it summarises, so a
+ * document that was summarised before costs no model calls. Summaries of uploaded sources
+ * are also stored as {@link Summary} rows of the source's {@link Material}: one per chunk
+ * and one for the whole document.
+ */
+@Service
+public class SummarizationService {
+
+    public static final String LEVEL_CHUNK = "chunk";
+    public static final String LEVEL_DOCUMENT = "document";
+
+    private static final String PROMPT_VERSION = "summary-v1"; // Bump when the prompts change (invalidates cache)
+    private static final String MAP_SYSTEM_PROMPT = """
+            You summarise one part of a longer document for a student who will be quizzed on it.
+            Keep every definition, key fact, formula, name, date and number that a question could be asked about.
+            Leave out examples, repetition, navigation text and anything not about the subject.
+            Write plain bullet points, grouped under short headings where the text has sections.
+            """;
+    private static final String REDUCE_SYSTEM_PROMPT = """
+            You merge summaries of consecutive parts of one document into a single study summary.
+            Keep every definition, key fact, formula, name, date and number; drop only exact duplicates.
+            Keep the order of the document. Write plain bullet points under short topic headings.
+            """;
+
+    private final ChatClient chatClient;
+    private final ChunkFanOut chunkFanOut;
+    private final GenerationCache generationCache;
+    private final TokenChunker tokenChunker;
+    private final MaterialRepository materialRepository;
+    private final SummaryRepository summaryRepository;
+    private final int chunkSummaryWords;
+    private final int documentSummaryWords;
+    private final int maxRemapRounds;
+
+    public SummarizationService(ChatModel chatModel, LlmGovernor llmGovernor, ChunkFanOut chunkFanOut,
+                                GenerationCache generationCache, TokenChunker tokenChunker,
+                                MaterialRepository materialRepository, SummaryRepository summaryRepository,
+                                @Value("${summarization.chunk-max-words:600}") int chunkSummaryWords,
+                                @Value("${summarization.document-max-words:2000}") int documentSummaryWords,
+                                @Value("${summarization.max-remap-rounds:3}") int maxRemapRounds) {
+        this.chatClient = ChatClient.builder(llmGovernor.govern(chatModel, LlmGovernor.Priority.BULK, "summary")).build();
+        this.chunkFanOut = chunkFanOut;
+        this.generationCache = generationCache;
+        this.tokenChunker = tokenChunker;
+        this.materialRepository = materialRepository;
+        this.summaryRepository = summaryRepository;
+        this.chunkSummaryWords = chunkSummaryWords;
+        this.documentSummaryWords = documentSummaryWords;
+        this.maxRemapRounds = Math.max(0, maxRemapRounds);
+    }
+
+    /**
+     * Summarise study material without storing the result (cached chunk summaries are reused).
+     *
+     * @return Document summary, or the text itself if it is no longer than a summary would be
+     */
+    public String summarize(String text, Long userId) {
+        return run(text, userId).documentSummary();
+    }
+
+    /**
+     * Stored summary of an uploaded source, computed and stored on first use.
+     *
+     * @param refresh Discard the stored summaries and summarise again
+     */
+    public SummaryResult summarizeSource(Sources source, Long userId, boolean refresh) {
+        Material material = materialRepository.findBySourceId(source.getId())
+                .orElseGet(() -> materialRepository.save(newMaterial(source)));
+
+        if (!refresh) {
+            Optional<SummaryResult> stored = storedSummary(material, source);
+            if (stored.isPresent()) {
+                return stored.get();
+            }
+        }
+        summaryRepository.deleteByMaterialId(material.getId());
+
+        String content = source.getContent() != null ? source.getContent() : "";
+        Pipeline pipeline = run(content, userId);
+
+        List<Summary> rows = new ArrayList<>();
+        for (int i = 0; i < pipeline.chunkSummaries().size(); i++) {
+            rows.add(newSummary(material, LEVEL_CHUNK, i, pipeline.chunkSummaries().get(i), null));
+        }
+        Summary document = newSummary(material, LEVEL_DOCUMENT, null, pipeline.documentSummary(), pipeline.inputTokens());
+        rows.add(document);
+        summaryRepository.saveAll(rows);
+
+        return toResult(material, source, document, pipeline.chunkSummaries().size());
+    }
+
+    /**
+     * Stored document summary of an uploaded source, if it was summarised before.
+     */
+    public Optional<SummaryResult> findSourceSummary(Sources source) {
+        return materialRepository.findBySourceId(source.getId())
+                .flatMap(material -> storedSummary(material, source));
+    }
+
+    private Optional<SummaryResult> storedSummary(Material material, Sources source) {
+        return summaryRepository.findFirstByMaterialIdAndLevel(material.getId(), LEVEL_DOCUMENT)
+                .map(summary -> toResult(material, source, summary,
+                        (int) summaryRepository.countByMaterialIdAndLevel(material.getId(), LEVEL_CHUNK)));
+    }
+
+    private SummaryResult toResult(Material material, Sources source, Summary document, int chunkCount) {
+        return new SummaryResult(material.getId(), source.getId(), document.getContent(), chunkCount,
+                document.getInputTokens() != null ? document.getInputTokens() : 0,
+                tokenChunker.countTokens(document.getContent()));
+    }
+
+    private Pipeline run(String text, Long userId) {
+        int inputTokens = tokenChunker.countTokens(text);
+        // A word is at least one token, so this material is already shorter than its summary may be
+        if (inputTokens <= documentSummaryWords) {
+            return new Pipeline(List.of(text), text, inputTokens);
+        }
+
+        List<TextChunk> chunks = tokenChunker.split(text);
+        System.out.println("Summarising " + chunks.size() + " chunk(s), " + inputTokens + " tokens");
+        List<String> chunkSummaries = map(chunks, userId);
+        if (chunkSummaries.size() == 1) {
+            return new Pipeline(chunkSummaries, chunkSummaries.get(0), inputTokens);
+        }
+
+        String joined = String.join("\n\n", chunkSummaries);
+        int joinedTokens = tokenChunker.countTokens(joined);
+        for (int round = 1; joinedTokens > tokenChunker.getMaxTokensPerChunk(); round++) {
+            if (round > maxRemapRounds) {
+                throw new IllegalStateException("Summaries still do not fit one prompt after " + maxRemapRounds
+                        + " re-map round(s) (" + joinedTokens + " tokens)");
+            }
+            // Summaries still too long for one prompt - map them again
+            System.out.println("Summary reduce round " + round + ": " + joinedTokens + " tokens do not fit one prompt");
+            String remapped = String.join("\n\n", map(tokenChunker.split(joined), userId));
+            int remappedTokens = tokenChunker.countTokens(remapped);
+            if (remappedTokens >= joinedTokens) {
+                throw new IllegalStateException("Summaries did not get shorter in re-map round " + round
+                        + " (" + joinedTokens + " -> " + remappedTokens + " tokens)");
+            }
+            joined = remapped;
+            joinedTokens = remappedTokens;
+        }
+        return new Pipeline(chunkSummaries, reduce(joined, userId), inputTokens);
+    }
+
+    private List<String> map(List<TextChunk> chunks, Long userId) {
+        List<Callable<List<String>>> tasks = new ArrayList<>();
+        for (TextChunk chunk : chunks) {
+            tasks.add(() -> {
+                try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId)) {
+                    return List.of(summarizeOnce(LEVEL_CHUNK, chunk));
+                }
+            });
+        }
+        ChunkFanOut.Outcome<String> outcome = chunkFanOut.run(tasks, Integer.MAX_VALUE, ChunkProgressListener.NONE);
+        if (!outcome.failedChunks().isEmpty()) {
+            // A summary with a missing part would silently drop material from every quiz built on it
+            throw new IllegalStateException("Could not summarise chunk(s) " + outcome.failedChunks());
+        }
+        return outcome.items();
+    }
+
+    private String reduce(String joinedSummaries, Long userId) {
+        try (LlmGovernor.UserScope user = LlmGovernor.actingAs(userId)) {
+            return summarizeOnce(LEVEL_DOCUMENT, joinedSummaries);
+        }
+    }
+
+    // Length is asked for in the prompt: a completion-token cap would also count a reasoning model's hidden tokens
+    private String summarizeOnce(String level, CharSequence text) {
+        boolean chunk = LEVEL_CHUNK.equals(level);
+        int maxWords = chunk ? chunkSummaryWords : documentSummaryWords;
+        String cacheKey = generationCache.key("summary", PROMPT_VERSION, text, level, maxWords);
+
+        return generationCache.getOrCompute(cacheKey, String.class, () -> {
+            ChatResponse response = chatClient.prompt()
+                    .system(chunk ? MAP_SYSTEM_PROMPT : REDUCE_SYSTEM_PROMPT)
+                    .user("Summarise the following in at most " + maxWords + " words.\n\n" + text)
+                    .call()
+                    .chatResponse();
+
+            String summary = response != null && response.getResult() != null
+                    ? response.getResult().getOutput().getText() : null;
+            if (summary == null || summary.isBlank()) {
+                throw new IllegalStateException("Model returned an empty summary");
+            }
+            return List.of(summary.strip());
+        }).get(0);
+    }
+
+    private static Material newMaterial(Sources source) {
+        Material material = new Material();
+        material.setSourceId(source.getId());
+        material.setFilename(source.getName() != null ? source.getName() : "Source " + source.getId());
+        material.setFilePath("sources/" + source.getId());
+        material.setFileSize(source.getContent() != null ? (long) source.getContent().length() : 0L);
+        return material;
+    }
+
+    private static Summary newSummary(Material material, String level, Integer position, String content,
+                                      Integer inputTokens) {
+        Summary summary = new Summary();
+        summary.setMaterial(material);
+        summary.setLevel(level);
+        summary.setPosition(position);
+        summary.setContent(content);
+        summary.setInputTokens(inputTokens);
+        return summary;
+    }
+
+    private record Pipeline(List<String> chunkSummaries, String documentSummary, int inputTokens) {}
+}
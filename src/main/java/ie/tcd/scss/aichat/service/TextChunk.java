@@ -0,0 +1,54 @@
+package ie.tcd.scss.aichat.service;
+
+/**
+ * A chunk of study material, held as an offset/length view over the original text.
+ *
+ * No characters are copied until {@link #toString()} is called, so splitting a
+ * multi-megabyte document costs a handful of small objects rather than a second copy
+ * of the document. Chunks that overlap simply share characters of the same source.
+ */
+public record TextChunk(String source, int offset, int length) implements CharSequence {
+
+    public TextChunk {
+        if (offset < 0 || length < 0 || offset + length > source.length()) {
+            throw new IndexOutOfBoundsException(
+                    "Chunk [" + offset + ", " + (offset + length) + ") outside text of length " + source.length());
+        }
+    }
+
+    public static TextChunk of(String text) {
+        return new TextChunk(text, 0, text.length());
+    }
+
+    /** Index in the source text just past the last character of this chunk. */
+    public int end() {
+        return offset + length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return source.charAt(offset + index);
+    }
+
+    @Override
+    public TextChunk subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") of length " + length);
+        }
+        return new TextChunk(source, offset + start, end - start);
+    }
+
+    /** Copies the characters out - only needed once the chunk is put into a prompt. */
+    @Override
+    public String toString() {
+        return source.substring(offset, offset + length);
+    }
+}
@@ -0,0 +1,280 @@
+package ie.tcd.scss.aichat.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits study material into chunks that fit the model's token budget.
+ *
+ * Token counts come from an offline BPE tokenizer (jtokkit, which ships the cl100k/o200k
+ * vocabularies as resources), so code, non-English text and whitespace-heavy slide exports
+ * are measured exactly instead of guessed at 4 chars/token.
+ *
+ * The text is scanned once, front to back, to find sentence and paragraph boundaries.
+ * Chunks are then packed greedily with whole paragraphs; a paragraph that is too big on its
+ * own is packed sentence by sentence, and a sentence that is still too big is cut at the last
+ * whitespace that fits. Chunks are returned as {@link TextChunk} views over the original text.
+ *
+ * With an overlap window, each chunk after the first starts with the trailing sentences of
+ * the previous one (up to the overlap budget), so facts spanning a cut are seen whole.
+ */
+@Component
+public class TokenChunker {
+
+    private final Encoding encoding;
+    private final int maxTokensPerChunk;
+    private final int overlapTokens;
+
+    @Autowired
+    public TokenChunker(
+            @Value("${generation.chunk.encoding:o200k_base}") String encodingName,
+            @Value("${generation.chunk.max-tokens:20000}") int maxTokensPerChunk,
+            @Value("${generation.chunk.overlap-tokens:0}") int overlapTokens) {
+        EncodingType type = EncodingType.fromName(encodingName)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown tokenizer encoding: " + encodingName));
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(type);
+        this.maxTokensPerChunk = Math.max(1, maxTokensPerChunk);
+        this.overlapTokens = Math.max(0, overlapTokens);
+    }
+
+    public TokenChunker(String encodingName, int maxTokensPerChunk) {
+        this(encodingName, maxTokensPerChunk, 0);
+    }
+
+    public int getMaxTokensPerChunk() {
+        return maxTokensPerChunk;
+    }
+
+    public int getOverlapTokens() {
+        return overlapTokens;
+    }
+
+    /**
+     * Exact token count of the text. Special-token markers in user material are counted as plain text.
+     */
+    public int countTokens(CharSequence text) {
+        return text.isEmpty() ? 0 : encoding.countTokensOrdinary(text.toString());
+    }
+
+    public List<TextChunk> split(String text) {
+        return split(text, maxTokensPerChunk, overlapTokens);
+    }
+
+    public List<TextChunk> split(String text, int maxTokens) {
+        return split(text, maxTokens, 0);
+    }
+
+    /**
+     * Split text into chunks of at most maxTokens tokens each.
+     * Text that already fits is returned as a single chunk.
+     *
+     * @param overlap Tokens of trailing context repeated at the start of the next chunk;
+     *                capped at half the budget so every chunk still makes progress
+     */
+    public List<TextChunk> split(String text, int maxTokens, int overlap) {
+        Segments segments = segment(text, maxTokens);
+        int n = segments.count;
+        if (n == 0 || segments.tokensBetween(0, n) <= maxTokens) {
+            return List.of(TextChunk.of(text));
+        }
+
+        Packer packer = new Packer(text, segments, maxTokens, Math.min(overlap, maxTokens / 2));
+        int paragraphStart = 0;
+        for (int i = 0; i < n; i++) {
+            if (!segments.paragraphEnd[i] && i < n - 1) {
+                continue;
+            }
+            int paragraphEnd = i + 1;
+            if (segments.tokensBetween(paragraphStart, paragraphEnd) <= maxTokens) {
+                packer.add(paragraphStart, paragraphEnd);
+            } else {
+                // Paragraph cannot fit anywhere - pack it sentence by sentence
+                for (int s = paragraphStart; s < paragraphEnd; s++) {
+                    packer.add(s, s + 1);
+                }
+            }
+            paragraphStart = paragraphEnd;
+        }
+        return packer.finish();
+    }
+
+    // Greedy packing over segment ranges; a chunk is emitted only once it holds something new
+    private static final class Packer {
+        private final String text;
+        private final Segments segments;
+        private final int maxTokens;
+        private final int overlap;
+        private final List<TextChunk> chunks = new ArrayList<>();
+
+        private int chunkStart;
+        private int chunkEnd;
+        private int emittedUpTo;
+
+        Packer(String text, Segments segments, int maxTokens, int overlap) {
+            this.text = text;
+            this.segments = segments;
+            this.maxTokens = maxTokens;
+            this.overlap = overlap;
+        }
+
+        void add(int from, int to) {
+            if (segments.tokensBetween(chunkStart, to) > maxTokens) {
+                if (chunkEnd > emittedUpTo) {
+                    emit();
+                    chunkStart = overlapStart();
+                }
+                if (segments.tokensBetween(chunkStart, to) > maxTokens) {
+                    // Carried-over context and the new piece do not fit together - drop the context
+                    chunkStart = from;
+                }
+            }
+            chunkEnd = to;
+        }
+
+        List<TextChunk> finish() {
+            if (chunkEnd > emittedUpTo) {
+                emit();
+            }
+            return chunks;
+        }
+
+        private void emit() {
+            int offset = segments.startOf(chunkStart);
+            chunks.add(new TextChunk(text, offset, segments.ends[chunkEnd - 1] - offset));
+            emittedUpTo = chunkEnd;
+        }
+
+        // Earliest trailing segment of the emitted chunk that keeps the carried context within budget
+        private int overlapStart() {
+            int start = chunkEnd;
+            while (start - 1 > chunkStart && segments.tokensBetween(start - 1, chunkEnd) <= overlap) {
+                start--;
+            }
+            return start;
+        }
+    }
+
+    /**
+     * One forward pass over the text. A boundary sits at the end of every whitespace run that
+     * contains a line break or follows sentence punctuation; runs with two or more line breaks
+     * end a paragraph. Whitespace always stays at the end of the segment before the boundary.
+     */
+    private Segments segment(String text, int maxTokens) {
+        Segments segments = new Segments();
+        int length = text.length();
+        int start = 0;
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            int runStart = i;
+            int newlines = 0;
+            while (i < length && Character.isWhitespace(text.charAt(i))) {
+                if (text.charAt(i) == '\n') {
+                    newlines++;
+                }
+                i++;
+            }
+
+            boolean afterPunctuation = runStart > 0 && isSentenceEnd(text.charAt(runStart - 1));
+            if (newlines >= 2) {
+                addSegment(segments, text, start, i, true, maxTokens);
+                start = i;
+            } else if (newlines == 1 || afterPunctuation) {
+                addSegment(segments, text, start, i, false, maxTokens);
+                start = i;
+            }
+        }
+        if (start < length) {
+            addSegment(segments, text, start, length, true, maxTokens);
+        }
+        return segments;
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '.' || c == '?' || c == '!';
+    }
+
+    // Counts the segment; a segment over budget on its own is cut into pieces that fit
+    private void addSegment(Segments segments, String text, int start, int end, boolean paragraphEnd, int maxTokens) {
+        int tokens = countTokens(text.substring(start, end));
+        if (tokens <= maxTokens) {
+            segments.add(end, tokens, paragraphEnd);
+            return;
+        }
+        while (start < end) {
+            int pieceEnd = fittingPrefixEnd(text, start, end, maxTokens);
+            boolean last = pieceEnd == end;
+            segments.add(pieceEnd, countTokens(text.substring(start, pieceEnd)), last && paragraphEnd);
+            start = pieceEnd;
+        }
+    }
+
+    // Binary search for the longest prefix that fits, backed off to the last whitespace when possible
+    private int fittingPrefixEnd(String text, int start, int end, int maxTokens) {
+        if (countTokens(text.substring(start, end)) <= maxTokens) {
+            return end;
+        }
+
+        int low = start + 1;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (countTokens(text.substring(start, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        for (int i = low - 1; i > start; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i + 1;
+            }
+        }
+        if (Character.isHighSurrogate(text.charAt(low - 1)) && low - 1 > start) {
+            return low - 1;
+        }
+        return low;
+    }
+
+    // Segment end offsets with a running token total, kept as growable primitive arrays
+    private static final class Segments {
+        int[] ends = new int[64];
+        long[] cumulativeTokens = new long[65];
+        boolean[] paragraphEnd = new boolean[64];
+        int count;
+
+        void add(int end, int tokens, boolean endsParagraph) {
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+                paragraphEnd = Arrays.copyOf(paragraphEnd, count * 2);
+                cumulativeTokens = Arrays.copyOf(cumulativeTokens, count * 2 + 1);
+            }
+            ends[count] = end;
+            paragraphEnd[count] = endsParagraph;
+            cumulativeTokens[count + 1] = cumulativeTokens[count] + tokens;
+            count++;
+        }
+
+        int startOf(int segment) {
+            return segment == 0 ? 0 : ends[segment - 1];
+        }
+
+        long tokensBetween(int fromSegment, int toSegment) {
+            return cumulativeTokens[toSegment] - cumulativeTokens[fromSegment];
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
+import ie.tcd.scss.aichat.model.TokenUsage;
+import ie.tcd.scss.aichat.model.User;
+import ie.tcd.scss.aichat.repository.TokenUsageRepository;
+import ie.tcd.scss.aichat.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-user token accounting and daily budgets.
+ *
+ * Every model response's usage block is added to in-memory counters for the calling user
+ * and the current UTC day. The counters are {@link LongAdder}s, so concurrent chunk calls
+ * of one user do not contend on a single cell. A scheduled flush adds what was recorded
+ * since the previous flush to the user's token_usage row for the day.
+ *
+ * Budgets are checked against the counters before a call is dispatched, so enforcement
+ * costs no database round trip. The user's budget and the tokens already stored for the
+ * day are read once, when the user makes their first call of the day on this instance, so
+ * a change to {@code users.daily_token_budget} takes effect from the next UTC day.
+ * Usage is only known once a call has finished, so a user may overshoot the budget by the
+ * calls already in flight when it was reached.
+ *
+ * Only calls attributed to a user id ({@code user:<id>}) are budgeted; anything else is
+ * counted but never rejected.
+ */
+@Component
+public class TokenUsageLedger {
+
+    private static final String USER_PREFIX = "user:";
+
+    private final TokenUsageRepository repository;
+    private final UserRepository userRepository;
+    private final long defaultDailyBudget;
+    private final Clock clock;
+
+    private final Map<DayKey, DayUsage> days = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TokenUsageLedger(TokenUsageRepository repository,
+                            UserRepository userRepository,
+                            @Value("${usage.budget.daily-tokens:0}") long defaultDailyBudget) {
+        this(repository, userRepository, defaultDailyBudget, Clock.systemUTC());
+    }
+
+    public TokenUsageLedger(TokenUsageRepository repository, UserRepository userRepository,
+                            long defaultDailyBudget, Clock clock) {
+        this.repository = repository;
+        this.userRepository = userRepository;
+        this.defaultDailyBudget = Math.max(0, defaultDailyBudget);
+        this.clock = clock;
+    }
+
+    /**
+     * Ledger that counts in memory only and never rejects a call, for governors built
+     * outside the application context (tests, benchmarks).
+     */
+    public static TokenUsageLedger inMemory() {
+        return new TokenUsageLedger(null, null, 0, Clock.systemUTC());
+    }
+
+    /**
+     * Reject the next call of this user if their budget for today is used up.
+     *
+     * @throws TokenBudgetExceededException if the user has no tokens left today
+     */
+    public void checkBudget(String user) {
+        if (!user.startsWith(USER_PREFIX)) {
+            return;
+        }
+        LocalDate today = LocalDate.now(clock);
+        DayUsage usage = dayUsage(user, today);
+        if (usage.budget > 0 && usage.totalTokens() >= usage.budget) {
+            throw new TokenBudgetExceededException(
+                    "Daily token budget of " + usage.budget + " used up; it resets at midnight UTC",
+                    resetsAt(today));
+        }
+    }
+
+    /**
+     * Add the usage block of a response to the user's counters. Responses without usage
+     * (most stream chunks) add nothing.
+     */
+    public void record(String user, ChatResponse response) {
+        Usage usage = LlmMetrics.usageOf(response);
+        if (usage == null) {
+            return;
+        }
+        DayUsage day = dayUsage(user, LocalDate.now(clock));
+        day.input.add(usage.getPromptTokens());
+        if (usage.getCompletionTokens() != null) {
+            day.output.add(usage.getCompletionTokens());
+        }
+        day.calls.increment();
+    }
+
+    /**
+     * Today's usage and budget of a user, with the stored totals of the previous days.
+     *
+     * @param historyDays Number of days to report, today included
+     */
+    public Map<String, Object> usage(String user, int historyDays) {
+        LocalDate today = LocalDate.now(clock);
+        DayUsage current = dayUsage(user, today);
+        LocalDate from = today.minusDays(Math.max(1, historyDays) - 1L);
+
+        // Stored rows, overlaid with counters still held in memory (today, and yesterday until flushed)
+        Map<LocalDate, long[]> byDay = new TreeMap<>();
+        if (repository != null) {
+            for (TokenUsage row : repository.findByUserKeyAndUsageDateGreaterThanEqualOrderByUsageDateDesc(user, from)) {
+                byDay.put(row.getUsageDate(), new long[]{row.getInputTokens(), row.getOutputTokens(), row.getCalls()});
+            }
+        }
+        days.forEach((key, day) -> {
+            if (key.user().equals(user) && !key.day().isBefore(from)) {
+                byDay.put(key.day(), new long[]{day.baseInput + day.input.sum(),
+                        day.baseOutput + day.output.sum(), day.baseCalls + day.calls.sum()});
+            }
+        });
+
+        List<Map<String, Object>> history = new ArrayList<>();
+        byDay.forEach((date, totals) -> {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("date", date.toString());
+            entry.put("inputTokens", totals[0]);
+            entry.put("outputTokens", totals[1]);
+            entry.put("calls", totals[2]);
+            history.add(0, entry);
+        });
+
+        long used = current.totalTokens();
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("date", today.toString());
+        usage.put("inputTokens", current.baseInput + current.input.sum());
+        usage.put("outputTokens", current.baseOutput + current.output.sum());
+        usage.put("calls", current.baseCalls + current.calls.sum());
+        usage.put("dailyBudget", current.budget);
+        usage.put("remaining", current.budget > 0 ? Math.max(0, current.budget - used) : null);
+        usage.put("resetsAt", resetsAt(today).toString());
+        usage.put("history", history);
+        return usage;
+    }
+
+    /**
+     * Write what was recorded since the last flush to token_usage, and drop the counters
+     * of past days once they are stored. A failed write is retried on the next flush.
+     */
+    @Scheduled(fixedDelayString = "${usage.flush-interval:PT30S}")
+    public synchronized void flush() {
+        if (repository == null) {
+            return;
+        }
+        LocalDate today = LocalDate.now(clock);
+        int written = 0;
+        for (Map.Entry<DayKey, DayUsage> entry : days.entrySet()) {
+            DayKey key = entry.getKey();
+            DayUsage day = entry.getValue();
+            long input = day.input.sum();
+            long output = day.output.sum();
+            long calls = day.calls.sum();
+
+            if (calls > day.flushedCalls) {
+                try {
+                    repository.addUsage(key.user(), key.day(), input - day.flushedInput,
+                            output - day.flushedOutput, calls - day.flushedCalls);
+                } catch (RuntimeException e) {
+                    System.err.println("Token usage flush failed for " + key.user() + ": " + e.getMessage());
+                    continue;
+                }
+                day.flushedInput = input;
+                day.flushedOutput = output;
+                day.flushedCalls = calls;
+                written++;
+            }
+            // No more calls are recorded against a past day once today's counters exist
+            if (key.day().isBefore(today) && day.calls.sum() == day.flushedCalls) {
+                days.remove(key, day);
+            }
+        }
+        if (written > 0) {
+            System.out.println("Token usage: flushed " + written + " user-day counter(s)");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // Counters for the user's day, created with the stored totals and budget on first use.
+    // Loaded outside the map: computeIfAbsent would hold the bin lock, and with it other users'
+    // budget checks, for two queries. Concurrent first calls may both load; one copy is kept.
+    private DayUsage dayUsage(String user, LocalDate day) {
+        DayKey key = new DayKey(user, day);
+        DayUsage usage = days.get(key);
+        if (usage != null) {
+            return usage;
+        }
+        DayUsage loaded = load(key);
+        DayUsage raced = days.putIfAbsent(key, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    private DayUsage load(DayKey key) {
+        TokenUsage stored = repository == null ? null
+                : repository.findByUserKeyAndUsageDate(key.user(), key.day()).orElse(null);
+        return new DayUsage(budgetOf(key.user()),
+                stored != null ? stored.getInputTokens() : 0,
+                stored != null ? stored.getOutputTokens() : 0,
+                stored != null ? stored.getCalls() : 0);
+    }
+
+    private long budgetOf(String user) {
+        if (userRepository == null || !user.startsWith(USER_PREFIX)) {
+            return defaultDailyBudget;
+        }
+        try {
+            Long userId = Long.valueOf(user.substring(USER_PREFIX.length()));
+            return userRepository.findById(userId)
+                    .map(User::getDailyTokenBudget)
+                    .map(budget -> Math.max(0, budget))
+                    .orElse(defaultDailyBudget);
+        } catch (NumberFormatException e) {
+            return defaultDailyBudget;
+        }
+    }
+
+    private static Instant resetsAt(LocalDate day) {
+        return day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    private record DayKey(String user, LocalDate day) {}
+
+    private static final class DayUsage {
+        final long budget;          // 0 = unlimited
+        final long baseInput;       // stored before this instance started counting
+        final long baseOutput;
+        final long baseCalls;
+        final LongAdder input = new LongAdder();
+        final LongAdder output = new LongAdder();
+        final LongAdder calls = new LongAdder();
+        // Portion of the adders already written; only touched by flush
+        long flushedInput;
+        long flushedOutput;
+        long flushedCalls;
+
+        DayUsage(long budget, long baseInput, long baseOutput, long baseCalls) {
+            this.budget = budget;
+            this.baseInput = baseInput;
+            this.baseOutput = baseOutput;
+            this.baseCalls = baseCalls;
+        }
+
+        long totalTokens() {
+            return baseInput + baseOutput + input.sum() + output.sum();
+        }
+    }
+}
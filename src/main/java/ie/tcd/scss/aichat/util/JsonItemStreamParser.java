@@ -0,0 +1,183 @@
+package ie.tcd.scss.aichat.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Incrementally parses streamed JSON model output into items as tokens arrive.
+ *
+ * The output is expected to be either an array of items or an object holding the items
+ * under {@code arrayField}, e.g. {"questions": [{...}, {...}]}. Each item is handed back
+ * as soon as its closing brace has been read, using Jackson's non-blocking parser, so the
+ * whole response is never buffered or rescanned.
+ *
+ * Anything before the first '{' or '[' (such as a markdown code fence) and anything after
+ * the root value closes is ignored. Items that do not bind to the item type, or that fail
+ * the validity check, are skipped rather than failing the whole response.
+ */
+public class JsonItemStreamParser<T> {
+
+    private final ObjectMapper objectMapper;
+    private final Class<T> itemType;
+    private final String arrayField;
+    private final Predicate<T> valid;
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private boolean started;
+    private boolean done;
+    private int depth;
+    private int itemsArrayDepth = -1;
+    private TokenBuffer item;
+    private char pendingHighSurrogate;
+
+    public JsonItemStreamParser(ObjectMapper objectMapper, Class<T> itemType, String arrayField, Predicate<T> valid) {
+        this.objectMapper = objectMapper;
+        this.itemType = itemType;
+        this.arrayField = arrayField;
+        this.valid = valid;
+        try {
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Parse a complete response in one go.
+     */
+    public static <T> List<T> parseAll(ObjectMapper objectMapper, Class<T> itemType, String arrayField,
+                                       Predicate<T> valid, String response) {
+        JsonItemStreamParser<T> streamParser = new JsonItemStreamParser<>(objectMapper, itemType, arrayField, valid);
+        List<T> items = streamParser.append(response);
+        items.addAll(streamParser.finish());
+        return items;
+    }
+
+    /**
+     * Append the next piece of streamed text.
+     *
+     * @param text Newly received text
+     * @return Items that are now complete, in order (usually empty or a single item)
+     */
+    public List<T> append(String text) {
+        List<T> items = new ArrayList<>();
+        if (done || text == null || text.isEmpty()) {
+            return items;
+        }
+
+        if (pendingHighSurrogate != 0) {
+            text = pendingHighSurrogate + text;
+            pendingHighSurrogate = 0;
+        }
+        if (!started) {
+            int root = indexOfRoot(text);
+            if (root < 0) {
+                return items;
+            }
+            text = text.substring(root);
+            started = true;
+        }
+        // Never encode half of a surrogate pair - hold it back until the rest arrives
+        if (Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+            pendingHighSurrogate = text.charAt(text.length() - 1);
+            text = text.substring(0, text.length() - 1);
+        }
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try {
+            feeder.feedInput(bytes, 0, bytes.length);
+            drain(items);
+        } catch (IOException e) {
+            System.err.println("Stopped parsing malformed JSON output: " + e.getMessage());
+            done = true;
+        }
+        return items;
+    }
+
+    /**
+     * Signal end of stream.
+     *
+     * @return Any items completed by the end of input (normally none)
+     */
+    public List<T> finish() {
+        List<T> items = new ArrayList<>();
+        if (done || !started) {
+            done = true;
+            return items;
+        }
+        feeder.endOfInput();
+        try {
+            drain(items);
+        } catch (IOException e) {
+            // Truncated output - keep the items that did complete
+            System.err.println("JSON output ended early: " + e.getMessage());
+        }
+        done = true;
+        return items;
+    }
+
+    private void drain(List<T> items) throws IOException {
+        JsonToken token;
+        while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (item != null) {
+                item.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd() && --depth == itemsArrayDepth) {
+                    bind(item, items);
+                    item = null;
+                }
+                continue;
+            }
+
+            if (token == JsonToken.START_OBJECT) {
+                depth++;
+                if (depth == itemsArrayDepth + 1 && itemsArrayDepth > 0) {
+                    item = new TokenBuffer(objectMapper, false);
+                    item.copyCurrentEvent(parser);
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                depth++;
+                if (depth == 1 || (depth == 2 && arrayField.equals(parser.currentName()))) {
+                    itemsArrayDepth = depth;
+                }
+            } else if (token.isStructEnd()) {
+                depth--;
+                done = depth == 0;
+            }
+        }
+    }
+
+    private void bind(TokenBuffer buffer, List<T> items) {
+        try (JsonParser itemParser = buffer.asParser(objectMapper)) {
+            T value = objectMapper.readValue(itemParser, itemType);
+            if (value != null && valid.test(value)) {
+                items.add(value);
+            }
+        } catch (IOException e) {
+            System.err.println("Skipping item that does not match " + itemType.getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private static int indexOfRoot(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '{' || c == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,117 @@
+package ie.tcd.scss.aichat.benchmark;
+
+import ie.tcd.scss.aichat.dto.SlideDocument;
+import ie.tcd.scss.aichat.dto.SlideSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic, realistic-looking inputs shared by the benchmarks.
+ */
+final class BenchmarkInputs {
+
+    private static final String[] WORDS = {
+            "the", "cell", "membrane", "controls", "which", "molecules", "enter", "and", "leave",
+            "photosynthesis", "converts", "light", "energy", "into", "chemical", "glucose", "in",
+            "chloroplasts", "mitochondria", "produce", "ATP", "through", "respiration", "enzymes",
+            "lower", "activation", "of", "reactions", "without", "being", "consumed", "a", "protein",
+            "is", "folded", "by", "hydrogen", "bonds", "DNA", "replication", "semi-conservative",
+            "each", "strand", "acts", "as", "template", "for", "new", "one", "during", "S", "phase"
+    };
+
+    private BenchmarkInputs() {
+    }
+
+    /**
+     * Lecture-notes style text of roughly the given size: sentences of 8-25 words,
+     * paragraphs of 3-8 sentences, with the odd bullet list as found in slide exports.
+     */
+    static String studyMaterial(int targetChars) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(targetChars + 256);
+        while (text.length() < targetChars) {
+            int sentences = 3 + random.nextInt(6);
+            for (int s = 0; s < sentences; s++) {
+                int words = 8 + random.nextInt(18);
+                for (int w = 0; w < words; w++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    if (w == 0) {
+                        text.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+                    } else {
+                        text.append(' ').append(word);
+                    }
+                }
+                text.append(random.nextInt(10) == 0 ? "? " : ". ");
+            }
+            if (random.nextInt(4) == 0) {
+                text.append("\n- ").append(WORDS[random.nextInt(WORDS.length)])
+                        .append("\n- ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            text.append("\n\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Model output for a quiz of roughly the given size, in the structured-output shape
+     * ({"questions": [...]}), with question text and explanations drawn from the study material.
+     */
+    static String quizJson(int targetChars) {
+        String material = studyMaterial(Math.max(targetChars, 4096));
+        StringBuilder json = new StringBuilder(targetChars + 512).append("{\"questions\": [");
+        int offset = 0;
+        for (int i = 0; json.length() < targetChars || i == 0; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"question\": \"").append(sentence(material, offset)).append("?\", \"options\": [");
+            for (int o = 0; o < 4; o++) {
+                json.append(o == 0 ? "" : ", ").append('"').append(sentence(material, offset + 97 * (o + 1))).append('"');
+            }
+            json.append("], \"correctAnswer\": ").append(i % 4)
+                    .append(", \"explanation\": \"").append(sentence(material, offset + 500)).append(".\"}");
+            offset = (offset + 613) % (material.length() - 700);
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Model output for a flashcard set of roughly the given size ({"flashcards": [...]}).
+     */
+    static String flashcardJson(int targetChars) {
+        String material = studyMaterial(Math.max(targetChars, 4096));
+        StringBuilder json = new StringBuilder(targetChars + 512).append("{\"flashcards\": [");
+        int offset = 0;
+        for (int i = 0; json.length() < targetChars || i == 0; i++) {
+            if (i > 0) {
+                json.append(", ");
+            }
+            json.append("{\"question\": \"").append(sentence(material, offset))
+                    .append("?\", \"answer\": \"").append(sentence(material, offset + 211)).append(".\"}");
+            offset = (offset + 389) % (material.length() - 400);
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * A parsed upload of roughly the given total size, cut into slide/page sections of about
+     * {@code pageChars} each.
+     */
+    static SlideDocument slideDocument(int targetChars, int pageChars) {
+        String text = studyMaterial(targetChars);
+        List<SlideSection> sections = new ArrayList<>();
+        for (int start = 0, page = 1; start < text.length(); start += pageChars, page++) {
+            sections.add(new SlideSection("Page " + page, text.substring(start, Math.min(text.length(), start + pageChars)),
+                    page, null));
+        }
+        return new SlideDocument("bench", "Lecture notes", "PDF", null, sections);
+    }
+
+    // Up to ~90 characters of material from the given offset, safe to embed in a JSON string
+    private static String sentence(String material, int offset) {
+        int start = offset % (material.length() - 100);
+        return material.substring(start, start + 90).replace('\n', ' ').replace('"', '\'').trim();
+    }
+}
@@ -0,0 +1,72 @@
+package ie.tcd.scss.aichat.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.Flashcard;
+import ie.tcd.scss.aichat.dto.QuizQuestion;
+import ie.tcd.scss.aichat.util.JsonItemStreamParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing model output into quiz questions and flashcards: the whole-response parse used by
+ * QuizService.parseQuizQuestions / FlashcardService.parseFlashcards, and the incremental
+ * parse the streaming endpoints feed token deltas into.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenerationOutputParseBenchmark {
+
+    // Typical size of a streamed content delta
+    private static final int DELTA_CHARS = 16;
+
+    @Param({"1024", "102400", "2097152"})
+    int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String quizJson;
+    private String flashcardJson;
+    private String[] quizDeltas;
+
+    @Setup
+    public void setUp() {
+        quizJson = BenchmarkInputs.quizJson(size);
+        flashcardJson = BenchmarkInputs.flashcardJson(size);
+        quizDeltas = new String[(quizJson.length() + DELTA_CHARS - 1) / DELTA_CHARS];
+        for (int i = 0; i < quizDeltas.length; i++) {
+            quizDeltas[i] = quizJson.substring(i * DELTA_CHARS, Math.min(quizJson.length(), (i + 1) * DELTA_CHARS));
+        }
+    }
+
+    @Benchmark
+    public List<QuizQuestion> parseQuizQuestions() {
+        return JsonItemStreamParser.parseAll(objectMapper, QuizQuestion.class, "questions",
+                question -> question.getOptions().size() == 4, quizJson);
+    }
+
+    @Benchmark
+    public List<Flashcard> parseFlashcards() {
+        return JsonItemStreamParser.parseAll(objectMapper, Flashcard.class, "flashcards",
+                card -> card.getAnswer() != null, flashcardJson);
+    }
+
+    @Benchmark
+    public void streamQuizQuestions(Blackhole blackhole) {
+        JsonItemStreamParser<QuizQuestion> parser = new JsonItemStreamParser<>(objectMapper, QuizQuestion.class,
+                "questions", question -> question.getOptions().size() == 4);
+        for (String delta : quizDeltas) {
+            blackhole.consume(parser.append(delta));
+        }
+        blackhole.consume(parser.finish());
+    }
+}
@@ -0,0 +1,235 @@
+package ie.tcd.scss.aichat.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Closed-loop load generator for the generation and chat endpoints of a running server.
+ *
+ * Each virtual user registers its own account, then sends requests back to back (no think
+ * time) for the given duration, picking the endpoint by the weights in {@code mix}. Start
+ * the server with the stub-llm profile unless you mean to pay for the traffic. Results from
+ * the warm-up period are discarded; then throughput, p50/p99 latency and error rate are
+ * printed per endpoint.
+ *
+ * mvn -Ploadtest test-compile exec:exec [-Dloadtest.args="users=32 duration=120s mix=quiz:1,conversation:4"]
+ *
+ * Arguments (key=value): baseUrl, users, duration, warmup, mix (quiz, flashcards, conversation),
+ * materialChars, count.
+ */
+public class HttpLoadTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    // Turns per conversation before a user starts a new one, so history (and prompt size) stays bounded
+    private static final int TURNS_PER_CONVERSATION = 10;
+
+    private final String baseUrl;
+    private final int users;
+    private final Duration duration;
+    private final Duration warmup;
+    private final Map<String, Integer> mix;
+    private final String material;
+    private final int count;
+    private final HttpClient http = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+
+    HttpLoadTest(Map<String, String> args) {
+        this.baseUrl = args.getOrDefault("baseUrl", "http://localhost:8080");
+        this.users = Integer.parseInt(args.getOrDefault("users", "8"));
+        this.duration = Duration.parse("PT" + args.getOrDefault("duration", "60s"));
+        this.warmup = Duration.parse("PT" + args.getOrDefault("warmup", "10s"));
+        this.mix = parseMix(args.getOrDefault("mix", "quiz:1,flashcards:1,conversation:4"));
+        this.material = BenchmarkInputs.studyMaterial(Integer.parseInt(args.getOrDefault("materialChars", "8000")));
+        this.count = Integer.parseInt(args.getOrDefault("count", "5"));
+        mix.keySet().forEach(endpoint -> stats.put(endpoint, new EndpointStats()));
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Map<String, String> args = new LinkedHashMap<>();
+        for (String arg : argv) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + arg);
+            }
+            args.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        new HttpLoadTest(args).run();
+    }
+
+    void run() throws Exception {
+        System.out.printf("Load test against %s: %d users, %s warm-up + %s measured, mix %s%n",
+                baseUrl, users, warmup.toSeconds() + "s", duration.toSeconds() + "s", mix);
+
+        List<String> tokens = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            tokens.add(registerUser());
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        try (ExecutorService virtualUsers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < users; i++) {
+                int user = i;
+                virtualUsers.submit(() -> userLoop(user, tokens.get(user), measureFrom, end));
+            }
+        }
+
+        report(Duration.ofNanos(end - measureFrom));
+    }
+
+    private void userLoop(int user, String token, long measureFrom, long end) {
+        Random random = new Random(user);
+        String sessionId = null;
+        int turns = 0;
+        while (System.nanoTime() < end) {
+            String endpoint = pick(random);
+            HttpRequest request;
+            switch (endpoint) {
+                case "quiz" -> request = post("/api/quiz/generate", token,
+                        Map.of("studyMaterial", material, "count", count, "difficulty", "medium"));
+                case "flashcards" -> request = post("/api/flashcards/generate", token,
+                        Map.of("studyMaterial", material, "count", count));
+                default -> {
+                    if (sessionId == null || turns++ >= TURNS_PER_CONVERSATION) {
+                        sessionId = "loadtest-" + UUID.randomUUID();
+                        turns = 0;
+                    }
+                    request = post("/api/chat/conversation", token,
+                            Map.of("sessionId", sessionId, "message", "Explain point " + random.nextInt(100) + " of the notes."));
+                }
+            }
+
+            long sent = System.nanoTime();
+            int status;
+            try {
+                status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long received = System.nanoTime();
+            // Only requests that start and finish inside the measured window count
+            if (sent >= measureFrom && received <= end) {
+                stats.get(endpoint).record(received - sent, status);
+            }
+        }
+    }
+
+    private String registerUser() throws IOException, InterruptedException {
+        String username = "loadtest-" + UUID.randomUUID().toString().substring(0, 8);
+        HttpResponse<String> response = http.send(post("/api/auth/register", null,
+                        Map.of("username", username, "email", username + "@example.com", "password", "LoadTest#2024")),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Registering " + username + " failed: "
+                    + response.statusCode() + " " + response.body());
+        }
+        JsonNode body = JSON.readTree(response.body());
+        return body.get("token").asText();
+    }
+
+    private HttpRequest post(String path, String token, Map<String, Object> body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "application/json");
+        if (token != null) {
+            // The app reads its JWT from Study-Auth rather than Authorization
+            request.header("Study-Auth", "Bearer " + token);
+        }
+        try {
+            return request.POST(HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(body))).build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String pick(Random random) {
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int roll = random.nextInt(total);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    private void report(Duration measured) {
+        double seconds = measured.toNanos() / 1e9;
+        System.out.printf("%n%-14s %9s %9s %9s %10s %10s %10s  %s%n",
+                "endpoint", "requests", "req/s", "errors %", "p50 ms", "p99 ms", "max ms", "statuses");
+        stats.forEach((endpoint, endpointStats) -> System.out.println(endpointStats.summary(endpoint, seconds)));
+    }
+
+    private static Map<String, Integer> parseMix(String spec) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String[] weight = part.split(":");
+            String endpoint = weight[0].trim();
+            if (!List.of("quiz", "flashcards", "conversation").contains(endpoint)) {
+                throw new IllegalArgumentException("Unknown endpoint in mix: " + endpoint);
+            }
+            mix.put(endpoint, weight.length > 1 ? Integer.parseInt(weight[1].trim()) : 1);
+        }
+        return mix;
+    }
+
+    // Latencies and status codes of one endpoint; written by all virtual users
+    private static final class EndpointStats {
+        private long[] latencies = new long[1024];
+        private int size;
+        private int errors;
+        private final Map<Integer, Integer> statuses = new TreeMap<>();
+
+        synchronized void record(long nanos, int status) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+            statuses.merge(status, 1, Integer::sum);
+            if (status < 200 || status >= 300) {
+                errors++;
+            }
+        }
+
+        synchronized String summary(String endpoint, double seconds) {
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return String.format("%-14s %9d %9.2f %8.1f%% %10.1f %10.1f %10.1f  %s",
+                    endpoint, size, size / seconds, size == 0 ? 0.0 : 100.0 * errors / size,
+                    percentileMs(sorted, 0.50), percentileMs(sorted, 0.99),
+                    size == 0 ? 0.0 : sorted[size - 1] / 1e6, statuses);
+        }
+
+        private static double percentileMs(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            return sorted[(int) Math.ceil(sorted.length * percentile) - 1] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ie.tcd.scss.aichat.benchmark;
+
+import ie.tcd.scss.aichat.service.PromptTemplateService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling the "summary" template, whose {text} variable carries the user's material.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PromptTemplateBenchmark {
+
+    private static final String SUMMARY_TEMPLATE = "Summarize the following text in {length} words:\n\n{text}";
+
+    @Param({"1024", "102400", "2097152"})
+    int size;
+
+    private final Map<String, Object> variables = new LinkedHashMap<>();
+
+    @Setup
+    public void setUp() {
+        // Material first: later variables are then replaced in (and copy) the already large prompt
+        variables.put("text", BenchmarkInputs.studyMaterial(size));
+        variables.put("length", 200);
+    }
+
+    @Benchmark
+    public String fillTemplate() {
+        return PromptTemplateService.fillTemplate(SUMMARY_TEMPLATE, variables);
+    }
+}
@@ -0,0 +1,108 @@
+package ie.tcd.scss.aichat.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserting the rows of a 200-question quiz: one IDENTITY insert per row (what Hibernate does
+ * when cascading QuizQuestion) versus the JDBC batch used by GeneratedSetWriter.
+ *
+ * Runs against in-memory H2, so it measures statement overhead only; against MySQL every
+ * per-row insert is also a network round trip, which the batch (rewritten to a multi-row
+ * INSERT by the driver) avoids.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QuizSaveBenchmark {
+
+    private static final int QUESTIONS = 200;
+    private static final String INSERT_SQL = "INSERT INTO quiz_questions "
+            + "(quiz_set_id, question, optiona, optionb, optionc, optiond, correct_answer, explanation, position) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private Connection connection;
+    private String[] questions;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:quizsave;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS quiz_questions (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                    + "quiz_set_id BIGINT NOT NULL, question TEXT NOT NULL, optiona TEXT NOT NULL, "
+                    + "optionb TEXT NOT NULL, optionc TEXT NOT NULL, optiond TEXT NOT NULL, "
+                    + "correct_answer VARCHAR(255) NOT NULL, explanation TEXT, position INT NOT NULL)");
+        }
+        connection.setAutoCommit(false);
+
+        String material = BenchmarkInputs.studyMaterial(QUESTIONS * 200);
+        questions = new String[QUESTIONS];
+        for (int i = 0; i < QUESTIONS; i++) {
+            questions[i] = material.substring(i * 200, i * 200 + 120);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public long perRowIdentityInsert() throws SQLException {
+        long lastId = 0;
+        for (int i = 0; i < QUESTIONS; i++) {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                bind(ps, i);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    keys.next();
+                    lastId = keys.getLong(1);
+                }
+            }
+        }
+        return lastId;
+    }
+
+    @Benchmark
+    public int[] batchedInsert() throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+            for (int i = 0; i < QUESTIONS; i++) {
+                bind(ps, i);
+                ps.addBatch();
+            }
+            return ps.executeBatch();
+        }
+    }
+
+    private void bind(PreparedStatement ps, int i) throws SQLException {
+        ps.setLong(1, 1L);
+        ps.setString(2, questions[i]);
+        ps.setString(3, "Option A");
+        ps.setString(4, "Option B");
+        ps.setString(5, "Option C");
+        ps.setString(6, "Option D");
+        ps.setString(7, "A");
+        ps.setString(8, "Explanation for question " + i);
+        ps.setInt(9, i);
+    }
+}
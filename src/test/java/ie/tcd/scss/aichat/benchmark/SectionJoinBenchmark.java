@@ -0,0 +1,41 @@
+package ie.tcd.scss.aichat.benchmark;
+
+import ie.tcd.scss.aichat.controller.DocumentController;
+import ie.tcd.scss.aichat.dto.SlideDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joining the sections of a parsed upload into the stored content (DocumentController.uploadFile),
+ * with ~2KB per page as in text-heavy PDF slides.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SectionJoinBenchmark {
+
+    private static final int PAGE_CHARS = 2048;
+
+    @Param({"1024", "102400", "2097152"})
+    int size;
+
+    private SlideDocument document;
+
+    @Setup
+    public void setUp() {
+        document = BenchmarkInputs.slideDocument(size, PAGE_CHARS);
+    }
+
+    @Benchmark
+    public String joinSections() {
+        return DocumentController.joinSections(document);
+    }
+}
@@ -0,0 +1,40 @@
+package ie.tcd.scss.aichat.benchmark;
+
+import ie.tcd.scss.aichat.service.TokenChunker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting study material into token-budgeted chunks, at upload-sized inputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TokenChunkerBenchmark {
+
+    @Param({"1024", "102400", "2097152"})
+    int size;
+
+    private String text;
+    private TokenChunker chunker;
+
+    @Setup
+    public void setUp() {
+        text = BenchmarkInputs.studyMaterial(size);
+        chunker = new TokenChunker("o200k_base", 20000);
+    }
+
+    @Benchmark
+    public List<?> split() {
+        return chunker.split(text);
+    }
+}
@@ -0,0 +1,63 @@
+package ie.tcd.scss.aichat.config;
+
+import ie.tcd.scss.aichat.service.LearningMaterialService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Tests for the access rules in SecurityConfig that no controller test covers
+ */
+@SpringBootTest(properties = {
+        "management.endpoints.web.exposure.include=health,prometheus",
+        "metrics.prometheus.scrape-token=test-scrape-token"})
+@AutoConfigureMockMvc
+// Metrics export is off in tests unless asked for
+@AutoConfigureObservability
+@ActiveProfiles("test")
+class SecurityConfigTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private LearningMaterialService learningMaterialService;
+
+    @Test
+    void testLearningMaterial_WithoutJwt_ReturnsForbidden() throws Exception {
+        // Unlike upload, this endpoint spends model tokens, which are charged to the signed-in user
+        MockMultipartFile file = new MockMultipartFile("file", "slides.pdf", "application/pdf", new byte[]{1, 2, 3});
+
+        mockMvc.perform(multipart("/api/slides/learning-material").file(file))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(learningMaterialService);
+    }
+
+    @Test
+    void testPrometheus_WithoutScrapeToken_ReturnsForbidden() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer wrong-token"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testPrometheus_WithScrapeToken_ServesMetrics() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus").header("Authorization", "Bearer test-scrape-token"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("jvm_")));
+    }
+}
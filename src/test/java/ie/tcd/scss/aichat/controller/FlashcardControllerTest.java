@@ -1,6 +1,7 @@
 package ie.tcd.scss.aichat.controller;
 
 import ie.tcd.scss.aichat.dto.Flashcard;
+import ie.tcd.scss.aichat.dto.GenerationResult;
 import ie.tcd.scss.aichat.model.User;
 import ie.tcd.scss.aichat.repository.UserRepository;
 import ie.tcd.scss.aichat.service.AuthService;
@@ -73,8 +74,8 @@ class FlashcardControllerTest {
             new Flashcard("What is Inversion of Control?", "A design principle where the framework controls object creation and lifecycle")
         );
 
-        when(flashcardService.generateFlashcards(anyString(), eq(3), eq(1L), anyString()))
-            .thenReturn(mockFlashcards);
+        when(flashcardService.generateFlashcardSet(anyString(), eq(3), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockFlashcards, 1, 120));
 
         mockMvc.perform(post("/api/flashcards/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -103,8 +104,8 @@ class FlashcardControllerTest {
             new Flashcard("Question 2?", "Answer 2")
         );
 
-        when(flashcardService.generateFlashcards(anyString(), eq(null), eq(1L), anyString()))
-            .thenReturn(mockFlashcards);
+        when(flashcardService.generateFlashcardSet(anyString(), eq(null), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockFlashcards, 1, 120));
 
         mockMvc.perform(post("/api/flashcards/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -131,6 +132,20 @@ class FlashcardControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    @WithMockUser(username = "testuser", roles = {"USER"})
+    void testGenerateFlashcards_CountAboveLimit_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/flashcards/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "studyMaterial": "Cells divide by mitosis.",
+                      "count": 2000
+                    }
+                    """))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @WithMockUser(username = "testuser", roles = {"USER"})
     void testGenerateFlashcards_NullStudyMaterial_ReturnsBadRequest() throws Exception {
@@ -185,8 +200,8 @@ class FlashcardControllerTest {
             new Flashcard("What does Spring Boot provide?", "Auto-configuration for rapid development")
         );
 
-        when(flashcardService.generateFlashcards(eq(longMaterial), eq(1), eq(1L), anyString()))
-            .thenReturn(mockFlashcards);
+        when(flashcardService.generateFlashcardSet(eq(longMaterial), eq(1), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockFlashcards, 1, 120));
 
         mockMvc.perform(post("/api/flashcards/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -1,10 +1,17 @@
 package ie.tcd.scss.aichat.controller;
 
+import ie.tcd.scss.aichat.dto.GenerationJobResponse;
+import ie.tcd.scss.aichat.dto.GenerationResult;
 import ie.tcd.scss.aichat.dto.QuizQuestion;
+import ie.tcd.scss.aichat.exception.LlmOverloadedException;
+import ie.tcd.scss.aichat.model.GenerationJob;
 import ie.tcd.scss.aichat.model.User;
 import ie.tcd.scss.aichat.repository.UserRepository;  // ADD THIS IMPORT
 import ie.tcd.scss.aichat.service.AuthService;
+import ie.tcd.scss.aichat.service.GenerationJobService;
 import ie.tcd.scss.aichat.service.QuizService;
+import ie.tcd.scss.aichat.service.SourcesService;
+import ie.tcd.scss.aichat.service.StreamExecutor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,18 +22,26 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;  // ADD THIS IMPORT
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -41,10 +56,19 @@ class QuizControllerTest {
 
     @MockBean
     private AuthService authService;
+
+    @MockBean
+    private GenerationJobService generationJobService;
     
     @MockBean  
     private UserRepository userRepository;
 
+    @MockBean
+    private SourcesService sourcesService;
+
+    @Autowired
+    private StreamExecutor streamExecutor;
+
     private User testUser;
 
     @BeforeEach
@@ -94,8 +118,8 @@ class QuizControllerTest {
             )
         );
 
-        when(quizService.generateQuiz(anyString(), eq(2), eq("medium"), eq(1L), anyString()))
-            .thenReturn(mockQuestions);
+        when(quizService.generateQuizSet(anyString(), eq(2), eq("medium"), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockQuestions, 1, 120));
 
         mockMvc.perform(post("/api/quiz/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -114,7 +138,9 @@ class QuizControllerTest {
                 .andExpect(jsonPath("$[0].correctAnswer", is(0)))
                 .andExpect(jsonPath("$[0].explanation", containsString("Spring Boot")))
                 .andExpect(jsonPath("$[1].question", is("What does @Autowired do?")))
-                .andExpect(jsonPath("$[1].correctAnswer", is(0)));
+                .andExpect(jsonPath("$[1].correctAnswer", is(0)))
+                .andExpect(header().string("X-Input-Tokens", "120"))
+                .andExpect(header().string("X-Chunk-Count", "1"));
     }
 
     @Test
@@ -128,8 +154,8 @@ class QuizControllerTest {
             )
         );
 
-        when(quizService.generateQuiz(anyString(), isNull(), eq("medium"), eq(1L), anyString()))
-            .thenReturn(mockQuestions);
+        when(quizService.generateQuizSet(anyString(), isNull(), eq("medium"), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockQuestions, 1, 120));
 
         mockMvc.perform(post("/api/quiz/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -154,8 +180,8 @@ class QuizControllerTest {
             )
         );
 
-        when(quizService.generateQuiz(anyString(), eq(1), isNull(), eq(1L), anyString()))
-            .thenReturn(mockQuestions);
+        when(quizService.generateQuizSet(anyString(), eq(1), isNull(), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockQuestions, 1, 120));
 
         mockMvc.perform(post("/api/quiz/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -175,8 +201,8 @@ class QuizControllerTest {
             new QuizQuestion("Easy question?", Arrays.asList("A", "B", "C", "D"), 0, "Easy")
         );
 
-        when(quizService.generateQuiz(anyString(), eq(1), eq("easy"), eq(1L), anyString()))
-            .thenReturn(mockQuestions);
+        when(quizService.generateQuizSet(anyString(), eq(1), eq("easy"), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockQuestions, 1, 120));
 
         mockMvc.perform(post("/api/quiz/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -196,8 +222,8 @@ class QuizControllerTest {
             new QuizQuestion("Hard question?", Arrays.asList("A", "B", "C", "D"), 0, "Hard")
         );
 
-        when(quizService.generateQuiz(anyString(), eq(1), eq("hard"), eq(1L), anyString()))
-            .thenReturn(mockQuestions);
+        when(quizService.generateQuizSet(anyString(), eq(1), eq("hard"), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockQuestions, 1, 120));
 
         mockMvc.perform(post("/api/quiz/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -224,6 +250,19 @@ class QuizControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void testGenerateQuiz_CountAboveLimit_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/quiz/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "studyMaterial": "Cells divide by mitosis.",
+                      "count": 2000
+                    }
+                    """))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testGenerateQuiz_NullStudyMaterial_ReturnsBadRequest() throws Exception {
         mockMvc.perform(post("/api/quiz/generate")
@@ -289,8 +328,8 @@ class QuizControllerTest {
             new QuizQuestion("Q5?", Arrays.asList("A", "B", "C", "D"), 0, "E5")
         );
 
-        when(quizService.generateQuiz(anyString(), eq(10), any(), eq(1L), anyString()))
-            .thenReturn(mockQuestions);
+        when(quizService.generateQuizSet(anyString(), eq(10), any(), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(1L, mockQuestions, 1, 120));
 
         mockMvc.perform(post("/api/quiz/generate")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -303,4 +342,250 @@ class QuizControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(5)));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGenerateQuizStream_EmitsQuestionAndCompleteEvents() throws Exception {
+        QuizQuestion question = new QuizQuestion(
+            "What is Spring Boot?",
+            Arrays.asList("A Java framework", "A library", "A database", "A language"),
+            0,
+            "Spring Boot is a Java framework."
+        );
+
+        when(quizService.streamQuiz(anyString(), eq(1), eq("medium"), eq(1L), anyString(), any()))
+            .thenAnswer(invocation -> {
+                Consumer<QuizQuestion> onQuestion = invocation.getArgument(5);
+                onQuestion.accept(question);
+                return 42L;
+            });
+
+        MvcResult result = mockMvc.perform(post("/api/quiz/generate/stream")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "studyMaterial": "Spring Boot is a Java framework",
+                      "count": 1,
+                      "difficulty": "medium"
+                    }
+                    """))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("event:question")))
+                .andExpect(content().string(containsString("What is Spring Boot?")))
+                .andExpect(content().string(containsString("event:complete")))
+                .andExpect(content().string(containsString("\"setId\":42")));
+    }
+
+    @Test
+    void testGenerateQuizStream_EmptyMaterial_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/quiz/generate/stream")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "studyMaterial": ""
+                    }
+                    """))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGenerateQuizStream_AllStreamSlotsBusy_ReturnsServiceUnavailable() throws Exception {
+        // Fill every stream slot with work that waits until the test is done
+        CountDownLatch release = new CountDownLatch(1);
+        int busy = 0;
+        try {
+            while (true) {
+                streamExecutor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                busy++;
+            }
+        } catch (LlmOverloadedException full) {
+            // All slots taken
+        }
+
+        try {
+            mockMvc.perform(post("/api/quiz/generate/stream")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("""
+                        {
+                          "studyMaterial": "Spring Boot is a Java framework",
+                          "count": 1
+                        }
+                        """))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().exists("Retry-After"));
+            assertEquals(busy, streamExecutor.running());
+            verifyNoInteractions(quizService);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testGenerateQuiz_Async_ReturnsAcceptedWithJobLocation() throws Exception {
+        GenerationJob job = new GenerationJob();
+        job.setId(7L);
+        job.setType(GenerationJob.TYPE_QUIZ);
+        job.setStatus(GenerationJob.STATUS_PENDING);
+        job.setUserId(1L);
+
+        when(generationJobService.submitQuiz(anyString(), anyInt(), anyString(), anyLong(), anyString(), anyBoolean()))
+            .thenReturn(job);
+        when(generationJobService.toResponse(job))
+            .thenReturn(new GenerationJobResponse(7L, GenerationJob.TYPE_QUIZ, GenerationJob.STATUS_PENDING,
+                    null, 0, null, null, null, null));
+
+        mockMvc.perform(post("/api/quiz/generate")
+                .param("async", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "studyMaterial": "Spring Boot notes",
+                      "count": 3,
+                      "difficulty": "easy"
+                    }
+                    """))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/jobs/7"))
+                .andExpect(jsonPath("$.id").value(7))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    void testGenerateQuiz_RetryWithIdempotencyKeyReturnsFirstResult() throws Exception {
+        List<QuizQuestion> mockQuestions = List.of(
+            new QuizQuestion("Retry question?", Arrays.asList("A", "B", "C", "D"), 0, "Once")
+        );
+        when(quizService.generateQuizSet(eq("Retried material"), eq(1), eq("medium"), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(9L, mockQuestions, 1, 30));
+        String key = UUID.randomUUID().toString();
+        String body = """
+                {
+                  "studyMaterial": "Retried material",
+                  "count": 1,
+                  "difficulty": "medium"
+                }
+                """;
+        // The retry sends the same fields in another order
+        String reordered = """
+                {
+                  "difficulty": "medium",
+                  "count": 1,
+                  "studyMaterial": "Retried material"
+                }
+                """;
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(post("/api/quiz/generate")
+                    .header("Idempotency-Key", key)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(attempt == 0 ? body : reordered))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$[0].question", is("Retry question?")))
+                    .andExpect(header().string("X-Input-Tokens", "30"));
+        }
+        verify(quizService, times(1)).generateQuizSet(eq("Retried material"), eq(1), eq("medium"), eq(1L), anyString(), any());
+
+        // Same key, different request
+        mockMvc.perform(post("/api/quiz/generate")
+                .header("Idempotency-Key", key)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body.replace("\"count\": 1", "\"count\": 2")))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void testGenerateQuiz_FromSourcePageRange_UsesStoredText() throws Exception {
+        when(sourcesService.findText(12L)).thenReturn(Optional.of(
+                new SourcesService.SourceText(12L, 1L, "\n\nPage one.\n\nPage two.", new int[]{2, 13})));
+        when(quizService.generateQuizSet(eq("Page two."), eq(1), eq("medium"), eq(1L), anyString(), any()))
+            .thenReturn(new GenerationResult<>(3L, List.of(
+                new QuizQuestion("Page two?", Arrays.asList("A", "B", "C", "D"), 0, "From page two")), 1, 10));
+
+        mockMvc.perform(post("/api/quiz/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "sourceId": 12,
+                      "fromPage": 2,
+                      "toPage": 2,
+                      "count": 1,
+                      "difficulty": "medium"
+                    }
+                    """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].question", is("Page two?")));
+    }
+
+    @Test
+    void testGenerateQuiz_OtherUsersSource_ReturnsForbidden() throws Exception {
+        when(sourcesService.findText(13L)).thenReturn(Optional.of(
+                new SourcesService.SourceText(13L, 2L, "\n\nNot yours.", new int[]{2})));
+
+        mockMvc.perform(post("/api/quiz/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "sourceId": 13,
+                      "count": 1
+                    }
+                    """))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void testGenerateQuiz_PageRangeWithoutSource_ReturnsBadRequest() throws Exception {
+        mockMvc.perform(post("/api/quiz/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "studyMaterial": "Test material",
+                      "fromPage": 2,
+                      "count": 1
+                    }
+                    """))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGenerateQuiz_NonIntegerPage_ReturnsBadRequest() throws Exception {
+        for (String page : List.of("\"2\"", "2.5")) {
+            mockMvc.perform(post("/api/quiz/generate")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("""
+                        {
+                          "sourceId": 12,
+                          "fromPage": %s,
+                          "count": 1
+                        }
+                        """.formatted(page)))
+                    .andExpect(status().isBadRequest());
+        }
+        verifyNoInteractions(sourcesService);
+    }
+
+    @Test
+    void testGenerateQuiz_SourceTextOverLimit_ReturnsBadRequest() throws Exception {
+        when(sourcesService.findText(14L)).thenReturn(Optional.of(
+                new SourcesService.SourceText(14L, 1L, "a".repeat(2_000_001), new int[0])));
+
+        mockMvc.perform(post("/api/quiz/generate")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {
+                      "sourceId": 14,
+                      "count": 1
+                    }
+                    """))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(quizService);
+    }
+}
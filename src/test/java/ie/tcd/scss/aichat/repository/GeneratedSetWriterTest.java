@@ -0,0 +1,118 @@
+package ie.tcd.scss.aichat.repository;
+
+import ie.tcd.scss.aichat.model.Flashcard;
+import ie.tcd.scss.aichat.model.FlashcardSet;
+import ie.tcd.scss.aichat.model.QuizQuestion;
+import ie.tcd.scss.aichat.model.QuizSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for GeneratedSetWriter
+ * Uses Mockito for the repositories and JdbcTemplate - no database needed
+ */
+@ExtendWith(MockitoExtension.class)
+class GeneratedSetWriterTest {
+
+    @Mock
+    private QuizSetRepository quizSetRepository;
+
+    @Mock
+    private FlashcardSetRepository flashcardSetRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private GeneratedSetWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new GeneratedSetWriter(quizSetRepository, flashcardSetRepository, jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSaveQuizSet_SavesParentAloneThenBatchesQuestions() throws Exception {
+        QuizSet quizSet = new QuizSet();
+        for (int i = 0; i < 200; i++) {
+            QuizQuestion question = new QuizQuestion();
+            question.setQuestion("Question " + i);
+            question.setOptionA("A");
+            question.setOptionB("B");
+            question.setOptionC("C");
+            question.setOptionD("D");
+            question.setCorrectAnswer("A");
+            question.setPosition(i);
+            question.setQuizSet(quizSet);
+            quizSet.getQuestions().add(question);
+        }
+        when(quizSetRepository.save(any())).thenAnswer(invocation -> {
+            QuizSet saved = invocation.getArgument(0);
+            // Children are not cascaded through JPA
+            assertTrue(saved.getQuestions().isEmpty());
+            saved.setId(42L);
+            return saved;
+        });
+
+        QuizSet saved = writer.saveQuizSet(quizSet);
+
+        assertEquals(42L, saved.getId());
+        ArgumentCaptor<Collection<QuizQuestion>> rows = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<ParameterizedPreparedStatementSetter<QuizQuestion>> setter =
+                ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(contains("INSERT INTO quiz_questions"), rows.capture(),
+                eq(GeneratedSetWriter.BATCH_SIZE), setter.capture());
+        assertEquals(200, rows.getValue().size());
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.getValue().setValues(ps, rows.getValue().iterator().next());
+        verify(ps).setObject(1, 42L);
+        verify(ps).setString(2, "Question 0");
+        verify(ps).setInt(9, 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSaveFlashcardSet_SavesParentAloneThenBatchesCards() throws Exception {
+        FlashcardSet set = new FlashcardSet();
+        Flashcard card = new Flashcard();
+        card.setQuestion("What is DI?");
+        card.setAnswer("Dependency Injection");
+        card.setPosition(0);
+        card.setFlashcardSet(set);
+        set.getFlashcards().add(card);
+        when(flashcardSetRepository.save(any())).thenAnswer(invocation -> {
+            FlashcardSet saved = invocation.getArgument(0);
+            saved.setId(7L);
+            return saved;
+        });
+
+        writer.saveFlashcardSet(set);
+
+        ArgumentCaptor<Collection<Flashcard>> rows = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<ParameterizedPreparedStatementSetter<Flashcard>> setter =
+                ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO flashcards"), rows.capture(),
+                eq(GeneratedSetWriter.BATCH_SIZE), setter.capture());
+        assertEquals(List.of(card), List.copyOf(rows.getValue()));
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.getValue().setValues(ps, card);
+        verify(ps).setObject(1, 7L);
+        verify(ps).setString(3, "Dependency Injection");
+    }
+}
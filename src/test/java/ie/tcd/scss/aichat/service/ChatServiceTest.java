@@ -0,0 +1,77 @@
+package ie.tcd.scss.aichat.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for ChatService
+ * The stub model behaves like the OpenAI API: a stream ends with a usage block only when asked for one
+ */
+class ChatServiceTest {
+
+    private SimpleMeterRegistry registry;
+    private TokenUsageLedger usageLedger;
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        usageLedger = TokenUsageLedger.inMemory();
+        ChatModel stub = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                boolean usageRequested = prompt.getOptions() instanceof OpenAiChatOptions options
+                        && Boolean.TRUE.equals(options.getStreamUsage());
+                return Flux.just(response("Mito", null), response("chondria", null),
+                        response("", usageRequested ? new DefaultUsage(40, 2) : null));
+            }
+        };
+        LlmGovernor governor = new LlmGovernor(2, 2, Duration.ofSeconds(1), Duration.ofSeconds(1),
+                new LlmMetrics(registry), usageLedger);
+        chatService = new ChatService(stub, governor);
+    }
+
+    @Test
+    void testChatStream_RequestsUsageSoTokensAreRecorded() {
+        String answer;
+        try (LlmGovernor.UserScope scope = LlmGovernor.actingAs(7L)) {
+            answer = String.join("", chatService.chatStream("What is the powerhouse of the cell?")
+                    .collectList().block(Duration.ofSeconds(5)));
+        }
+
+        assertEquals("Mitochondria", answer);
+        Map<String, Object> usage = usageLedger.usage(LlmGovernor.userKey(7L), 1);
+        assertEquals(40L, usage.get("inputTokens"));
+        assertEquals(2L, usage.get("outputTokens"));
+        assertEquals(40.0, registry.get("llm.tokens").tags("service", "chat", "type", "input").counter().count());
+    }
+
+    private static ChatResponse response(String text, DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model("gpt-test");
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata.build());
+    }
+}
@@ -0,0 +1,256 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for ChunkFanOut
+ */
+class ChunkFanOutTest {
+
+    private ChunkFanOut fanOut;
+
+    @BeforeEach
+    void setUp() {
+        fanOut = new ChunkFanOut(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fanOut.shutdown();
+    }
+
+    @Test
+    void testRun_MergesResultsInChunkOrder() {
+        // Given: later chunks finish first
+        List<Callable<List<String>>> tasks = List.of(
+            () -> { Thread.sleep(150); return List.of("a1", "a2"); },
+            () -> { Thread.sleep(50); return List.of("b1"); },
+            () -> List.of("c1", "c2")
+        );
+
+        // When
+        List<String> result = fanOut.run(tasks, 10);
+
+        // Then: order follows the chunks, not completion time
+        assertEquals(List.of("a1", "a2", "b1", "c1", "c2"), result);
+    }
+
+    @Test
+    void testRun_ChunksRunConcurrently() {
+        // Given: three chunks that each take 300ms
+        List<Callable<List<Integer>>> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int value = i;
+            tasks.add(() -> { Thread.sleep(300); return List.of(value); });
+        }
+
+        // When
+        long start = System.nanoTime();
+        List<Integer> result = fanOut.run(tasks, 3);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then: wall time is close to one chunk, not the sum
+        assertEquals(List.of(0, 1, 2), result);
+        assertTrue(elapsedMs < 800, "Expected concurrent execution but took " + elapsedMs + "ms");
+    }
+
+    @Test
+    void testRun_RespectsParallelismCap() {
+        // Given: more chunks than the cap
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<List<Integer>>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                running.decrementAndGet();
+                return List.of(1);
+            });
+        }
+
+        // When
+        List<Integer> result = fanOut.run(tasks, 100);
+
+        // Then
+        assertEquals(8, result.size());
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    void testRun_CancelsOutstandingOnceTargetReached() throws InterruptedException {
+        // Given: the first chunk alone satisfies the target, the second would hang
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicBoolean slowInterrupted = new AtomicBoolean(false);
+        CountDownLatch slowExited = new CountDownLatch(1);
+        List<Callable<List<String>>> tasks = List.of(
+            () -> { slowStarted.await(); return List.of("x", "y"); },
+            () -> {
+                slowStarted.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    slowInterrupted.set(true);
+                } finally {
+                    slowExited.countDown();
+                }
+                return List.of("late");
+            }
+        );
+
+        // When
+        List<String> result = fanOut.run(tasks, 2);
+
+        // Then
+        assertEquals(List.of("x", "y"), result);
+        assertTrue(slowExited.await(2, TimeUnit.SECONDS));
+        assertTrue(slowInterrupted.get());
+    }
+
+    @Test
+    void testRun_FailedChunkIsSkipped() {
+        List<Callable<List<String>>> tasks = List.of(
+            () -> List.of("a"),
+            () -> { throw new IllegalStateException("boom"); },
+            () -> List.of("c")
+        );
+
+        List<String> result = fanOut.run(tasks, 5);
+
+        assertEquals(List.of("a", "c"), result);
+    }
+
+    @Test
+    void testRun_RetriesFailedChunkWithBackoff() {
+        // Given: the second chunk fails twice before succeeding
+        ChunkFanOut retrying = new ChunkFanOut(Executors.newVirtualThreadPerTaskExecutor(), 3, 3, Duration.ofMillis(10));
+        AtomicInteger attempts = new AtomicInteger();
+        List<Callable<List<String>>> tasks = List.of(
+            () -> List.of("a"),
+            () -> {
+                if (attempts.incrementAndGet() < 3) {
+                    throw new IllegalStateException("transient");
+                }
+                return List.of("b");
+            }
+        );
+
+        // When
+        ChunkFanOut.Outcome<String> outcome = retrying.run(tasks, 5, ChunkProgressListener.NONE);
+        retrying.shutdown();
+
+        // Then
+        assertEquals(List.of("a", "b"), outcome.items());
+        assertEquals(List.of(), outcome.failedChunks());
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void testRun_BudgetExceededAbortsWithoutRetry() {
+        // Given: the user runs out of tokens on the first chunk
+        ChunkFanOut retrying = new ChunkFanOut(Executors.newVirtualThreadPerTaskExecutor(), 1, 3, Duration.ofMillis(10));
+        AtomicInteger attempts = new AtomicInteger();
+        List<Callable<List<String>>> tasks = List.of(
+            () -> { attempts.incrementAndGet(); throw new TokenBudgetExceededException("out", Instant.now()); },
+            () -> List.of("b")
+        );
+
+        // When / Then: the run is abandoned on the first attempt
+        assertThrows(TokenBudgetExceededException.class, () -> retrying.run(tasks, 5));
+        retrying.shutdown();
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void testRun_ReportsChunksThatFailEveryAttempt() {
+        // Given: the middle chunk never succeeds
+        ChunkFanOut retrying = new ChunkFanOut(Executors.newVirtualThreadPerTaskExecutor(), 3, 2, Duration.ofMillis(10));
+        AtomicInteger attempts = new AtomicInteger();
+        List<Integer> completed = new CopyOnWriteArrayList<>();
+        ChunkProgressListener progress = new ChunkProgressListener() {
+            @Override
+            public void chunksPlanned(int totalChunks) {
+            }
+
+            @Override
+            public void chunkCompleted(int chunkIndex) {
+                completed.add(chunkIndex);
+            }
+        };
+        List<Callable<List<String>>> tasks = List.of(
+            () -> List.of("a"),
+            () -> { attempts.incrementAndGet(); throw new IllegalStateException("down"); },
+            () -> List.of("c")
+        );
+
+        // When
+        ChunkFanOut.Outcome<String> outcome = retrying.run(tasks, 5, progress);
+        retrying.shutdown();
+
+        // Then: every chunk is reported once, however many attempts it took
+        assertEquals(List.of("a", "c"), outcome.items());
+        assertEquals(List.of(1), outcome.failedChunks());
+        assertEquals(2, attempts.get());
+        assertEquals(3, completed.size());
+        assertTrue(completed.containsAll(List.of(0, 1, 2)));
+    }
+
+    @Test
+    void testRun_InterruptAbandonsTheRunInsteadOfReturningPartialItems() throws Exception {
+        // Given: one chunk finishes, the others hang until interrupted
+        CountDownLatch firstDone = new CountDownLatch(1);
+        List<Callable<List<String>>> tasks = List.of(
+            () -> { firstDone.countDown(); return List.of("a"); },
+            () -> { Thread.sleep(10_000); return List.of("b"); },
+            () -> { Thread.sleep(10_000); return List.of("c"); },
+            () -> List.of("d")
+        );
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        AtomicBoolean stillInterrupted = new AtomicBoolean(false);
+        Thread caller = new Thread(() -> {
+            try {
+                fanOut.run(tasks, 10, ChunkProgressListener.NONE);
+            } catch (Throwable e) {
+                thrown.set(e);
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+
+        // When: the caller is interrupted (as by shutdownNow) mid-run
+        caller.start();
+        assertTrue(firstDone.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        caller.interrupt();
+        caller.join(2000);
+
+        // Then
+        assertInstanceOf(CancellationException.class, thrown.get());
+        assertTrue(stillInterrupted.get());
+    }
+
+    @Test
+    void testDistribute_SplitsCountAcrossChunks() {
+        assertArrayEquals(new int[] {4, 4, 2}, ChunkFanOut.distribute(10, 3));
+        assertArrayEquals(new int[] {1, 1, 0, 0}, ChunkFanOut.distribute(2, 4));
+        assertArrayEquals(new int[] {5}, ChunkFanOut.distribute(5, 1));
+    }
+}
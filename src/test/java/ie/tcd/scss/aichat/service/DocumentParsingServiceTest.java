@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -26,7 +27,7 @@ class DocumentParsingServiceTest {
 
     @BeforeEach
     void setUp() {
-        documentParsingService = new DocumentParsingService();
+        documentParsingService = new DocumentParsingService(new GenerationMetrics(new SimpleMeterRegistry()));
     }
 
     @Test
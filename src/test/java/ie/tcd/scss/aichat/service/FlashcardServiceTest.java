@@ -3,7 +3,12 @@ package ie.tcd.scss.aichat.service;
 import ie.tcd.scss.aichat.dto.Flashcard;
 import ie.tcd.scss.aichat.model.User;
 import ie.tcd.scss.aichat.repository.FlashcardSetRepository;
+import ie.tcd.scss.aichat.repository.GeneratedSetWriter;
+import ie.tcd.scss.aichat.repository.QuizSetRepository;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
 import ie.tcd.scss.aichat.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,7 +20,11 @@ import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.jdbc.core.JdbcTemplate;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,14 +45,30 @@ class FlashcardServiceTest {
     @Mock
     private FlashcardSetRepository flashcardSetRepository;
     
+    @Mock
+    private QuizSetRepository quizSetRepository;
+    
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    
     @Mock
     private UserRepository userRepository;
     
+    @Mock
+    private GenerationCacheEntryRepository generationCacheEntryRepository;
+    
     private FlashcardService flashcardService;
     
+    private final PromptCacheStats promptCacheStats = new PromptCacheStats();
+    
     @BeforeEach
     void setUp() {
-        flashcardService = new FlashcardService(chatModel, flashcardSetRepository, userRepository);
+        flashcardService = new FlashcardService(chatModel,
+                new GeneratedSetWriter(quizSetRepository, flashcardSetRepository, jdbcTemplate), userRepository, new ChunkFanOut(4),
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 100, Duration.ofDays(1), "gpt-test"),
+                new GenerationPlanner(new TokenChunker("o200k_base", 20000), "gpt-test"), new ObjectMapper(), promptCacheStats, new LlmGovernor(8),
+                new GenerationMetrics(new SimpleMeterRegistry()), new GenerationCoalescer(new SimpleMeterRegistry()),
+                GenerationVerifier.disabled());
         
         // Mock user repository to return a test user
         User testUser = new User();
@@ -57,16 +82,15 @@ class FlashcardServiceTest {
     
     @Test
     void testGenerateFlashcards_Success() {
-        // Given: Mock AI response with proper Q&A format
+        // Given: Mock AI response with the structured JSON format
         String mockAiResponse = """
-                Q: What is Spring Boot?
-                A: An open-source Java framework for building production-ready applications
-                
-                Q: What does @Autowired do?
-                A: It enables automatic dependency injection in Spring
-                
-                Q: What is Inversion of Control?
-                A: A design principle where the framework controls object creation and lifecycle
+                {
+                  "flashcards": [
+                    {"question": "What is Spring Boot?", "answer": "An open-source Java framework for building production-ready applications"},
+                    {"question": "What does @Autowired do?", "answer": "It enables automatic dependency injection in Spring"},
+                    {"question": "What is Inversion of Control?", "answer": "A design principle where the framework controls object creation and lifecycle"}
+                  ]
+                }
                 """;
         
         // Mock the ChatModel response
@@ -109,11 +133,12 @@ class FlashcardServiceTest {
     void testGenerateFlashcards_WithNullCount_UsesDefault() {
         // Given: Mock AI response
         String mockAiResponse = """
-                Q: Test question 1?
-                A: Test answer 1
-                
-                Q: Test question 2?
-                A: Test answer 2
+                {
+                  "flashcards": [
+                    {"question": "Test question 1?", "answer": "Test answer 1"},
+                    {"question": "Test question 2?", "answer": "Test answer 2"}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -132,8 +157,11 @@ class FlashcardServiceTest {
     void testGenerateFlashcards_WithZeroCount_UsesDefault() {
         // Given: Mock AI response
         String mockAiResponse = """
-                Q: Question?
-                A: Answer
+                {
+                  "flashcards": [
+                    {"question": "Question?", "answer": "Answer"}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -152,12 +180,12 @@ class FlashcardServiceTest {
     void testParseFlashcards_HandlesMultilineAnswers() {
         // Given: Mock AI response with multi-line answers
         String mockAiResponse = """
-                Q: What is Spring MVC?
-                A: Spring MVC is a web framework for building web applications.
-                It follows the Model-View-Controller design pattern.
-                
-                Q: What is @RestController?
-                A: An annotation that combines @Controller and @ResponseBody
+                {
+                  "flashcards": [
+                    {"question": "What is Spring MVC?", "answer": "Spring MVC is a web framework for building web applications.\\nIt follows the Model-View-Controller design pattern."},
+                    {"question": "What is @RestController?", "answer": "An annotation that combines @Controller and @ResponseBody"}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -192,17 +220,19 @@ class FlashcardServiceTest {
     }
     
     @Test
-    void testParseFlashcards_WithExtraWhitespace() {
-        // Given: AI response with extra whitespace
+    void testParseFlashcards_IgnoresMarkdownAroundJson() {
+        // Given: AI response wrapped in a markdown code fence with chatter around it
         String mockAiResponse = """
-                
-                Q:   What is @Bean?   
-                A:   An annotation that indicates a method produces a bean   
-                
-                
-                Q:   What is ApplicationContext?   
-                A:   The central interface for Spring IoC container   
-                
+                Here are your flashcards:
+                ```json
+                {
+                  "flashcards": [
+                    {"question": "What is @Bean?", "answer": "An annotation that indicates a method produces a bean"},
+                    {"question": "What is ApplicationContext?", "answer": "The central interface for Spring IoC container"}
+                  ]
+                }
+                ```
+                Q: Let me know if you need more!
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -212,11 +242,33 @@ class FlashcardServiceTest {
         // When
         List<Flashcard> flashcards = flashcardService.generateFlashcards("Spring annotations", 2, 1L, "Annotations");
         
-        // Then: Should trim whitespace
+        // Then: Only the JSON cards are returned
         assertNotNull(flashcards);
         assertEquals(2, flashcards.size());
         
         assertEquals("What is @Bean?", flashcards.get(0).getQuestion());
         assertEquals("An annotation that indicates a method produces a bean", flashcards.get(0).getAnswer());
     }
-}
\ No newline at end of file
+    
+    @Test
+    void testStreamFlashcards_StopsAtRequestedCount() {
+        // Given: model streams three cards but only two were requested
+        Flux<ChatResponse> tokens = Flux.just(
+                "{\"flashcards\": [{\"question\": \"What is IoC?\", \"answer\": \"Inversion of Control\"}, {\"quest",
+                "ion\": \"What is DI?\", \"answer\": \"Dependency Injection\"}, ",
+                "{\"question\": \"What is AOP?\", \"answer\": \"Aspect Oriented Programming\"}]}"
+            )
+            .map(text -> new ChatResponse(List.of(new Generation(new AssistantMessage(text)))));
+        when(chatModel.stream(any(Prompt.class))).thenReturn(tokens);
+        
+        // When
+        List<Flashcard> emitted = new ArrayList<>();
+        flashcardService.streamFlashcards("Spring material", 2, 1L, "Stream Cards", emitted::add);
+        
+        // Then
+        assertEquals(2, emitted.size());
+        assertEquals("What is IoC?", emitted.get(0).getQuestion());
+        assertEquals("Dependency Injection", emitted.get(1).getAnswer());
+        verify(flashcardSetRepository, times(1)).save(any());
+    }
+}
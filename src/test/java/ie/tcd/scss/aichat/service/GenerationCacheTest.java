@@ -0,0 +1,141 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.Flashcard;
+import ie.tcd.scss.aichat.model.GenerationCacheEntry;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for GenerationCache
+ */
+@ExtendWith(MockitoExtension.class)
+class GenerationCacheTest {
+
+    @Mock
+    private GenerationCacheEntryRepository repository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private GenerationCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new GenerationCache(repository, objectMapper, true, 100, Duration.ofHours(1), "gpt-test");
+    }
+
+    @Test
+    void testKey_SameInputsGiveSameKey() {
+        String first = cache.key("quiz", "v1", "Some lecture notes", 5, "medium");
+        String second = cache.key("quiz", "v1", new StringBuilder("Some lecture notes"), 5, "medium");
+
+        assertEquals(first, second);
+        assertEquals(64, first.length());
+    }
+
+    @Test
+    void testKey_AnyParameterChangesKey() {
+        String base = cache.key("quiz", "v1", "notes", 5, "medium");
+
+        assertNotEquals(base, cache.key("quiz", "v2", "notes", 5, "medium"));
+        assertNotEquals(base, cache.key("quiz", "v1", "notes", 6, "medium"));
+        assertNotEquals(base, cache.key("quiz", "v1", "notes", 5, "hard"));
+        assertNotEquals(base, cache.key("flashcards", "v1", "notes", 5, "medium"));
+        assertNotEquals(base, cache.key("quiz", "v1", "notes!", 5, "medium"));
+    }
+
+    @Test
+    void testGetOrCompute_SecondCallHitsMemory() {
+        AtomicInteger loads = new AtomicInteger();
+        String key = cache.key("flashcards", "v1", "notes", 1);
+
+        List<Flashcard> first = cache.getOrCompute(key, Flashcard.class, () -> {
+            loads.incrementAndGet();
+            return List.of(new Flashcard("Q1", "A1"));
+        });
+        List<Flashcard> second = cache.getOrCompute(key, Flashcard.class, () -> {
+            loads.incrementAndGet();
+            return List.of(new Flashcard("other", "other"));
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals("Q1", second.get(0).getQuestion());
+        assertEquals(first, second);
+        assertEquals(1L, cache.stats().get("memoryHits"));
+        assertEquals(1L, cache.stats().get("misses"));
+        verify(repository, times(1)).save(any(GenerationCacheEntry.class));
+    }
+
+    @Test
+    void testGet_FallsBackToDatabaseTier() throws Exception {
+        String key = cache.key("flashcards", "v1", "notes", 1);
+        GenerationCacheEntry stored = new GenerationCacheEntry();
+        stored.setCacheKey(key);
+        stored.setPayload(objectMapper.writeValueAsString(List.of(new Flashcard("Q", "A"))));
+        stored.setExpiresAt(LocalDateTime.now().plusHours(1));
+        when(repository.findByCacheKey(key)).thenReturn(Optional.of(stored));
+
+        Optional<List<Flashcard>> result = cache.get(key, Flashcard.class);
+
+        assertTrue(result.isPresent());
+        assertEquals("A", result.get().get(0).getAnswer());
+        assertEquals(1L, cache.stats().get("databaseHits"));
+
+        // Promoted to memory - second lookup does not touch the database
+        cache.get(key, Flashcard.class);
+        verify(repository, times(1)).findByCacheKey(key);
+    }
+
+    @Test
+    void testGet_ExpiredDatabaseEntryIsAMissAndDeleted() {
+        String key = cache.key("flashcards", "v1", "notes", 1);
+        GenerationCacheEntry stored = new GenerationCacheEntry();
+        stored.setCacheKey(key);
+        stored.setPayload("[]");
+        stored.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+        when(repository.findByCacheKey(key)).thenReturn(Optional.of(stored));
+
+        Optional<List<Flashcard>> result = cache.get(key, Flashcard.class);
+
+        assertTrue(result.isEmpty());
+        verify(repository).delete(stored);
+    }
+
+    @Test
+    void testPut_UsesPerEntryTtl() {
+        String key = cache.key("flashcards", "v1", "notes", 1);
+
+        cache.put(key, List.of(new Flashcard("Q", "A")), Duration.ofMinutes(5));
+
+        ArgumentCaptor<GenerationCacheEntry> saved = ArgumentCaptor.forClass(GenerationCacheEntry.class);
+        verify(repository).save(saved.capture());
+        LocalDateTime expiresAt = saved.getValue().getExpiresAt();
+        assertTrue(expiresAt.isAfter(LocalDateTime.now().plusMinutes(4)));
+        assertTrue(expiresAt.isBefore(LocalDateTime.now().plusMinutes(6)));
+    }
+
+    @Test
+    void testPut_EmptyResultIsNotCached() {
+        String key = cache.key("flashcards", "v1", "notes", 1);
+
+        cache.put(key, List.of());
+
+        verify(repository, never()).save(any());
+        assertTrue(cache.get(key, Flashcard.class).isEmpty());
+    }
+}
@@ -0,0 +1,185 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for GenerationCoalescer
+ */
+class GenerationCoalescerTest {
+
+    private SimpleMeterRegistry registry;
+    private GenerationCoalescer coalescer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        coalescer = new GenerationCoalescer(registry);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testKey_IgnoresWhitespaceButNotParameters() {
+        String key = GenerationCoalescer.key("quiz", "Cells divide\n\nby mitosis.", 5, "medium");
+
+        assertEquals(key, GenerationCoalescer.key("quiz", "  Cells divide by\tmitosis. ", 5, "medium"));
+        assertNotEquals(key, GenerationCoalescer.key("quiz", "Cells divide by mitosis.", 6, "medium"));
+        assertNotEquals(key, GenerationCoalescer.key("flashcards", "Cells divide by mitosis.", 5, "medium"));
+    }
+
+    @Test
+    void testExecute_ConcurrentIdenticalRequestsShareOneComputation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        Supplier<List<String>> computation = () -> {
+            computations.incrementAndGet();
+            await(release);
+            return List.of("q1", "q2");
+        };
+
+        Future<List<String>> leader = executor.submit(() -> coalescer.execute("quiz", "k", computation));
+        waitFor(() -> coalescer.stats().get("inFlight").equals(1));
+        Future<List<String>> follower = executor.submit(() -> coalescer.execute("quiz", "k", computation));
+        waitFor(() -> coalescer.stats().get("joined").equals(1L));
+        release.countDown();
+
+        assertEquals(List.of("q1", "q2"), leader.get(5, TimeUnit.SECONDS));
+        assertSame(leader.get(), follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, computations.get());
+        assertEquals(0.5, coalescer.stats().get("coalescingRatio"));
+        assertEquals(0.5, registry.get("generation.coalesce.ratio").gauge().value());
+        assertEquals(1.0, registry.get("generation.coalesce").tags("type", "quiz", "role", "joined").counter().count());
+
+        // Once finished, the next identical request computes again (the generation cache serves it)
+        coalescer.execute("quiz", "k", computation);
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void testExecute_FailureReachesWaitingCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<String> failing = () -> {
+            await(release);
+            throw new IllegalStateException("provider 503");
+        };
+
+        Future<String> leader = executor.submit(() -> coalescer.execute("quiz", "k", failing));
+        waitFor(() -> coalescer.stats().get("inFlight").equals(1));
+        Future<String> follower = executor.submit(() -> coalescer.execute("quiz", "k", failing));
+        waitFor(() -> coalescer.stats().get("joined").equals(1L));
+        release.countDown();
+
+        Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+        assertInstanceOf(IllegalStateException.class, followerError.getCause());
+    }
+
+    @Test
+    void testExecute_LeaderOutOfBudgetLetsFollowerRunItself() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> coalescer.execute("quiz", "k", () -> {
+            await(release);
+            throw new TokenBudgetExceededException("budget used up", Instant.now());
+        }));
+        waitFor(() -> coalescer.stats().get("inFlight").equals(1));
+        Future<String> follower = executor.submit(() -> coalescer.execute("quiz", "k", () -> "own result"));
+        waitFor(() -> coalescer.stats().get("joined").equals(1L));
+        release.countDown();
+
+        assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertEquals("own result", follower.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExecute_InterruptedLeaderLetsFollowerRunItself() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> coalescer.execute("quiz", "k", () -> {
+            await(release);
+            // As ChunkFanOut reports a fan-out stopped by shutdown
+            throw new CancellationException("Interrupted with 2 of 3 chunk(s) unfinished");
+        }));
+        waitFor(() -> coalescer.stats().get("inFlight").equals(1));
+        Future<String> follower = executor.submit(() -> coalescer.execute("quiz", "k", () -> "own result"));
+        waitFor(() -> coalescer.stats().get("joined").equals(1L));
+        release.countDown();
+
+        assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertEquals("own result", follower.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExecute_InterruptedFollowerStopsWaiting() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> coalescer.execute("quiz", "k", () -> {
+            await(release);
+            return "shared result";
+        }));
+        waitFor(() -> coalescer.stats().get("inFlight").equals(1));
+        CountDownLatch followerDone = new CountDownLatch(1);
+        AtomicReference<Throwable> followerError = new AtomicReference<>();
+        AtomicBoolean interruptRestored = new AtomicBoolean();
+        Thread follower = new Thread(() -> {
+            try {
+                coalescer.execute("quiz", "k", () -> "own result");
+            } catch (Throwable e) {
+                followerError.set(e);
+                interruptRestored.set(Thread.currentThread().isInterrupted());
+            } finally {
+                followerDone.countDown();
+            }
+        });
+        follower.start();
+        waitFor(() -> coalescer.stats().get("joined").equals(1L));
+
+        // Stopped as shutdownNow() stops a job worker, while the leader is still running
+        follower.interrupt();
+
+        assertTrue(followerDone.await(5, TimeUnit.SECONDS));
+        assertInstanceOf(CancellationException.class, followerError.get());
+        assertTrue(interruptRestored.get());
+        release.countDown();
+        assertEquals("shared result", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitFor(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.get()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.dto.GenerationResult;
+import ie.tcd.scss.aichat.model.GenerationJob;
+import ie.tcd.scss.aichat.repository.GenerationJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for GenerationJobService
+ * Jobs run on the service's worker pool, so outcomes are awaited with Mockito timeouts
+ */
+@ExtendWith(MockitoExtension.class)
+class GenerationJobServiceTest {
+
+    @Mock
+    private GenerationJobRepository jobRepository;
+
+    @Mock
+    private QuizService quizService;
+
+    @Mock
+    private FlashcardService flashcardService;
+
+    @Mock
+    private SummarizationService summarizationService;
+
+    // Status of the job at every save, in order
+    private final List<String> statuses = new CopyOnWriteArrayList<>();
+    private GenerationJobService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new GenerationJobService(jobRepository, quizService, flashcardService, summarizationService, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testSubmitQuiz_RunsFromPendingThroughRunningToCompleted() {
+        GenerationJob job = trackSaves(1L);
+        when(quizService.generateQuizSet(eq("Cells divide by mitosis."), eq(5), eq("easy"), eq(7L), eq("Biology"),
+                any(ChunkProgressListener.class))).thenAnswer(invocation -> {
+                    // The set is saved and the job told about it in one transaction
+                    invocation.<ChunkProgressListener>getArgument(5).setSaved(42L);
+                    return new GenerationResult<>(42L, List.of(), 1, 100, 0);
+                });
+
+        service.submitQuiz("Cells divide by mitosis.", 5, "easy", 7L, "Biology", false);
+
+        verify(jobRepository, timeout(2000).times(3)).save(any(GenerationJob.class));
+        assertEquals(List.of(GenerationJob.STATUS_PENDING, GenerationJob.STATUS_RUNNING, GenerationJob.STATUS_COMPLETED),
+                statuses);
+        assertEquals(42L, job.getResultSetId());
+        verify(jobRepository).recordResult(eq(1L), eq(42L), eq(GenerationJob.STATUS_COMPLETED), any());
+    }
+
+    @Test
+    void testSubmitQuiz_FailureIsRecorded() {
+        GenerationJob job = trackSaves(1L);
+        when(quizService.generateQuizSet(any(), any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("provider down"));
+
+        service.submitQuiz("Cells divide by mitosis.", 5, "easy", 7L, "Biology", false);
+
+        verify(jobRepository, timeout(2000).times(3)).save(any(GenerationJob.class));
+        assertEquals(List.of(GenerationJob.STATUS_PENDING, GenerationJob.STATUS_RUNNING, GenerationJob.STATUS_FAILED),
+                statuses);
+        assertEquals("provider down", job.getErrorMessage());
+        assertNull(job.getResultSetId());
+    }
+
+    @Test
+    void testSubmitFlashcards_InterruptedJobStaysRunning() {
+        trackSaves(1L);
+        when(flashcardService.generateFlashcardSet(any(), any(), any(), any(), any()))
+                .thenThrow(new CancellationException("Interrupted with 3 of 4 chunk(s) unfinished"));
+
+        service.submitFlashcards("Ribosomes make proteins.", 5, 7L, "Biology", false);
+
+        // Neither COMPLETED with partial cards nor FAILED: resumed on the next startup
+        verify(jobRepository, after(300).times(2)).save(any(GenerationJob.class));
+        assertEquals(List.of(GenerationJob.STATUS_PENDING, GenerationJob.STATUS_RUNNING), statuses);
+    }
+
+    @Test
+    void testResumeUnfinishedJobs_RequeuesAndCompletes() {
+        GenerationJob job = trackSaves(3L);
+        job.setType(GenerationJob.TYPE_FLASHCARDS);
+        job.setStatus(GenerationJob.STATUS_RUNNING);
+        job.setStudyMaterial("Ribosomes make proteins.");
+        job.setItemCount(4);
+        job.setUserId(7L);
+        job.setFromSummary(false);
+        when(jobRepository.findByStatusInOrderByCreatedAtAsc(anyList())).thenReturn(List.of(job));
+        when(flashcardService.generateFlashcardSet(eq("Ribosomes make proteins."), eq(4), eq(7L), any(), any()))
+                .thenReturn(new GenerationResult<>(9L, List.of(), 1, 50, 0));
+
+        service.resumeUnfinishedJobs();
+
+        verify(jobRepository, timeout(2000).times(3)).save(any(GenerationJob.class));
+        assertEquals(List.of(GenerationJob.STATUS_PENDING, GenerationJob.STATUS_RUNNING, GenerationJob.STATUS_COMPLETED),
+                statuses);
+        assertEquals(9L, job.getResultSetId());
+    }
+
+    @Test
+    void testResume_JobCompletedBeforeItRunsIsNotGeneratedAgain() {
+        GenerationJob job = trackSaves(3L);
+        job.setType(GenerationJob.TYPE_QUIZ);
+        job.setStatus(GenerationJob.STATUS_PENDING);
+        when(jobRepository.findByStatusInOrderByCreatedAtAsc(anyList())).thenReturn(List.of(job));
+        // The set was saved (and the job marked COMPLETED with it) just before the crash
+        doAnswer(invocation -> {
+            GenerationJob saved = invocation.getArgument(0);
+            saved.setStatus(GenerationJob.STATUS_COMPLETED);
+            saved.setResultSetId(42L);
+            return saved;
+        }).when(jobRepository).save(any(GenerationJob.class));
+
+        service.resumeUnfinishedJobs();
+
+        verify(jobRepository, timeout(2000).atLeastOnce()).findById(3L);
+        verify(quizService, after(300).never()).generateQuizSet(any(), any(), any(), any(), any(), any());
+        assertEquals(42L, job.getResultSetId());
+    }
+
+    // Saves assign the id and record the status; findById returns the same job, as one row would
+    private GenerationJob trackSaves(Long id) {
+        GenerationJob job = new GenerationJob();
+        lenient().when(jobRepository.save(any(GenerationJob.class))).thenAnswer(invocation -> {
+            GenerationJob saved = invocation.getArgument(0);
+            statuses.add(saved.getStatus());
+            if (saved.getId() == null) {
+                saved.setId(id);
+            }
+            copy(saved, job);
+            return saved;
+        });
+        lenient().when(jobRepository.findById(id)).thenAnswer(invocation -> Optional.of(job));
+        lenient().when(jobRepository.recordResult(eq(id), any(), any(), any())).thenAnswer(invocation -> {
+            job.setResultSetId(invocation.getArgument(1));
+            job.setStatus(invocation.getArgument(2));
+            return 1;
+        });
+        job.setId(id);
+        return job;
+    }
+
+    private static void copy(GenerationJob from, GenerationJob to) {
+        if (from == to) {
+            return;
+        }
+        to.setType(from.getType());
+        to.setStatus(from.getStatus());
+        to.setStudyMaterial(from.getStudyMaterial());
+        to.setItemCount(from.getItemCount());
+        to.setDifficulty(from.getDifficulty());
+        to.setUserId(from.getUserId());
+        to.setTitle(from.getTitle());
+        to.setFromSummary(from.getFromSummary());
+        to.setResultSetId(from.getResultSetId());
+        to.setErrorMessage(from.getErrorMessage());
+    }
+}
@@ -0,0 +1,105 @@
+package ie.tcd.scss.aichat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for GenerationPlanner
+ */
+class GenerationPlannerTest {
+
+    private static final String PARAGRAPH = "Mitochondria are the powerhouse of the cell. They produce ATP.\n\n";
+
+    @Test
+    void testAllocate_ProportionalToWeights() {
+        assertArrayEquals(new int[] {6, 2, 2}, GenerationPlanner.allocate(10, new long[] {300, 100, 100}));
+        assertArrayEquals(new int[] {3, 0, 2}, GenerationPlanner.allocate(5, new long[] {50, 0, 40}));
+        // Nothing to go on - even split as before
+        assertArrayEquals(new int[] {2, 2, 1}, GenerationPlanner.allocate(5, new long[] {0, 0, 0}));
+    }
+
+    @Test
+    void testPlan_DenseChunkGetsMoreItems() {
+        TokenChunker chunker = new TokenChunker("o200k_base", 50);
+        String dense = "Glycolysis splits glucose into pyruvate, yielding ATP and NADH. The Krebs cycle oxidises "
+                + "acetyl CoA, releasing carbon dioxide. Oxidative phosphorylation uses the electron transport chain.";
+        String sparse = "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 | page | page | page | page";
+        GenerationPlanner planner = new GenerationPlanner(chunker, "gpt-test");
+
+        GenerationPlanner.Plan plan = planner.plan(GenerationPlanner.QUIZ, dense + "\n\n" + sparse, 6);
+
+        assertEquals(2, plan.chunks().size());
+        assertEquals(6, plan.quotas()[0] + plan.quotas()[1]);
+        assertTrue(plan.quotas()[0] >= 5, "dense chunk should carry the questions");
+    }
+
+    @Test
+    void testPlan_ChunksAreBalanced() {
+        TokenChunker chunker = new TokenChunker("o200k_base", 100);
+        String text = PARAGRAPH.repeat(12);
+        GenerationPlanner planner = new GenerationPlanner(chunker, "gpt-test");
+
+        GenerationPlanner.Plan plan = planner.plan(GenerationPlanner.QUIZ, text, 4);
+
+        // Greedy packing at 100 tokens would give a full chunk and a small remainder
+        assertEquals(chunker.split(text).size(), plan.chunks().size());
+        int first = chunker.countTokens(plan.chunks().get(0));
+        int last = chunker.countTokens(plan.chunks().get(plan.chunks().size() - 1));
+        assertTrue(Math.abs(first - last) <= 20, "chunks of " + first + " and " + last + " tokens");
+    }
+
+    @Test
+    void testPlan_ChunksFitSmallContextWindow() {
+        TokenChunker chunker = new TokenChunker("o200k_base", 20000);
+        GenerationPlanner planner = new GenerationPlanner(chunker, "tiny-model", "", 0,
+                "tiny-model=3000", "", "", 0, 0, 150, 70);
+        String text = IntStream.range(0, 80).mapToObj(i -> "Section " + i + ". " + PARAGRAPH).collect(Collectors.joining());
+
+        GenerationPlanner.Plan plan = planner.plan(GenerationPlanner.QUIZ, text, 2);
+
+        // 3000 - prompt overhead - completion budget for 2 questions
+        int limit = 3000 - GenerationPlanner.PROMPT_OVERHEAD_TOKENS - plan.maxCompletionTokens(2);
+        assertTrue(plan.chunks().size() > 1);
+        plan.chunks().forEach(chunk -> assertTrue(chunker.countTokens(chunk) <= limit));
+    }
+
+    @Test
+    void testPlan_SmallInputUsesSmallModelWithoutReasoningAllowance() {
+        TokenChunker chunker = new TokenChunker("o200k_base", 20000);
+        GenerationPlanner planner = new GenerationPlanner(chunker, "gpt-5-nano", "gpt-4.1-nano", 200,
+                "", "", "gpt-5,o1,o3,o4", 4096, 0.25, 150, 70);
+
+        GenerationPlanner.Plan small = planner.plan(GenerationPlanner.FLASHCARDS, PARAGRAPH, 4);
+        GenerationPlanner.Plan large = planner.plan(GenerationPlanner.FLASHCARDS, PARAGRAPH.repeat(50), 4);
+
+        assertEquals("gpt-4.1-nano", small.model());
+        assertEquals(100 + 350, small.maxCompletionTokens(4));
+        assertEquals("gpt-5-nano", large.model());
+        // Reasoning allowance grows with the chunk, here the whole material
+        assertEquals(4096 + (int) Math.ceil(large.inputTokens() * 0.25) + 100 + 350, large.maxCompletionTokens(4));
+    }
+
+    @Test
+    void testPlan_LargeCountIsSpreadOverCallsWithinTheOutputLimit() {
+        TokenChunker chunker = new TokenChunker("o200k_base", 20000);
+        GenerationPlanner planner = new GenerationPlanner(chunker, "gpt-5-nano", "", 0,
+                "", "gpt-5-nano=32000", "gpt-5,o1,o3,o4", 4096, 0.25, 150, 70);
+        String text = PARAGRAPH.repeat(200);
+
+        GenerationPlanner.Plan plan = planner.plan(GenerationPlanner.QUIZ, text, 2000);
+
+        // Chunks are sized by what one call can return, not shrunk to the minimum for the whole count
+        int reasoning = 4096 + (int) Math.ceil(plan.inputTokens() * 0.25);
+        int perCall = (int) ((32000 - reasoning - 100) / (150 * 1.25));
+        assertTrue(plan.chunks().size() < 100, plan.chunks().size() + " chunks");
+        for (int quota : plan.quotas()) {
+            assertTrue(plan.maxCompletionTokens(quota) <= 32000);
+            assertTrue(quota <= perCall);
+        }
+        assertEquals(32000, plan.maxCompletionTokens(2000));
+    }
+}
@@ -0,0 +1,191 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.model.Flashcard;
+import ie.tcd.scss.aichat.model.QuizQuestion;
+import ie.tcd.scss.aichat.repository.FlashcardRepository;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
+import ie.tcd.scss.aichat.repository.QuizQuestionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for GenerationVerifier
+ * The chat model is a stub whose answer is chosen per test from the prompt it receives
+ */
+@ExtendWith(MockitoExtension.class)
+class GenerationVerifierTest {
+
+    @Mock
+    private GenerationCacheEntryRepository generationCacheEntryRepository;
+
+    @Mock
+    private QuizQuestionRepository quizQuestionRepository;
+
+    @Mock
+    private FlashcardRepository flashcardRepository;
+
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private volatile Function<String, String> answers = prompt -> "{\"corrections\": []}";
+    private SimpleMeterRegistry registry;
+    private GenerationVerifier verifier;
+
+    @BeforeEach
+    void setUp() {
+        ChatModel chatModel = prompt -> {
+            String text = prompt.getContents();
+            prompts.add(text);
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(answers.apply(text)))));
+        };
+        registry = new SimpleMeterRegistry();
+        verifier = new GenerationVerifier(chatModel, new LlmGovernor(8),
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 100, Duration.ofDays(1), "gpt-test"),
+                new TokenChunker("o200k_base", 20000), quizQuestionRepository, flashcardRepository, new ObjectMapper(),
+                new GenerationMetrics(registry), true, "gpt-draft", "gpt-verify", 2, 200, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        verifier.shutdown();
+    }
+
+    @Test
+    void testVerifyQuizQuestions_OverwritesOnlyCorrectedQuestions() {
+        when(quizQuestionRepository.findByQuizSetId(10L)).thenReturn(questions(3));
+        answers = prompt -> prompt.contains("=== Item 2 ===")
+                ? "{\"corrections\": [{\"number\": 2, \"question\": \"Fixed question?\","
+                        + " \"options\": [\"w\", \"x\", \"y\", \"z\"], \"correctAnswer\": 3, \"explanation\": \"Fixed\"}]}"
+                : "{\"corrections\": []}";
+
+        List<QuizQuestion> verified = verifier.verifyQuizQuestions(10L, "Cells divide by mitosis.", 1L);
+
+        assertEquals(List.of("Question 1?", "Fixed question?", "Question 3?"),
+                verified.stream().map(QuizQuestion::getQuestion).toList());
+        assertEquals("D", verified.get(1).getCorrectAnswer());
+        verify(quizQuestionRepository).updateContent(101L, "Fixed question?", "w", "x", "y", "z", "D", "Fixed");
+        verify(quizQuestionRepository, times(1)).updateContent(anyLong(), any(), any(), any(), any(), any(), any(), any());
+        // Three questions, two per call
+        assertEquals(2, prompts.size());
+        assertTrue(prompts.get(0).contains("Marked answer: A"));
+        assertTrue(prompts.get(0).contains("Cells divide by mitosis."));
+        assertEquals(1.0, registry.get("generation.verify.items").tags("type", "quiz", "outcome", "corrected").counter().count());
+        assertEquals(2.0, registry.get("generation.verify.items").tags("type", "quiz", "outcome", "unchanged").counter().count());
+    }
+
+    @Test
+    void testVerifyQuizQuestions_IgnoresCorrectionsThatCannotBeShown() {
+        when(quizQuestionRepository.findByQuizSetId(10L)).thenReturn(questions(1));
+        answers = prompt -> "{\"corrections\": [{\"number\": 1, \"question\": \"Fixed?\","
+                + " \"options\": [\"w\", \"x\", \"y\"], \"correctAnswer\": 0, \"explanation\": null},"
+                + " {\"number\": 7, \"question\": \"Not in this batch?\","
+                + " \"options\": [\"w\", \"x\", \"y\", \"z\"], \"correctAnswer\": 0, \"explanation\": null}]}";
+
+        List<QuizQuestion> verified = verifier.verifyQuizQuestions(10L, "Cells divide by mitosis.", 1L);
+
+        assertEquals("Question 1?", verified.get(0).getQuestion());
+        verify(quizQuestionRepository, never()).updateContent(anyLong(), any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testVerifyQuizQuestions_FailedBatchKeepsDrafts() {
+        when(quizQuestionRepository.findByQuizSetId(10L)).thenReturn(questions(3));
+        answers = prompt -> prompt.contains("=== Item 1 ===") ? "not json" : "{\"corrections\": []}";
+
+        List<QuizQuestion> verified = verifier.verifyQuizQuestions(10L, "Cells divide by mitosis.", 1L);
+
+        assertEquals(3, verified.size());
+        assertEquals(2.0, registry.get("generation.verify.items").tags("type", "quiz", "outcome", "unverified").counter().count());
+        assertEquals(1.0, registry.get("generation.verify.items").tags("type", "quiz", "outcome", "unchanged").counter().count());
+    }
+
+    @Test
+    void testVerifyQuizQuestions_IdenticalSetIsCheckedOnce() {
+        when(quizQuestionRepository.findByQuizSetId(anyLong())).thenAnswer(invocation -> questions(2));
+
+        verifier.verifyQuizQuestions(10L, "Cells divide by mitosis.", 1L);
+        verifier.verifyQuizQuestions(11L, "Cells divide by mitosis.", 2L);
+
+        // An answer without corrections is cached too
+        assertEquals(1, prompts.size());
+    }
+
+    @Test
+    void testVerifyFlashcards_OverwritesCorrectedCards() {
+        Flashcard card = new Flashcard();
+        card.setId(200L);
+        card.setQuestion("What do ribosomes make?");
+        card.setAnswer("Lipids");
+        card.setPosition(0);
+        when(flashcardRepository.findByFlashcardSetId(20L)).thenReturn(List.of(card));
+        answers = prompt -> "{\"corrections\": [{\"number\": 1, \"question\": \"What do ribosomes make?\","
+                + " \"answer\": \"Proteins\"}]}";
+
+        List<Flashcard> verified = verifier.verifyFlashcards(20L, "Ribosomes make proteins.", 1L);
+
+        assertEquals("Proteins", verified.get(0).getAnswer());
+        verify(flashcardRepository).updateContent(200L, "What do ribosomes make?", "Proteins");
+        assertTrue(prompts.get(0).contains("Answer: Lipids"));
+    }
+
+    @Test
+    void testVerifyQuizSet_RunsInBackgroundAndReportsVerifiedQuestions() throws Exception {
+        when(quizQuestionRepository.findByQuizSetId(10L)).thenReturn(questions(2));
+        CountDownLatch done = new CountDownLatch(1);
+
+        verifier.verifyQuizSet(10L, "Cells divide by mitosis.", 1L, verified -> {
+            assertEquals(2, verified.size());
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testDisabled_DraftsWithPlannedModelAndNeverVerifies() {
+        GenerationVerifier disabled = GenerationVerifier.disabled();
+
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.draftModel());
+        disabled.verifyQuizSet(10L, "Material", 1L, verified -> fail("Disabled verifier must not verify"));
+        disabled.verifyFlashcardSet(20L, "Material", 1L);
+        disabled.shutdown();
+        assertEquals("gpt-draft", verifier.draftModel());
+    }
+
+    private static List<QuizQuestion> questions(int n) {
+        return IntStream.range(0, n).mapToObj(i -> {
+            QuizQuestion question = new QuizQuestion();
+            question.setId((long) i + 100);
+            question.setQuestion("Question " + (i + 1) + "?");
+            question.setOptionA("Mitosis");
+            question.setOptionB("Meiosis");
+            question.setOptionC("Osmosis");
+            question.setOptionD("Diffusion");
+            question.setCorrectAnswer("A");
+            question.setPosition(i);
+            return question;
+        }).toList();
+    }
+}
@@ -0,0 +1,95 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.IdempotencyKeyConflictException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for IdempotencyStore
+ */
+class IdempotencyStoreTest {
+
+    private final IdempotencyStore store = new IdempotencyStore(100, Duration.ofHours(1));
+
+    @Test
+    void testExecute_SameKeyRunsOnce() {
+        AtomicInteger runs = new AtomicInteger();
+
+        String first = store.execute("quiz/generate:1", "k1", "body", () -> "set-" + runs.incrementAndGet());
+        String retry = store.execute("quiz/generate:1", "k1", "body", () -> "set-" + runs.incrementAndGet());
+
+        assertEquals("set-1", first);
+        assertEquals("set-1", retry);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testExecute_KeysAreScopedAndOptional() {
+        AtomicInteger runs = new AtomicInteger();
+
+        store.execute("quiz/generate:1", "k1", "body", runs::incrementAndGet);
+        store.execute("quiz/generate:2", "k1", "body", runs::incrementAndGet);
+        store.execute("flashcards/generate:1", "k1", "body", runs::incrementAndGet);
+        store.execute("quiz/generate:1", null, "body", runs::incrementAndGet);
+        store.execute("quiz/generate:1", null, "body", runs::incrementAndGet);
+
+        assertEquals(5, runs.get());
+    }
+
+    @Test
+    void testExecute_DifferentRequestWithSameKeyIsRejected() {
+        store.execute("quiz/generate:1", "k1", "count=5", () -> "set");
+
+        assertThrows(IdempotencyKeyConflictException.class,
+                () -> store.execute("quiz/generate:1", "k1", "count=6", () -> "other"));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.execute("quiz/generate:1", "x".repeat(300), "count=5", () -> "set"));
+    }
+
+    @Test
+    void testExecute_FailedAttemptIsNotStored() {
+        assertThrows(IllegalStateException.class, () -> store.execute("quiz/generate:1", "k1", "body", () -> {
+            throw new IllegalStateException("provider 503");
+        }));
+
+        assertEquals("set", store.execute("quiz/generate:1", "k1", "body", () -> "set"));
+    }
+
+    @Test
+    void testExecute_RetryAttachesToRunningAttempt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> store.execute("quiz/generate:1", "k1", "body", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "set";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> retry = CompletableFuture.supplyAsync(
+                () -> store.execute("quiz/generate:1", "k1", "body", () -> "set-" + runs.incrementAndGet()));
+        release.countDown();
+
+        assertEquals("set", first.get(5, TimeUnit.SECONDS));
+        assertEquals("set", retry.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.SlideDocument;
+import ie.tcd.scss.aichat.dto.SlideSection;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for LearningMaterialService
+ * The chat model is a stub that answers every "=== Page N ===" marker in its prompt
+ */
+@ExtendWith(MockitoExtension.class)
+class LearningMaterialServiceTest {
+
+    private static final Pattern PAGE_MARKER = Pattern.compile("=== Page (\\d+) ===");
+
+    @Mock
+    private GenerationCacheEntryRepository generationCacheEntryRepository;
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private ChunkFanOut chunkFanOut;
+    private LearningMaterialService service;
+
+    @BeforeEach
+    void setUp() {
+        ChatModel chatModel = prompt -> {
+            calls.incrementAndGet();
+            Matcher pages = PAGE_MARKER.matcher(prompt.getContents());
+            StringBuilder json = new StringBuilder("{\"pages\": [");
+            String separator = "";
+            while (pages.find()) {
+                String page = pages.group(1);
+                json.append(separator).append("{\"page\": ").append(page)
+                        .append(", \"topic\": \"Topic ").append(page)
+                        .append("\", \"keyPoints\": [\"Point ").append(page)
+                        .append("\"], \"questions\": [\"Question ").append(page).append("?\"]}");
+                separator = ", ";
+            }
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(json.append("]}").toString()))));
+        };
+        chunkFanOut = new ChunkFanOut(4);
+        service = new LearningMaterialService(chatModel, new LlmGovernor(8), chunkFanOut,
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 1000, Duration.ofDays(1), "gpt-test"),
+                new TokenChunker("o200k_base", 20000), new ObjectMapper(), 6000, 20);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chunkFanOut.shutdown();
+    }
+
+    @Test
+    void testPopulate_SixtySlidesTakeAHandfulOfCalls() {
+        // ~170 tokens per slide: the 20-page cap fills before the 6000-token budget
+        SlideDocument deck = deck(60);
+
+        int batches = service.populate(deck);
+
+        assertEquals(3, batches);
+        assertEquals(3, calls.get());
+        for (SlideSection section : deck.getSections()) {
+            assertEquals("Topic " + section.getPageNumber(), section.getLearningMaterial().getTopic());
+            assertEquals(List.of("Point " + section.getPageNumber()), section.getLearningMaterial().getKeyPoints());
+            assertEquals(List.of("Question " + section.getPageNumber() + "?"), section.getLearningMaterial().getQuestions());
+        }
+    }
+
+    @Test
+    void testPopulate_PagesSeenBeforeComeFromCache() {
+        service.populate(deck(30));
+        calls.set(0);
+
+        // Same 30 slides plus 5 new ones
+        SlideDocument extended = deck(35);
+        int batches = service.populate(extended);
+
+        assertEquals(1, batches);
+        assertEquals(1, calls.get());
+        assertEquals("Topic 33", extended.getSections().get(32).getLearningMaterial().getTopic());
+    }
+
+    @Test
+    void testPopulate_BlankPagesAreNotSent() {
+        SlideDocument deck = deck(2);
+        deck.getSections().add(new SlideSection(null, "   ", 3, null));
+
+        service.populate(deck);
+
+        assertEquals(1, calls.get());
+        assertNull(deck.getSections().get(2).getLearningMaterial().getTopic());
+        assertTrue(deck.getSections().get(2).getLearningMaterial().getKeyPoints().isEmpty());
+    }
+
+    @Test
+    void testPack_KeepsPageOrderWithinTokenAndPageLimits() {
+        List<LearningMaterialService.PendingPage> pages = new ArrayList<>();
+        int[] sizes = {400, 400, 300, 900, 100, 100, 100};
+        for (int i = 0; i < sizes.length; i++) {
+            pages.add(new LearningMaterialService.PendingPage(new SlideSection(null, "p", i + 1, null), "k" + i, sizes[i]));
+        }
+
+        List<List<LearningMaterialService.PendingPage>> batches = LearningMaterialService.pack(pages, 1000, 3);
+
+        // 400+400 (next would pass 1000) | 300 | 900+100 (exactly the budget) | 100+100
+        assertEquals(List.of(List.of(1, 2), List.of(3), List.of(4, 5), List.of(6, 7)),
+                batches.stream().map(b -> b.stream().map(p -> p.section().getPageNumber()).toList()).toList());
+    }
+
+    private static SlideDocument deck(int slides) {
+        SlideDocument deck = new SlideDocument();
+        for (int i = 1; i <= slides; i++) {
+            deck.getSections().add(new SlideSection(null,
+                    "Slide " + i + ". Enzymes lower the activation energy of reaction " + i + ". "
+                            + "Substrate binds to the active site; temperature and pH change the rate. ".repeat(10),
+                    i, null));
+        }
+        return deck;
+    }
+}
@@ -0,0 +1,156 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.LlmOverloadedException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for LlmGovernor
+ */
+class LlmGovernorTest {
+
+    private static final LlmGovernor.Priority INTERACTIVE = LlmGovernor.Priority.INTERACTIVE;
+    private static final LlmGovernor.Priority BULK = LlmGovernor.Priority.BULK;
+
+    @Test
+    void testAcquire_BlocksAtGlobalCapUntilReleased() throws Exception {
+        // Given: both slots taken
+        LlmGovernor governor = new LlmGovernor(2);
+        LlmGovernor.Permit first = governor.acquire(INTERACTIVE, "alice", 10);
+        governor.acquire(INTERACTIVE, "bob", 10);
+
+        // When: a third call arrives
+        List<String> granted = new CopyOnWriteArrayList<>();
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try (LlmGovernor.Permit permit = governor.acquire(INTERACTIVE, "carol", 10)) {
+                granted.add("carol");
+            }
+        });
+        awaitQueued(governor, "interactive", 1);
+
+        // Then: it only runs once a slot is released
+        assertTrue(granted.isEmpty());
+        first.close();
+        waiter.join(2000);
+        assertEquals(List.of("carol"), granted);
+    }
+
+    @Test
+    void testAcquire_InteractiveServedBeforeEarlierBulk() throws Exception {
+        // Given: the only slot is busy and a bulk call queued first
+        LlmGovernor governor = new LlmGovernor(1);
+        LlmGovernor.Permit busy = governor.acquire(BULK, "alice", 10);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Thread bulk = startWaiter(governor, BULK, "alice", 10, "bulk", order);
+        awaitQueued(governor, "bulk", 1);
+        Thread chat = startWaiter(governor, INTERACTIVE, "bob", 10, "chat", order);
+        awaitQueued(governor, "interactive", 1);
+
+        // When
+        busy.close();
+        bulk.join(2000);
+        chat.join(2000);
+
+        // Then
+        assertEquals(List.of("chat", "bulk"), order);
+    }
+
+    @Test
+    void testAcquire_UsersTakeTurnsWithinClass() throws Exception {
+        // Given: alice queues three chunk calls before bob queues one
+        LlmGovernor governor = new LlmGovernor(1);
+        LlmGovernor.Permit busy = governor.acquire(BULK, "someone", 100);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        Thread a1 = startWaiter(governor, BULK, "alice", 100, "a1", order);
+        awaitQueued(governor, "bulk", 1);
+        Thread a2 = startWaiter(governor, BULK, "alice", 100, "a2", order);
+        awaitQueued(governor, "bulk", 2);
+        Thread a3 = startWaiter(governor, BULK, "alice", 100, "a3", order);
+        awaitQueued(governor, "bulk", 3);
+        Thread b1 = startWaiter(governor, BULK, "bob", 100, "b1", order);
+        awaitQueued(governor, "bulk", 4);
+
+        // When
+        busy.close();
+        for (Thread thread : List.of(a1, a2, a3, b1)) {
+            thread.join(2000);
+        }
+
+        // Then: bob does not wait behind all of alice's calls
+        assertEquals(List.of("a1", "b1", "a2", "a3"), order);
+    }
+
+    @Test
+    void testAcquire_BulkCapLeavesSlotsForInteractive() {
+        // Given: 2 slots, bulk limited to 1
+        LlmGovernor governor = new LlmGovernor(2, 1, Duration.ofSeconds(1), Duration.ofMillis(100));
+        governor.acquire(BULK, "alice", 10);
+
+        // When / Then: a second bulk call cannot get the free slot, chat can
+        assertThrows(LlmOverloadedException.class, () -> governor.acquire(BULK, "bob", 10));
+        assertNotNull(governor.acquire(INTERACTIVE, "carol", 10));
+
+        Map<String, Object> bulkStats = classStats(governor, "bulk");
+        assertEquals(1L, bulkStats.get("timedOut"));
+        assertEquals(0, bulkStats.get("queued"));
+        assertEquals(2, governor.stats().get("inFlight"));
+    }
+
+    @Test
+    void testPermit_CloseTwiceReleasesOnce() {
+        LlmGovernor governor = new LlmGovernor(2);
+        LlmGovernor.Permit permit = governor.acquire(INTERACTIVE, "alice", 10);
+        governor.acquire(INTERACTIVE, "bob", 10);
+
+        permit.close();
+        permit.close();
+
+        assertEquals(1, governor.stats().get("inFlight"));
+    }
+
+    @Test
+    void testCurrentUser_ScopeOverridesAndRestores() {
+        assertEquals(LlmGovernor.ANONYMOUS, LlmGovernor.currentUser());
+
+        try (LlmGovernor.UserScope outer = LlmGovernor.actingAs(7L)) {
+            assertEquals("user:7", LlmGovernor.currentUser());
+            try (LlmGovernor.UserScope inner = LlmGovernor.actingAs("bob")) {
+                assertEquals("bob", LlmGovernor.currentUser());
+            }
+            assertEquals("user:7", LlmGovernor.currentUser());
+        }
+
+        assertEquals(LlmGovernor.ANONYMOUS, LlmGovernor.currentUser());
+    }
+
+    private static Thread startWaiter(LlmGovernor governor, LlmGovernor.Priority priority, String user,
+                                      long cost, String label, List<String> order) {
+        return Thread.ofVirtual().start(() -> {
+            try (LlmGovernor.Permit permit = governor.acquire(priority, user, cost)) {
+                order.add(label);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> classStats(LlmGovernor governor, String priorityClass) {
+        return (Map<String, Object>) governor.stats().get(priorityClass);
+    }
+
+    private static void awaitQueued(LlmGovernor governor, String priorityClass, int queued) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while ((int) classStats(governor, priorityClass).get("queued") < queued) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for " + queued + " queued call(s)");
+            Thread.sleep(5);
+        }
+    }
+}
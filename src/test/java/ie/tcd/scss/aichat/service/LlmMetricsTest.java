@@ -0,0 +1,103 @@
+package ie.tcd.scss.aichat.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for LlmMetrics and the metered model it wraps around services' chat models
+ */
+class LlmMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private LlmMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new LlmMetrics(registry);
+    }
+
+    @Test
+    void testCall_RecordsLatencyAndTokensByServiceAndModel() {
+        ChatModel model = metrics.instrument(prompt -> response("ok", new DefaultUsage(120, 30)), "quiz");
+
+        model.call(new Prompt("p"));
+        model.call(new Prompt("p"));
+
+        Timer timer = registry.get("llm.call")
+                .tags("service", "quiz", "model", "gpt-test", "mode", "call", "outcome", "success").timer();
+        assertEquals(2, timer.count());
+        assertEquals(240.0, registry.get("llm.tokens").tags("service", "quiz", "type", "input").counter().count());
+        assertEquals(60.0, registry.get("llm.tokens").tags("service", "quiz", "type", "output").counter().count());
+    }
+
+    @Test
+    void testCall_FailureIsTimedAsErrorAndRethrown() {
+        ChatModel model = metrics.instrument(prompt -> {
+            throw new TransientAiException("503");
+        }, "chat");
+
+        assertThrows(TransientAiException.class, () -> model.call(new Prompt("p")));
+
+        assertEquals(1, registry.get("llm.call").tags("service", "chat", "outcome", "error").timer().count());
+        assertNull(registry.find("llm.tokens").counter());
+    }
+
+    @Test
+    void testStream_TimedOnceWithUsageFromLastChunk() {
+        ChatModel stub = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.just(response("a", null), response("b", null), response("", new DefaultUsage(50, 2)));
+            }
+        };
+        ChatModel model = metrics.instrument(stub, "flashcards");
+
+        List<ChatResponse> chunks = model.stream(new Prompt("p")).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(3, chunks.size());
+        assertEquals(1, registry.get("llm.call")
+                .tags("service", "flashcards", "model", "gpt-test", "mode", "stream", "outcome", "success").timer().count());
+        assertEquals(50.0, registry.get("llm.tokens").tags("type", "input").counter().count());
+    }
+
+    @Test
+    void testGovern_QueueWaitRecordedPerPriority() {
+        LlmGovernor governor = new LlmGovernor(2, 2, Duration.ofSeconds(1), Duration.ofSeconds(1), metrics);
+        ChatModel model = governor.govern(prompt -> response("ok", null), LlmGovernor.Priority.BULK, "quiz");
+
+        model.call(new Prompt("p"));
+
+        assertEquals(1, registry.get("llm.governor.wait").tags("priority", "bulk").timer().count());
+        assertEquals(1, registry.get("llm.call").tags("service", "quiz").timer().count());
+    }
+
+    private static ChatResponse response(String text, DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model("gpt-test");
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))), metadata.build());
+    }
+}
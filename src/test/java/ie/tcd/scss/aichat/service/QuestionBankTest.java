@@ -0,0 +1,236 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.dto.QuizQuestion;
+import ie.tcd.scss.aichat.model.BankQuestion;
+import ie.tcd.scss.aichat.model.BankQuestionSeen;
+import ie.tcd.scss.aichat.repository.BankQuestionRepository;
+import ie.tcd.scss.aichat.repository.BankQuestionSeenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for QuestionBank
+ */
+@ExtendWith(MockitoExtension.class)
+class QuestionBankTest {
+
+    private static final String HASH = QuestionBank.materialHash("Cells divide by mitosis.");
+
+    @Mock
+    private BankQuestionRepository questionRepository;
+
+    @Mock
+    private BankQuestionSeenRepository seenRepository;
+
+    private SimpleMeterRegistry registry;
+    private QuestionBank bank;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        bank = new QuestionBank(questionRepository, seenRepository, new GenerationMetrics(registry), true, 10, 20, 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bank.shutdown();
+    }
+
+    @Test
+    void testMaterialHash_IgnoresWhitespace() {
+        assertEquals(HASH, QuestionBank.materialHash("  Cells divide\n\nby   mitosis. "));
+        assertNotEquals(HASH, QuestionBank.materialHash("Cells divide by meiosis."));
+    }
+
+    @Test
+    void testTake_SamplesUnseenQuestionsAndMarksThemSeen() {
+        stubBank(5);
+        List<BankQuestionSeen> seen = claimAll();
+
+        Optional<List<QuizQuestion>> taken = bank.take(HASH, "medium", 7L, 3);
+
+        assertTrue(taken.isPresent());
+        assertEquals(3, taken.get().size());
+        assertEquals(3, taken.get().stream().map(QuizQuestion::getQuestion).distinct().count());
+        QuizQuestion first = taken.get().get(0);
+        assertEquals(4, first.getOptions().size());
+        assertEquals(1, first.getCorrectAnswer());
+
+        assertEquals(3, seen.size());
+        assertTrue(seen.stream().allMatch(s -> s.getUserId().equals(7L)));
+        // Served questions are the claimed ones, and only they are loaded
+        assertEquals(seen.stream().map(s -> "Q" + s.getBankQuestionId()).toList(),
+                taken.get().stream().map(QuizQuestion::getQuestion).toList());
+        verify(questionRepository).findAllById(seen.stream().map(BankQuestionSeen::getBankQuestionId).toList());
+        assertEquals(1.0, registry.get("generation.bank.lookups").tags("type", "quiz", "outcome", "served").counter().count());
+    }
+
+    @Test
+    void testTake_QuestionClaimedConcurrentlyIsReplaced() {
+        stubBank(5);
+        List<BankQuestionSeen> seen = claimAll();
+        // The first question drawn was just served to the same user by another request
+        doThrow(new DataIntegrityViolationException("Duplicate entry"))
+                .doAnswer(invocation -> {
+                    seen.add(invocation.getArgument(0));
+                    return invocation.getArgument(0);
+                })
+                .when(seenRepository).saveAndFlush(any(BankQuestionSeen.class));
+
+        Optional<List<QuizQuestion>> taken = bank.take(HASH, "medium", 7L, 3);
+
+        assertTrue(taken.isPresent());
+        assertEquals(3, taken.get().size());
+        verify(seenRepository, times(4)).saveAndFlush(any(BankQuestionSeen.class));
+        assertEquals(seen.stream().map(s -> "Q" + s.getBankQuestionId()).toList(),
+                taken.get().stream().map(QuizQuestion::getQuestion).toList());
+    }
+
+    @Test
+    void testTake_TooManyClaimedConcurrentlyFallsBackToModel() {
+        when(questionRepository.findUnseenIds(HASH, "medium", 7L)).thenReturn(List.of(0L, 1L, 2L));
+        List<BankQuestionSeen> seen = claimAll();
+        doAnswer(invocation -> {
+            BankQuestionSeen row = invocation.getArgument(0);
+            if (row.getBankQuestionId() == 1L) {
+                throw new DataIntegrityViolationException("Duplicate entry");
+            }
+            seen.add(row);
+            return row;
+        }).when(seenRepository).saveAndFlush(any(BankQuestionSeen.class));
+
+        assertTrue(bank.take(HASH, "medium", 7L, 3).isEmpty());
+
+        // The two questions claimed are handed back, so the user can still be served them later
+        verify(seenRepository).deleteAll(seen);
+        assertEquals(2, seen.size());
+        verify(questionRepository, never()).findAllById(anyList());
+        assertEquals(1.0, registry.get("generation.bank.lookups").tags("type", "quiz", "outcome", "miss").counter().count());
+    }
+
+    @Test
+    void testTake_MissWhenBankCannotCoverRequest() {
+        when(questionRepository.findUnseenIds(HASH, "medium", 7L)).thenReturn(List.of(0L, 1L));
+
+        assertTrue(bank.take(HASH, "medium", 7L, 3).isEmpty());
+
+        verify(seenRepository, never()).saveAndFlush(any());
+        assertEquals(1.0, registry.get("generation.bank.lookups").tags("type", "quiz", "outcome", "miss").counter().count());
+    }
+
+    @Test
+    void testAdd_StoresNewQuestionsOnceAndMarksThemSeen() {
+        BankQuestion existing = banked(1).get(0);
+        when(questionRepository.findByMaterialHashAndDifficultyAndQuestionHash(eq(HASH), eq("medium"), any()))
+                .thenReturn(Optional.of(existing), Optional.empty());
+        when(questionRepository.save(any(BankQuestion.class))).thenAnswer(invocation -> {
+            BankQuestion saved = invocation.getArgument(0);
+            saved.setId(99L);
+            return saved;
+        });
+
+        int added = bank.add(HASH, "medium", List.of(question("Q0"), question("New question")), 7L);
+
+        assertEquals(1, added);
+        ArgumentCaptor<BankQuestion> saved = ArgumentCaptor.forClass(BankQuestion.class);
+        verify(questionRepository).save(saved.capture());
+        assertEquals("New question", saved.getValue().getQuestion());
+        assertEquals("B", saved.getValue().getCorrectAnswer());
+        verify(seenRepository, times(2)).save(any(BankQuestionSeen.class));
+    }
+
+    @Test
+    void testTopUpIfLow_GeneratesAvoidingBankedQuestions() throws Exception {
+        when(questionRepository.countByMaterialHashAndDifficulty(HASH, "medium")).thenReturn(5L);
+        when(questionRepository.countUnseen(HASH, "medium", 7L)).thenReturn(2L);
+        when(questionRepository.findTop50ByMaterialHashAndDifficultyOrderByIdDesc(HASH, "medium")).thenReturn(banked(5));
+        CountDownLatch generated = new CountDownLatch(1);
+
+        bank.topUpIfLow(HASH, "medium", 7L, avoid -> {
+            assertEquals(List.of("Q0", "Q1", "Q2", "Q3", "Q4"), avoid);
+            generated.countDown();
+            return List.of();
+        });
+
+        assertTrue(generated.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTopUpIfLow_SkipsFullBank() {
+        when(questionRepository.countByMaterialHashAndDifficulty(HASH, "medium")).thenReturn(200L);
+
+        bank.topUpIfLow(HASH, "medium", 7L, avoid -> fail("Full bank must not be topped up"));
+
+        verify(questionRepository, never()).countUnseen(any(), any(), any());
+    }
+
+    @Test
+    void testDisabled_NeverServes() {
+        QuestionBank disabled = QuestionBank.disabled();
+
+        assertTrue(disabled.take(HASH, "medium", 7L, 1).isEmpty());
+        assertEquals(0, disabled.add(HASH, "medium", List.of(question("Q")), 7L));
+        disabled.shutdown();
+    }
+
+    // n unseen questions with ids 0..n-1; loading by id returns the requested rows
+    private void stubBank(int n) {
+        List<BankQuestion> questions = banked(n);
+        when(questionRepository.findUnseenIds(HASH, "medium", 7L))
+                .thenReturn(questions.stream().map(BankQuestion::getId).toList());
+        when(questionRepository.findAllById(anyList())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return questions.stream().filter(q -> ids.contains(q.getId())).toList();
+        });
+    }
+
+    // Every claim succeeds; returns the rows inserted, in order
+    private List<BankQuestionSeen> claimAll() {
+        List<BankQuestionSeen> seen = new ArrayList<>();
+        lenient().when(seenRepository.saveAndFlush(any(BankQuestionSeen.class))).thenAnswer(invocation -> {
+            seen.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        return seen;
+    }
+
+    private static List<BankQuestion> banked(int n) {
+        return IntStream.range(0, n).mapToObj(i -> {
+            BankQuestion q = new BankQuestion();
+            q.setId((long) i);
+            q.setMaterialHash(HASH);
+            q.setDifficulty("medium");
+            q.setQuestion("Q" + i);
+            q.setOptionA("A");
+            q.setOptionB("B");
+            q.setOptionC("C");
+            q.setOptionD("D");
+            q.setCorrectAnswer("B");
+            q.setExplanation("Because");
+            return q;
+        }).toList();
+    }
+
+    private static QuizQuestion question(String text) {
+        return new QuizQuestion(text, List.of("A", "B", "C", "D"), 1, "Because");
+    }
+}
@@ -0,0 +1,189 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.model.QuizQuestion;
+import ie.tcd.scss.aichat.model.QuizSet;
+import ie.tcd.scss.aichat.model.User;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
+import ie.tcd.scss.aichat.repository.QuizQuestionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for QuizExplanationService
+ * The chat model is a stub that explains every numbered question in its prompt, except the ones in skipped
+ */
+@ExtendWith(MockitoExtension.class)
+class QuizExplanationServiceTest {
+
+    private static final Pattern QUESTION_MARKER = Pattern.compile("=== Question (\\d+) ===");
+
+    @Mock
+    private GenerationCacheEntryRepository generationCacheEntryRepository;
+
+    @Mock
+    private QuizQuestionRepository quizQuestionRepository;
+
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private final Set<Integer> skipped = new CopyOnWriteArraySet<>();
+    private ChunkFanOut chunkFanOut;
+    private TokenChunker tokenChunker;
+    private QuizExplanationService service;
+
+    @BeforeEach
+    void setUp() {
+        ChatModel chatModel = prompt -> {
+            String text = prompt.getContents();
+            prompts.add(text);
+            Matcher questions = QUESTION_MARKER.matcher(text);
+            StringBuilder json = new StringBuilder("{\"explanations\": [");
+            while (questions.find()) {
+                int number = Integer.parseInt(questions.group(1));
+                if (skipped.contains(number)) continue;
+                if (json.charAt(json.length() - 1) == '}') json.append(',');
+                json.append("{\"question\": ").append(number)
+                        .append(", \"explanation\": \"Explanation ").append(number).append("\"}");
+            }
+            json.append("]}");
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(json.toString()))));
+        };
+        chunkFanOut = new ChunkFanOut(4);
+        tokenChunker = spy(new TokenChunker("o200k_base", 20000));
+        service = new QuizExplanationService(chatModel, new LlmGovernor(8), chunkFanOut,
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 100, Duration.ofDays(1), "gpt-test"),
+                tokenChunker, quizQuestionRepository, new ObjectMapper(),
+                new GenerationMetrics(new SimpleMeterRegistry()), 16, 2, 1_000_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chunkFanOut.shutdown();
+    }
+
+    @Test
+    void testExplain_GeneratesOnceThenServesStoredAndCachedExplanation() {
+        QuizSet set = quizSet("Cells divide by mitosis.", question(0, "How do cells divide?", null));
+        QuizQuestion question = set.getQuestions().get(0);
+
+        assertEquals("Explanation 1", service.explain(set, question));
+        assertEquals("Explanation 1", question.getExplanation());
+        verify(quizQuestionRepository).saveAll(List.of(question));
+
+        // Stored on the question: no further call
+        assertEquals("Explanation 1", service.explain(set, question));
+        // Same question in another set (e.g. served from the question bank): from the cache
+        QuizSet other = quizSet("Cells divide by mitosis.", question(0, "How do cells divide?", null));
+        assertEquals("Explanation 1", service.explain(other, other.getQuestions().get(0)));
+        assertEquals(1, prompts.size());
+    }
+
+    @Test
+    void testExplainAll_BatchesMissingExplanationsOnly() {
+        QuizSet set = quizSet("Cells divide by mitosis.",
+                question(0, "Question one?", null),
+                question(1, "Question two?", "Already explained"),
+                question(2, "Question three?", null),
+                question(3, "Question four?", null),
+                question(4, "Question five?", null));
+
+        List<QuizQuestion> questions = service.explainAll(set);
+
+        assertEquals(List.of("Explanation 1", "Already explained", "Explanation 3", "Explanation 4", "Explanation 5"),
+                questions.stream().map(QuizQuestion::getExplanation).toList());
+        // Four missing explanations, two per call
+        assertEquals(2, prompts.size());
+        assertTrue(prompts.stream().noneMatch(p -> p.contains("Question two?")));
+        verify(quizQuestionRepository).saveAll(anyList());
+    }
+
+    @Test
+    void testExplainAll_QuestionLeftOutByModelStaysUnexplained() {
+        skipped.add(2);
+        QuizSet set = quizSet("Cells divide by mitosis.",
+                question(0, "Question one?", null),
+                question(1, "Question two?", null));
+
+        service.explainAll(set);
+
+        assertEquals("Explanation 1", set.getQuestions().get(0).getExplanation());
+        assertNull(set.getQuestions().get(1).getExplanation());
+        assertThrows(IllegalStateException.class, () -> service.explain(set, set.getQuestions().get(1)));
+    }
+
+    @Test
+    void testExplain_PromptCarriesOnlyTheMatchingExcerpt() {
+        String material = "Mitochondria produce most of the cell's ATP through cellular respiration.\n\n"
+                + "Ribosomes translate messenger RNA into chains of amino acids.";
+        QuizSet set = quizSet(material, question(0, "What do ribosomes translate?", null));
+
+        service.explain(set, set.getQuestions().get(0));
+
+        String prompt = prompts.get(0);
+        assertTrue(prompt.contains("Ribosomes translate messenger RNA"));
+        assertFalse(prompt.contains("Mitochondria"));
+        assertTrue(prompt.contains("Correct answer: A"));
+    }
+
+    @Test
+    void testExplain_MaterialOfASetIsCutIntoExcerptsOnce() {
+        QuizSet set = quizSet("Cells divide by mitosis.",
+                question(0, "How do cells divide?", null),
+                question(1, "What is mitosis?", null));
+
+        service.explain(set, set.getQuestions().get(0));
+        service.explain(set, set.getQuestions().get(1));
+
+        assertEquals(2, prompts.size());
+        verify(tokenChunker, times(1)).split(eq("Cells divide by mitosis."), eq(16), eq(0));
+    }
+
+    private static QuizSet quizSet(String material, QuizQuestion... questions) {
+        User user = new User();
+        user.setId(1L);
+        QuizSet set = new QuizSet();
+        set.setId(10L);
+        set.setUser(user);
+        set.setStudyMaterial(material);
+        for (QuizQuestion question : questions) {
+            question.setQuizSet(set);
+            set.getQuestions().add(question);
+        }
+        return set;
+    }
+
+    private static QuizQuestion question(int position, String text, String explanation) {
+        QuizQuestion question = new QuizQuestion();
+        question.setId((long) position + 100);
+        question.setQuestion(text);
+        question.setOptionA("Messenger RNA");
+        question.setOptionB("DNA");
+        question.setOptionC("Lipids");
+        question.setOptionD("Glucose");
+        question.setCorrectAnswer("A");
+        question.setExplanation(explanation);
+        question.setPosition(position);
+        return question;
+    }
+}
@@ -1,12 +1,20 @@
 package ie.tcd.scss.aichat.service;
 
+import ie.tcd.scss.aichat.dto.GenerationResult;
 import ie.tcd.scss.aichat.dto.QuizQuestion;
+import ie.tcd.scss.aichat.model.QuizSet;
 import ie.tcd.scss.aichat.model.User;
+import ie.tcd.scss.aichat.repository.FlashcardSetRepository;
+import ie.tcd.scss.aichat.repository.GeneratedSetWriter;
 import ie.tcd.scss.aichat.repository.QuizSetRepository;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
 import ie.tcd.scss.aichat.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.model.ChatModel;
@@ -14,8 +22,18 @@ import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.openai.api.ResponseFormat;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -35,14 +53,30 @@ class QuizServiceTest {
     @Mock
     private QuizSetRepository quizSetRepository;
     
+    @Mock
+    private FlashcardSetRepository flashcardSetRepository;
+    
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    
     @Mock
     private UserRepository userRepository;
     
+    @Mock
+    private GenerationCacheEntryRepository generationCacheEntryRepository;
+    
     private QuizService quizService;
     
+    private final PromptCacheStats promptCacheStats = new PromptCacheStats();
+    
     @BeforeEach
     void setUp() {
-        quizService = new QuizService(chatModel, quizSetRepository, userRepository);
+        quizService = new QuizService(chatModel,
+                new GeneratedSetWriter(quizSetRepository, flashcardSetRepository, jdbcTemplate), userRepository, new ChunkFanOut(4),
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 100, Duration.ofDays(1), "gpt-test"),
+                new GenerationPlanner(new TokenChunker("o200k_base", 20000), "gpt-test"), new ObjectMapper(), promptCacheStats, new LlmGovernor(8),
+                new GenerationMetrics(new SimpleMeterRegistry()), new GenerationCoalescer(new SimpleMeterRegistry()),
+                QuestionBank.disabled(), GenerationVerifier.disabled(), false);
         
         // Mock user repository to return a test user
         User testUser = new User();
@@ -56,31 +90,15 @@ class QuizServiceTest {
     
     @Test
     void testGenerateQuiz_Success() {
-        // Given: Mock AI response with proper quiz format
+        // Given: Mock AI response with the structured JSON format
         String mockAiResponse = """
-                Q: What is Spring Boot?
-                A: An open-source Java framework for building production-ready applications
-                B: A JavaScript testing framework
-                C: A CSS preprocessor
-                D: A database management system
-                CORRECT: A
-                EXPLAIN: Spring Boot is an open-source Java framework that simplifies the development of production-ready applications.
-                
-                Q: What does @Autowired do?
-                A: Enables automatic dependency injection
-                B: Creates REST endpoints
-                C: Configures the database
-                D: Handles HTTP requests
-                CORRECT: A
-                EXPLAIN: The @Autowired annotation enables automatic dependency injection in Spring.
-                
-                Q: What does @RestController combine?
-                A: @Controller and @ResponseBody
-                B: @Service and @Component
-                C: @Repository and @Entity
-                D: @Bean and @Configuration
-                CORRECT: A
-                EXPLAIN: @RestController is a convenience annotation that combines @Controller and @ResponseBody.
+                {
+                  "questions": [
+                    {"question": "What is Spring Boot?", "options": ["An open-source Java framework for building production-ready applications", "A JavaScript testing framework", "A CSS preprocessor", "A database management system"], "correctAnswer": 0, "explanation": "Spring Boot is an open-source Java framework that simplifies the development of production-ready applications."},
+                    {"question": "What does @Autowired do?", "options": ["Enables automatic dependency injection", "Creates REST endpoints", "Configures the database", "Handles HTTP requests"], "correctAnswer": 0, "explanation": "The @Autowired annotation enables automatic dependency injection in Spring."},
+                    {"question": "What does @RestController combine?", "options": ["@Controller and @ResponseBody", "@Service and @Component", "@Repository and @Entity", "@Bean and @Configuration"], "correctAnswer": 0, "explanation": "@RestController is a convenience annotation that combines @Controller and @ResponseBody."}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -113,21 +131,48 @@ class QuizServiceTest {
         assertEquals("What does @RestController combine?", third.getQuestion());
         assertEquals(0, third.getCorrectAnswer());
         
-        // Verify the ChatModel was called exactly once
-        verify(chatModel, times(1)).call(any(Prompt.class));
+        // Verify the ChatModel was called exactly once, asking for schema-constrained JSON
+        ArgumentCaptor<Prompt> prompt = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatModel, times(1)).call(prompt.capture());
+        OpenAiChatOptions options = (OpenAiChatOptions) prompt.getValue().getOptions();
+        assertEquals(ResponseFormat.Type.JSON_SCHEMA, options.getResponseFormat().getType());
+        assertTrue(options.getResponseFormat().getJsonSchema().getSchema().toString().contains("correctAnswer"));
+    }
+    
+    @Test
+    void testGenerateQuiz_LazyExplanations_AsksForQuestionsOnly() {
+        QuizService lazyService = new QuizService(chatModel,
+                new GeneratedSetWriter(quizSetRepository, flashcardSetRepository, jdbcTemplate), userRepository, new ChunkFanOut(4),
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 100, Duration.ofDays(1), "gpt-test"),
+                new GenerationPlanner(new TokenChunker("o200k_base", 20000), "gpt-test"), new ObjectMapper(), promptCacheStats, new LlmGovernor(8),
+                new GenerationMetrics(new SimpleMeterRegistry()), new GenerationCoalescer(new SimpleMeterRegistry()),
+                QuestionBank.disabled(), GenerationVerifier.disabled(), true);
+        when(chatModel.call(any(Prompt.class))).thenReturn(new ChatResponse(List.of(new Generation(new AssistantMessage("""
+                {"questions": [{"question": "What is Spring Boot?", "options": ["A Java framework", "A database", "A CSS tool", "An IDE"], "correctAnswer": 0}]}
+                """)))));
+
+        List<QuizQuestion> questions = lazyService.generateQuiz("Spring Boot is a Java framework.", 1, "easy", 1L, "Lazy Quiz");
+
+        assertEquals(1, questions.size());
+        assertNull(questions.get(0).getExplanation());
+        ArgumentCaptor<Prompt> prompt = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatModel).call(prompt.capture());
+        assertTrue(prompt.getValue().getContents().contains("Do not write explanations"));
+        OpenAiChatOptions options = (OpenAiChatOptions) prompt.getValue().getOptions();
+        String schema = options.getResponseFormat().getJsonSchema().getSchema().toString();
+        assertTrue(schema.contains("correctAnswer"));
+        assertFalse(schema.contains("explanation"));
     }
     
     @Test
     void testGenerateQuiz_WithNullCount_UsesDefault() {
         // Given: Mock AI response
         String mockAiResponse = """
-                Q: What is dependency injection?
-                A: A design pattern for managing dependencies
-                B: A database query language
-                C: A testing framework
-                D: A build tool
-                CORRECT: A
-                EXPLAIN: Dependency injection is a design pattern used in Spring.
+                {
+                  "questions": [
+                    {"question": "What is dependency injection?", "options": ["A design pattern for managing dependencies", "A database query language", "A testing framework", "A build tool"], "correctAnswer": 0, "explanation": "Dependency injection is a design pattern used in Spring."}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -146,13 +191,11 @@ class QuizServiceTest {
     void testGenerateQuiz_WithNullDifficulty_UsesDefault() {
         // Given: Mock AI response
         String mockAiResponse = """
-                Q: What is Spring?
-                A: A Java framework
-                B: A season
-                C: A water source
-                D: A coil
-                CORRECT: A
-                EXPLAIN: Spring is a comprehensive Java framework.
+                {
+                  "questions": [
+                    {"question": "What is Spring?", "options": ["A Java framework", "A season", "A water source", "A coil"], "correctAnswer": 0, "explanation": "Spring is a comprehensive Java framework."}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -171,13 +214,11 @@ class QuizServiceTest {
     void testGenerateQuiz_WithDifferentDifficulties() {
         // Given: Mock AI response
         String mockAiResponse = """
-                Q: Test question?
-                A: Answer A
-                B: Answer B
-                C: Answer C
-                D: Answer D
-                CORRECT: B
-                EXPLAIN: Test explanation
+                {
+                  "questions": [
+                    {"question": "Test question?", "options": ["Answer A", "Answer B", "Answer C", "Answer D"], "correctAnswer": 1, "explanation": "Test explanation"}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -202,29 +243,13 @@ class QuizServiceTest {
     void testParseQuizQuestions_WithDifferentCorrectAnswers() {
         // Given: Mock AI response with different correct answers (B, C, D)
         String mockAiResponse = """
-                Q: Question with B correct?
-                A: Wrong answer
-                B: Correct answer
-                C: Wrong answer
-                D: Wrong answer
-                CORRECT: B
-                EXPLAIN: B is correct
-                
-                Q: Question with C correct?
-                A: Wrong answer
-                B: Wrong answer
-                C: Correct answer
-                D: Wrong answer
-                CORRECT: C
-                EXPLAIN: C is correct
-                
-                Q: Question with D correct?
-                A: Wrong answer
-                B: Wrong answer
-                C: Wrong answer
-                D: Correct answer
-                CORRECT: D
-                EXPLAIN: D is correct
+                {
+                  "questions": [
+                    {"question": "Question with B correct?", "options": ["Wrong answer", "Correct answer", "Wrong answer", "Wrong answer"], "correctAnswer": 1, "explanation": "B is correct"},
+                    {"question": "Question with C correct?", "options": ["Wrong answer", "Wrong answer", "Correct answer", "Wrong answer"], "correctAnswer": 2, "explanation": "C is correct"},
+                    {"question": "Question with D correct?", "options": ["Wrong answer", "Wrong answer", "Wrong answer", "Correct answer"], "correctAnswer": 3, "explanation": "D is correct"}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -258,18 +283,16 @@ class QuizServiceTest {
     }
     
     @Test
-    void testParseQuizQuestions_WithExtraWhitespace() {
-        // Given: AI response with extra whitespace
+    void testParseQuizQuestions_SkipsInvalidQuestions() {
+        // Given: one question with only two options and one with the answer out of range
         String mockAiResponse = """
-                
-                Q:   What is Spring Boot?   
-                A:   A Java framework   
-                B:   A JavaScript library   
-                C:   A database   
-                D:   A CSS framework   
-                CORRECT:   A   
-                EXPLAIN:   Spring Boot is a Java framework   
-                
+                {
+                  "questions": [
+                    {"question": "What is a bean?", "options": ["An object", "A coffee"], "correctAnswer": 0, "explanation": "Too few options"},
+                    {"question": "What is Spring Boot?", "options": ["A Java framework", "A JavaScript library", "A database", "A CSS framework"], "correctAnswer": 0, "explanation": "Spring Boot is a Java framework"},
+                    {"question": "What is JPA?", "options": ["An API", "A server", "A tool", "A test"], "correctAnswer": 4, "explanation": "No such option"}
+                  ]
+                }
                 """;
         
         when(chatModel.call(any(Prompt.class))).thenReturn(
@@ -277,12 +300,145 @@ class QuizServiceTest {
         );
         
         // When
-        List<QuizQuestion> questions = quizService.generateQuiz("test", 1, "medium", 1L, "Test Quiz");
+        List<QuizQuestion> questions = quizService.generateQuiz("test", 3, "medium", 1L, "Test Quiz");
         
-        // Then: Should trim whitespace properly
+        // Then: Only the valid question is kept
         assertNotNull(questions);
         assertEquals(1, questions.size());
         assertEquals("What is Spring Boot?", questions.get(0).getQuestion());
         assertEquals("A Java framework", questions.get(0).getOptions().get(0));
     }
+    
+    @Test
+    void testStreamQuiz_EmitsQuestionsAsTheyArrive() {
+        // Given: streamed JSON split mid-string and mid-key across tokens
+        Flux<ChatResponse> tokens = Flux.just(
+                "{\"questions\": [{\"question\": \"What is Spring Boot?\", \"options\": [\"A Java framework\", ",
+                "\"A library\", \"A database\", \"A language\"], \"correctAnswer\": 0, \"explanation\": \"It is a framework.\"}, ",
+                "{\"quest", "ion\": \"What is a bean?\", \"options\": [\"An object managed by Spring\", \"A coffee\", \"A plant\", \"A type\"], ",
+                "\"correctAnswer\": 0, \"explanation\": \"Beans are managed objects.\"}]}"
+            )
+            .map(text -> new ChatResponse(List.of(new Generation(new AssistantMessage(text)))));
+        when(chatModel.stream(any(Prompt.class))).thenReturn(tokens);
+        
+        // When
+        List<QuizQuestion> emitted = new ArrayList<>();
+        quizService.streamQuiz("Spring material", 2, "medium", 1L, "Stream Quiz", emitted::add);
+        
+        // Then
+        assertEquals(2, emitted.size());
+        assertEquals("What is Spring Boot?", emitted.get(0).getQuestion());
+        assertEquals("What is a bean?", emitted.get(1).getQuestion());
+        assertEquals("Beans are managed objects.", emitted.get(1).getExplanation());
+        verify(quizSetRepository, times(1)).save(any());
+    }
+    
+    @Test
+    void testGenerateQuiz_StaticSystemPrefixAndCachedTokensRecorded() {
+        // Given: provider reports 1024 of 1500 input tokens served from its prompt cache
+        String mockAiResponse = """
+                {"questions": [{"question": "Q?", "options": ["A", "B", "C", "D"], "correctAnswer": 0, "explanation": "E"}]}
+                """;
+        OpenAiApi.Usage nativeUsage = new OpenAiApi.Usage(40, 1500, 1540,
+                new OpenAiApi.Usage.PromptTokensDetails(null, 1024), null);
+        ChatResponseMetadata metadata = ChatResponseMetadata.builder()
+                .usage(new DefaultUsage(1500, 40, 1540, nativeUsage))
+                .build();
+        when(chatModel.call(any(Prompt.class))).thenReturn(
+            new ChatResponse(List.of(new Generation(new AssistantMessage(mockAiResponse))), metadata)
+        );
+        
+        // When: two different materials and difficulties
+        quizService.generateQuiz("Cells divide by mitosis.", 1, "easy", 1L, "Quiz 1");
+        quizService.generateQuiz("Enzymes lower activation energy.", 1, "hard", 1L, "Quiz 2");
+        
+        // Then: both calls share an identical system message; the material starts the user message
+        ArgumentCaptor<Prompt> prompts = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatModel, times(2)).call(prompts.capture());
+        Prompt first = prompts.getAllValues().get(0);
+        Prompt second = prompts.getAllValues().get(1);
+        assertEquals(first.getSystemMessage().getText(), second.getSystemMessage().getText());
+        assertTrue(first.getUserMessage().getText().startsWith("Study Material:\nCells divide by mitosis."));
+        assertTrue(second.getUserMessage().getText().contains("at hard difficulty"));
+        
+        Map<String, Object> stats = promptCacheStats.stats();
+        assertEquals(2L, stats.get("calls"));
+        assertEquals(3000L, stats.get("inputTokens"));
+        assertEquals(2048L, stats.get("cachedInputTokens"));
+        assertEquals(952L, stats.get("uncachedInputTokens"));
+    }
+    
+    @Test
+    void testResumeQuizSet_RegeneratesOnlyFailedChunk() {
+        // Given: small chunks so each paragraph is its own chunk; the second chunk's calls fail at first
+        QuizService chunkedService = new QuizService(chatModel,
+                new GeneratedSetWriter(quizSetRepository, flashcardSetRepository, jdbcTemplate), userRepository, new ChunkFanOut(1),
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 100, Duration.ofDays(1), "gpt-test"),
+                new GenerationPlanner(new TokenChunker("o200k_base", 16), "gpt-test"), new ObjectMapper(), promptCacheStats, new LlmGovernor(8),
+                new GenerationMetrics(new SimpleMeterRegistry()), new GenerationCoalescer(new SimpleMeterRegistry()),
+                QuestionBank.disabled(), GenerationVerifier.disabled(), false);
+        String material = "Mitochondria produce most of the cell's ATP through respiration.\n\n"
+                + "Ribosomes translate messenger RNA into chains of amino acids.";
+        boolean[] ribosomeChunkDown = {true};
+        when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            String contents = invocation.getArgument(0, Prompt.class).getContents();
+            String topic = contents.contains("Ribosomes") ? "Ribosomes" : "Mitochondria";
+            if (topic.equals("Ribosomes") && ribosomeChunkDown[0]) {
+                throw new IllegalStateException("provider 503");
+            }
+            String json = "{\"questions\": [{\"question\": \"About " + topic + "?\", \"options\": [\"A\", \"B\", \"C\", \"D\"], "
+                    + "\"correctAnswer\": 0, \"explanation\": \"E\"}]}";
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(json))));
+        });
+        
+        GenerationResult<QuizQuestion> first = chunkedService.generateQuizSet(material, 2, "medium", 1L, "Cells", ChunkProgressListener.NONE);
+        assertEquals(2, first.chunkCount());
+        assertEquals(1, first.failedChunks());
+        assertEquals(1, first.items().size());
+        
+        // When: the provider recovers and the saved set is resumed
+        ribosomeChunkDown[0] = false;
+        QuizSet saved = new QuizSet();
+        saved.setId(7L);
+        saved.setUser(userRepository.findById(1L).orElseThrow());
+        saved.setStudyMaterial(material);
+        saved.setDifficulty("medium");
+        saved.setRequestedCount(2);
+        ie.tcd.scss.aichat.model.QuizQuestion existing = new ie.tcd.scss.aichat.model.QuizQuestion();
+        existing.setQuestion("About Mitochondria?");
+        existing.setOptionA("A");
+        existing.setOptionB("B");
+        existing.setOptionC("C");
+        existing.setOptionD("D");
+        existing.setCorrectAnswer("A");
+        existing.setExplanation("E");
+        existing.setPosition(0);
+        saved.getQuestions().add(existing);
+        
+        GenerationResult<QuizQuestion> resumed = chunkedService.resumeQuizSet(saved);
+        
+        // Then: only the failed chunk went back to the model, and the set holds both questions in chunk order
+        assertEquals(0, resumed.failedChunks());
+        assertEquals(List.of("About Mitochondria?", "About Ribosomes?"),
+                resumed.items().stream().map(QuizQuestion::getQuestion).toList());
+        ArgumentCaptor<Prompt> prompts = ArgumentCaptor.forClass(Prompt.class);
+        verify(chatModel, times(3)).call(prompts.capture());
+        assertTrue(prompts.getAllValues().get(2).getContents().contains("Ribosomes"));
+        verify(jdbcTemplate).update("DELETE FROM quiz_questions WHERE quiz_set_id = ?", 7L);
+    }
+    
+    @Test
+    void testResumeQuizSet_CompleteSetIsLeftAlone() {
+        QuizSet saved = new QuizSet();
+        saved.setId(7L);
+        saved.setStudyMaterial("Cells divide by mitosis.");
+        saved.setDifficulty("easy");
+        saved.setRequestedCount(0);
+        
+        GenerationResult<QuizQuestion> resumed = quizService.resumeQuizSet(saved);
+        
+        assertEquals(0, resumed.items().size());
+        verify(chatModel, never()).call(any(Prompt.class));
+        verifyNoInteractions(jdbcTemplate);
+    }
 }
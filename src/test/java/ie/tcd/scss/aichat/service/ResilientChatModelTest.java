@@ -0,0 +1,191 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.LlmOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for ResilientChatModel, against stub models with injected latency and errors
+ */
+class ResilientChatModelTest {
+
+    private ResilientChatModel model;
+
+    @AfterEach
+    void tearDown() {
+        if (model != null) {
+            model.shutdown();
+        }
+    }
+
+    @Test
+    void testCall_SlowCallIsHedgedAndLoserCancelled() throws Exception {
+        // Given: 20 fast calls to establish the p95, then one whose first attempt hangs
+        AtomicInteger invocations = new AtomicInteger();
+        CountDownLatch loserInterrupted = new CountDownLatch(1);
+        ChatModel stub = prompt -> {
+            int n = invocations.incrementAndGet();
+            if (n == 21) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    loserInterrupted.countDown();
+                    throw new IllegalStateException("cancelled");
+                }
+            }
+            sleep(10);
+            return response(n == 22 ? "hedge" : "ok");
+        };
+        model = new ResilientChatModel(stub, Duration.ZERO, 0.5, 20, 0.5, Duration.ofSeconds(30));
+        for (int i = 0; i < 20; i++) {
+            model.call(new Prompt("warm-up"));
+        }
+
+        // When
+        long start = System.nanoTime();
+        ChatResponse result = model.call(new Prompt("slow"));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then: the hedge answered and the hung attempt was interrupted
+        assertEquals("hedge", result.getResult().getOutput().getText());
+        assertTrue(elapsedMs < 2000, "Hedged call took " + elapsedMs + "ms");
+        assertTrue(loserInterrupted.await(2, TimeUnit.SECONDS));
+        assertEquals(1L, model.stats().get("hedged"));
+        assertEquals(1L, model.stats().get("hedgeWins"));
+    }
+
+    @Test
+    void testCall_NoHedgeBeforeEnoughSamples() {
+        // Given: a slow first call - there is no p95 yet
+        AtomicInteger invocations = new AtomicInteger();
+        model = new ResilientChatModel(prompt -> {
+            invocations.incrementAndGet();
+            sleep(200);
+            return response("ok");
+        }, Duration.ZERO, 1.0, 20, 0.5, Duration.ofSeconds(30));
+
+        // When
+        model.call(new Prompt("first"));
+
+        // Then
+        assertEquals(1, invocations.get());
+        assertEquals(0L, model.stats().get("hedged"));
+    }
+
+    @Test
+    void testForService_LatenciesAreKeptPerService() {
+        // Given: chat has a p95 of a few milliseconds, quiz has no samples yet
+        AtomicInteger invocations = new AtomicInteger();
+        model = new ResilientChatModel(prompt -> {
+            invocations.incrementAndGet();
+            sleep(prompt.getContents().equals("chunk") ? 200 : 5);
+            return response("ok");
+        }, Duration.ZERO, 1.0, 20, 0.5, Duration.ofSeconds(30));
+        ChatModel chat = model.forService("chat");
+        ChatModel quiz = model.forService("quiz");
+        for (int i = 0; i < 20; i++) {
+            chat.call(new Prompt("reply"));
+        }
+
+        // When: a quiz chunk takes far longer than any chat reply
+        quiz.call(new Prompt("chunk"));
+
+        // Then: it is not hedged against chat's p95
+        assertEquals(21, invocations.get());
+        assertEquals(0L, model.stats().get("hedged"));
+        Map<?, ?> p95Ms = (Map<?, ?>) model.stats().get("p95Ms");
+        assertNotNull(p95Ms.get("chat"));
+        assertTrue(p95Ms.containsKey("quiz"));
+        assertNull(p95Ms.get("quiz"));
+    }
+
+    @Test
+    void testCall_HedgeBudgetZeroDisablesHedging() {
+        AtomicInteger invocations = new AtomicInteger();
+        model = new ResilientChatModel(prompt -> {
+            int n = invocations.incrementAndGet();
+            sleep(n > 20 ? 200 : 5);
+            return response("ok");
+        }, Duration.ZERO, 0.0, 20, 0.5, Duration.ofSeconds(30));
+
+        for (int i = 0; i < 21; i++) {
+            model.call(new Prompt("p"));
+        }
+
+        assertEquals(21, invocations.get());
+        assertEquals(0L, model.stats().get("hedged"));
+    }
+
+    @Test
+    void testCall_CircuitOpensFailsFastThenRecovers() {
+        // Given: a provider that fails until told otherwise
+        AtomicInteger invocations = new AtomicInteger();
+        boolean[] healthy = {false};
+        model = new ResilientChatModel(prompt -> {
+            invocations.incrementAndGet();
+            if (!healthy[0]) {
+                throw new TransientAiException("503 from provider");
+            }
+            return response("ok");
+        }, Duration.ZERO, 0.0, 4, 0.5, Duration.ofMillis(200));
+
+        // When: the window fills with failures
+        for (int i = 0; i < 4; i++) {
+            assertThrows(TransientAiException.class, () -> model.call(new Prompt("p")));
+        }
+
+        // Then: further calls never reach the provider
+        assertThrows(LlmOverloadedException.class, () -> model.call(new Prompt("p")));
+        assertEquals(4, invocations.get());
+        assertEquals("OPEN", model.stats().get("circuit"));
+        assertEquals(1L, model.stats().get("rejected"));
+
+        // And: after the open period a successful trial call closes it
+        healthy[0] = true;
+        sleep(250);
+        assertEquals("ok", model.call(new Prompt("trial")).getResult().getOutput().getText());
+        assertEquals("CLOSED", model.stats().get("circuit"));
+    }
+
+    @Test
+    void testCall_ClientErrorsDoNotOpenCircuit() {
+        model = new ResilientChatModel(prompt -> {
+            throw new NonTransientAiException("400 invalid request");
+        }, Duration.ZERO, 0.0, 4, 0.5, Duration.ofSeconds(30));
+
+        for (int i = 0; i < 6; i++) {
+            assertThrows(NonTransientAiException.class, () -> model.call(new Prompt("p")));
+        }
+
+        assertEquals("CLOSED", model.stats().get("circuit"));
+        assertEquals(0L, model.stats().get("failures"));
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.controller.DocumentController;
+import ie.tcd.scss.aichat.dto.SlideDocument;
+import ie.tcd.scss.aichat.dto.SlideSection;
+import ie.tcd.scss.aichat.model.Sources;
+import ie.tcd.scss.aichat.repository.SourcesRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for SourcesService
+ */
+@ExtendWith(MockitoExtension.class)
+class SourcesServiceTest {
+
+    @Mock
+    private SourcesRepository repository;
+
+    private SourcesService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new SourcesService(repository, 1_000_000);
+    }
+
+    @Test
+    void testFindText_LoadsOnceThenServesFromCache() {
+        when(repository.findById(5L)).thenReturn(Optional.of(uploaded("Page one.", "Page two.")));
+
+        assertEquals("\n\nPage one.\n\nPage two.", service.findText(5L).orElseThrow().content());
+        assertEquals(7L, service.findText(5L).orElseThrow().userId());
+
+        verify(repository, times(1)).findById(5L);
+    }
+
+    @Test
+    void testFindText_UnknownSource() {
+        when(repository.findById(6L)).thenReturn(Optional.empty());
+
+        assertTrue(service.findText(6L).isEmpty());
+    }
+
+    @Test
+    void testSaveAndDelete_DropCachedText() {
+        Sources source = uploaded("Old text.");
+        when(repository.findById(5L)).thenReturn(Optional.of(source));
+        when(repository.save(any(Sources.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        service.findText(5L);
+
+        service.save(source);
+        service.findText(5L);
+        service.delete(5L);
+        service.findText(5L);
+
+        verify(repository, times(3)).findById(5L);
+    }
+
+    @Test
+    void testPages_ReturnsTheRequestedRange() {
+        when(repository.findById(5L)).thenReturn(Optional.of(uploaded("Page one.", "Page two.", "Page three.")));
+        SourcesService.SourceText text = service.findText(5L).orElseThrow();
+
+        assertEquals("Page two.", text.pages(2, 2));
+        assertEquals("Page one.\n\nPage two.", text.pages(null, 2));
+        assertEquals("Page two.\n\nPage three.", text.pages(2, null));
+        assertEquals(text.content(), text.pages(null, null));
+        assertThrows(IllegalArgumentException.class, () -> text.pages(0, 2));
+        assertThrows(IllegalArgumentException.class, () -> text.pages(3, 2));
+        assertThrows(IllegalArgumentException.class, () -> text.pages(2, 4));
+    }
+
+    @Test
+    void testPages_SourceWithoutPagesOnlyServesWholeText() {
+        Sources source = uploaded("Typed notes.");
+        source.setPageOffsets(null);
+        when(repository.findById(5L)).thenReturn(Optional.of(source));
+        SourcesService.SourceText text = service.findText(5L).orElseThrow();
+
+        assertEquals("\n\nTyped notes.", text.pages(null, null));
+        assertThrows(IllegalArgumentException.class, () -> text.pages(1, 1));
+    }
+
+    // Stored as on upload: joined sections plus the offset of every page
+    private static Sources uploaded(String... pages) {
+        SlideDocument document = new SlideDocument();
+        for (int i = 0; i < pages.length; i++) {
+            document.getSections().add(SlideSection.builder().pageNumber(i + 1).content(pages[i]).build());
+        }
+        Sources source = new Sources();
+        source.setId(5L);
+        source.setUserId(7L);
+        source.setContent(DocumentController.joinSections(document));
+        source.setPageOffsets(DocumentController.pageOffsets(document));
+        return source;
+    }
+}
@@ -0,0 +1,56 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.LlmOverloadedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for StreamExecutor
+ */
+class StreamExecutorTest {
+
+    private final StreamExecutor executor = new StreamExecutor(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void testExecute_RejectsBeyondLimitAndFreesSlotWhenStreamEnds() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        Runnable stream = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                finished.countDown();
+            }
+        };
+
+        executor.execute(stream);
+        executor.execute(stream);
+        assertThrows(LlmOverloadedException.class, () -> executor.execute(stream));
+
+        release.countDown();
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+        // A failing stream gives its slot back as well
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(() -> {
+            ran.countDown();
+            throw new IllegalStateException("model down");
+        });
+        assertTrue(ran.await(2, TimeUnit.SECONDS));
+        for (int i = 0; i < 100 && executor.running() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.running());
+    }
+}
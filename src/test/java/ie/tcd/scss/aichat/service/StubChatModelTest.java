@@ -0,0 +1,84 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.FlashcardBatch;
+import ie.tcd.scss.aichat.dto.QuizQuestionBatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for StubChatModel
+ */
+class StubChatModelTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private StubChatModel instantModel() {
+        return new StubChatModel(Duration.ofMillis(1), Duration.ofMillis(1), 0, 0.0, 42);
+    }
+
+    @Test
+    void testCall_QuizPromptGetsRequestedNumberOfValidQuestions() throws Exception {
+        ChatResponse response = instantModel().call(new Prompt("Study Material:\nCells.\n\nGenerate 7 questions at hard difficulty."));
+
+        QuizQuestionBatch batch = objectMapper.readValue(response.getResult().getOutput().getText(), QuizQuestionBatch.class);
+        assertEquals(7, batch.questions().size());
+        batch.questions().forEach(question -> {
+            assertEquals(4, question.getOptions().size());
+            assertTrue(question.getCorrectAnswer() >= 0 && question.getCorrectAnswer() < 4);
+        });
+        assertTrue(response.getMetadata().getUsage().getPromptTokens() > 0);
+    }
+
+    @Test
+    void testCall_FlashcardPromptGetsRequestedNumberOfCards() throws Exception {
+        ChatResponse response = instantModel().call(new Prompt("Study Material:\nCells.\n\nGenerate 3 flashcards."));
+
+        FlashcardBatch batch = objectMapper.readValue(response.getResult().getOutput().getText(), FlashcardBatch.class);
+        assertEquals(3, batch.flashcards().size());
+    }
+
+    @Test
+    void testCall_SamePromptSameAnswer() {
+        Prompt prompt = new Prompt("Generate 5 questions at easy difficulty.");
+
+        String first = instantModel().call(prompt).getResult().getOutput().getText();
+        String second = instantModel().call(prompt).getResult().getOutput().getText();
+
+        assertEquals(first, second);
+    }
+
+    @Test
+    void testStream_EmitsTokensThatReassembleToCallOutputWithUsageLast() {
+        StubChatModel model = instantModel();
+        Prompt prompt = new Prompt("Generate 2 flashcards.");
+
+        List<ChatResponse> chunks = model.stream(prompt).collectList().block(Duration.ofSeconds(5));
+
+        assertNotNull(chunks);
+        assertTrue(chunks.size() > 1);
+        String streamed = chunks.stream().map(chunk -> chunk.getResult().getOutput().getText()).collect(Collectors.joining());
+        assertEquals(model.call(prompt).getResult().getOutput().getText(), streamed);
+        assertEquals(0, chunks.get(0).getMetadata().getUsage().getPromptTokens());
+        assertTrue(chunks.get(chunks.size() - 1).getMetadata().getUsage().getPromptTokens() > 0);
+    }
+
+    @Test
+    void testCall_StreamingRateSetsOutputTime() {
+        // 80 tokens per second: a ~400 char answer takes over a second after the first token
+        StubChatModel model = new StubChatModel(Duration.ofMillis(1), Duration.ofMillis(1), 80, 0.0, 42);
+
+        long start = System.nanoTime();
+        model.call(new Prompt("Generate 2 questions at medium difficulty."));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMs >= 1000, "Call took only " + elapsedMs + "ms");
+    }
+}
@@ -0,0 +1,211 @@
+package ie.tcd.scss.aichat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.SummaryResult;
+import ie.tcd.scss.aichat.model.Material;
+import ie.tcd.scss.aichat.model.Sources;
+import ie.tcd.scss.aichat.model.Summary;
+import ie.tcd.scss.aichat.repository.GenerationCacheEntryRepository;
+import ie.tcd.scss.aichat.repository.MaterialRepository;
+import ie.tcd.scss.aichat.repository.SummaryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for SummarizationService
+ * The chat model is a stub that labels every summary with the prompt it was asked to answer
+ */
+@ExtendWith(MockitoExtension.class)
+class SummarizationServiceTest {
+
+    @Mock
+    private GenerationCacheEntryRepository generationCacheEntryRepository;
+
+    @Mock
+    private MaterialRepository materialRepository;
+
+    @Mock
+    private SummaryRepository summaryRepository;
+
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private ChunkFanOut chunkFanOut;
+    private SummarizationService service;
+
+    @BeforeEach
+    void setUp() {
+        ChatModel chatModel = prompt -> {
+            String text = prompt.getContents();
+            prompts.add(text);
+            String label = text.contains("merge summaries") ? "document summary" : "chunk summary " + prompts.size();
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(label))));
+        };
+        chunkFanOut = new ChunkFanOut(4);
+        service = serviceWith(chatModel, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chunkFanOut.shutdown();
+    }
+
+    @Test
+    void testSummarize_MapsChunksThenReducesOnce() {
+        String summary = service.summarize(longText(), 1L);
+
+        assertEquals("document summary", summary);
+        long mapCalls = prompts.stream().filter(p -> p.contains("one part of a longer document")).count();
+        long reduceCalls = prompts.stream().filter(p -> p.contains("merge summaries")).count();
+        assertTrue(mapCalls > 1, "expected one map call per chunk");
+        assertEquals(1, reduceCalls);
+    }
+
+    @Test
+    void testSummarize_SecondRunServedFromCache() {
+        service.summarize(longText(), 1L);
+        int calls = prompts.size();
+
+        service.summarize(longText(), 1L);
+
+        assertEquals(calls, prompts.size());
+    }
+
+    @Test
+    void testSummarize_ShortTextReturnedAsIs() {
+        assertEquals("Mitochondria make ATP.", service.summarize("Mitochondria make ATP.", 1L));
+        assertTrue(prompts.isEmpty());
+    }
+
+    @Test
+    void testSummarize_SummariesThatDoNotShrinkFailAfterOneRound() {
+        // Every "summary" is as long as its text, so re-mapping can never make it fit
+        SummarizationService echoing = serviceWith(prompt -> reply(textOf(prompt)), 3);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> echoing.summarize(longText(), 1L));
+
+        assertTrue(e.getMessage().contains("did not get shorter in re-map round 1"), e.getMessage());
+    }
+
+    @Test
+    void testSummarize_ReMapRoundsAreCapped() {
+        // Summaries keep 60% of their text: each round shrinks, but slowly
+        ChatModel verbose = prompt -> {
+            prompts.add(prompt.getContents());
+            String[] words = textOf(prompt).strip().split("\\s+");
+            return reply(String.join(" ", Arrays.copyOf(words, (int) Math.ceil(words.length * 0.6))));
+        };
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> serviceWith(verbose, 1).summarize(longText(), 1L));
+        assertTrue(e.getMessage().contains("after 1 re-map round(s)"), e.getMessage());
+        assertTrue(prompts.stream().noneMatch(p -> p.contains("merge summaries")));
+
+        // Given enough rounds the same model converges
+        assertNotNull(serviceWith(verbose, 10).summarize(longText(), 1L));
+        assertTrue(prompts.stream().anyMatch(p -> p.contains("merge summaries")));
+    }
+
+    @Test
+    void testSummarizeSource_StoresChunkAndDocumentSummaries() {
+        Sources source = new Sources();
+        source.setId(7L);
+        source.setName("biology.pdf");
+        source.setContent(longText());
+        when(materialRepository.findBySourceId(7L)).thenReturn(Optional.empty());
+        when(materialRepository.save(any(Material.class))).thenAnswer(invocation -> {
+            Material material = invocation.getArgument(0);
+            material.setId(3L);
+            return material;
+        });
+
+        SummaryResult result = service.summarizeSource(source, 1L, false);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Summary>> saved = ArgumentCaptor.forClass(List.class);
+        verify(summaryRepository).saveAll(saved.capture());
+        List<Summary> rows = new ArrayList<>(saved.getValue());
+        Summary document = rows.remove(rows.size() - 1);
+
+        assertEquals(SummarizationService.LEVEL_DOCUMENT, document.getLevel());
+        assertEquals("document summary", document.getContent());
+        assertEquals(result.chunkCount(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(SummarizationService.LEVEL_CHUNK, rows.get(i).getLevel());
+            assertEquals(i, rows.get(i).getPosition());
+            assertEquals(7L, rows.get(i).getMaterial().getSourceId());
+        }
+        assertEquals(3L, result.materialId());
+        assertTrue(result.sourceTokens() > result.summaryTokens());
+    }
+
+    @Test
+    void testSummarizeSource_StoredSummaryReusedWithoutModelCalls() {
+        Sources source = new Sources();
+        source.setId(7L);
+        source.setContent(longText());
+        Material material = new Material();
+        material.setId(3L);
+        Summary stored = new Summary();
+        stored.setContent("stored summary");
+        stored.setLevel(SummarizationService.LEVEL_DOCUMENT);
+        stored.setInputTokens(1200);
+        when(materialRepository.findBySourceId(7L)).thenReturn(Optional.of(material));
+        when(summaryRepository.findFirstByMaterialIdAndLevel(3L, SummarizationService.LEVEL_DOCUMENT))
+                .thenReturn(Optional.of(stored));
+        when(summaryRepository.countByMaterialIdAndLevel(3L, SummarizationService.LEVEL_CHUNK)).thenReturn(6L);
+
+        SummaryResult result = service.summarizeSource(source, 1L, false);
+
+        assertEquals("stored summary", result.summary());
+        assertEquals(6, result.chunkCount());
+        assertEquals(1200, result.sourceTokens());
+        assertTrue(prompts.isEmpty());
+        verify(summaryRepository, never()).saveAll(any());
+    }
+
+    private SummarizationService serviceWith(ChatModel chatModel, int maxRemapRounds) {
+        return new SummarizationService(chatModel, new LlmGovernor(8), chunkFanOut,
+                new GenerationCache(generationCacheEntryRepository, new ObjectMapper(), true, 100, Duration.ofDays(1), "gpt-test"),
+                new TokenChunker("o200k_base", 200), materialRepository, summaryRepository, 50, 100, maxRemapRounds);
+    }
+
+    // The text after the length instruction in the user message
+    private static String textOf(Prompt prompt) {
+        String contents = prompt.getContents();
+        return contents.substring(contents.lastIndexOf("words.\n\n") + "words.\n\n".length());
+    }
+
+    private static ChatResponse reply(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    // About a thousand tokens of distinct paragraphs, several chunks at 200 tokens each
+    private static String longText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append("Paragraph ").append(i).append(": cells divide by mitosis in phase ").append(i)
+                    .append(", and the spindle aligns chromosome pair ").append(i).append(".\n\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package ie.tcd.scss.aichat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for TokenChunker
+ */
+class TokenChunkerTest {
+
+    private final TokenChunker chunker = new TokenChunker("o200k_base", 50);
+
+    @Test
+    void testCountTokens_UsesRealTokenizer() {
+        assertEquals(0, chunker.countTokens(""));
+        assertEquals(2, chunker.countTokens("Hello world"));
+        // Whitespace-heavy text is nowhere near 4 chars per token
+        assertTrue(chunker.countTokens(" ".repeat(400)) < 100);
+    }
+
+    @Test
+    void testSplit_SmallTextIsOneChunk() {
+        String text = "Photosynthesis converts light energy into chemical energy.";
+
+        List<TextChunk> chunks = chunker.split(text);
+
+        assertEquals(1, chunks.size());
+        assertEquals(text, chunks.get(0).toString());
+    }
+
+    @Test
+    void testSplit_PacksParagraphsUnderBudget() {
+        String paragraph = "Mitochondria are the powerhouse of the cell. They produce ATP.\n\n";
+        String text = paragraph.repeat(20);
+
+        List<TextChunk> chunks = chunker.split(text);
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(text, String.join("", chunks));
+        for (TextChunk chunk : chunks) {
+            assertTrue(chunker.countTokens(chunk) <= 50, "chunk over budget: " + chunker.countTokens(chunk));
+            // Packed at paragraph boundaries
+            assertTrue(chunk.toString().endsWith("\n\n"));
+        }
+    }
+
+    @Test
+    void testSplit_OversizedParagraphFallsBackToSentences() {
+        String text = "The cell membrane controls what enters the cell. ".repeat(30).trim();
+
+        List<TextChunk> chunks = chunker.split(text);
+
+        assertEquals(text, String.join("", chunks));
+        for (TextChunk chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertTrue(chunker.countTokens(chunk) <= 50);
+            assertTrue(chunk.toString().endsWith(". "));
+        }
+    }
+
+    @Test
+    void testSplit_TextWithoutBoundariesIsCutToBudget() {
+        String text = "x".repeat(5000);
+
+        List<TextChunk> chunks = chunker.split(text);
+
+        assertEquals(text, String.join("", chunks));
+        chunks.forEach(chunk -> assertTrue(chunker.countTokens(chunk) <= 50));
+    }
+
+    @Test
+    void testSplit_ChunksAreViewsOverTheOriginalText() {
+        String text = "Enzymes speed up reactions. They are not used up.\n\n".repeat(20);
+
+        List<TextChunk> chunks = chunker.split(text);
+
+        int expectedOffset = 0;
+        for (TextChunk chunk : chunks) {
+            assertSame(text, chunk.source());
+            assertEquals(expectedOffset, chunk.offset());
+            expectedOffset = chunk.end();
+        }
+        assertEquals(text.length(), expectedOffset);
+    }
+
+    @Test
+    void testSplit_OverlapRepeatsTrailingSentences() {
+        String text = "Sentence number one is here. ".repeat(40);
+
+        List<TextChunk> chunks = chunker.split(text, 50, 10);
+
+        assertTrue(chunks.size() > 1);
+        for (int i = 1; i < chunks.size(); i++) {
+            TextChunk previous = chunks.get(i - 1);
+            TextChunk chunk = chunks.get(i);
+            // Starts inside the previous chunk, but past its start
+            assertTrue(chunk.offset() < previous.end());
+            assertTrue(chunk.offset() > previous.offset());
+            assertTrue(chunker.countTokens(chunk) <= 50);
+            assertTrue(chunker.countTokens(text.substring(chunk.offset(), previous.end())) <= 10);
+        }
+        assertEquals(text.length(), chunks.get(chunks.size() - 1).end());
+    }
+
+    @Test
+    void testConstructor_UnknownEncodingRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenChunker("not-a-vocab", 100));
+    }
+}
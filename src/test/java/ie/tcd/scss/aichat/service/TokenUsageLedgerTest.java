@@ -0,0 +1,182 @@
+package ie.tcd.scss.aichat.service;
+
+import ie.tcd.scss.aichat.exception.TokenBudgetExceededException;
+import ie.tcd.scss.aichat.model.TokenUsage;
+import ie.tcd.scss.aichat.model.User;
+import ie.tcd.scss.aichat.repository.TokenUsageRepository;
+import ie.tcd.scss.aichat.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit test for TokenUsageLedger and its enforcement through governed chat models
+ */
+@ExtendWith(MockitoExtension.class)
+class TokenUsageLedgerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 16);
+    private static final Clock CLOCK = Clock.fixed(TODAY.atTime(15, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+
+    @Mock
+    private TokenUsageRepository repository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private TokenUsageLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new TokenUsageLedger(repository, userRepository, 1000, CLOCK);
+    }
+
+    @Test
+    void testRecord_CountedInMemoryUntilFlushed() {
+        // Given
+        when(repository.findByUserKeyAndUsageDate("user:1", TODAY)).thenReturn(Optional.empty());
+        when(userRepository.findById(1L)).thenReturn(Optional.of(new User()));
+
+        // When
+        ledger.record("user:1", response(new DefaultUsage(100, 20)));
+        ledger.record("user:1", response(new DefaultUsage(50, 10)));
+        ledger.record("user:1", response(null));
+
+        // Then: stored tokens and budget are read once, and nothing is written per call
+        verify(repository, times(1)).findByUserKeyAndUsageDate("user:1", TODAY);
+        verify(repository, never()).addUsage(any(), any(), anyLong(), anyLong(), anyLong());
+
+        ledger.flush();
+        verify(repository).addUsage("user:1", TODAY, 150, 30, 2);
+
+        // Only the delta since the previous flush goes out
+        ledger.record("user:1", response(new DefaultUsage(5, 5)));
+        ledger.flush();
+        ledger.flush();
+        verify(repository).addUsage("user:1", TODAY, 5, 5, 1);
+        verifyNoMoreInteractions(repository);
+    }
+
+    @Test
+    void testCheckBudget_RejectsOnceStoredAndNewUsageReachBudget() {
+        // Given: 900 tokens already stored today on the default budget of 1000
+        when(repository.findByUserKeyAndUsageDate("user:2", TODAY))
+                .thenReturn(Optional.of(new TokenUsage(7L, "user:2", TODAY, 800, 100, 3)));
+        when(userRepository.findById(2L)).thenReturn(Optional.of(new User()));
+
+        ledger.checkBudget("user:2");
+        ledger.record("user:2", response(new DefaultUsage(80, 20)));
+
+        // When / Then
+        TokenBudgetExceededException e = assertThrows(TokenBudgetExceededException.class,
+                () -> ledger.checkBudget("user:2"));
+        assertEquals(TODAY.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant(), e.getResetsAt());
+    }
+
+    @Test
+    void testCheckBudget_PerUserBudgetOverridesDefault() {
+        User unlimited = new User();
+        unlimited.setDailyTokenBudget(0L);
+        when(repository.findByUserKeyAndUsageDate(any(), any())).thenReturn(Optional.empty());
+        when(userRepository.findById(3L)).thenReturn(Optional.of(unlimited));
+
+        ledger.record("user:3", response(new DefaultUsage(5000, 5000)));
+
+        assertDoesNotThrow(() -> ledger.checkBudget("user:3"));
+        assertNull(ledger.usage("user:3", 1).get("remaining"));
+    }
+
+    @Test
+    void testCheckBudget_CallsNotAttributedToAUserAreNeverRejected() {
+        ledger.checkBudget("anonymous");
+        verifyNoInteractions(repository, userRepository);
+    }
+
+    @Test
+    void testFlush_FailedWriteRetriedNextTime() {
+        when(repository.findByUserKeyAndUsageDate(any(), any())).thenReturn(Optional.empty());
+        when(userRepository.findById(4L)).thenReturn(Optional.of(new User()));
+        when(repository.addUsage(any(), any(), anyLong(), anyLong(), anyLong()))
+                .thenThrow(new RuntimeException("db down"))
+                .thenReturn(1);
+
+        ledger.record("user:4", response(new DefaultUsage(10, 1)));
+        ledger.flush();
+        ledger.flush();
+
+        verify(repository, times(2)).addUsage("user:4", TODAY, 10, 1, 1);
+    }
+
+    @Test
+    void testUsage_TodayFromMemoryOverStoredHistory() {
+        when(repository.findByUserKeyAndUsageDate("user:5", TODAY))
+                .thenReturn(Optional.of(new TokenUsage(1L, "user:5", TODAY, 100, 10, 1)));
+        when(userRepository.findById(5L)).thenReturn(Optional.of(new User()));
+        when(repository.findByUserKeyAndUsageDateGreaterThanEqualOrderByUsageDateDesc("user:5", TODAY.minusDays(6)))
+                .thenReturn(List.of(
+                        new TokenUsage(1L, "user:5", TODAY, 100, 10, 1),
+                        new TokenUsage(2L, "user:5", TODAY.minusDays(2), 40, 4, 2)));
+
+        ledger.record("user:5", response(new DefaultUsage(200, 20)));
+        Map<String, Object> usage = ledger.usage("user:5", 7);
+
+        assertEquals(300L, usage.get("inputTokens"));
+        assertEquals(30L, usage.get("outputTokens"));
+        assertEquals(670L, usage.get("remaining"));
+        List<?> history = (List<?>) usage.get("history");
+        assertEquals(2, history.size());
+        assertEquals(Map.of("date", TODAY.toString(), "inputTokens", 300L, "outputTokens", 30L, "calls", 2L),
+                history.get(0));
+    }
+
+    @Test
+    void testGovern_ChargesUserAndRejectsBeforeCallingModel() {
+        when(repository.findByUserKeyAndUsageDate(any(), any())).thenReturn(Optional.empty());
+        when(userRepository.findById(6L)).thenReturn(Optional.of(new User()));
+        LlmGovernor governor = new LlmGovernor(2, 2, Duration.ofSeconds(1), Duration.ofSeconds(1),
+                new LlmMetrics(new SimpleMeterRegistry()), ledger);
+        AtomicInteger calls = new AtomicInteger();
+        ChatModel model = governor.govern(prompt -> {
+            calls.incrementAndGet();
+            return response(new DefaultUsage(900, 200));
+        }, LlmGovernor.Priority.BULK, "quiz");
+
+        try (LlmGovernor.UserScope user = LlmGovernor.actingAs(6L)) {
+            model.call(new Prompt("p"));
+            assertThrows(TokenBudgetExceededException.class, () -> model.call(new Prompt("p")));
+        }
+
+        assertEquals(1, calls.get());
+    }
+
+    private static ChatResponse response(DefaultUsage usage) {
+        ChatResponseMetadata.Builder metadata = ChatResponseMetadata.builder().model("gpt-test");
+        if (usage != null) {
+            metadata.usage(usage);
+        }
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("ok"))), metadata.build());
+    }
+}
@@ -0,0 +1,90 @@
+package ie.tcd.scss.aichat.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ie.tcd.scss.aichat.dto.Flashcard;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test for JsonItemStreamParser
+ */
+class JsonItemStreamParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonItemStreamParser<Flashcard> newParser() {
+        return new JsonItemStreamParser<>(objectMapper, Flashcard.class, "flashcards", card -> card.getQuestion() != null);
+    }
+
+    @Test
+    void testAppend_EmitsEachItemOnceItCloses() {
+        JsonItemStreamParser<Flashcard> parser = newParser();
+
+        assertTrue(parser.append("{\"flashcards\": [{\"question\": \"What is DI?\", ").isEmpty());
+        List<Flashcard> first = parser.append("\"answer\": \"Dependency Injection\"}, {\"question\"");
+        List<Flashcard> second = parser.append(": \"What is IoC?\", \"answer\": \"Inversion of Control\"}]}");
+
+        assertEquals(List.of(new Flashcard("What is DI?", "Dependency Injection")), first);
+        assertEquals(List.of(new Flashcard("What is IoC?", "Inversion of Control")), second);
+        assertTrue(parser.finish().isEmpty());
+    }
+
+    @Test
+    void testAppend_HandlesMultiByteCharactersSplitAcrossTokens() {
+        String json = "{\"flashcards\": [{\"question\": \"Qu'est-ce que l'ADN ? 🧬\", \"answer\": \"Acide désoxyribonucléique\"}]}";
+        JsonItemStreamParser<Flashcard> parser = newParser();
+
+        List<Flashcard> cards = new ArrayList<>();
+        for (int i = 0; i < json.length(); i++) {
+            cards.addAll(parser.append(json.substring(i, i + 1)));
+        }
+        cards.addAll(parser.finish());
+
+        assertEquals(1, cards.size());
+        assertEquals("Qu'est-ce que l'ADN ? 🧬", cards.get(0).getQuestion());
+        assertEquals("Acide désoxyribonucléique", cards.get(0).getAnswer());
+    }
+
+    @Test
+    void testParseAll_AcceptsTopLevelArrayInsideMarkdown() {
+        String response = "```json\n[{\"question\": \"Q1\", \"answer\": \"A1\"}, {\"question\": \"Q2\", \"answer\": \"A2\"}]\n```";
+
+        List<Flashcard> cards = JsonItemStreamParser.parseAll(objectMapper, Flashcard.class, "flashcards",
+                card -> true, response);
+
+        assertEquals(2, cards.size());
+        assertEquals("Q2", cards.get(1).getQuestion());
+    }
+
+    @Test
+    void testParseAll_SkipsItemsThatDoNotBindOrFailValidation() {
+        String response = "{\"flashcards\": [{\"question\": [1, 2]}, {\"answer\": \"no question\"}, "
+                + "{\"question\": \"Q\", \"answer\": \"A\"}]}";
+
+        List<Flashcard> cards = JsonItemStreamParser.parseAll(objectMapper, Flashcard.class, "flashcards",
+                card -> card.getQuestion() != null, response);
+
+        assertEquals(List.of(new Flashcard("Q", "A")), cards);
+    }
+
+    @Test
+    void testFinish_TruncatedOutputKeepsCompletedItems() {
+        JsonItemStreamParser<Flashcard> parser = newParser();
+
+        List<Flashcard> cards = new ArrayList<>(parser.append(
+                "{\"flashcards\": [{\"question\": \"Q1\", \"answer\": \"A1\"}, {\"question\": \"Q2\", \"ans"));
+        cards.addAll(parser.finish());
+
+        assertEquals(List.of(new Flashcard("Q1", "A1")), cards);
+    }
+
+    @Test
+    void testParseAll_NoJsonReturnsEmptyList() {
+        assertTrue(JsonItemStreamParser.parseAll(objectMapper, Flashcard.class, "flashcards",
+                card -> true, "Sorry, I cannot help with that.").isEmpty());
+    }
+}